@@ -21,11 +21,13 @@ import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 
 import org.apache.commons.lang3.StringUtils;
@@ -38,6 +40,7 @@ import org.springframework.roo.addon.plural.PluralMetadata;
 import org.springframework.roo.addon.web.mvc.controller.scaffold.WebScaffoldMetadata;
 import org.springframework.roo.classpath.PhysicalTypeCategory;
 import org.springframework.roo.classpath.PhysicalTypeIdentifier;
+import org.springframework.roo.classpath.TypeChangeSet;
 import org.springframework.roo.classpath.TypeLocationService;
 import org.springframework.roo.classpath.customdata.tagkeys.MethodMetadataCustomDataKey;
 import org.springframework.roo.classpath.details.BeanInfoUtils;
@@ -80,6 +83,7 @@ public class WebMetadataServiceImpl implements WebMetadataService {
 
     private static final MethodParameter FIRST_RESULT_PARAMETER = new MethodParameter(
             JavaType.INT_PRIMITIVE, "firstResult");
+    private static final AtomicInteger INSTANCES = new AtomicInteger();
     private static final int LAYER_POSITION = LayerType.HIGHEST.getPosition();
     private static final Logger LOGGER = HandlerUtils
             .getLogger(WebMetadataServiceImpl.class);
@@ -93,54 +97,70 @@ public class WebMetadataServiceImpl implements WebMetadataService {
     @Reference private PersistenceMemberLocator persistenceMemberLocator;
     @Reference private TypeLocationService typeLocationService;
 
-    private final Map<String, String> pathMap = new HashMap<String, String>();
+    /**
+     * Identifies this instance when asking for changed controllers, as its
+     * maps of them start out empty
+     */
+    private final String changeRequester = getClass().getName() + "#"
+            + INSTANCES.incrementAndGet();
+    /** key: a scaffolded type; value: the controller scaffolding it */
+    private final Map<JavaType, ClassOrInterfaceTypeDetails> controllerMap = new HashMap<JavaType, ClassOrInterfaceTypeDetails>();
+    /** key: a controller; value: the type it scaffolds */
+    private final Map<JavaType, JavaType> formBackingObjectMap = new HashMap<JavaType, JavaType>();
+
+    /**
+     * Returns the controller that scaffolds the given type, having first
+     * applied any changes to the project's controllers since the last call.
+     * 
+     * @param formBackingObject the scaffolded type
+     * @return <code>null</code> if there is no such controller
+     */
+    private synchronized ClassOrInterfaceTypeDetails getController(
+            final JavaType formBackingObject) {
+        final TypeChangeSet changes = typeLocationService
+                .getChangedTypesWithAnnotation(changeRequester,
+                        ROO_WEB_SCAFFOLD);
+        for (final JavaType removedController : changes.getRemovedTypes()) {
+            removeController(removedController);
+        }
+        final List<ClassOrInterfaceTypeDetails> changedControllers = new ArrayList<ClassOrInterfaceTypeDetails>(
+                changes.getAddedTypes());
+        changedControllers.addAll(changes.getChangedTypes());
+        for (final ClassOrInterfaceTypeDetails controller : changedControllers) {
+            removeController(controller.getName());
+            final AnnotationAttributeValue<?> formBackingObjectAttribute = controller
+                    .getAnnotation(ROO_WEB_SCAFFOLD).getAttribute(
+                            new JavaSymbolName("formBackingObject"));
+            if (formBackingObjectAttribute instanceof ClassAttributeValue) {
+                final JavaType scaffoldedType = ((ClassAttributeValue) formBackingObjectAttribute)
+                        .getValue();
+                controllerMap.put(scaffoldedType, controller);
+                formBackingObjectMap.put(controller.getName(), scaffoldedType);
+            }
+        }
+        return controllerMap.get(formBackingObject);
+    }
 
     private String getControllerPathForType(final JavaType type,
             final String metadataIdentificationString) {
-        if (pathMap.containsKey(type.getFullyQualifiedTypeName())
-                && !typeLocationService.hasTypeChanged(getClass().getName(),
-                        type)) {
-            return pathMap.get(type.getFullyQualifiedTypeName());
-        }
-        String webScaffoldMetadataKey = null;
-        WebScaffoldMetadata webScaffoldMetadata = null;
-        for (final ClassOrInterfaceTypeDetails cid : typeLocationService
-                .findClassesOrInterfaceDetailsWithAnnotation(ROO_WEB_SCAFFOLD)) {
-            for (final AnnotationMetadata annotation : cid.getAnnotations()) {
-                if (annotation.getAnnotationType().equals(ROO_WEB_SCAFFOLD)) {
-                    final AnnotationAttributeValue<?> formBackingObject = annotation
-                            .getAttribute(new JavaSymbolName(
-                                    "formBackingObject"));
-                    if (formBackingObject instanceof ClassAttributeValue) {
-                        final ClassAttributeValue formBackingObjectValue = (ClassAttributeValue) formBackingObject;
-                        if (formBackingObjectValue.getValue().equals(type)) {
-                            final AnnotationAttributeValue<String> path = annotation
-                                    .getAttribute("path");
-                            if (path != null) {
-                                final String pathString = path.getValue();
-                                pathMap.put(type.getFullyQualifiedTypeName(),
-                                        pathString);
-                                return pathString;
-                            }
-                            final LogicalPath cidPath = PhysicalTypeIdentifier
-                                    .getPath(cid.getDeclaredByMetadataId());
-                            webScaffoldMetadataKey = WebScaffoldMetadata
-                                    .createIdentifier(cid.getName(), cidPath);
-                            webScaffoldMetadata = (WebScaffoldMetadata) metadataService
-                                    .get(webScaffoldMetadataKey);
-                            break;
-                        }
-                    }
-                }
+        final ClassOrInterfaceTypeDetails cid = getController(type);
+        if (cid != null) {
+            final AnnotationAttributeValue<String> path = cid.getAnnotation(
+                    ROO_WEB_SCAFFOLD).getAttribute("path");
+            if (path != null) {
+                return path.getValue();
+            }
+            final LogicalPath cidPath = PhysicalTypeIdentifier.getPath(cid
+                    .getDeclaredByMetadataId());
+            final String webScaffoldMetadataKey = WebScaffoldMetadata
+                    .createIdentifier(cid.getName(), cidPath);
+            final WebScaffoldMetadata webScaffoldMetadata = (WebScaffoldMetadata) metadataService
+                    .get(webScaffoldMetadataKey);
+            if (webScaffoldMetadata != null) {
+                registerDependency(webScaffoldMetadataKey,
+                        metadataIdentificationString);
+                return webScaffoldMetadata.getAnnotationValues().getPath();
             }
-        }
-        if (webScaffoldMetadata != null) {
-            registerDependency(webScaffoldMetadataKey,
-                    metadataIdentificationString);
-            final String path = webScaffoldMetadata.getAnnotationValues()
-                    .getPath();
-            pathMap.put(type.getFullyQualifiedTypeName(), path);
-            return path;
         }
         return getPlural(type, metadataIdentificationString).toLowerCase();
     }
@@ -600,4 +620,26 @@ public class WebMetadataServiceImpl implements WebMetadataService {
                     downStreamDependency);
         }
     }
+
+    private void removeController(final JavaType controller) {
+        final JavaType scaffoldedType = formBackingObjectMap.remove(controller);
+        final ClassOrInterfaceTypeDetails current = controllerMap
+                .get(scaffoldedType);
+        if (current == null || !current.getName().equals(controller)) {
+            return;
+        }
+        controllerMap.remove(scaffoldedType);
+        // Fall back to any other controller scaffolding the same type
+        for (final Entry<JavaType, JavaType> entry : formBackingObjectMap
+                .entrySet()) {
+            if (entry.getValue().equals(scaffoldedType)) {
+                final ClassOrInterfaceTypeDetails other = typeLocationService
+                        .getTypeDetails(entry.getKey());
+                if (other != null) {
+                    controllerMap.put(scaffoldedType, other);
+                    return;
+                }
+            }
+        }
+    }
 }
@@ -6,18 +6,37 @@ import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.FilenameUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.classpath.PhysicalTypeMetadata;
 import org.springframework.roo.classpath.TypeLocationService;
 import org.springframework.roo.classpath.TypeParsingService;
 import org.springframework.roo.classpath.antlrjavaparser.details.JavaParserAnnotationMetadataBuilder;
@@ -58,9 +77,68 @@ import com.github.antlrjavaparser.api.type.ClassOrInterfaceType;
 @Service
 public class JavaParserTypeParsingService implements TypeParsingService {
 
+    /**
+     * A compilation unit parsed in advance, along with the file contents from
+     * which it was parsed.
+     */
+    private static class PreparedCompilationUnit {
+
+        final CompilationUnit compilationUnit;
+        final byte[] contents;
+
+        PreparedCompilationUnit(final byte[] contents,
+                final CompilationUnit compilationUnit) {
+            this.compilationUnit = compilationUnit;
+            this.contents = contents;
+        }
+    }
+
+    private static final int PARSED_TYPE_CACHE_CAPACITY = 1000;
+
+    /**
+     * Reads and parses the given file, unless the outline of its primary type
+     * suggests it won't need parsing.
+     * 
+     * @param fileIdentifier the canonical path of the file
+     * @return <code>null</code> if it could not be read or parsed, or was not
+     *         worth parsing
+     */
+    private static PreparedCompilationUnit prepare(final String fileIdentifier) {
+        try {
+            final byte[] contents = FileUtils.readFileToByteArray(new File(
+                    fileIdentifier));
+            final ScannedTypeDeclaration outline = ScannedTypeDeclaration.scan(
+                    new String(contents),
+                    FilenameUtils.getBaseName(fileIdentifier));
+            if (outline != null && outline.isOutlineSufficient()) {
+                return null;
+            }
+            return new PreparedCompilationUnit(contents,
+                    JavaParser.parse(new ByteArrayInputStream(contents)));
+        }
+        catch (final IOException e) {
+            return null;
+        }
+        catch (final ParseException e) {
+            return null;
+        }
+    }
+
     @Reference MetadataService metadataService;
     @Reference TypeLocationService typeLocationService;
 
+    private ExecutorService executor;
+    private int parallelism = Integer.getInteger(
+            "roo.parser.parallelism", Runtime.getRuntime()
+                    .availableProcessors());
+    private final ParsedTypeCache parsedTypeCache = new ParsedTypeCache(
+            PARSED_TYPE_CACHE_CAPACITY);
+    /** key: the canonical path of a file; value: its parsed contents */
+    private final Map<String, PreparedCompilationUnit> preparedCompilationUnits = new HashMap<String, PreparedCompilationUnit>();
+
+    // Mutex
+    private final Object lock = new Object();
+
     private void addEnumConstant(final List<EnumConstantDeclaration> constants,
             final JavaSymbolName name) {
         // Determine location to insert
@@ -75,6 +153,16 @@ public class JavaParserTypeParsingService implements TypeParsingService {
         constants.add(constants.size(), newEntry);
     }
 
+    protected void deactivate(final ComponentContext context) {
+        synchronized (lock) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+            preparedCompilationUnits.clear();
+        }
+    }
+
     @Override
     public final String getCompilationUnitContents(
             final ClassOrInterfaceTypeDetails cid) {
@@ -101,6 +189,85 @@ public class JavaParserTypeParsingService implements TypeParsingService {
         return compilationUnit.toString();
     }
 
+    private ExecutorService getExecutor() {
+        synchronized (lock) {
+            if (executor == null) {
+                final AtomicInteger threadNumber = new AtomicInteger();
+                final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                        parallelism, parallelism, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            public Thread newThread(final Runnable r) {
+                                final Thread thread = new Thread(r,
+                                        "Type parsing "
+                                                + threadNumber
+                                                        .incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                // Don't keep idle threads around between bulk parses
+                threadPoolExecutor.allowCoreThreadTimeOut(true);
+                executor = threadPoolExecutor;
+            }
+            return executor;
+        }
+    }
+
+    /**
+     * Returns the compilation unit prepared in advance from the given file
+     * contents, if any; each is only used once.
+     * 
+     * @param fileIdentifier the canonical path of the file
+     * @param contents the file's current contents
+     * @return <code>null</code> if the file was not prepared, or has changed
+     *         since
+     */
+    private CompilationUnit getPreparedCompilationUnit(
+            final String fileIdentifier, final byte[] contents) {
+        final PreparedCompilationUnit prepared;
+        synchronized (lock) {
+            if (preparedCompilationUnits.isEmpty()) {
+                return null;
+            }
+            prepared = preparedCompilationUnits.remove(fileIdentifier);
+        }
+        if (prepared == null || !Arrays.equals(prepared.contents, contents)) {
+            return null;
+        }
+        return prepared.compilationUnit;
+    }
+
+    private PreparedCompilationUnit getResult(
+            final Future<PreparedCompilationUnit> future) {
+        try {
+            return future.get();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    private ClassOrInterfaceTypeDetails getType(
+            final CompilationUnit compilationUnit,
+            final String declaredByMetadataId, final JavaType typeName) {
+        final TypeDeclaration typeDeclaration = JavaParserUtils
+                .locateTypeDeclaration(compilationUnit, typeName);
+        if (typeDeclaration == null) {
+            return null;
+        }
+        return JavaParserClassOrInterfaceTypeDetailsBuilder.getInstance(
+                compilationUnit, null, typeDeclaration, declaredByMetadataId,
+                typeName, metadataService, typeLocationService).build();
+    }
+
     @Override
     public ClassOrInterfaceTypeDetails getTypeAtLocation(
             final String fileIdentifier, final String declaredByMetadataId,
@@ -110,16 +277,46 @@ public class JavaParserTypeParsingService implements TypeParsingService {
                 "Declaring metadata ID required");
         Validate.notNull(typeName, "Java type to locate required");
         final File file = new File(fileIdentifier);
-        String typeContents = "";
+        final byte[] typeContents;
         try {
-            typeContents = FileUtils.readFileToString(file);
+            typeContents = FileUtils.readFileToByteArray(file);
         }
         catch (final IOException ignored) {
+            return null;
+        }
+        final ClassOrInterfaceTypeDetails cachedType = parsedTypeCache.get(
+                fileIdentifier, declaredByMetadataId, typeContents);
+        if (cachedType != null) {
+            if (hasCurrentSuperclass(cachedType)) {
+                return cachedType;
+            }
+            parsedTypeCache.invalidate(fileIdentifier, declaredByMetadataId);
         }
-        if (StringUtils.isBlank(typeContents)) {
+        final String source = new String(typeContents);
+        if (StringUtils.isBlank(source)) {
             return null;
         }
-        return getTypeFromString(typeContents, declaredByMetadataId, typeName);
+        final ClassOrInterfaceTypeDetails type;
+        final ScannedTypeDeclaration outline = ScannedTypeDeclaration.scan(
+                source, typeName.getSimpleTypeName());
+        if (outline != null && outline.isOutlineSufficient(typeName)) {
+            // Defer parsing until (if ever) more than the outline is needed
+            type = new UnparsedClassOrInterfaceTypeDetails(
+                    declaredByMetadataId, typeName, outline, typeContents, this);
+        }
+        else {
+            CompilationUnit compilationUnit = getPreparedCompilationUnit(
+                    fileIdentifier, typeContents);
+            if (compilationUnit == null) {
+                compilationUnit = parse(typeContents, typeName);
+            }
+            type = getType(compilationUnit, declaredByMetadataId, typeName);
+        }
+        if (type != null) {
+            parsedTypeCache.put(fileIdentifier, declaredByMetadataId,
+                    typeContents, type);
+        }
+        return type;
     }
 
     @Override
@@ -129,22 +326,72 @@ public class JavaParserTypeParsingService implements TypeParsingService {
         if (StringUtils.isBlank(fileContents)) {
             return null;
         }
-
         Validate.notBlank(declaredByMetadataId,
                 "Declaring metadata ID required");
         Validate.notNull(typeName, "Java type to locate required");
-        try {
-            final CompilationUnit compilationUnit = JavaParser
-                    .parse(new ByteArrayInputStream(fileContents.getBytes()));
-            final TypeDeclaration typeDeclaration = JavaParserUtils
-                    .locateTypeDeclaration(compilationUnit, typeName);
-            if (typeDeclaration == null) {
-                return null;
+        return getType(parse(fileContents.getBytes(), typeName),
+                declaredByMetadataId, typeName);
+    }
+
+    /**
+     * Indicates whether the superclass of the given previously parsed type,
+     * and those of its inner types, are still the ones that would be found by
+     * parsing it again now.
+     * 
+     * @param cid the type to check (required)
+     * @return see above
+     */
+    private boolean hasCurrentSuperclass(final ClassOrInterfaceTypeDetails cid) {
+        if (cid.getPhysicalTypeCategory() == PhysicalTypeCategory.CLASS
+                && cid.getExtendsTypes().size() == 1) {
+            final String superclassId = typeLocationService
+                    .getPhysicalTypeIdentifier(cid.getExtendsTypes().get(0));
+            ClassOrInterfaceTypeDetails superclass = null;
+            if (superclassId != null) {
+                final PhysicalTypeMetadata superPtm = (PhysicalTypeMetadata) metadataService
+                        .get(superclassId);
+                if (superPtm != null) {
+                    superclass = superPtm.getMemberHoldingTypeDetails();
+                }
+            }
+            if (superclass != cid.getSuperclass()) {
+                return false;
+            }
+        }
+        for (final ClassOrInterfaceTypeDetails innerType : cid
+                .getDeclaredInnerTypes()) {
+            if (!hasCurrentSuperclass(innerType)) {
+                return false;
             }
-            return JavaParserClassOrInterfaceTypeDetailsBuilder.getInstance(
-                    compilationUnit, null, typeDeclaration,
-                    declaredByMetadataId, typeName, metadataService,
-                    typeLocationService).build();
+        }
+        return true;
+    }
+
+    /**
+     * Parses the given type from the given source file contents, for an
+     * {@link UnparsedClassOrInterfaceTypeDetails} that has been asked for more
+     * than its outline
+     * 
+     * @param fileContents the contents of the type's source file (required)
+     * @param declaredByMetadataId the id of the type (required)
+     * @param typeName the type to parse (required)
+     * @return a non-<code>null</code> type
+     */
+    ClassOrInterfaceTypeDetails parseType(final byte[] fileContents,
+            final String declaredByMetadataId, final JavaType typeName) {
+        final ClassOrInterfaceTypeDetails type = getType(
+                parse(fileContents, typeName), declaredByMetadataId, typeName);
+        if (type == null) {
+            throw new IllegalStateException("Failed to parse " + typeName
+                    + " : type not found");
+        }
+        return type;
+    }
+
+    private CompilationUnit parse(final byte[] fileContents,
+            final JavaType typeName) {
+        try {
+            return JavaParser.parse(new ByteArrayInputStream(fileContents));
         }
         catch (final IOException e) {
             throw new IllegalStateException(e);
@@ -155,6 +402,55 @@ public class JavaParserTypeParsingService implements TypeParsingService {
         }
     }
 
+    @Override
+    public void prepareTypesAtLocations(final Collection<String> fileIdentifiers) {
+        Validate.notNull(fileIdentifiers, "File identifiers required");
+        if (parallelism < 2 || fileIdentifiers.size() < 2) {
+            // Parsing them now would gain nothing
+            return;
+        }
+        final ExecutorService executorService = getExecutor();
+        final Map<String, Future<PreparedCompilationUnit>> futures = new LinkedHashMap<String, Future<PreparedCompilationUnit>>();
+        for (final String fileIdentifier : fileIdentifiers) {
+            futures.put(fileIdentifier, executorService
+                    .submit(new Callable<PreparedCompilationUnit>() {
+                        public PreparedCompilationUnit call() {
+                            return prepare(fileIdentifier);
+                        }
+                    }));
+        }
+        final Map<String, PreparedCompilationUnit> prepared = new HashMap<String, PreparedCompilationUnit>();
+        for (final Entry<String, Future<PreparedCompilationUnit>> future : futures
+                .entrySet()) {
+            final PreparedCompilationUnit preparedCompilationUnit = getResult(future
+                    .getValue());
+            if (preparedCompilationUnit != null) {
+                prepared.put(future.getKey(), preparedCompilationUnit);
+            }
+        }
+        synchronized (lock) {
+            // Any left over from last time are no longer wanted
+            preparedCompilationUnits.clear();
+            preparedCompilationUnits.putAll(prepared);
+        }
+    }
+
+    /**
+     * For use by unit tests
+     * 
+     * @param parallelism
+     */
+    void setParallelism(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
+    @Override
+    public String toString() {
+        final ToStringBuilder builder = new ToStringBuilder(this);
+        builder.append("parsedTypes", parsedTypeCache);
+        return builder.toString().replaceFirst("@[0-9a-f]+", ":");
+    }
+
     /**
      * Appends the presented class to the end of the presented body
      * declarations. The body declarations appear within the presented
@@ -0,0 +1,146 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.apache.commons.lang3.builder.ToStringStyle;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+
+/**
+ * A bounded, least-recently-used cache of the types parsed by
+ * {@link JavaParserTypeParsingService}, keyed by the file and type in question
+ * and validated against a checksum of the file's contents, so that a file
+ * whose timestamp changes but whose contents do not (e.g. after switching
+ * between version control branches) need not be parsed again. Thread safe.
+ * 
+ * @since 1.2.5
+ */
+class ParsedTypeCache {
+
+    private static class Entry {
+
+        final long checksum;
+        final ClassOrInterfaceTypeDetails cid;
+        final int length;
+
+        Entry(final byte[] contents, final ClassOrInterfaceTypeDetails cid) {
+            checksum = getChecksum(contents);
+            this.cid = cid;
+            length = contents.length;
+        }
+
+        boolean matches(final byte[] contents) {
+            return length == contents.length
+                    && checksum == getChecksum(contents);
+        }
+    }
+
+    private static long getChecksum(final byte[] contents) {
+        final CRC32 crc = new CRC32();
+        crc.update(contents);
+        return crc.getValue();
+    }
+
+    private static String getKey(final String fileIdentifier,
+            final String declaredByMetadataId) {
+        return fileIdentifier + " " + declaredByMetadataId;
+    }
+
+    private int evictions;
+    private int hits;
+    private final Map<String, Entry> map;
+    private final int maxCapacity;
+    private int misses;
+    private int staleHits;
+
+    /**
+     * Constructor
+     * 
+     * @param maxCapacity the maximum number of types to cache (must be
+     *            positive)
+     */
+    ParsedTypeCache(final int maxCapacity) {
+        Validate.isTrue(maxCapacity > 0, "Maximum capacity must be positive");
+        this.maxCapacity = maxCapacity;
+        map = new LinkedHashMap<String, Entry>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1;
+
+            @Override
+            protected boolean removeEldestEntry(
+                    final Map.Entry<String, ParsedTypeCache.Entry> eldest) {
+                if (size() > ParsedTypeCache.this.maxCapacity) {
+                    evictions++;
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Returns the type previously parsed from the given file, provided the
+     * file's contents have not changed since.
+     * 
+     * @param fileIdentifier the canonical path of the file (required)
+     * @param declaredByMetadataId the id of the type (required)
+     * @param contents the current contents of the file (required)
+     * @return <code>null</code> if there is no such type
+     */
+    synchronized ClassOrInterfaceTypeDetails get(final String fileIdentifier,
+            final String declaredByMetadataId, final byte[] contents) {
+        final Entry entry = map.get(getKey(fileIdentifier,
+                declaredByMetadataId));
+        if (entry != null && entry.matches(contents)) {
+            hits++;
+            return entry.cid;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     * Records that the type returned by the last call to
+     * {@link #get(String, String, byte[])} for the given file could not be
+     * used after all, e.g. because its superclass has changed in the meantime.
+     * 
+     * @param fileIdentifier the canonical path of the file (required)
+     * @param declaredByMetadataId the id of the type (required)
+     */
+    synchronized void invalidate(final String fileIdentifier,
+            final String declaredByMetadataId) {
+        map.remove(getKey(fileIdentifier, declaredByMetadataId));
+        hits--;
+        staleHits++;
+    }
+
+    /**
+     * Caches the type parsed from the given file contents.
+     * 
+     * @param fileIdentifier the canonical path of the file (required)
+     * @param declaredByMetadataId the id of the type (required)
+     * @param contents the contents from which the type was parsed (required)
+     * @param cid the parsed type (required)
+     */
+    synchronized void put(final String fileIdentifier,
+            final String declaredByMetadataId, final byte[] contents,
+            final ClassOrInterfaceTypeDetails cid) {
+        map.put(getKey(fileIdentifier, declaredByMetadataId), new Entry(
+                contents, cid));
+    }
+
+    @Override
+    public synchronized String toString() {
+        final ToStringBuilder builder = new ToStringBuilder(this,
+                ToStringStyle.SHORT_PREFIX_STYLE);
+        builder.append("hits", hits);
+        builder.append("misses", misses);
+        builder.append("staleHits", staleHits);
+        builder.append("evictions", evictions);
+        builder.append("currentSize", map.size());
+        builder.append("maximumSize", maxCapacity);
+        return builder.toString();
+    }
+}
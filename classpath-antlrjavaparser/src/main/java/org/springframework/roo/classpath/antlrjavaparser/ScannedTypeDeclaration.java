@@ -0,0 +1,348 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import java.lang.reflect.Modifier;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * The outline of a top-level type declaration, as found by a lexical scan of
+ * its source file rather than a full parse; this is enough to tell whether the
+ * type is annotated or extends another type without building its syntax tree.
+ * Immutable.
+ * 
+ * @since 1.2.5
+ */
+class ScannedTypeDeclaration {
+
+    /**
+     * Splits Java source code into identifiers, keywords, and punctuation,
+     * skipping whitespace, comments, and the contents of string and character
+     * literals.
+     */
+    private static class Tokenizer {
+
+        private int position;
+        private final String source;
+
+        Tokenizer(final String source) {
+            this.source = source;
+        }
+
+        /**
+         * Returns the next token
+         * 
+         * @return <code>null</code> at the end of the source
+         */
+        String next() {
+            while (position < source.length()) {
+                final char c = source.charAt(position);
+                if (Character.isWhitespace(c)) {
+                    position++;
+                }
+                else if (source.startsWith("//", position)) {
+                    skipPast("\n");
+                }
+                else if (source.startsWith("/*", position)) {
+                    position += 2;
+                    skipPast("*/");
+                }
+                else if (c == '"' || c == '\'') {
+                    skipLiteral(c);
+                    return String.valueOf(c);
+                }
+                else if (Character.isJavaIdentifierPart(c)) {
+                    final int start = position;
+                    while (position < source.length()
+                            && Character.isJavaIdentifierPart(source
+                                    .charAt(position))) {
+                        position++;
+                    }
+                    return source.substring(start, position);
+                }
+                else {
+                    position++;
+                    return String.valueOf(c);
+                }
+            }
+            return null;
+        }
+
+        private void skipLiteral(final char delimiter) {
+            position++;
+            while (position < source.length()) {
+                final char c = source.charAt(position++);
+                if (c == '\\') {
+                    position++;
+                }
+                else if (c == delimiter || c == '\n') {
+                    return;
+                }
+            }
+        }
+
+        private void skipPast(final String terminator) {
+            final int end = source.indexOf(terminator, position);
+            position = end < 0 ? source.length() : end + terminator.length();
+        }
+    }
+
+    private static final Map<String, Integer> MODIFIERS = new HashMap<String, Integer>();
+    private static final List<String> TYPE_KEYWORDS = Arrays.asList("class",
+            "enum", "interface");
+
+    static {
+        MODIFIERS.put("abstract", Modifier.ABSTRACT);
+        MODIFIERS.put("final", Modifier.FINAL);
+        MODIFIERS.put("private", Modifier.PRIVATE);
+        MODIFIERS.put("protected", Modifier.PROTECTED);
+        MODIFIERS.put("public", Modifier.PUBLIC);
+        MODIFIERS.put("static", Modifier.STATIC);
+        MODIFIERS.put("strictfp", Modifier.STRICT);
+    }
+
+    private static PhysicalTypeCategory getCategory(final String keyword) {
+        if ("interface".equals(keyword)) {
+            return PhysicalTypeCategory.INTERFACE;
+        }
+        if ("enum".equals(keyword)) {
+            return PhysicalTypeCategory.ENUMERATION;
+        }
+        return PhysicalTypeCategory.CLASS;
+    }
+
+    private static boolean isTypeKeyword(final String token,
+            final String previousToken) {
+        // Excludes class literals such as "Foo.class"
+        return TYPE_KEYWORDS.contains(token) && !".".equals(previousToken);
+    }
+
+    /**
+     * Scans the given source code for the top-level type with the given name.
+     * 
+     * @param source the contents of a Java source file (can be blank)
+     * @param simpleTypeName the simple name of the type to find (required)
+     * @return <code>null</code> if no such type was found, or the source
+     *         can't be reliably scanned without being parsed
+     */
+    static ScannedTypeDeclaration scan(final String source,
+            final String simpleTypeName) {
+        if (StringUtils.isBlank(source) || source.contains("\\u")) {
+            // Unicode escapes can disguise any token
+            return null;
+        }
+        final Tokenizer tokenizer = new Tokenizer(source);
+        String packageName = "";
+        boolean annotated = false;
+        int modifier = 0;
+        int parentheses = 0;
+        String previousToken = null;
+        String token;
+        while ((token = tokenizer.next()) != null) {
+            if ("(".equals(token)) {
+                parentheses++;
+            }
+            else if (")".equals(token)) {
+                parentheses--;
+            }
+            else if (parentheses > 0) {
+                // Within an annotation's attributes
+            }
+            else if ("package".equals(token) && previousToken == null) {
+                final StringBuilder name = new StringBuilder();
+                while ((token = tokenizer.next()) != null && !";".equals(token)) {
+                    name.append(token);
+                }
+                packageName = name.toString();
+            }
+            else if ("import".equals(token)) {
+                while ((token = tokenizer.next()) != null && !";".equals(token)) {
+                    // Skip the imported type
+                }
+            }
+            else if ("@".equals(token)) {
+                annotated = true;
+            }
+            else if (MODIFIERS.containsKey(token)) {
+                modifier |= MODIFIERS.get(token);
+            }
+            else if (isTypeKeyword(token, previousToken)) {
+                final String typeName = tokenizer.next();
+                if (simpleTypeName.equals(typeName)) {
+                    return scanDeclaration(tokenizer, packageName,
+                            getCategory(token), modifier, annotated);
+                }
+                if (!skipBody(tokenizer)) {
+                    return null;
+                }
+                annotated = false;
+                modifier = 0;
+            }
+            else if (";".equals(token)) {
+                annotated = false;
+                modifier = 0;
+            }
+            previousToken = token;
+        }
+        return null;
+    }
+
+    /**
+     * Scans the remainder of a type declaration, starting just after its name
+     */
+    private static ScannedTypeDeclaration scanDeclaration(
+            final Tokenizer tokenizer, final String packageName,
+            final PhysicalTypeCategory category, final int modifier,
+            final boolean annotatedBeforeName) {
+        boolean annotated = annotatedBeforeName;
+        boolean extending = false;
+        boolean generic = false;
+        String token;
+        while ((token = tokenizer.next()) != null && !"{".equals(token)) {
+            if ("<".equals(token)) {
+                generic = true;
+            }
+            else if ("extends".equals(token)) {
+                extending = true;
+            }
+            else if ("@".equals(token)) {
+                annotated = true;
+            }
+        }
+        if (token == null) {
+            return null;
+        }
+        boolean nestedTypes = false;
+        int depth = 1;
+        String previousToken = token;
+        while (depth > 0 && (token = tokenizer.next()) != null) {
+            if ("{".equals(token)) {
+                depth++;
+            }
+            else if ("}".equals(token)) {
+                depth--;
+            }
+            else if (depth == 1 && isTypeKeyword(token, previousToken)) {
+                nestedTypes = true;
+            }
+            previousToken = token;
+        }
+        if (depth > 0) {
+            return null;
+        }
+        return new ScannedTypeDeclaration(annotated, category, extending,
+                generic, modifier, nestedTypes, packageName);
+    }
+
+    /**
+     * Skips the body of a type declaration whose name has just been read
+     * 
+     * @return <code>false</code> if the end of the source was reached first
+     */
+    private static boolean skipBody(final Tokenizer tokenizer) {
+        String token;
+        while ((token = tokenizer.next()) != null && !"{".equals(token)) {
+            // Skip the rest of the declaration
+        }
+        int depth = 1;
+        while (depth > 0 && (token = tokenizer.next()) != null) {
+            if ("{".equals(token)) {
+                depth++;
+            }
+            else if ("}".equals(token)) {
+                depth--;
+            }
+        }
+        return depth == 0;
+    }
+
+    private final boolean annotated;
+    private final PhysicalTypeCategory category;
+    private final boolean extending;
+    private final boolean generic;
+    private final int modifier;
+    private final boolean nestedTypes;
+    private final String packageName;
+
+    private ScannedTypeDeclaration(final boolean annotated,
+            final PhysicalTypeCategory category, final boolean extending,
+            final boolean generic, final int modifier,
+            final boolean nestedTypes, final String packageName) {
+        this.annotated = annotated;
+        this.category = category;
+        this.extending = extending;
+        this.generic = generic;
+        this.modifier = modifier;
+        this.nestedTypes = nestedTypes;
+        this.packageName = packageName;
+    }
+
+    /**
+     * Returns the types this type extends, if this can be known without
+     * parsing it
+     * 
+     * @return <code>null</code> if the type needs to be parsed to find out
+     */
+    List<JavaType> getExtendsTypes() {
+        if (extending) {
+            return null;
+        }
+        return Collections.emptyList();
+    }
+
+    /**
+     * Returns the modifiers of this type
+     * 
+     * @return see {@link Modifier}
+     */
+    int getModifier() {
+        return modifier;
+    }
+
+    /**
+     * Returns the category of this type
+     * 
+     * @return a non-<code>null</code> category
+     */
+    PhysicalTypeCategory getPhysicalTypeCategory() {
+        return category;
+    }
+
+    /**
+     * Indicates whether this outline includes everything about its type that
+     * is needed to index it and decide whether any metadata depends on it,
+     * i.e. everything but its members, imports, and implemented interfaces.
+     * This is so for a non-generic class or interface in a named package that
+     * has no annotations or inner types, and (if a class) no superclass.
+     * 
+     * @return see above
+     */
+    boolean isOutlineSufficient() {
+        return !annotated
+                && !generic
+                && !nestedTypes
+                && (category == PhysicalTypeCategory.INTERFACE || category == PhysicalTypeCategory.CLASS
+                        && !extending) && StringUtils.isNotBlank(packageName);
+    }
+
+    /**
+     * Indicates whether this outline is {@link #isOutlineSufficient()
+     * sufficient} for the given type, i.e. is also that of a top-level type in
+     * the expected package.
+     * 
+     * @param typeName the type that was scanned for (required)
+     * @return see above
+     */
+    boolean isOutlineSufficient(final JavaType typeName) {
+        return isOutlineSufficient()
+                && typeName.getEnclosingType() == null
+                && packageName.equals(typeName.getPackage()
+                        .getFullyQualifiedPackageName());
+    }
+}
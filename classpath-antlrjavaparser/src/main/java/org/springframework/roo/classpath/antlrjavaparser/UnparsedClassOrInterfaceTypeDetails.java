@@ -0,0 +1,192 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import static org.springframework.roo.classpath.PhysicalTypeCategory.CLASS;
+import static org.springframework.roo.classpath.PhysicalTypeCategory.INTERFACE;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.classpath.details.AbstractMemberHoldingTypeDetails;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.classpath.details.ConstructorMetadata;
+import org.springframework.roo.classpath.details.FieldMetadata;
+import org.springframework.roo.classpath.details.ImportMetadata;
+import org.springframework.roo.classpath.details.InitializerMetadata;
+import org.springframework.roo.classpath.details.MethodMetadata;
+import org.springframework.roo.classpath.details.annotations.AnnotationMetadata;
+import org.springframework.roo.model.CustomDataImpl;
+import org.springframework.roo.model.JavaSymbolName;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * A {@link ClassOrInterfaceTypeDetails} for a type whose
+ * {@link ScannedTypeDeclaration outline} says all that most callers need to
+ * know about it, namely that it has no annotations, superclass, or inner
+ * types. The type's source is only parsed if and when something else about it
+ * is requested, e.g. its members or imports.
+ * <p>
+ * As with the default implementation, instances are only equal to
+ * themselves, so whether or not their source has been parsed yet has no effect
+ * on {@link #equals(Object)} or {@link #hashCode()}. Thread safe.
+ * 
+ * @since 1.2.5
+ */
+class UnparsedClassOrInterfaceTypeDetails extends
+        AbstractMemberHoldingTypeDetails implements ClassOrInterfaceTypeDetails {
+
+    private byte[] contents;
+    private final List<JavaType> extendsTypes;
+    private final JavaType name;
+    private volatile ClassOrInterfaceTypeDetails parsedType;
+    private final PhysicalTypeCategory physicalTypeCategory;
+    private JavaParserTypeParsingService typeParsingService;
+
+    // Mutex
+    private final Object lock = new Object();
+
+    /**
+     * Constructor
+     * 
+     * @param declaredByMetadataId the id of the type (required)
+     * @param name the type's name (required)
+     * @param outline the type's outline, which must be
+     *            {@link ScannedTypeDeclaration#isOutlineSufficient(JavaType)
+     *            sufficient} (required)
+     * @param contents the contents of the type's source file (required)
+     * @param typeParsingService the service with which to parse those
+     *            contents if required (required)
+     */
+    UnparsedClassOrInterfaceTypeDetails(final String declaredByMetadataId,
+            final JavaType name, final ScannedTypeDeclaration outline,
+            final byte[] contents,
+            final JavaParserTypeParsingService typeParsingService) {
+        super(CustomDataImpl.NONE, declaredByMetadataId, outline
+                .getModifier(), Collections.<AnnotationMetadata> emptyList());
+        Validate.notNull(name, "Name required");
+        Validate.isTrue(outline.isOutlineSufficient(name),
+                "The outline of '%s' is not sufficient", name);
+        Validate.notNull(contents, "Contents required");
+        Validate.notNull(typeParsingService, "Type parsing service required");
+        this.contents = contents;
+        extendsTypes = outline.getExtendsTypes();
+        this.name = name;
+        physicalTypeCategory = outline.getPhysicalTypeCategory();
+        this.typeParsingService = typeParsingService;
+    }
+
+    public boolean declaresField(final JavaSymbolName fieldName) {
+        return getDeclaredField(fieldName) != null;
+    }
+
+    public boolean extendsType(final JavaType type) {
+        return getExtendsTypes().contains(type);
+    }
+
+    public List<? extends ConstructorMetadata> getDeclaredConstructors() {
+        return getParsedType().getDeclaredConstructors();
+    }
+
+    public List<? extends FieldMetadata> getDeclaredFields() {
+        return getParsedType().getDeclaredFields();
+    }
+
+    public List<? extends InitializerMetadata> getDeclaredInitializers() {
+        return getParsedType().getDeclaredInitializers();
+    }
+
+    public List<ClassOrInterfaceTypeDetails> getDeclaredInnerTypes() {
+        return Collections.emptyList();
+    }
+
+    public List<? extends MethodMetadata> getDeclaredMethods() {
+        return getParsedType().getDeclaredMethods();
+    }
+
+    public List<String> getDynamicFinderNames() {
+        // These come from the custom data, of which there is none
+        return new ArrayList<String>();
+    }
+
+    public List<JavaSymbolName> getEnumConstants() {
+        return getParsedType().getEnumConstants();
+    }
+
+    public List<JavaType> getExtendsTypes() {
+        if (extendsTypes == null) {
+            return getParsedType().getExtendsTypes();
+        }
+        return extendsTypes;
+    }
+
+    public List<JavaType> getImplementsTypes() {
+        return getParsedType().getImplementsTypes();
+    }
+
+    public JavaType getName() {
+        return getType();
+    }
+
+    /**
+     * Returns the type obtained by parsing this type's source, doing so if
+     * this hasn't been done already
+     * 
+     * @return a non-<code>null</code> type
+     */
+    private ClassOrInterfaceTypeDetails getParsedType() {
+        if (parsedType == null) {
+            synchronized (lock) {
+                if (parsedType == null) {
+                    parsedType = typeParsingService.parseType(contents,
+                            getDeclaredByMetadataId(), name);
+                    // Allow the source to be garbage collected
+                    contents = null;
+                    typeParsingService = null;
+                }
+            }
+        }
+        return parsedType;
+    }
+
+    public PhysicalTypeCategory getPhysicalTypeCategory() {
+        return physicalTypeCategory;
+    }
+
+    public Set<ImportMetadata> getRegisteredImports() {
+        return getParsedType().getRegisteredImports();
+    }
+
+    public ClassOrInterfaceTypeDetails getSuperclass() {
+        return null;
+    }
+
+    public JavaType getType() {
+        return name;
+    }
+
+    public boolean implementsAny(final JavaType... types) {
+        return getParsedType().implementsAny(types);
+    }
+
+    public boolean isAbstract() {
+        return physicalTypeCategory == INTERFACE
+                || physicalTypeCategory == CLASS
+                && Modifier.isAbstract(getModifier());
+    }
+
+    @Override
+    public String toString() {
+        final ToStringBuilder builder = new ToStringBuilder(this);
+        builder.append("name", name);
+        builder.append("modifier", Modifier.toString(getModifier()));
+        builder.append("physicalTypeCategory", physicalTypeCategory);
+        builder.append("declaredByMetadataId", getDeclaredByMetadataId());
+        builder.append("parsed", parsedType != null);
+        return builder.toString();
+    }
+}
@@ -77,12 +77,14 @@ public class JavaParserClassOrInterfaceTypeDetailsBuilder implements
     private final String declaredByMetadataId;
     private List<ImportDeclaration> imports = new ArrayList<ImportDeclaration>();
     private final List<TypeDeclaration> innerTypes = new ArrayList<TypeDeclaration>();
+    private List<BodyDeclaration> members;
     private final MetadataService metadataService;
 
     private JavaType name;
     private PhysicalTypeCategory physicalTypeCategory;
     private final TypeDeclaration typeDeclaration;
     private final TypeLocationService typeLocationService;
+    private final Set<JavaSymbolName> typeParameterNames = new HashSet<JavaSymbolName>();
 
     /**
      * Constructor
@@ -214,7 +216,6 @@ public class JavaParserClassOrInterfaceTypeDetailsBuilder implements
                 .getModifiers()));
 
         // Type parameters
-        final Set<JavaSymbolName> typeParameterNames = new HashSet<JavaSymbolName>();
         for (final JavaType param : name.getParameters()) {
             final JavaSymbolName arg = param.getArgName();
             // Fortunately type names can only appear at the top-level
@@ -227,7 +228,7 @@ public class JavaParserClassOrInterfaceTypeDetailsBuilder implements
 
         List<ClassOrInterfaceType> implementsList;
         List<AnnotationExpr> annotationsList = null;
-        List<BodyDeclaration> members = null;
+        ClassOrInterfaceTypeDetails superclassDetails = null;
 
         if (clazz != null) {
             final List<ClassOrInterfaceType> extendsList = clazz.getExtends();
@@ -252,10 +253,8 @@ public class JavaParserClassOrInterfaceTypeDetailsBuilder implements
                     superPtm = (PhysicalTypeMetadata) metadataService
                             .get(superclassId);
                 }
-                if (superPtm != null
-                        && superPtm.getMemberHoldingTypeDetails() != null) {
-                    cidBuilder.setSuperclass(superPtm
-                            .getMemberHoldingTypeDetails());
+                if (superPtm != null) {
+                    superclassDetails = superPtm.getMemberHoldingTypeDetails();
                 }
             }
 
@@ -303,6 +302,7 @@ public class JavaParserClassOrInterfaceTypeDetailsBuilder implements
             }
         }
 
+        final List<ClassOrInterfaceTypeDetails> innerTypeDetails = new ArrayList<ClassOrInterfaceTypeDetails>();
         if (members != null) {
             // Now we've finished declaring the type, we should introspect for
             // any inner types that can thus be referred to in other body
@@ -316,6 +316,37 @@ public class JavaParserClassOrInterfaceTypeDetailsBuilder implements
                 }
             }
 
+            for (final TypeDeclaration innerTypeDeclaration : innerTypes) {
+                final JavaType innerType = new JavaType(
+                        innerTypeDeclaration.getName(), name);
+                final String innerTypeMetadataId = PhysicalTypeIdentifier
+                        .createIdentifier(innerType, PhysicalTypeIdentifier
+                                .getPath(declaredByMetadataId));
+                innerTypeDetails
+                        .add(new JavaParserClassOrInterfaceTypeDetailsBuilder(
+                                compilationUnit, compilationUnitServices,
+                                innerTypeDeclaration, innerTypeMetadataId,
+                                innerType, metadataService, typeLocationService)
+                                .build());
+            }
+        }
+
+        // The members themselves are only built if and when they're needed
+        return new LazyClassOrInterfaceTypeDetails(cidBuilder.build(),
+                superclassDetails, innerTypeDetails, this);
+    }
+
+    /**
+     * Builds the fields, methods, and constructors of the type returned by
+     * {@link #build()}, which defers doing so until one of them is first
+     * requested
+     * 
+     * @return a type containing only those members (never <code>null</code>)
+     */
+    ClassOrInterfaceTypeDetails buildMembers() {
+        final ClassOrInterfaceTypeDetailsBuilder cidBuilder = new ClassOrInterfaceTypeDetailsBuilder(
+                declaredByMetadataId, 0, name, physicalTypeCategory);
+        if (members != null) {
             for (final BodyDeclaration member : members) {
                 if (member instanceof FieldDeclaration) {
                     final FieldDeclaration castMember = (FieldDeclaration) member;
@@ -362,19 +393,6 @@ public class JavaParserClassOrInterfaceTypeDetailsBuilder implements
 
                     cidBuilder.addConstructor(constructor);
                 }
-                if (member instanceof TypeDeclaration) {
-                    final TypeDeclaration castMember = (TypeDeclaration) member;
-                    final JavaType innerType = new JavaType(
-                            castMember.getName(), name);
-                    final String innerTypeMetadataId = PhysicalTypeIdentifier
-                            .createIdentifier(innerType, PhysicalTypeIdentifier
-                                    .getPath(declaredByMetadataId));
-                    final ClassOrInterfaceTypeDetails cid = new JavaParserClassOrInterfaceTypeDetailsBuilder(
-                            compilationUnit, compilationUnitServices,
-                            castMember, innerTypeMetadataId, innerType,
-                            metadataService, typeLocationService).build();
-                    cidBuilder.addInnerType(cid);
-                }
             }
         }
 
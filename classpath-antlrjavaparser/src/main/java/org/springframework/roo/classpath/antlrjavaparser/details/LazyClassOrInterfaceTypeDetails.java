@@ -0,0 +1,185 @@
+package org.springframework.roo.classpath.antlrjavaparser.details;
+
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
+import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.classpath.details.AbstractMemberHoldingTypeDetails;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.classpath.details.ConstructorMetadata;
+import org.springframework.roo.classpath.details.FieldMetadata;
+import org.springframework.roo.classpath.details.ImportMetadata;
+import org.springframework.roo.classpath.details.InitializerMetadata;
+import org.springframework.roo.classpath.details.MethodMetadata;
+import org.springframework.roo.model.JavaSymbolName;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * A {@link ClassOrInterfaceTypeDetails} parsed by
+ * {@link JavaParserClassOrInterfaceTypeDetailsBuilder} whose fields, methods,
+ * and constructors are only converted from the parsed source when first
+ * requested. Callers that only need the type's name, annotations, or other
+ * declaration-level details (e.g. when indexing types by annotation) thereby
+ * avoid building metadata for every member of every type.
+ * <p>
+ * As with the default implementation, instances are only equal to
+ * themselves, so whether or not their members have been built yet has no
+ * effect on {@link #equals(Object)} or {@link #hashCode()}. Thread safe.
+ * 
+ * @since 1.2.5
+ */
+class LazyClassOrInterfaceTypeDetails extends AbstractMemberHoldingTypeDetails
+        implements ClassOrInterfaceTypeDetails {
+
+    private final ClassOrInterfaceTypeDetails declaration;
+    private final List<ClassOrInterfaceTypeDetails> declaredInnerTypes;
+    private volatile ClassOrInterfaceTypeDetails members;
+    private JavaParserClassOrInterfaceTypeDetailsBuilder membersBuilder;
+    private final ClassOrInterfaceTypeDetails superclass;
+
+    // Mutex
+    private final Object lock = new Object();
+
+    /**
+     * Constructor
+     * 
+     * @param declaration the type's declaration-level details, i.e. everything
+     *            except its members, superclass, and inner types (required)
+     * @param superclass the type's superclass, if known (can be
+     *            <code>null</code>)
+     * @param declaredInnerTypes the type's inner types (required)
+     * @param membersBuilder the builder from which to obtain the type's
+     *            members when first required (required)
+     */
+    LazyClassOrInterfaceTypeDetails(
+            final ClassOrInterfaceTypeDetails declaration,
+            final ClassOrInterfaceTypeDetails superclass,
+            final List<ClassOrInterfaceTypeDetails> declaredInnerTypes,
+            final JavaParserClassOrInterfaceTypeDetailsBuilder membersBuilder) {
+        super(declaration.getCustomData(), declaration
+                .getDeclaredByMetadataId(), declaration.getModifier(),
+                declaration.getAnnotations());
+        Validate.notNull(declaredInnerTypes, "Inner types required");
+        Validate.notNull(membersBuilder, "Members builder required");
+        this.declaration = declaration;
+        this.declaredInnerTypes = new ArrayList<ClassOrInterfaceTypeDetails>(
+                declaredInnerTypes);
+        this.membersBuilder = membersBuilder;
+        this.superclass = superclass;
+    }
+
+    public boolean declaresField(final JavaSymbolName fieldName) {
+        return getDeclaredField(fieldName) != null;
+    }
+
+    public boolean extendsType(final JavaType type) {
+        return declaration.extendsType(type);
+    }
+
+    public List<? extends ConstructorMetadata> getDeclaredConstructors() {
+        return getMembers().getDeclaredConstructors();
+    }
+
+    public List<? extends FieldMetadata> getDeclaredFields() {
+        return getMembers().getDeclaredFields();
+    }
+
+    public List<? extends InitializerMetadata> getDeclaredInitializers() {
+        return declaration.getDeclaredInitializers();
+    }
+
+    public List<ClassOrInterfaceTypeDetails> getDeclaredInnerTypes() {
+        return Collections.unmodifiableList(declaredInnerTypes);
+    }
+
+    public List<? extends MethodMetadata> getDeclaredMethods() {
+        return getMembers().getDeclaredMethods();
+    }
+
+    public List<String> getDynamicFinderNames() {
+        return declaration.getDynamicFinderNames();
+    }
+
+    public List<JavaSymbolName> getEnumConstants() {
+        return declaration.getEnumConstants();
+    }
+
+    public List<JavaType> getExtendsTypes() {
+        return declaration.getExtendsTypes();
+    }
+
+    public List<JavaType> getImplementsTypes() {
+        return declaration.getImplementsTypes();
+    }
+
+    /**
+     * Returns the type containing this type's members, building it from the
+     * parsed source if this hasn't been done already
+     * 
+     * @return a non-<code>null</code> type
+     */
+    private ClassOrInterfaceTypeDetails getMembers() {
+        if (members == null) {
+            synchronized (lock) {
+                if (members == null) {
+                    members = membersBuilder.buildMembers();
+                    // Allow the parsed source to be garbage collected
+                    membersBuilder = null;
+                }
+            }
+        }
+        return members;
+    }
+
+    public JavaType getName() {
+        return getType();
+    }
+
+    public PhysicalTypeCategory getPhysicalTypeCategory() {
+        return declaration.getPhysicalTypeCategory();
+    }
+
+    public Set<ImportMetadata> getRegisteredImports() {
+        return declaration.getRegisteredImports();
+    }
+
+    public ClassOrInterfaceTypeDetails getSuperclass() {
+        return superclass;
+    }
+
+    public JavaType getType() {
+        return declaration.getType();
+    }
+
+    public boolean implementsAny(final JavaType... types) {
+        return declaration.implementsAny(types);
+    }
+
+    public boolean isAbstract() {
+        return declaration.isAbstract();
+    }
+
+    @Override
+    public String toString() {
+        final ToStringBuilder builder = new ToStringBuilder(this);
+        builder.append("name", getName());
+        builder.append("modifier", Modifier.toString(getModifier()));
+        builder.append("physicalTypeCategory", getPhysicalTypeCategory());
+        builder.append("declaredByMetadataId", getDeclaredByMetadataId());
+        builder.append("declaredConstructors", getDeclaredConstructors());
+        builder.append("declaredFields", getDeclaredFields());
+        builder.append("declaredMethods", getDeclaredMethods());
+        builder.append("enumConstants", getEnumConstants());
+        builder.append("superclass", superclass);
+        builder.append("extendsTypes", getExtendsTypes());
+        builder.append("implementsTypes", getImplementsTypes());
+        builder.append("annotations", getAnnotations());
+        builder.append("customData", getCustomData());
+        return builder.toString();
+    }
+}
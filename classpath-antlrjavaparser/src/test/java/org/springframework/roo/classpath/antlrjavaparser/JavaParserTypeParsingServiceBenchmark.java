@@ -0,0 +1,168 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.roo.classpath.PhysicalTypeIdentifier;
+import org.springframework.roo.classpath.TypeLocationService;
+import org.springframework.roo.metadata.MetadataService;
+import org.springframework.roo.model.JavaType;
+import org.springframework.roo.project.LogicalPath;
+import org.springframework.roo.project.Path;
+
+/**
+ * Benchmarks the cold start of {@link JavaParserTypeParsingService}, i.e. the
+ * parsing of every type in a generated project of 10,000 classes, in batches
+ * as {@link org.springframework.roo.classpath.TypeLocationServiceImpl} does
+ * when it first populates its cache, with each of the given numbers of threads
+ * (by default 1, 2, 4, and 8, regardless of the number of processors) parsing
+ * each batch in advance. Not a unit test (and not run as part of the build);
+ * run its {@link #main(String[])} method directly.
+ */
+public class JavaParserTypeParsingServiceBenchmark {
+
+    private static final int BATCH_SIZE = 500;
+    private static final String[] DEFAULT_THREAD_COUNTS = { "1", "2", "4", "8" };
+    private static final int PACKAGES = 100;
+    private static final int TYPES = 10000;
+    private static final int WARM_UP_RUNS = 3;
+
+    private static File generateProject() throws IOException {
+        final File root = File.createTempFile("roo-parsing", "");
+        FileUtils.forceDelete(root);
+        for (int i = 0; i < TYPES; i++) {
+            final String packageName = "com.example.package" + i % PACKAGES;
+            final StringBuilder source = new StringBuilder();
+            source.append("package ").append(packageName).append(";\n\n");
+            source.append("import java.util.Date;\n");
+            source.append("import java.util.List;\n\n");
+            source.append("/** Generated type ").append(i).append(" */\n");
+            source.append("@Deprecated\n");
+            source.append("public class Type").append(i).append(" {\n\n");
+            for (int field = 0; field < 10; field++) {
+                source.append("    private String field").append(field)
+                        .append(";\n");
+            }
+            source.append("    private Date created;\n");
+            source.append("    private List<String> names;\n\n");
+            for (int field = 0; field < 10; field++) {
+                source.append("    public String getField").append(field)
+                        .append("() {\n        return field").append(field)
+                        .append(";\n    }\n\n");
+                source.append("    public void setField").append(field)
+                        .append("(final String value) {\n        field")
+                        .append(field).append(" = value;\n    }\n\n");
+            }
+            source.append("}\n");
+            FileUtils.writeStringToFile(new File(root, packageName.replace(
+                    '.', File.separatorChar)
+                    + File.separator
+                    + "Type"
+                    + i
+                    + ".java"), source.toString());
+        }
+        return root;
+    }
+
+    /**
+     * Returns an implementation of the given interface whose methods do
+     * nothing but return <code>null</code>, <code>false</code>, or zero.
+     */
+    private static <T> T getNullService(final Class<T> serviceInterface) {
+        return serviceInterface.cast(Proxy.newProxyInstance(
+                serviceInterface.getClassLoader(),
+                new Class<?>[] { serviceInterface }, new InvocationHandler() {
+                    public Object invoke(final Object proxy,
+                            final Method method, final Object[] args) {
+                        final Class<?> returnType = method.getReturnType();
+                        if (returnType == boolean.class) {
+                            return false;
+                        }
+                        if (returnType.isPrimitive()
+                                && returnType != void.class) {
+                            return 0;
+                        }
+                        return null;
+                    }
+                }));
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final File root = generateProject();
+        try {
+            final LogicalPath path = LogicalPath.getInstance(
+                    Path.SRC_MAIN_JAVA, "");
+            final Map<String, JavaType> types = new LinkedHashMap<String, JavaType>();
+            for (int i = 0; i < TYPES; i++) {
+                final JavaType type = new JavaType("com.example.package" + i
+                        % PACKAGES + ".Type" + i);
+                types.put(new File(root, type.getRelativeFileName())
+                        .getCanonicalPath(), type);
+            }
+            final List<String> paths = new ArrayList<String>(types.keySet());
+
+            System.out.println(TYPES + " types, "
+                    + Runtime.getRuntime().availableProcessors()
+                    + " processors");
+            // The first runs only warm up the JVM; one isn't enough for the
+            // parser's code to be fully compiled
+            for (int i = 0; i < WARM_UP_RUNS; i++) {
+                run(1, paths, types, path);
+            }
+            for (final String threadCount : args.length == 0 ? DEFAULT_THREAD_COUNTS
+                    : args) {
+                final int threads = Integer.parseInt(threadCount);
+                final long millis = run(threads, paths, types, path);
+                System.out.println("  " + threads + " thread(s): " + millis
+                        + " ms");
+            }
+        }
+        finally {
+            FileUtils.deleteQuietly(root);
+        }
+    }
+
+    private static long run(final int threads, final List<String> paths,
+            final Map<String, JavaType> types, final LogicalPath path) {
+        final JavaParserTypeParsingService service = new JavaParserTypeParsingService();
+        service.metadataService = getNullService(MetadataService.class);
+        service.typeLocationService = getNullService(TypeLocationService.class);
+        service.setParallelism(threads);
+
+        final long start = System.nanoTime();
+        try {
+            parseAll(service, paths, types, path);
+        }
+        finally {
+            service.deactivate(null);
+        }
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static void parseAll(final JavaParserTypeParsingService service,
+            final List<String> paths, final Map<String, JavaType> types,
+            final LogicalPath path) {
+        for (int i = 0; i < paths.size(); i += BATCH_SIZE) {
+            final List<String> batch = paths.subList(i,
+                    Math.min(i + BATCH_SIZE, paths.size()));
+            service.prepareTypesAtLocations(batch);
+            for (final String fileIdentifier : batch) {
+                final JavaType type = types.get(fileIdentifier);
+                if (service.getTypeAtLocation(fileIdentifier,
+                        PhysicalTypeIdentifier.createIdentifier(type, path),
+                        type) == null) {
+                    throw new IllegalStateException("Could not parse "
+                            + fileIdentifier);
+                }
+            }
+        }
+    }
+}
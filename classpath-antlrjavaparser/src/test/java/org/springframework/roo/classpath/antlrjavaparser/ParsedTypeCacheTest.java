@@ -0,0 +1,78 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Modifier;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetailsBuilder;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * Unit test of {@link ParsedTypeCache}
+ */
+public class ParsedTypeCacheTest {
+
+    private static final byte[] CONTENTS = "package com.example; class Foo {}"
+            .getBytes();
+    private static final String DECLARED_BY_MID = "MID:foo#bar";
+    private static final String FILE = "/project/Foo.java";
+
+    private ParsedTypeCache cache;
+    private ClassOrInterfaceTypeDetails cid;
+
+    @Before
+    public void setUp() {
+        cache = new ParsedTypeCache(2);
+        cid = new ClassOrInterfaceTypeDetailsBuilder(DECLARED_BY_MID,
+                Modifier.PUBLIC, new JavaType("com.example.Foo"),
+                PhysicalTypeCategory.CLASS).build();
+    }
+
+    @Test
+    public void testChangedContentsAreNotFound() {
+        cache.put(FILE, DECLARED_BY_MID, CONTENTS, cid);
+
+        assertNull(cache.get(FILE, DECLARED_BY_MID,
+                "package com.example; class Foo { }".getBytes()));
+        assertNull(cache.get(FILE, DECLARED_BY_MID,
+                "package com.example; class Bar {}".getBytes()));
+    }
+
+    @Test
+    public void testIdenticalContentsAreFound() {
+        cache.put(FILE, DECLARED_BY_MID, CONTENTS, cid);
+
+        assertSame(cid, cache.get(FILE, DECLARED_BY_MID, CONTENTS.clone()));
+        assertTrue(cache.toString().contains("hits=1"));
+    }
+
+    @Test
+    public void testInvalidatedTypeIsNotFound() {
+        cache.put(FILE, DECLARED_BY_MID, CONTENTS, cid);
+        cache.get(FILE, DECLARED_BY_MID, CONTENTS);
+
+        cache.invalidate(FILE, DECLARED_BY_MID);
+
+        assertNull(cache.get(FILE, DECLARED_BY_MID, CONTENTS));
+        assertTrue(cache.toString().contains("staleHits=1"));
+    }
+
+    @Test
+    public void testLeastRecentlyUsedTypeIsEvicted() {
+        cache.put(FILE, DECLARED_BY_MID, CONTENTS, cid);
+        cache.put("/project/Bar.java", DECLARED_BY_MID, CONTENTS, cid);
+        cache.get(FILE, DECLARED_BY_MID, CONTENTS);
+
+        cache.put("/project/Baz.java", DECLARED_BY_MID, CONTENTS, cid);
+
+        assertSame(cid, cache.get(FILE, DECLARED_BY_MID, CONTENTS));
+        assertNull(cache.get("/project/Bar.java", DECLARED_BY_MID, CONTENTS));
+        assertTrue(cache.toString().contains("evictions=1"));
+    }
+}
@@ -0,0 +1,99 @@
+package org.springframework.roo.classpath.antlrjavaparser;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.reflect.Modifier;
+
+import org.junit.Test;
+import org.springframework.roo.classpath.PhysicalTypeCategory;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * Unit test of {@link ScannedTypeDeclaration}
+ */
+public class ScannedTypeDeclarationTest {
+
+    private static final JavaType FOO = new JavaType("com.example.Foo");
+
+    private static ScannedTypeDeclaration scan(final String source) {
+        return ScannedTypeDeclaration.scan(source, FOO.getSimpleTypeName());
+    }
+
+    @Test
+    public void testAnnotatedTypeNeedsParsing() {
+        final ScannedTypeDeclaration outline = scan("package com.example;\n"
+                + "import java.util.List;\n"
+                + "@SuppressWarnings({ \"unchecked\" })\n"
+                + "public class Foo {}");
+
+        assertFalse(outline.isOutlineSufficient(FOO));
+    }
+
+    @Test
+    public void testCommentsAndLiteralsAreIgnored() {
+        final ScannedTypeDeclaration outline = scan("/* @Deprecated */\n"
+                + "package com.example;\n" + "// @Deprecated\n"
+                + "public final class Foo {\n"
+                + "    private String s = \"class Bar { @Baz\";\n"
+                + "    private char c = '{';\n"
+                + "    private Class<?> type = Foo.class;\n" + "}");
+
+        assertTrue(outline.isOutlineSufficient(FOO));
+        assertEquals(PhysicalTypeCategory.CLASS,
+                outline.getPhysicalTypeCategory());
+        assertEquals(Modifier.PUBLIC | Modifier.FINAL, outline.getModifier());
+        assertTrue(outline.getExtendsTypes().isEmpty());
+    }
+
+    @Test
+    public void testInnerTypeNeedsParsing() {
+        final ScannedTypeDeclaration outline = scan("package com.example;\n"
+                + "public class Foo {\n" + "    void bar() {\n"
+                + "        class Local {}\n" + "    }\n"
+                + "    static class Inner {}\n" + "}");
+
+        assertFalse(outline.isOutlineSufficient(FOO));
+    }
+
+    @Test
+    public void testInterfaceWithSuperinterfacesIsSufficient() {
+        final ScannedTypeDeclaration outline = scan("package com.example;\n"
+                + "interface Foo extends Runnable {}");
+
+        assertTrue(outline.isOutlineSufficient(FOO));
+        assertEquals(PhysicalTypeCategory.INTERFACE,
+                outline.getPhysicalTypeCategory());
+        assertNull(outline.getExtendsTypes());
+    }
+
+    @Test
+    public void testOtherTopLevelTypesAreSkipped() {
+        final ScannedTypeDeclaration outline = scan("package com.example;\n"
+                + "@Deprecated class Bar { class Baz {} }\n" + "class Foo {}");
+
+        assertTrue(outline.isOutlineSufficient(FOO));
+        assertEquals(0, outline.getModifier());
+    }
+
+    @Test
+    public void testSubclassNeedsParsing() {
+        final ScannedTypeDeclaration outline = scan("package com.example;\n"
+                + "public class Foo extends Bar implements Runnable {}");
+
+        assertFalse(outline.isOutlineSufficient(FOO));
+    }
+
+    @Test
+    public void testTypeInOtherPackageNeedsParsing() {
+        assertFalse(scan("package com.other;\n" + "public class Foo {}")
+                .isOutlineSufficient(FOO));
+    }
+
+    @Test
+    public void testUnknownTypeIsNotFound() {
+        assertNull(scan("package com.example;\n" + "public class Bar {}"));
+    }
+}
@@ -0,0 +1,76 @@
+package org.springframework.roo.classpath.antlrjavaparser.details;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.classpath.PhysicalTypeIdentifier;
+import org.springframework.roo.classpath.antlrjavaparser.JavaParserUtils;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.model.JavaSymbolName;
+import org.springframework.roo.model.JavaType;
+import org.springframework.roo.project.LogicalPath;
+import org.springframework.roo.project.Path;
+
+import com.github.antlrjavaparser.JavaParser;
+import com.github.antlrjavaparser.api.CompilationUnit;
+
+/**
+ * Unit test of {@link LazyClassOrInterfaceTypeDetails}
+ */
+public class LazyClassOrInterfaceTypeDetailsTest {
+
+    private static final String SOURCE_FILE = "package com.example;\n"
+            + "@java.lang.Deprecated\n" + "public class Foo {\n"
+            + "    private String bar;\n" + "    public Foo() {}\n"
+            + "    public String getBar() { return bar; }\n"
+            + "    static class Inner { private int baz; }\n" + "}";
+    private static final JavaType TYPE = new JavaType("com.example.Foo");
+    private static final String DECLARED_BY_MID = PhysicalTypeIdentifier
+            .createIdentifier(TYPE,
+                    LogicalPath.getInstance(Path.SRC_MAIN_JAVA, ""));
+
+    private ClassOrInterfaceTypeDetails cid;
+
+    @Before
+    public void setUp() throws Exception {
+        final CompilationUnit compilationUnit = JavaParser
+                .parse(new ByteArrayInputStream(SOURCE_FILE.getBytes()));
+        cid = JavaParserClassOrInterfaceTypeDetailsBuilder.getInstance(
+                compilationUnit, null,
+                JavaParserUtils.locateTypeDeclaration(compilationUnit, TYPE),
+                DECLARED_BY_MID, TYPE, null, null).build();
+    }
+
+    @Test
+    public void testDeclarationIsAvailableBeforeMembersAreBuilt() {
+        assertTrue(cid instanceof LazyClassOrInterfaceTypeDetails);
+        assertEquals(TYPE, cid.getName());
+        assertNotNull(cid.getAnnotation(new JavaType(Deprecated.class)));
+        assertEquals(1, cid.getDeclaredInnerTypes().size());
+    }
+
+    @Test
+    public void testInnerTypeMembersAreBuiltOnDemand() {
+        final ClassOrInterfaceTypeDetails innerType = cid
+                .getDeclaredInnerTypes().get(0);
+
+        assertEquals("Inner", innerType.getName().getSimpleTypeName());
+        assertTrue(innerType.declaresField(new JavaSymbolName("baz")));
+    }
+
+    @Test
+    public void testMembersAreBuiltOnlyOnce() {
+        assertEquals(1, cid.getDeclaredFields().size());
+        assertEquals(1, cid.getDeclaredConstructors().size());
+        assertEquals(new JavaSymbolName("getBar"), cid.getDeclaredMethods()
+                .get(0).getMethodName());
+        assertSame(cid.getDeclaredFields().get(0), cid.getDeclaredFields()
+                .get(0));
+    }
+}
@@ -1,7 +1,9 @@
 package org.springframework.roo.classpath;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Comparator;
+import java.util.List;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
@@ -136,6 +138,11 @@ public class DefaultPhysicalTypeMetadataProvider implements
         }
         MemberDetails memberDetails = new MemberDetailsBuilder(
                 Arrays.asList(details)).build();
+        // This may be running on several threads at once
+        final List<MemberDetailsDecorator> decorators;
+        synchronized (lock) {
+            decorators = new ArrayList<MemberDetailsDecorator>(this.decorators);
+        }
         // Loop until such time as we complete a full loop where no changes are
         // made to the result
         boolean additionalLoopRequired = true;
@@ -38,6 +38,7 @@ public class MetadataCommands implements CommandMarker {
     @Reference private MetadataService metadataService;
     @Reference private ProjectOperations projectOperations;
     @Reference private TypeLocationService typeLocationService;
+    @Reference private TypeParsingService typeParsingService;
 
     @CliAvailabilityIndicator(METADATA_FOR_MODULE_COMMAND)
     public boolean isModuleMetadataAvailable() {
@@ -157,7 +158,9 @@ public class MetadataCommands implements CommandMarker {
         for (final MetadataTimingStatistic stat : metadataLogger.getTimings()) {
             sb.append(stat.toString()).append(LINE_SEPARATOR);
         }
-        sb.append(metadataService.toString());
+        sb.append(metadataService.toString()).append(LINE_SEPARATOR);
+        sb.append(memberDetailsScanner.toString()).append(LINE_SEPARATOR);
+        sb.append(typeParsingService.toString());
         return sb.toString();
     }
 
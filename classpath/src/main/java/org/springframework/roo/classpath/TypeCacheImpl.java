@@ -12,10 +12,18 @@ import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
 import org.springframework.roo.model.JavaType;
 import org.springframework.roo.project.maven.Pom;
 
+/**
+ * Default implementation of {@link TypeCache}.
+ * <p>
+ * Types may be cached while metadata is being produced on several threads, so
+ * all access is guarded by a single lock, and only copies of the cached
+ * collections are returned.
+ */
 @Component
 @Service
 public class TypeCacheImpl implements TypeCache {
 
+    private final Object lock = new Object();
     private final Map<String, ClassOrInterfaceTypeDetails> midToTypeDetailsMap = new HashMap<String, ClassOrInterfaceTypeDetails>();
     private final Map<String, Set<String>> moduleFilePathToTypeNamesMap = new HashMap<String, Set<String>>();
     private final Map<String, Set<String>> simpleTypeNameTypesMap = new HashMap<String, Set<String>>();
@@ -28,103 +36,130 @@ public class TypeCacheImpl implements TypeCache {
 
     public void cacheFilePathAgainstTypeIdentifier(final String typeFilePath,
             final String typeIdentifier) {
-        typeFilePathToMidMap.put(typeFilePath, typeIdentifier);
+        synchronized (lock) {
+            typeFilePathToMidMap.put(typeFilePath, typeIdentifier);
+        }
     }
 
     public void cacheType(final String typeFilePath,
             final ClassOrInterfaceTypeDetails cid) {
         Validate.notBlank(typeFilePath, "Module name required");
         Validate.notNull(cid, "Type details required");
-
-        midToTypeDetailsMap.put(cid.getDeclaredByMetadataId(), cid);
-        typeFilePathToMidMap.put(typeFilePath, cid.getDeclaredByMetadataId());
-        typeIdentifierToFilePathMap.put(cid.getDeclaredByMetadataId(),
-                typeFilePath);
-        types.add(cid.getName());
-
-        final String fullyQualifiedTypeName = cid.getName()
-                .getFullyQualifiedTypeName();
-        final String simpleTypeName = cid.getName().getSimpleTypeName();
-        typeNameToMidMap.put(fullyQualifiedTypeName,
-                cid.getDeclaredByMetadataId());
-        if (!simpleTypeNameTypesMap.containsKey(simpleTypeName)) {
-            simpleTypeNameTypesMap.put(simpleTypeName, new HashSet<String>());
+        synchronized (lock) {
+            midToTypeDetailsMap.put(cid.getDeclaredByMetadataId(), cid);
+            typeFilePathToMidMap.put(typeFilePath,
+                    cid.getDeclaredByMetadataId());
+            typeIdentifierToFilePathMap.put(cid.getDeclaredByMetadataId(),
+                    typeFilePath);
+            types.add(cid.getName());
+
+            final String fullyQualifiedTypeName = cid.getName()
+                    .getFullyQualifiedTypeName();
+            final String simpleTypeName = cid.getName().getSimpleTypeName();
+            typeNameToMidMap.put(fullyQualifiedTypeName,
+                    cid.getDeclaredByMetadataId());
+            if (!simpleTypeNameTypesMap.containsKey(simpleTypeName)) {
+                simpleTypeNameTypesMap.put(simpleTypeName,
+                        new HashSet<String>());
+            }
+
+            simpleTypeNameTypesMap.get(simpleTypeName).add(
+                    fullyQualifiedTypeName);
         }
-
-        simpleTypeNameTypesMap.get(simpleTypeName).add(fullyQualifiedTypeName);
     }
 
     public void cacheTypeAgainstModule(final Pom pom, final JavaType javaType) {
         Validate.notNull(pom, "Pom cannot be null");
         Validate.notNull(javaType, "Java type cannot be null");
-        typeNameToModuleFilePathMap.put(javaType.getFullyQualifiedTypeName(),
-                pom.getPath());
-        typeNameToModuleNameMap.put(javaType.getFullyQualifiedTypeName(),
-                pom.getModuleName());
-        if (!moduleFilePathToTypeNamesMap.containsKey(pom.getPath())) {
-            moduleFilePathToTypeNamesMap.put(pom.getPath(),
-                    new HashSet<String>());
+        synchronized (lock) {
+            typeNameToModuleFilePathMap.put(
+                    javaType.getFullyQualifiedTypeName(), pom.getPath());
+            typeNameToModuleNameMap.put(javaType.getFullyQualifiedTypeName(),
+                    pom.getModuleName());
+            if (!moduleFilePathToTypeNamesMap.containsKey(pom.getPath())) {
+                moduleFilePathToTypeNamesMap.put(pom.getPath(),
+                        new HashSet<String>());
+            }
+            moduleFilePathToTypeNamesMap.get(pom.getPath()).add(
+                    javaType.getFullyQualifiedTypeName());
         }
-        moduleFilePathToTypeNamesMap.get(pom.getPath()).add(
-                javaType.getFullyQualifiedTypeName());
     }
 
     public Set<String> getAllTypeIdentifiers() {
-        return new HashSet<String>(midToTypeDetailsMap.keySet());
+        synchronized (lock) {
+            return new HashSet<String>(midToTypeDetailsMap.keySet());
+        }
     }
 
     public Set<JavaType> getAllTypes() {
-        return new HashSet<JavaType>(types);
+        synchronized (lock) {
+            return new HashSet<JavaType>(types);
+        }
     }
 
     public String getPhysicalTypeIdentifier(final JavaType javaType) {
         Validate.notNull(javaType, "Java type cannot be null");
-        return typeNameToMidMap.get(javaType.getFullyQualifiedTypeName());
+        synchronized (lock) {
+            return typeNameToMidMap.get(javaType.getFullyQualifiedTypeName());
+        }
     }
 
     public ClassOrInterfaceTypeDetails getTypeDetails(final String mid) {
         Validate.notBlank(mid, "Physical type identifier required");
-        return midToTypeDetailsMap.get(mid);
+        synchronized (lock) {
+            return midToTypeDetailsMap.get(mid);
+        }
     }
 
     public String getTypeIdFromTypeFilePath(final String typeFilePath) {
         Validate.notBlank(typeFilePath, "Physical type file path required");
-        return typeFilePathToMidMap.get(typeFilePath);
+        synchronized (lock) {
+            return typeFilePathToMidMap.get(typeFilePath);
+        }
     }
 
     public Set<String> getTypeNamesForModuleFilePath(final String moduleFilePath) {
         Validate.notBlank(moduleFilePath, "Pom file path required");
-        if (!moduleFilePathToTypeNamesMap.containsKey(moduleFilePath)) {
-            moduleFilePathToTypeNamesMap.put(moduleFilePath,
-                    new HashSet<String>());
+        synchronized (lock) {
+            final Set<String> typeNames = moduleFilePathToTypeNamesMap
+                    .get(moduleFilePath);
+            if (typeNames == null) {
+                return new HashSet<String>();
+            }
+            return new HashSet<String>(typeNames);
         }
-        return new HashSet<String>(
-                moduleFilePathToTypeNamesMap.get(moduleFilePath));
     }
 
     public Set<String> getTypesForSimpleTypeName(final String simpleTypeName) {
-        if (!simpleTypeNameTypesMap.containsKey(simpleTypeName)) {
-            return new HashSet<String>();
+        synchronized (lock) {
+            final Set<String> typeNames = simpleTypeNameTypesMap
+                    .get(simpleTypeName);
+            if (typeNames == null) {
+                return new HashSet<String>();
+            }
+            return new HashSet<String>(typeNames);
         }
-        return simpleTypeNameTypesMap.get(simpleTypeName);
     }
 
     public void removeType(final String typeIdentifier) {
         Validate.notBlank(typeIdentifier, "Physical type identifier required");
-        final ClassOrInterfaceTypeDetails cid = midToTypeDetailsMap
-                .get(typeIdentifier);
-        if (cid != null) {
-            typeNameToMidMap.remove(cid.getName().getFullyQualifiedTypeName());
-            typeNameToModuleFilePathMap.remove(cid.getName()
-                    .getFullyQualifiedTypeName());
-            typeNameToModuleNameMap.remove(cid.getName()
-                    .getFullyQualifiedTypeName());
+        synchronized (lock) {
+            final ClassOrInterfaceTypeDetails cid = midToTypeDetailsMap
+                    .get(typeIdentifier);
+            if (cid != null) {
+                typeNameToMidMap.remove(cid.getName()
+                        .getFullyQualifiedTypeName());
+                typeNameToModuleFilePathMap.remove(cid.getName()
+                        .getFullyQualifiedTypeName());
+                typeNameToModuleNameMap.remove(cid.getName()
+                        .getFullyQualifiedTypeName());
+            }
+            final String filePath = typeIdentifierToFilePathMap
+                    .get(typeIdentifier);
+            if (filePath != null) {
+                typeFilePathToMidMap.remove(filePath);
+                typeIdentifierToFilePathMap.remove(typeIdentifier);
+            }
         }
-        final String filePath = typeIdentifierToFilePathMap.get(typeIdentifier);
-        if (filePath != null) {
-            typeFilePathToMidMap.remove(filePath);
-            typeIdentifierToFilePathMap.remove(typeIdentifier);
-        }
-
     }
 }
@@ -0,0 +1,168 @@
+package org.springframework.roo.classpath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A versioned log of which types have gained or lost a given key (e.g. an
+ * annotation type or a custom data tag), or been changed while having it,
+ * used by {@link TypeLocationServiceImpl} to tell each requesting class about
+ * only those types that have changed since that class last asked.
+ * <p>
+ * Each change is given a sequence number, and for each key the log holds only
+ * the latest change to each type, ordered by sequence number; the changes
+ * since a requesting class's cursor are therefore found without examining the
+ * types that have not changed. Whether a changed type is reported as added,
+ * changed, or removed depends on whether the requesting class was last told
+ * that it has the key, which each cursor records. Thread safe.
+ * 
+ * @since 1.2.5
+ */
+class TypeChangeLog {
+
+    /**
+     * The changes to the types having a given key since a given cursor, as
+     * physical type ids.
+     */
+    static class Changes {
+
+        final List<String> added = new ArrayList<String>();
+        final List<String> changed = new ArrayList<String>();
+        final List<String> removed = new ArrayList<String>();
+    }
+
+    /**
+     * A requesting class's position in the log of a given key.
+     */
+    private static class Cursor {
+
+        /** The types the requesting class has been told have the key */
+        final Set<String> physicalTypeIds = new HashSet<String>();
+        long sequence;
+    }
+
+    /**
+     * The latest change to one type having a given key.
+     */
+    private static class Entry {
+
+        /** When the type was last changed, i.e. this entry's position */
+        long changedAt;
+        boolean hasKey;
+        final String physicalTypeId;
+
+        Entry(final String physicalTypeId) {
+            this.physicalTypeId = physicalTypeId;
+        }
+    }
+
+    /**
+     * The entries for one key.
+     */
+    private static class KeyLog {
+
+        final TreeMap<Long, Entry> entriesBySequence = new TreeMap<Long, Entry>();
+        final Map<String, Entry> entriesByType = new HashMap<String, Entry>();
+    }
+
+    /** key: requesting class; value: the cursor of that class for each key */
+    private final Map<String, Map<Object, Cursor>> cursors = new HashMap<String, Map<Object, Cursor>>();
+    private final Map<Object, KeyLog> keyLogs = new HashMap<Object, KeyLog>();
+    private long sequence;
+
+    /**
+     * Returns the changes to the types having the given key since the given
+     * class last called this method for that key, and advances that class's
+     * cursor. The first call for a given class and key reports all the types
+     * that currently have that key as added.
+     * 
+     * @param requestingClass the class requesting the changes (required)
+     * @param key the key whose types to return (required)
+     * @return a non-<code>null</code> set of changes; a type is only reported
+     *         as removed if the requesting class was previously told that it
+     *         had the key
+     */
+    synchronized Changes getChanges(final String requestingClass,
+            final Object key) {
+        Validate.notNull(requestingClass, "Requesting class required");
+        Validate.notNull(key, "Key required");
+        Map<Object, Cursor> classCursors = cursors.get(requestingClass);
+        if (classCursors == null) {
+            classCursors = new HashMap<Object, Cursor>();
+            cursors.put(requestingClass, classCursors);
+        }
+        Cursor cursor = classCursors.get(key);
+        if (cursor == null) {
+            cursor = new Cursor();
+            classCursors.put(key, cursor);
+        }
+        final long since = cursor.sequence;
+        cursor.sequence = sequence;
+
+        final Changes changes = new Changes();
+        final KeyLog keyLog = keyLogs.get(key);
+        if (keyLog == null) {
+            return changes;
+        }
+        for (final Entry entry : keyLog.entriesBySequence.tailMap(since, false)
+                .values()) {
+            if (entry.hasKey) {
+                if (cursor.physicalTypeIds.add(entry.physicalTypeId)) {
+                    changes.added.add(entry.physicalTypeId);
+                }
+                else {
+                    changes.changed.add(entry.physicalTypeId);
+                }
+            }
+            else if (cursor.physicalTypeIds.remove(entry.physicalTypeId)) {
+                changes.removed.add(entry.physicalTypeId);
+            }
+        }
+        return changes;
+    }
+
+    /**
+     * Records that the given type has changed.
+     * 
+     * @param physicalTypeId the id of the type that changed (required)
+     * @param previousKeys the keys the type had before the change (required)
+     * @param currentKeys the keys the type has now; empty if it has been
+     *            deleted (required)
+     */
+    synchronized void recordChange(final String physicalTypeId,
+            final Collection<?> previousKeys, final Collection<?> currentKeys) {
+        Validate.notBlank(physicalTypeId, "Physical type id required");
+        final Set<Object> keys = new HashSet<Object>(previousKeys);
+        keys.addAll(currentKeys);
+        if (keys.isEmpty()) {
+            return;
+        }
+        sequence++;
+        for (final Object key : keys) {
+            KeyLog keyLog = keyLogs.get(key);
+            if (keyLog == null) {
+                keyLog = new KeyLog();
+                keyLogs.put(key, keyLog);
+            }
+            Entry entry = keyLog.entriesByType.get(physicalTypeId);
+            if (entry == null) {
+                entry = new Entry(physicalTypeId);
+                keyLog.entriesByType.put(physicalTypeId, entry);
+            }
+            else {
+                keyLog.entriesBySequence.remove(entry.changedAt);
+            }
+            entry.changedAt = sequence;
+            entry.hasKey = currentKeys.contains(key);
+            keyLog.entriesBySequence.put(sequence, entry);
+        }
+    }
+}
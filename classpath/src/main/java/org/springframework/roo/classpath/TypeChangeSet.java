@@ -0,0 +1,93 @@
+package org.springframework.roo.classpath;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
+import org.springframework.roo.model.JavaType;
+
+/**
+ * The types that have gained or lost a given annotation or tag, or been
+ * changed while having it, since a given class last asked
+ * {@link TypeLocationService} about them. Immutable.
+ * 
+ * @since 1.2.5
+ */
+public class TypeChangeSet {
+
+    private final List<ClassOrInterfaceTypeDetails> addedTypes;
+    private final List<ClassOrInterfaceTypeDetails> changedTypes;
+    private final Set<JavaType> removedTypes;
+
+    /**
+     * Constructor
+     * 
+     * @param addedTypes the types that have gained the annotation or tag
+     *            (required)
+     * @param changedTypes the types that have been changed while having the
+     *            annotation or tag (required)
+     * @param removedTypes the types that have lost the annotation or tag,
+     *            including any that have been deleted (required)
+     */
+    public TypeChangeSet(
+            final Collection<ClassOrInterfaceTypeDetails> addedTypes,
+            final Collection<ClassOrInterfaceTypeDetails> changedTypes,
+            final Collection<JavaType> removedTypes) {
+        Validate.notNull(addedTypes, "Added types required");
+        Validate.notNull(changedTypes, "Changed types required");
+        Validate.notNull(removedTypes, "Removed types required");
+        this.addedTypes = Collections
+                .unmodifiableList(new ArrayList<ClassOrInterfaceTypeDetails>(
+                        addedTypes));
+        this.changedTypes = Collections
+                .unmodifiableList(new ArrayList<ClassOrInterfaceTypeDetails>(
+                        changedTypes));
+        this.removedTypes = Collections
+                .unmodifiableSet(new LinkedHashSet<JavaType>(removedTypes));
+    }
+
+    /**
+     * Returns the types that have gained the annotation or tag, in the order
+     * in which they did so
+     * 
+     * @return a non-<code>null</code> list
+     */
+    public List<ClassOrInterfaceTypeDetails> getAddedTypes() {
+        return addedTypes;
+    }
+
+    /**
+     * Returns the types that have been changed while having the annotation or
+     * tag, in the order in which they were last changed
+     * 
+     * @return a non-<code>null</code> list
+     */
+    public List<ClassOrInterfaceTypeDetails> getChangedTypes() {
+        return changedTypes;
+    }
+
+    /**
+     * Returns the types that have lost the annotation or tag, including any
+     * that have been deleted
+     * 
+     * @return a non-<code>null</code> set
+     */
+    public Set<JavaType> getRemovedTypes() {
+        return removedTypes;
+    }
+
+    /**
+     * Indicates whether no types have changed
+     * 
+     * @return see above
+     */
+    public boolean isEmpty() {
+        return addedTypes.isEmpty() && changedTypes.isEmpty()
+                && removedTypes.isEmpty();
+    }
+}
@@ -109,6 +109,34 @@ public interface TypeLocationService {
      */
     String getPhysicalTypeIdentifier(String fileIdentifier);
 
+    /**
+     * Returns the types that have gained or lost the given annotation, or been
+     * changed while having it, since the requesting class last called this
+     * method for that annotation. The first call for a given class and
+     * annotation reports all the types that have it as added. The work done is
+     * proportional to the number of changes, not to the size of the project.
+     * 
+     * @param requestingClass the class requesting the changes (required)
+     * @param annotationType the annotation to detect on a type (required)
+     * @return a non-<code>null</code> set of changes
+     * @since 1.2.5
+     */
+    TypeChangeSet getChangedTypesWithAnnotation(String requestingClass,
+            JavaType annotationType);
+
+    /**
+     * Returns the types that have gained or lost the given tag, or been
+     * changed while having it, since the requesting class last called this
+     * method for that tag. The first call for a given class and tag reports
+     * all the types that have it as added.
+     * 
+     * @param requestingClass the class requesting the changes (required)
+     * @param tag the tag to detect on a type (required)
+     * @return a non-<code>null</code> set of changes
+     * @since 1.2.5
+     */
+    TypeChangeSet getChangedTypesWithTag(String requestingClass, Object tag);
+
     /**
      * @param module
      * @return
@@ -19,13 +19,18 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
+import org.apache.felix.scr.annotations.ReferenceCardinality;
+import org.apache.felix.scr.annotations.ReferencePolicy;
+import org.apache.felix.scr.annotations.ReferenceStrategy;
 import org.apache.felix.scr.annotations.Service;
+import org.springframework.roo.classpath.TypePathIndex.SourceRoot;
 import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
 import org.springframework.roo.classpath.details.MemberHoldingTypeDetails;
 import org.springframework.roo.classpath.details.annotations.AnnotationMetadata;
 import org.springframework.roo.file.monitor.FileMonitorService;
 import org.springframework.roo.file.monitor.event.FileDetails;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
+import org.springframework.roo.metadata.MetadataItem;
 import org.springframework.roo.metadata.MetadataService;
 import org.springframework.roo.model.JavaPackage;
 import org.springframework.roo.model.JavaSymbolName;
@@ -42,7 +47,12 @@ import org.springframework.roo.support.util.FileUtils;
  * Implementation of {@link TypeLocationService}.
  * <p>
  * For performance reasons automatically caches the queries. The cache is
- * invalidated on changes to the file system.
+ * invalidated on changes to the file system. The location of a type is looked
+ * up via a {@link TypePathIndex} of the discovered source files.
+ * <p>
+ * As types may be looked up while metadata is being produced on several
+ * threads, the cache's bookkeeping is guarded by a lock, which is never held
+ * while calling the {@link MetadataService} or the {@link ProjectOperations}.
  * 
  * @author Alan Stewart
  * @author Ben Alex
@@ -52,6 +62,7 @@ import org.springframework.roo.support.util.FileUtils;
  */
 @Component(immediate = true)
 @Service
+@Reference(name = "typeParsingService", strategy = ReferenceStrategy.EVENT, policy = ReferencePolicy.DYNAMIC, referenceInterface = TypeParsingService.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY)
 public class TypeLocationServiceImpl implements TypeLocationService {
 
     private static final Comparator<String> LENGTH_COMPARATOR = new Comparator<String>() {
@@ -60,6 +71,13 @@ public class TypeLocationServiceImpl implements TypeLocationService {
         }
     };
 
+    /**
+     * The number of source files whose types are cached at once when
+     * initialising the cache, which limits how many parsed files are held in
+     * memory at once
+     */
+    private static final int INIT_BATCH_SIZE = 500;
+
     private static final String JAVA_FILES_ANT_PATH = "**" + File.separatorChar
             + "*.java";
 
@@ -140,48 +158,98 @@ public class TypeLocationServiceImpl implements TypeLocationService {
     @Reference private TypeCache typeCache;
     @Reference private TypeResolutionService typeResolutionService;
 
+    private final TypeChangeLog annotationChangeLog = new TypeChangeLog();
     private final Map<JavaType, Set<String>> annotationToMidMap = new HashMap<JavaType, Set<String>>();
     private final Map<String, Set<String>> changeMap = new HashMap<String, Set<String>>();
     private final Set<String> dirtyFiles = new HashSet<String>();
-    private final Set<String> discoveredTypes = new HashSet<String>();
+    /** Whether {@link #initTypeMap()} is in progress */
+    private boolean initialising;
+    private final Object lock = new Object();
+    private final TypeChangeLog tagChangeLog = new TypeChangeLog();
     private final Map<String, Set<Object>> typeCustomDataMap = new HashMap<String, Set<Object>>();
     private final Map<Object, Set<String>> tagToMidMap = new HashMap<Object, Set<String>>();
     private final Map<String, Set<JavaType>> typeAnnotationMap = new HashMap<String, Set<JavaType>>();
+    private final TypePathIndex typePathIndex = new TypePathIndex();
+    // Optional, as it depends upon this service
+    private volatile TypeParsingService typeParsingService;
+
+    protected void bindTypeParsingService(
+            final TypeParsingService typeParsingService) {
+        this.typeParsingService = typeParsingService;
+    }
+
+    private void cacheType(final String fileCanonicalPath, final String id,
+            final PhysicalTypeMetadata physicalTypeMetadata) {
+        // Change to Java, so drop the cache
+        final ClassOrInterfaceTypeDetails cid = physicalTypeMetadata == null ? null
+                : physicalTypeMetadata.getMemberHoldingTypeDetails();
+        if (cid == null) {
+            if (!fileManager.exists(fileCanonicalPath)) {
+                synchronized (lock) {
+                    typeCache.removeType(id);
+                    removeAttributeCache(id);
+                    final JavaType type = typeCache.getTypeDetails(id)
+                            .getName();
+                    updateChanges(type.getFullyQualifiedTypeName(), true);
+                }
+            }
+            return;
+        }
+        synchronized (lock) {
+            typeCache.cacheType(fileCanonicalPath, cid);
+            updateAttributeCache(cid);
+            updateChanges(cid.getName().getFullyQualifiedTypeName(), false);
+        }
+    }
 
-    private void cacheType(final String fileCanonicalPath) {
-        Validate.notBlank(fileCanonicalPath, "File canonical path required");
-        if (doesPathIndicateJavaType(fileCanonicalPath)) {
-            final String id = getPhysicalTypeIdentifier(fileCanonicalPath);
-            if (id != null && PhysicalTypeIdentifier.isValid(id)) {
-                // Change to Java, so drop the cache
-                final ClassOrInterfaceTypeDetails cid = lookupClassOrInterfaceTypeDetails(id);
-                if (cid == null) {
-                    if (!fileManager.exists(fileCanonicalPath)) {
-                        typeCache.removeType(id);
-                        final JavaType type = typeCache.getTypeDetails(id)
-                                .getName();
-                        updateChanges(type.getFullyQualifiedTypeName(), true);
-                    }
-                    return;
+    /**
+     * Refreshes the cached details of the types in the given files, obtaining
+     * fresh {@link PhysicalTypeMetadata} for all of them in one request so
+     * that the {@link MetadataService} can produce it in parallel. The
+     * {@link TypeParsingService}, if available, is first asked to parse all
+     * the files in advance, which it can likewise do in parallel.
+     * 
+     * @param fileCanonicalPaths the canonical paths of the changed files
+     *            (required)
+     */
+    private void cacheTypes(final Collection<String> fileCanonicalPaths) {
+        final Map<String, String> idsByPath = new LinkedHashMap<String, String>();
+        for (final String fileCanonicalPath : fileCanonicalPaths) {
+            Validate.notBlank(fileCanonicalPath, "File canonical path required");
+            if (doesPathIndicateJavaType(fileCanonicalPath)) {
+                final String id = getPhysicalTypeIdentifier(fileCanonicalPath);
+                if (id != null && PhysicalTypeIdentifier.isValid(id)) {
+                    idsByPath.put(fileCanonicalPath, id);
                 }
-                typeCache.cacheType(fileCanonicalPath, cid);
-                updateAttributeCache(cid);
-                updateChanges(cid.getName().getFullyQualifiedTypeName(), false);
             }
         }
+        if (idsByPath.isEmpty()) {
+            return;
+        }
+        final TypeParsingService parsingService = typeParsingService;
+        if (parsingService != null) {
+            parsingService.prepareTypesAtLocations(idsByPath.keySet());
+        }
+        final Map<String, MetadataItem> metadata = metadataService
+                .evictAndGetAll(idsByPath.values());
+        for (final Entry<String, String> pathAndId : idsByPath.entrySet()) {
+            cacheType(pathAndId.getKey(), pathAndId.getValue(),
+                    (PhysicalTypeMetadata) metadata.get(pathAndId.getValue()));
+        }
     }
 
-    private Set<String> discoverTypes() {
+    private void discoverTypes() {
         // Retrieve a list of paths that have been discovered or modified since
         // the last invocation by this class
         for (final String change : fileMonitorService
                 .getDirtyFiles(TypeLocationServiceImpl.class.getName())) {
             if (doesPathIndicateJavaType(change)) {
-                discoveredTypes.add(change);
-                dirtyFiles.add(change);
+                typePathIndex.addTypePath(change);
+                synchronized (lock) {
+                    dirtyFiles.add(change);
+                }
             }
         }
-        return discoveredTypes;
     }
 
     private boolean doesPathIndicateJavaType(final String fileCanonicalPath) {
@@ -253,36 +321,59 @@ public class TypeLocationServiceImpl implements TypeLocationService {
         return Collections.unmodifiableSet(types);
     }
 
-    private String getParentPath(final JavaType javaType) {
-        final String relativePath = javaType.getRelativeFileName();
-        for (final String typePath : discoverTypes()) {
-            if (typePath.endsWith(relativePath)) {
-                return StringUtils.removeEnd(typePath, relativePath);
+    private TypeChangeSet getChangeSet(final TypeChangeLog.Changes changes) {
+        final List<ClassOrInterfaceTypeDetails> addedTypes = new ArrayList<ClassOrInterfaceTypeDetails>();
+        final List<ClassOrInterfaceTypeDetails> changedTypes = new ArrayList<ClassOrInterfaceTypeDetails>();
+        final List<JavaType> removedTypes = new ArrayList<JavaType>();
+        for (final String addedMid : changes.added) {
+            final ClassOrInterfaceTypeDetails added = typeCache
+                    .getTypeDetails(addedMid);
+            if (added != null) {
+                addedTypes.add(added);
             }
         }
-        return null;
+        for (final String changedMid : changes.changed) {
+            final ClassOrInterfaceTypeDetails changed = typeCache
+                    .getTypeDetails(changedMid);
+            if (changed != null) {
+                changedTypes.add(changed);
+            }
+        }
+        for (final String removedMid : changes.removed) {
+            removedTypes.add(PhysicalTypeIdentifier.getJavaType(removedMid));
+        }
+        return new TypeChangeSet(addedTypes, changedTypes, removedTypes);
+    }
+
+    public TypeChangeSet getChangedTypesWithAnnotation(
+            final String requestingClass, final JavaType annotationType) {
+        Validate.notNull(annotationType, "Annotation type required");
+        updateTypeCache();
+        return getChangeSet(annotationChangeLog.getChanges(requestingClass,
+                annotationType));
+    }
+
+    public TypeChangeSet getChangedTypesWithTag(final String requestingClass,
+            final Object tag) {
+        Validate.notNull(tag, "Tag required");
+        updateTypeCache();
+        return getChangeSet(tagChangeLog.getChanges(requestingClass, tag));
     }
 
     private PhysicalPath getPhysicalPath(final JavaType javaType) {
         Validate.notNull(javaType, "Java type required");
-        final String parentPath = getParentPath(javaType);
+        discoverTypes();
+        final String parentPath = typePathIndex.getParentPath(javaType);
         if (parentPath == null) {
             return null;
         }
-        for (final Pom pom : projectOperations.getPoms()) {
-            for (final PhysicalPath physicalPath : pom.getPhysicalPaths()) {
-                if (physicalPath.isSource()) {
-                    final String pathLocation = FileUtils
-                            .ensureTrailingSeparator(physicalPath
-                                    .getLocationPath());
-                    if (pathLocation.startsWith(parentPath)) {
-                        typeCache.cacheTypeAgainstModule(pom, javaType);
-                        return physicalPath;
-                    }
-                }
-            }
+        final SourceRoot sourceRoot = typePathIndex.getSourceRoot(parentPath,
+                projectOperations.getPoms());
+        if (sourceRoot == null) {
+            return null;
         }
-        return null;
+        typeCache.cacheTypeAgainstModule(sourceRoot.getPom(), javaType);
+        return sourceRoot.getPhysicalPath();
     }
 
     public String getPhysicalTypeCanonicalPath(final JavaType javaType,
@@ -538,27 +629,26 @@ public class TypeLocationServiceImpl implements TypeLocationService {
         Validate.notNull(javaType, "Java type required");
 
         updateTypeCache();
-        Set<String> changesSinceLastRequest = changeMap.get(requestingClass);
-        if (changesSinceLastRequest == null) {
-            changesSinceLastRequest = new LinkedHashSet<String>();
-            for (final String typeIdentifier : typeCache
-                    .getAllTypeIdentifiers()) {
-                changesSinceLastRequest.add(typeCache
-                        .getTypeDetails(typeIdentifier).getName()
-                        .getFullyQualifiedTypeName());
-            }
-            changeMap.put(requestingClass, changesSinceLastRequest);
-        }
-        for (final String changedId : changesSinceLastRequest) {
-            if (changedId.equals(javaType.getFullyQualifiedTypeName())) {
-                changesSinceLastRequest.remove(changedId);
-                return true;
+        synchronized (lock) {
+            Set<String> changesSinceLastRequest = changeMap
+                    .get(requestingClass);
+            if (changesSinceLastRequest == null) {
+                changesSinceLastRequest = new LinkedHashSet<String>();
+                for (final String typeIdentifier : typeCache
+                        .getAllTypeIdentifiers()) {
+                    changesSinceLastRequest.add(typeCache
+                            .getTypeDetails(typeIdentifier).getName()
+                            .getFullyQualifiedTypeName());
+                }
+                changeMap.put(requestingClass, changesSinceLastRequest);
             }
+            return changesSinceLastRequest.remove(javaType
+                    .getFullyQualifiedTypeName());
         }
-        return false;
     }
 
     private void initTypeMap() {
+        final List<String> allJavaFilePaths = new ArrayList<String>();
         for (final Pom pom : projectOperations.getPoms()) {
             for (final PhysicalPath path : pom.getPhysicalPaths()) {
                 if (path.isSource()) {
@@ -567,11 +657,15 @@ public class TypeLocationServiceImpl implements TypeLocationService {
                             + JAVA_FILES_ANT_PATH;
                     for (final FileDetails file : fileManager
                             .findMatchingAntPath(allJavaFiles)) {
-                        cacheType(file.getCanonicalPath());
+                        allJavaFilePaths.add(file.getCanonicalPath());
                     }
                 }
             }
         }
+        for (int i = 0; i < allJavaFilePaths.size(); i += INIT_BATCH_SIZE) {
+            cacheTypes(allJavaFilePaths.subList(i,
+                    Math.min(i + INIT_BATCH_SIZE, allJavaFilePaths.size())));
+        }
     }
 
     public boolean isInProject(final JavaType javaType) {
@@ -579,23 +673,6 @@ public class TypeLocationServiceImpl implements TypeLocationService {
                 && getPhysicalPath(javaType) != null;
     }
 
-    /**
-     * Obtains the a fresh copy of the {@link ClassOrInterfaceTypeDetails} for
-     * the given physical type.
-     * 
-     * @param physicalTypeIdentifier to lookup (required)
-     * @return the requested details (or <code>null</code> if unavailable)
-     */
-    private ClassOrInterfaceTypeDetails lookupClassOrInterfaceTypeDetails(
-            final String physicalTypeIdentifier) {
-        final PhysicalTypeMetadata physicalTypeMetadata = (PhysicalTypeMetadata) metadataService
-                .evictAndGet(physicalTypeIdentifier);
-        if (physicalTypeMetadata == null) {
-            return null;
-        }
-        return physicalTypeMetadata.getMemberHoldingTypeDetails();
-    }
-
     public void processTypesWithAnnotation(
             final List<JavaType> annotationsToDetect,
             final LocatedTypeCallback callback) {
@@ -603,9 +680,12 @@ public class TypeLocationServiceImpl implements TypeLocationService {
         Validate.notNull(callback, "Callback required");
         // If the cache doesn't yet contain the annotation to be found it should
         // be added
-        for (final JavaType annotationType : annotationsToDetect) {
-            if (!annotationToMidMap.containsKey(annotationType)) {
-                annotationToMidMap.put(annotationType, new HashSet<String>());
+        synchronized (lock) {
+            for (final JavaType annotationType : annotationsToDetect) {
+                if (!annotationToMidMap.containsKey(annotationType)) {
+                    annotationToMidMap.put(annotationType,
+                            new HashSet<String>());
+                }
             }
         }
 
@@ -613,14 +693,17 @@ public class TypeLocationServiceImpl implements TypeLocationService {
         // processed and the cache updated accordingly
         updateTypeCache();
 
-        for (final JavaType annotationType : annotationsToDetect) {
-            for (final String locatedMid : annotationToMidMap
-                    .get(annotationType)) {
-                final ClassOrInterfaceTypeDetails located = typeCache
-                        .getTypeDetails(locatedMid);
-                callback.process(located);
+        final List<String> locatedMids = new ArrayList<String>();
+        synchronized (lock) {
+            for (final JavaType annotationType : annotationsToDetect) {
+                locatedMids.addAll(annotationToMidMap.get(annotationType));
             }
         }
+        for (final String locatedMid : locatedMids) {
+            final ClassOrInterfaceTypeDetails located = typeCache
+                    .getTypeDetails(locatedMid);
+            callback.process(located);
+        }
     }
 
     private void processTypesWithTag(final Object tag,
@@ -628,21 +711,62 @@ public class TypeLocationServiceImpl implements TypeLocationService {
         Validate.notNull(tag, "Tag required");
         Validate.notNull(callback, "Callback required");
         // If the cache doesn't yet contain the tag it should be added
-        if (!tagToMidMap.containsKey(tag)) {
-            tagToMidMap.put(tag, new HashSet<String>());
+        synchronized (lock) {
+            if (!tagToMidMap.containsKey(tag)) {
+                tagToMidMap.put(tag, new HashSet<String>());
+            }
         }
 
         // Before processing the call any changes to the project should be
         // processed and the cache updated accordingly
         updateTypeCache();
 
-        for (final String locatedMid : tagToMidMap.get(tag)) {
+        final List<String> locatedMids;
+        synchronized (lock) {
+            locatedMids = new ArrayList<String>(tagToMidMap.get(tag));
+        }
+        for (final String locatedMid : locatedMids) {
             final ClassOrInterfaceTypeDetails located = typeCache
                     .getTypeDetails(locatedMid);
             callback.process(located);
         }
     }
 
+    private void removeAttributeCache(final String physicalTypeId) {
+        final Set<JavaType> previousAnnotations = typeAnnotationMap
+                .remove(physicalTypeId);
+        if (previousAnnotations != null) {
+            for (final JavaType previousAnnotation : previousAnnotations) {
+                final Set<String> midSet = annotationToMidMap
+                        .get(previousAnnotation);
+                if (midSet != null) {
+                    midSet.remove(physicalTypeId);
+                }
+            }
+            annotationChangeLog.recordChange(physicalTypeId,
+                    previousAnnotations, Collections.emptySet());
+        }
+        final Set<Object> previousCustomDataSet = typeCustomDataMap
+                .remove(physicalTypeId);
+        if (previousCustomDataSet != null) {
+            for (final Object previousCustomData : previousCustomDataSet) {
+                final Set<String> midSet = tagToMidMap.get(previousCustomData);
+                if (midSet != null) {
+                    midSet.remove(physicalTypeId);
+                }
+            }
+            tagChangeLog.recordChange(physicalTypeId, previousCustomDataSet,
+                    Collections.emptySet());
+        }
+    }
+
+    protected void unbindTypeParsingService(
+            final TypeParsingService typeParsingService) {
+        if (this.typeParsingService == typeParsingService) {
+            this.typeParsingService = null;
+        }
+    }
+
     private void updateAttributeCache(final MemberHoldingTypeDetails cid) {
         Validate.notNull(cid, "Member holding type details required");
         if (!typeAnnotationMap.containsKey(cid.getDeclaredByMetadataId())) {
@@ -655,6 +779,8 @@ public class TypeLocationServiceImpl implements TypeLocationService {
         }
         final Set<JavaType> previousAnnotations = typeAnnotationMap.get(cid
                 .getDeclaredByMetadataId());
+        final Set<JavaType> removedAnnotations = new HashSet<JavaType>(
+                previousAnnotations);
         for (final JavaType previousAnnotation : previousAnnotations) {
             final Set<String> midSet = annotationToMidMap
                     .get(previousAnnotation);
@@ -673,8 +799,12 @@ public class TypeLocationServiceImpl implements TypeLocationService {
             annotationToMidMap.get(annotationMetadata.getAnnotationType()).add(
                     cid.getDeclaredByMetadataId());
         }
+        annotationChangeLog.recordChange(cid.getDeclaredByMetadataId(),
+                removedAnnotations, previousAnnotations);
         final Set<Object> previousCustomDataSet = typeCustomDataMap.get(cid
                 .getDeclaredByMetadataId());
+        final Set<Object> removedCustomData = new HashSet<Object>(
+                previousCustomDataSet);
         for (final Object previousCustomData : previousCustomDataSet) {
             final Set<String> midSet = tagToMidMap.get(previousCustomData);
             if (midSet != null) {
@@ -689,6 +819,8 @@ public class TypeLocationServiceImpl implements TypeLocationService {
             previousCustomDataSet.add(customData);
             tagToMidMap.get(customData).add(cid.getDeclaredByMetadataId());
         }
+        tagChangeLog.recordChange(cid.getDeclaredByMetadataId(),
+                removedCustomData, previousCustomDataSet);
     }
 
     private void updateChanges(final String typeName, final boolean remove) {
@@ -704,14 +836,31 @@ public class TypeLocationServiceImpl implements TypeLocationService {
     }
 
     private void updateTypeCache() {
-        if (typeCache.getAllTypeIdentifiers().isEmpty()) {
-            initTypeMap();
+        // Types requested while the cache is being initialised, whether by
+        // the same or another thread, are found individually
+        final boolean initialise;
+        synchronized (lock) {
+            initialise = !initialising
+                    && typeCache.getAllTypeIdentifiers().isEmpty();
+            initialising |= initialise;
+        }
+        if (initialise) {
+            try {
+                initTypeMap();
+            }
+            finally {
+                synchronized (lock) {
+                    initialising = false;
+                }
+            }
         }
         discoverTypes();
         // Update the type cache
-        for (final String change : dirtyFiles) {
-            cacheType(change);
+        final List<String> changes;
+        synchronized (lock) {
+            changes = new ArrayList<String>(dirtyFiles);
+            dirtyFiles.clear();
         }
-        dirtyFiles.clear();
+        cacheTypes(changes);
     }
 }
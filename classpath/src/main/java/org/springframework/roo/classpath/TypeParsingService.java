@@ -1,5 +1,7 @@
 package org.springframework.roo.classpath;
 
+import java.util.Collection;
+
 import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
 import org.springframework.roo.model.JavaType;
 
@@ -58,6 +60,20 @@ public interface TypeParsingService {
     ClassOrInterfaceTypeDetails getTypeFromString(String typeContents,
             String declaredByMetadataId, JavaType javaType);
 
+    /**
+     * Parses the given Java source files in advance, using several threads if
+     * possible, so that subsequent calls to
+     * {@link #getTypeAtLocation(String, String, JavaType)} for those files need
+     * not parse them. This is purely an optimisation for callers about to
+     * request the types in many files at once; implementations are free to
+     * ignore it, and files that cannot be read or parsed are simply left to be
+     * handled by those later calls.
+     * 
+     * @param fileIdentifiers the canonical paths of the files (required)
+     * @since 1.2.5
+     */
+    void prepareTypesAtLocations(Collection<String> fileIdentifiers);
+
     /**
      * Returns the compilation unit contents that represents the java file
      * updated with the passed class or interface details. The difference with
@@ -0,0 +1,165 @@
+package org.springframework.roo.classpath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.roo.model.JavaType;
+import org.springframework.roo.project.PhysicalPath;
+import org.springframework.roo.project.maven.Pom;
+import org.springframework.roo.support.util.FileUtils;
+
+/**
+ * Indexes the Java source files discovered by {@link TypeLocationServiceImpl}
+ * by file name, and the source directories of the project's modules by the
+ * paths they contain, so that the source directory of a given type can be
+ * found without examining every discovered file and every module.
+ * <p>
+ * The source directories are re-indexed whenever the project's modules
+ * change. Thread safe.
+ * 
+ * @since 1.2.5
+ */
+class TypePathIndex {
+
+    /**
+     * A source directory and the module that contains it.
+     */
+    static class SourceRoot {
+
+        private final PhysicalPath physicalPath;
+        private final Pom pom;
+
+        SourceRoot(final Pom pom, final PhysicalPath physicalPath) {
+            this.physicalPath = physicalPath;
+            this.pom = pom;
+        }
+
+        PhysicalPath getPhysicalPath() {
+            return physicalPath;
+        }
+
+        Pom getPom() {
+            return pom;
+        }
+    }
+
+    /** Records that no source directory contains a given path */
+    private static final SourceRoot NO_SOURCE_ROOT = new SourceRoot(null, null);
+
+    private static String getFileName(final String path) {
+        return path.substring(path.lastIndexOf(File.separatorChar) + 1);
+    }
+
+    /** The modules whose source directories are currently indexed */
+    private final List<Pom> indexedPoms = new ArrayList<Pom>();
+    /** key: the parent path of a type; value: its source root */
+    private final Map<String, SourceRoot> sourceRoots = new HashMap<String, SourceRoot>();
+    /** key: a file name, e.g. "Foo.java"; value: the paths of such files */
+    private final Map<String, Set<String>> typePaths = new HashMap<String, Set<String>>();
+
+    /**
+     * Adds the given Java source file to this index.
+     * 
+     * @param fileCanonicalPath the canonical path of the file (required)
+     */
+    synchronized void addTypePath(final String fileCanonicalPath) {
+        final String fileName = getFileName(fileCanonicalPath);
+        Set<String> paths = typePaths.get(fileName);
+        if (paths == null) {
+            paths = new LinkedHashSet<String>();
+            typePaths.put(fileName, paths);
+        }
+        paths.add(fileCanonicalPath);
+    }
+
+    private SourceRoot findSourceRoot(final String parentPath,
+            final Collection<Pom> poms) {
+        for (final Pom pom : poms) {
+            for (final PhysicalPath physicalPath : pom.getPhysicalPaths()) {
+                if (physicalPath.isSource()) {
+                    final String pathLocation = FileUtils
+                            .ensureTrailingSeparator(physicalPath
+                                    .getLocationPath());
+                    if (pathLocation.startsWith(parentPath)) {
+                        return new SourceRoot(pom, physicalPath);
+                    }
+                }
+            }
+        }
+        return NO_SOURCE_ROOT;
+    }
+
+    /**
+     * Returns the path of the directory from which the given type's source
+     * file is reached via its package directories, e.g.
+     * "/project/src/main/java/" for the type "com.example.Foo" if the file
+     * "/project/src/main/java/com/example/Foo.java" has been added.
+     * 
+     * @param javaType the type to look up (required)
+     * @return <code>null</code> if no source file for the type has been added
+     */
+    synchronized String getParentPath(final JavaType javaType) {
+        final String relativePath = javaType.getRelativeFileName();
+        final Set<String> paths = typePaths.get(getFileName(relativePath));
+        if (paths != null) {
+            for (final String typePath : paths) {
+                if (typePath.endsWith(relativePath)) {
+                    return StringUtils.removeEnd(typePath, relativePath);
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the source directory containing the given parent path, i.e. the
+     * first source {@link PhysicalPath} of the given modules whose location
+     * starts with that path.
+     * 
+     * @param parentPath a path returned by {@link #getParentPath(JavaType)}
+     *            (required)
+     * @param poms the project's current modules (required)
+     * @return <code>null</code> if no such directory exists
+     */
+    synchronized SourceRoot getSourceRoot(final String parentPath,
+            final Collection<Pom> poms) {
+        if (!isIndexed(poms)) {
+            indexedPoms.clear();
+            indexedPoms.addAll(poms);
+            sourceRoots.clear();
+        }
+        SourceRoot sourceRoot = sourceRoots.get(parentPath);
+        if (sourceRoot == null) {
+            sourceRoot = findSourceRoot(parentPath, poms);
+            sourceRoots.put(parentPath, sourceRoot);
+        }
+        return sourceRoot == NO_SOURCE_ROOT ? null : sourceRoot;
+    }
+
+    /**
+     * Indicates whether the given modules are those (i.e. the same instances,
+     * in the same order) whose source directories are currently indexed. As a
+     * {@link Pom} is replaced whenever its file changes, this also detects
+     * changes to their source directories.
+     */
+    private boolean isIndexed(final Collection<Pom> poms) {
+        if (poms.size() != indexedPoms.size()) {
+            return false;
+        }
+        final Iterator<Pom> indexed = indexedPoms.iterator();
+        for (final Pom pom : poms) {
+            if (pom != indexed.next()) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,12 +1,12 @@
 package org.springframework.roo.classpath.customdata.taggers;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
@@ -31,8 +31,9 @@ import org.springframework.roo.model.CustomDataAccessor;
 @Service
 public class CustomDataKeyDecoratorImpl implements CustomDataKeyDecorator {
 
-    private final Map<String, String> pluralMap = new HashMap<String, String>();
-    private final Map<String, Matcher<? extends CustomDataAccessor>> taggerMap = new HashMap<String, Matcher<? extends CustomDataAccessor>>();
+    // Concurrent, as types may be decorated on several threads at once
+    private final Map<String, String> pluralMap = new ConcurrentHashMap<String, String>();
+    private final Map<String, Matcher<? extends CustomDataAccessor>> taggerMap = new ConcurrentHashMap<String, Matcher<? extends CustomDataAccessor>>();
 
     public MemberDetails decorate(final String requestingClass,
             final MemberDetails memberDetails) {
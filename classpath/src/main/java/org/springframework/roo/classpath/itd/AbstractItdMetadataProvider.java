@@ -1,7 +1,9 @@
 package org.springframework.roo.classpath.itd;
 
-import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
@@ -88,7 +90,7 @@ public abstract class AbstractItdMetadataProvider extends
      * The annotations which, if present on a class or interface, will cause
      * metadata to be created
      */
-    private final List<JavaType> metadataTriggers = new ArrayList<JavaType>();
+    private final List<JavaType> metadataTriggers = new CopyOnWriteArrayList<JavaType>();
 
     @Reference protected PersistenceMemberLocator persistenceMemberLocator;
 
@@ -450,6 +452,13 @@ public abstract class AbstractItdMetadataProvider extends
             PhysicalTypeMetadata governorPhysicalTypeMetadata,
             String itdFilename);
 
+    public Collection<JavaType> getMetadataTriggers() {
+        if (ignoreTriggerAnnotations) {
+            return null;
+        }
+        return Collections.unmodifiableList(metadataTriggers);
+    }
+
     /**
      * Looks up the given type's inheritance hierarchy for metadata of the given
      * type, starting with the given type's parent and going upwards until the
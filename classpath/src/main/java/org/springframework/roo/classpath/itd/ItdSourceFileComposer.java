@@ -35,12 +35,43 @@ import org.springframework.roo.model.JavaType;
  */
 public class ItdSourceFileComposer {
 
+    /**
+     * Each thread's buffer for composing ITD bodies, reused from one ITD to
+     * the next to save repeatedly growing a new one; absent while in use, so
+     * that a composer created during the composition of another gets a buffer
+     * of its own.
+     */
+    private static final ThreadLocal<StringBuilder> BUFFERS = new ThreadLocal<StringBuilder>();
+
+    /**
+     * The largest buffer worth keeping for reuse; any bigger are left to be
+     * garbage collected rather than holding onto the memory indefinitely.
+     */
+    private static final int MAX_REUSABLE_BUFFER_CAPACITY = 1024 * 1024;
+
+    private static StringBuilder acquireBuffer() {
+        final StringBuilder buffer = BUFFERS.get();
+        if (buffer == null) {
+            return new StringBuilder();
+        }
+        BUFFERS.remove();
+        buffer.setLength(0);
+        return buffer;
+    }
+
+    private static void releaseBuffer(final StringBuilder buffer) {
+        if (buffer.capacity() <= MAX_REUSABLE_BUFFER_CAPACITY) {
+            BUFFERS.set(buffer);
+        }
+    }
+
     private final JavaType aspect;
     private boolean content;
     private int indentLevel = 0;
     private final JavaType introductionTo;
     private final ItdTypeDetails itdTypeDetails;
-    private StringBuilder pw = new StringBuilder();
+    private final String output;
+    private final StringBuilder pw = acquireBuffer();
     private final ImportRegistrationResolver resolver;
 
     /**
@@ -71,25 +102,31 @@ public class ItdSourceFileComposer {
             }
         }
 
-        appendTypeDeclaration();
-        appendDeclarePrecedence();
-        appendExtendsTypes();
-        appendImplementsTypes();
-        appendTypeAnnotations();
-        appendFieldAnnotations();
-        appendMethodAnnotations();
-        appendFields();
-        appendConstructors();
-        appendMethods(itdTypeDetails.getGovernor().getPhysicalTypeCategory()
-                .equals(PhysicalTypeCategory.INTERFACE));
-        appendInnerTypes();
-        appendTerminator();
-
-        // Now prepend the package declaration and any imports
-        // We need to do this ** at the end ** so we can ensure our compilation
-        // unit imports are correct, as they're built as we traverse over the
-        // other members
-        prependCompilationUnitDetails();
+        try {
+            appendTypeDeclaration();
+            appendDeclarePrecedence();
+            appendExtendsTypes();
+            appendImplementsTypes();
+            appendTypeAnnotations();
+            appendFieldAnnotations();
+            appendMethodAnnotations();
+            appendFields();
+            appendConstructors();
+            appendMethods(itdTypeDetails.getGovernor()
+                    .getPhysicalTypeCategory()
+                    .equals(PhysicalTypeCategory.INTERFACE));
+            appendInnerTypes();
+            appendTerminator();
+
+            // Now prepend the package declaration and any imports
+            // We need to do this ** at the end ** so we can ensure our
+            // compilation unit imports are correct, as they're built as we
+            // traverse over the other members
+            output = prependCompilationUnitDetails();
+        }
+        finally {
+            releaseBuffer(pw);
+        }
     }
 
     /**
@@ -562,7 +599,7 @@ public class ItdSourceFileComposer {
     }
 
     public String getOutput() {
-        return pw.toString();
+        return output;
     }
 
     /**
@@ -616,8 +653,9 @@ public class ItdSourceFileComposer {
         append(AnnotationMetadataUtils.toSourceForm(annotation, resolver));
     }
 
-    private void prependCompilationUnitDetails() {
-        final StringBuilder topOfFile = new StringBuilder();
+    private String prependCompilationUnitDetails() {
+        // Sized to hold the normal file as well, to avoid copying it twice
+        final StringBuilder topOfFile = new StringBuilder(pw.length() + 1024);
 
         topOfFile
                 .append("// WARNING: DO NOT EDIT THIS FILE. THIS FILE IS MANAGED BY SPRING ROO.")
@@ -654,10 +692,9 @@ public class ItdSourceFileComposer {
         }
 
         // Now append the normal file to the bottom
-        topOfFile.append(pw.toString());
+        topOfFile.append(pw);
 
-        // Replace the old writer with out new writer
-        pw = topOfFile;
+        return topOfFile.toString();
     }
 
     private void writeMethods(final List<? extends MethodMetadata> methods,
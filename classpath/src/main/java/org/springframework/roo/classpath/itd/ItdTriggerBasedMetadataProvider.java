@@ -1,5 +1,7 @@
 package org.springframework.roo.classpath.itd;
 
+import java.util.Collection;
+
 import org.springframework.roo.classpath.TriggerBasedMetadataProvider;
 import org.springframework.roo.model.JavaType;
 
@@ -13,4 +15,16 @@ import org.springframework.roo.model.JavaType;
  */
 public interface ItdTriggerBasedMetadataProvider extends ItdMetadataProvider,
         TriggerBasedMetadataProvider {
+
+    /**
+     * Returns the annotations that cause this provider to generate metadata
+     * for a type annotated with any of them, so that callers can avoid asking
+     * for metadata that won't be generated.
+     * 
+     * @return <code>null</code> if this provider can generate metadata
+     *         regardless of which annotations are present, otherwise a
+     *         non-<code>null</code> (possibly empty) collection
+     * @since 1.2.5
+     */
+    Collection<JavaType> getMetadataTriggers();
 }
\ No newline at end of file
@@ -1,12 +1,20 @@
 package org.springframework.roo.classpath.scanner;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 
 import org.apache.commons.lang3.Validate;
+import org.apache.commons.lang3.builder.ToStringBuilder;
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
@@ -18,11 +26,15 @@ import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.classpath.details.ClassOrInterfaceTypeDetails;
 import org.springframework.roo.classpath.details.MemberHoldingTypeDetails;
 import org.springframework.roo.classpath.itd.ItdMetadataProvider;
+import org.springframework.roo.classpath.itd.ItdTriggerBasedMetadataProvider;
 import org.springframework.roo.classpath.itd.ItdTypeDetailsProvidingMetadataItem;
+import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
 import org.springframework.roo.metadata.MetadataItem;
+import org.springframework.roo.metadata.MetadataNotificationListener;
 import org.springframework.roo.metadata.MetadataProvider;
 import org.springframework.roo.metadata.MetadataService;
+import org.springframework.roo.model.JavaType;
 
 /**
  * Default implementation of {@link MemberDetailsScanner}.
@@ -37,6 +49,22 @@ import org.springframework.roo.metadata.MetadataService;
  * the metadata infrastructure does not require special type naming approaches
  * to be employed. The ordering behaviour exists solely to simplify debugging
  * for add-on developers and log comparison between invocations.
+ * <p>
+ * The {@link MemberDetails} built for each combination of requesting class and
+ * governor are cached, for up to {@value #MAX_CACHED_GOVERNORS} of the most
+ * recently requested governors, so that a provider asking for the members of
+ * the same type again doesn't have to assemble and decorate them again. A
+ * cached result is only reused while the governor's class hierarchy consists
+ * of the same instances as when it was built. It is evicted when the
+ * {@link MetadataDependencyRegistry} announces a change to any of the metadata
+ * consulted to build it, and when the provider of any ITD metadata consulted
+ * to build it asks for the governor's members, as it's then about to rebuild
+ * that metadata; the registry only announces the change once the downstream
+ * providers have been rebuilt.
+ * <p>
+ * An {@link ItdTriggerBasedMetadataProvider} is only asked for metadata about
+ * a type annotated with one of its triggers, as it won't produce any for other
+ * types.
  * 
  * @author Ben Alex
  * @since 1.1
@@ -46,7 +74,92 @@ import org.springframework.roo.metadata.MetadataService;
 @References(value = {
         @Reference(name = "memberHoldingDecorator", strategy = ReferenceStrategy.EVENT, policy = ReferencePolicy.DYNAMIC, referenceInterface = MemberDetailsDecorator.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE),
         @Reference(name = "metadataProvider", strategy = ReferenceStrategy.EVENT, policy = ReferencePolicy.DYNAMIC, referenceInterface = MetadataProvider.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE) })
-public class MemberDetailsScannerImpl implements MemberDetailsScanner {
+public class MemberDetailsScannerImpl implements MemberDetailsScanner,
+        MetadataNotificationListener {
+
+    /**
+     * The {@link MemberDetails} built for a given requesting class and
+     * governor, along with what they were built from.
+     */
+    private static class CachedMemberDetails {
+
+        // The class hierarchy, starting with the absolute superclass
+        private final List<ClassOrInterfaceTypeDetails> cidHierarchy;
+        // The MIDs of the metadata consulted, whether or not it was available
+        private final Set<String> consultedMids;
+        // The classes of the ITD providers consulted
+        private final Set<String> consultedProviders;
+        private final MemberDetails memberDetails;
+
+        CachedMemberDetails(
+                final List<ClassOrInterfaceTypeDetails> cidHierarchy,
+                final Set<String> consultedMids,
+                final Set<String> consultedProviders,
+                final MemberDetails memberDetails) {
+            this.cidHierarchy = cidHierarchy;
+            this.consultedMids = consultedMids;
+            this.consultedProviders = consultedProviders;
+            this.memberDetails = memberDetails;
+        }
+    }
+
+    private static final int MAX_CACHED_GOVERNORS = 1000;
+
+    /**
+     * Indicates whether the given provider could produce metadata for the
+     * given type, i.e. whether it's worth asking it
+     * 
+     * @param mp the provider (required)
+     * @param type the type (required)
+     * @return <code>false</code> if the provider is known not to produce
+     *         metadata for that type
+     */
+    private static boolean isTriggered(final MetadataProvider mp,
+            final ClassOrInterfaceTypeDetails type) {
+        if (!(mp instanceof ItdTriggerBasedMetadataProvider)) {
+            return true;
+        }
+        final Collection<JavaType> triggers = ((ItdTriggerBasedMetadataProvider) mp)
+                .getMetadataTriggers();
+        if (triggers == null) {
+            return true;
+        }
+        for (final JavaType trigger : triggers) {
+            if (type.getAnnotation(trigger) != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Cached member details by governor MID, least recently requested first,
+    // then by requesting class
+    private final Map<String, Map<String, CachedMemberDetails>> cache = new LinkedHashMap<String, Map<String, CachedMemberDetails>>(
+            16, 0.75f, true) {
+        private static final long serialVersionUID = 1;
+
+        @Override
+        protected boolean removeEldestEntry(
+                final Map.Entry<String, Map<String, CachedMemberDetails>> eldest) {
+            if (size() > MAX_CACHED_GOVERNORS) {
+                unindex(eldest.getKey());
+                cacheEvictions += eldest.getValue().size();
+                return true;
+            }
+            return false;
+        }
+    };
+    // The number of cached member details evicted
+    private int cacheEvictions;
+    private int cacheHits;
+    // Mutex for the cache, separate from the main lock so that notifications
+    // are never held up by a scan in progress
+    private final Object cacheLock = new Object();
+    private int cacheMisses;
+    // The governor MIDs whose cached member details were built by consulting
+    // each MID, and vice versa
+    private final Map<String, Set<String>> cachedGovernorsByMid = new HashMap<String, Set<String>>();
+    private final Map<String, Set<String>> consultedMidsByGovernor = new HashMap<String, Set<String>>();
 
     private final SortedSet<MemberDetailsDecorator> decorators = new TreeSet<MemberDetailsDecorator>(
             new Comparator<MemberDetailsDecorator>() {
@@ -60,7 +173,10 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
     // Mutex
     private final Object lock = new Object();
 
+    @Reference protected MetadataDependencyRegistry metadataDependencyRegistry;
     @Reference protected MetadataService metadataService;
+    private int providerQueries;
+    private int providerQueriesSkipped;
 
     private final SortedSet<MetadataProvider> providers = new TreeSet<MetadataProvider>(
             new Comparator<MetadataProvider>() {
@@ -71,10 +187,15 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
                 }
             });
 
+    protected void activate(final ComponentContext componentContext) {
+        metadataDependencyRegistry.addNotificationListener(this);
+    }
+
     protected void bindMemberHoldingDecorator(
             final MemberDetailsDecorator decorator) {
         synchronized (lock) {
             decorators.add(decorator);
+            evictAll();
         }
     }
 
@@ -87,11 +208,122 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
                     "Metadata provider '%s' violated interface contract by returning '%s'",
                     mp, mid);
             providers.add(mp);
+            evictAll();
+        }
+    }
+
+    /**
+     * Caches the given member details
+     * 
+     * @param governorId the MID of the governor (required)
+     * @param requestingClass the class that requested the member details
+     * @param cached the member details to cache (required)
+     */
+    private void cache(final String governorId, final String requestingClass,
+            final CachedMemberDetails cached) {
+        synchronized (cacheLock) {
+            Map<String, CachedMemberDetails> cachedForGovernor = cache
+                    .get(governorId);
+            if (cachedForGovernor == null) {
+                cachedForGovernor = new HashMap<String, CachedMemberDetails>();
+                cache.put(governorId, cachedForGovernor);
+            }
+            cachedForGovernor.put(requestingClass, cached);
+            Set<String> consultedMids = consultedMidsByGovernor.get(governorId);
+            if (consultedMids == null) {
+                consultedMids = new HashSet<String>();
+                consultedMidsByGovernor.put(governorId, consultedMids);
+            }
+            consultedMids.addAll(cached.consultedMids);
+            for (final String mid : cached.consultedMids) {
+                Set<String> governorIds = cachedGovernorsByMid.get(mid);
+                if (governorIds == null) {
+                    governorIds = new HashSet<String>();
+                    cachedGovernorsByMid.put(mid, governorIds);
+                }
+                governorIds.add(governorId);
+            }
         }
     }
 
     protected void deactivate(final ComponentContext componentContext) {
-        // Empty
+        metadataDependencyRegistry.removeNotificationListener(this);
+        evictAll();
+    }
+
+    private void evictAll() {
+        synchronized (cacheLock) {
+            for (final Map<String, CachedMemberDetails> cachedForGovernor : cache
+                    .values()) {
+                cacheEvictions += cachedForGovernor.size();
+            }
+            cache.clear();
+            cachedGovernorsByMid.clear();
+            consultedMidsByGovernor.clear();
+        }
+    }
+
+    /**
+     * Evicts the cached member details of the given governor that were built
+     * by consulting the given provider's ITD metadata, which that provider is
+     * presumably about to rebuild
+     * 
+     * @param governorId the MID of the governor (required)
+     * @param requestingClass the class requesting the governor's members
+     */
+    private void evictConsulting(final String governorId,
+            final String requestingClass) {
+        synchronized (cacheLock) {
+            final Map<String, CachedMemberDetails> cachedForGovernor = cache
+                    .get(governorId);
+            if (cachedForGovernor == null) {
+                return;
+            }
+            for (final Iterator<CachedMemberDetails> iter = cachedForGovernor
+                    .values().iterator(); iter.hasNext();) {
+                if (iter.next().consultedProviders.contains(requestingClass)) {
+                    iter.remove();
+                    cacheEvictions++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the cached member details for the given governor and requesting
+     * class, if they were built from the given class hierarchy
+     * 
+     * @param governorId the MID of the governor (required)
+     * @param requestingClass the class requesting the member details
+     * @param cid the governor's details (required)
+     * @return <code>null</code> if there are no such member details
+     */
+    private MemberDetails getCachedMemberDetails(final String governorId,
+            final String requestingClass, final ClassOrInterfaceTypeDetails cid) {
+        final CachedMemberDetails cached;
+        synchronized (cacheLock) {
+            final Map<String, CachedMemberDetails> cachedForGovernor = cache
+                    .get(governorId);
+            cached = cachedForGovernor == null ? null : cachedForGovernor
+                    .get(requestingClass);
+        }
+        if (cached == null) {
+            return null;
+        }
+
+        // A type's details are replaced whenever it (or its superclass)
+        // changes
+        int index = cached.cidHierarchy.size();
+        for (ClassOrInterfaceTypeDetails current = cid; current != null; current = current
+                .getSuperclass()) {
+            if (--index < 0 || cached.cidHierarchy.get(index) != current) {
+                return null;
+            }
+        }
+        if (index != 0) {
+            return null;
+        }
+        return cached.memberDetails;
     }
 
     public final MemberDetails getMemberDetails(final String requestingClass,
@@ -100,8 +332,25 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
             return null;
         }
         synchronized (lock) {
+            final String governorId = cid.getDeclaredByMetadataId();
+            evictConsulting(governorId, requestingClass);
+            final MemberDetails cachedMemberDetails = getCachedMemberDetails(
+                    governorId, requestingClass, cid);
+            if (cachedMemberDetails != null) {
+                synchronized (cacheLock) {
+                    cacheHits++;
+                }
+                return cachedMemberDetails;
+            }
+            synchronized (cacheLock) {
+                cacheMisses++;
+            }
+
             // Create a list of discovered members
             final List<MemberHoldingTypeDetails> memberHoldingTypeDetails = new ArrayList<MemberHoldingTypeDetails>();
+            // The MIDs and ITD providers consulted
+            final Set<String> consultedMids = new HashSet<String>();
+            final Set<String> consultedProviders = new HashSet<String>();
 
             // Build a List representing the class hierarchy, where the first
             // element is the absolute superclass
@@ -114,6 +363,7 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
             // Now we add this governor, plus all of its superclasses
             for (final ClassOrInterfaceTypeDetails currentClass : cidHierarchy) {
                 memberHoldingTypeDetails.add(currentClass);
+                consultedMids.add(currentClass.getDeclaredByMetadataId());
 
                 // Locate all MetadataProvider instances that provide ITDs and
                 // thus MemberHoldingTypeDetails information
@@ -128,6 +378,13 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
                         continue;
                     }
 
+                    // Skip providers whose trigger annotations are absent
+                    if (!isTriggered(mp, currentClass)) {
+                        providerQueriesSkipped++;
+                        continue;
+                    }
+                    providerQueries++;
+
                     // Determine the key the ITD provider uses for this
                     // particular type
                     final String key = ((ItdMetadataProvider) mp)
@@ -141,6 +398,8 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
 
                     // Get the metadata and ensure we have ITD type details
                     // available
+                    consultedMids.add(key);
+                    consultedProviders.add(mp.getClass().getName());
                     final MetadataItem metadataItem = metadataService.get(key);
                     if (metadataItem == null || !metadataItem.isValid()) {
                         continue;
@@ -183,14 +442,86 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
                 }
             }
 
+            cache(governorId, requestingClass, new CachedMemberDetails(
+                    cidHierarchy, consultedMids, consultedProviders, result));
             return result;
         }
     }
 
+    public void notify(final String upstreamDependency,
+            final String downstreamDependency) {
+        synchronized (cacheLock) {
+            if (MetadataIdentificationUtils
+                    .isIdentifyingClass(upstreamDependency)) {
+                // Could be any instance of that class
+                evictAll();
+                return;
+            }
+            final Set<String> governorIds = cachedGovernorsByMid
+                    .remove(upstreamDependency);
+            if (governorIds != null) {
+                for (final String governorId : governorIds) {
+                    final Map<String, CachedMemberDetails> evicted = cache
+                            .remove(governorId);
+                    if (evicted != null) {
+                        unindex(governorId);
+                        cacheEvictions += evicted.size();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public final String toString() {
+        final ToStringBuilder builder = new ToStringBuilder(this);
+        synchronized (cacheLock) {
+            int cacheSize = 0;
+            for (final Map<String, CachedMemberDetails> cachedForGovernor : cache
+                    .values()) {
+                cacheSize += cachedForGovernor.size();
+            }
+            final int requests = cacheHits + cacheMisses;
+            builder.append("cacheHits", cacheHits);
+            builder.append("cacheMisses", cacheMisses);
+            builder.append("cacheHitRate", requests == 0 ? "n/a" : String
+                    .format("%.1f%%", 100.0 * cacheHits / requests));
+            builder.append("cacheEvictions", cacheEvictions);
+            builder.append("cacheCurrentSize", cacheSize);
+        }
+        builder.append("providerQueries", providerQueries);
+        builder.append("providerQueriesSkipped", providerQueriesSkipped);
+        return builder.toString().replaceFirst("@[0-9a-f]+", ":");
+    }
+
+    /**
+     * Removes the given governor, whose cached member details have been
+     * evicted, from the index of governors by consulted MID
+     * 
+     * @param governorId the MID of the governor (required)
+     */
+    private void unindex(final String governorId) {
+        final Set<String> consultedMids = consultedMidsByGovernor
+                .remove(governorId);
+        if (consultedMids == null) {
+            return;
+        }
+        for (final String mid : consultedMids) {
+            final Set<String> governorIds = cachedGovernorsByMid.get(mid);
+            if (governorIds != null) {
+                governorIds.remove(governorId);
+                if (governorIds.isEmpty()) {
+                    cachedGovernorsByMid.remove(mid);
+                }
+            }
+        }
+    }
+
     protected void unbindMemberHoldingDecorator(
             final MemberDetailsDecorator decorator) {
         synchronized (lock) {
             decorators.remove(decorator);
+            evictAll();
         }
     }
 
@@ -198,6 +529,7 @@ public class MemberDetailsScannerImpl implements MemberDetailsScanner {
         synchronized (lock) {
             Validate.notNull(mp, "Metadata provider required");
             providers.remove(mp);
+            evictAll();
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,103 @@
+package org.springframework.roo.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.classpath.TypeChangeLog.Changes;
+
+/**
+ * Unit test of {@link TypeChangeLog}
+ */
+public class TypeChangeLogTest {
+
+    private static final String ENTITY = "Entity";
+    private static final String REQUESTER = "Requester";
+    private static final String SCAFFOLD = "Scaffold";
+
+    private static List<String> keys(final String... keys) {
+        return Arrays.asList(keys);
+    }
+
+    private TypeChangeLog changeLog;
+
+    @Before
+    public void setUp() {
+        changeLog = new TypeChangeLog();
+    }
+
+    @Test
+    public void testChangesAreReportedOnlyOnce() {
+        changeLog.recordChange("Foo", keys(), keys(ENTITY));
+        changeLog.getChanges(REQUESTER, ENTITY);
+
+        changeLog.recordChange("Foo", keys(ENTITY), keys(ENTITY));
+        changeLog.recordChange("Bar", keys(), keys(ENTITY));
+        final Changes changes = changeLog.getChanges(REQUESTER, ENTITY);
+
+        assertEquals(keys("Bar"), changes.added);
+        assertEquals(keys("Foo"), changes.changed);
+        assertTrue(changes.removed.isEmpty());
+        assertTrue(changeLog.getChanges(REQUESTER, ENTITY).added.isEmpty());
+    }
+
+    @Test
+    public void testFirstRequestReportsCurrentTypesAsAdded() {
+        changeLog.recordChange("Foo", keys(), keys(ENTITY, SCAFFOLD));
+        changeLog.recordChange("Bar", keys(), keys(ENTITY));
+        changeLog.recordChange("Foo", keys(ENTITY, SCAFFOLD), keys(SCAFFOLD));
+
+        final Changes changes = changeLog.getChanges(REQUESTER, ENTITY);
+
+        assertEquals(keys("Bar"), changes.added);
+        assertTrue(changes.changed.isEmpty());
+        assertTrue(changes.removed.isEmpty());
+    }
+
+    @Test
+    public void testRemovalIsReportedOnlyToRequestersThatSawTheType() {
+        changeLog.recordChange("Foo", keys(), keys(ENTITY));
+        changeLog.getChanges(REQUESTER, ENTITY);
+        changeLog.recordChange("Bar", keys(), keys(ENTITY));
+
+        changeLog.recordChange("Foo", keys(ENTITY), keys());
+        changeLog.recordChange("Bar", keys(ENTITY), keys());
+        final Changes changes = changeLog.getChanges(REQUESTER, ENTITY);
+
+        assertTrue(changes.added.isEmpty());
+        assertEquals(keys("Foo"), changes.removed);
+    }
+
+    @Test
+    public void testRemovalAfterReAddingIsReported() {
+        changeLog.recordChange("Foo", keys(), keys(ENTITY));
+        changeLog.getChanges(REQUESTER, ENTITY);
+        changeLog.recordChange("Foo", keys(ENTITY), keys());
+        changeLog.recordChange("Foo", keys(), keys(ENTITY));
+        changeLog.getChanges(REQUESTER, ENTITY);
+
+        changeLog.recordChange("Foo", keys(ENTITY), keys());
+        changeLog.recordChange("Foo", keys(), keys(ENTITY));
+        changeLog.recordChange("Foo", keys(ENTITY), keys());
+        final Changes changes = changeLog.getChanges(REQUESTER, ENTITY);
+
+        assertTrue(changes.added.isEmpty());
+        assertTrue(changes.changed.isEmpty());
+        assertEquals(keys("Foo"), changes.removed);
+    }
+
+    @Test
+    public void testRequestersHaveIndependentCursors() {
+        changeLog.recordChange("Foo", keys(), keys(ENTITY));
+        changeLog.getChanges(REQUESTER, ENTITY);
+
+        assertEquals(keys("Foo"), changeLog.getChanges("Other", ENTITY).added);
+        assertEquals(Collections.emptyList(),
+                changeLog.getChanges(REQUESTER, ENTITY).added);
+    }
+}
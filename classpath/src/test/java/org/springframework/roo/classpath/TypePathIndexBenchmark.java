@@ -0,0 +1,130 @@
+package org.springframework.roo.classpath;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.roo.model.JavaType;
+import org.springframework.roo.project.PhysicalPath;
+import org.springframework.roo.project.maven.Pom;
+import org.springframework.roo.support.util.FileUtils;
+
+/**
+ * Benchmarks the lookup of the source directory of each of 20,000 types by
+ * {@link TypePathIndex}, against the linear search of every discovered source
+ * file and module that {@link TypeLocationServiceImpl} used to perform. Not a
+ * unit test (and not run as part of the build); run its {@link #main(String[])}
+ * method directly.
+ */
+public class TypePathIndexBenchmark {
+
+    private static final int LOOKUPS = 20000;
+    private static final int MODULES = 20;
+    private static final int PACKAGES = 50;
+    private static final String ROOT = File.separator + "project";
+    private static final int TYPES = 20000;
+
+    private static PhysicalPath legacyGetPhysicalPath(
+            final Set<String> discoveredTypes, final List<Pom> poms,
+            final JavaType javaType) {
+        final String relativePath = javaType.getRelativeFileName();
+        String parentPath = null;
+        for (final String typePath : discoveredTypes) {
+            if (typePath.endsWith(relativePath)) {
+                parentPath = StringUtils.removeEnd(typePath, relativePath);
+                break;
+            }
+        }
+        if (parentPath == null) {
+            return null;
+        }
+        for (final Pom pom : poms) {
+            for (final PhysicalPath physicalPath : pom.getPhysicalPaths()) {
+                if (physicalPath.isSource()) {
+                    final String pathLocation = FileUtils
+                            .ensureTrailingSeparator(physicalPath
+                                    .getLocationPath());
+                    if (pathLocation.startsWith(parentPath)) {
+                        return physicalPath;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    private static PhysicalPath indexedGetPhysicalPath(
+            final TypePathIndex index, final List<Pom> poms,
+            final JavaType javaType) {
+        final String parentPath = index.getParentPath(javaType);
+        if (parentPath == null) {
+            return null;
+        }
+        final TypePathIndex.SourceRoot sourceRoot = index.getSourceRoot(
+                parentPath, poms);
+        return sourceRoot == null ? null : sourceRoot.getPhysicalPath();
+    }
+
+    public static void main(final String[] args) {
+        final List<Pom> poms = new ArrayList<Pom>();
+        for (int i = 0; i < MODULES; i++) {
+            poms.add(TypePathIndexTest.getPom(ROOT, "module" + i, null));
+        }
+        final Set<String> discoveredTypes = new HashSet<String>();
+        final TypePathIndex index = new TypePathIndex();
+        final List<JavaType> types = new ArrayList<JavaType>();
+        for (int i = 0; i < TYPES; i++) {
+            final JavaType type = new JavaType("com.example.module"
+                    + i % MODULES + ".package" + i % PACKAGES + ".Type" + i);
+            final String path = poms.get(i % MODULES).getRoot()
+                    + File.separator + "src" + File.separator + "main"
+                    + File.separator + "java" + File.separator
+                    + type.getRelativeFileName();
+            discoveredTypes.add(path);
+            index.addTypePath(path);
+            types.add(type);
+        }
+
+        // Look up a mix of project types and (unknown) library types
+        final Random random = new Random(42);
+        final List<JavaType> lookups = new ArrayList<JavaType>();
+        for (int i = 0; i < LOOKUPS; i++) {
+            lookups.add(i % 10 == 0 ? new JavaType("org.library.Type" + i)
+                    : types.get(random.nextInt(TYPES)));
+        }
+        Collections.shuffle(lookups, random);
+
+        System.out.println(LOOKUPS + " lookups among " + TYPES
+                + " types in " + MODULES + " modules");
+        for (int round = 0; round < 3; round++) {
+            int found = 0;
+            long start = System.nanoTime();
+            for (final JavaType type : lookups) {
+                if (legacyGetPhysicalPath(discoveredTypes, poms, type) != null) {
+                    found++;
+                }
+            }
+            final long legacyNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            for (final JavaType type : lookups) {
+                if (indexedGetPhysicalPath(index, poms, type) != null) {
+                    found--;
+                }
+            }
+            final long indexedNanos = System.nanoTime() - start;
+            if (found != 0) {
+                throw new IllegalStateException("Lookups disagree");
+            }
+
+            System.out.println("  Round " + (round + 1) + ": linear search "
+                    + legacyNanos / LOOKUPS + " ns/lookup, index "
+                    + indexedNanos / LOOKUPS + " ns/lookup");
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.springframework.roo.classpath;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.classpath.TypePathIndex.SourceRoot;
+import org.springframework.roo.model.JavaType;
+import org.springframework.roo.project.Path;
+import org.springframework.roo.project.maven.Pom;
+
+/**
+ * Unit test of {@link TypePathIndex}
+ */
+public class TypePathIndexTest {
+
+    private static final String ROOT = File.separator + "project";
+    private static final String SOURCE_DIRECTORY = ROOT + File.separator
+            + "core" + File.separator + "src" + File.separator + "main"
+            + File.separator + "java" + File.separator;
+
+    static Pom getPom(final String root, final String moduleName,
+            final String sourceDirectory) {
+        return new Pom("com.example", moduleName, "1.0", "jar", null, null,
+                null, null, null, null, null, sourceDirectory, null, null,
+                null, null, root + File.separator + moduleName
+                        + File.separator + "pom.xml", moduleName,
+                Arrays.asList(Path.SRC_MAIN_JAVA, Path.SRC_MAIN_RESOURCES));
+    }
+
+    private static String getSourcePath(final String typeName) {
+        return SOURCE_DIRECTORY + new JavaType(typeName).getRelativeFileName();
+    }
+
+    private TypePathIndex index;
+
+    @Before
+    public void setUp() {
+        index = new TypePathIndex();
+    }
+
+    @Test
+    public void testParentPathDistinguishesTypesWithSameSimpleName() {
+        index.addTypePath(getSourcePath("com.example.domain.Foo"));
+        index.addTypePath(getSourcePath("com.example.web.Foo"));
+
+        assertEquals(SOURCE_DIRECTORY,
+                index.getParentPath(new JavaType("com.example.web.Foo")));
+        assertNull(index.getParentPath(new JavaType("com.example.Foo")));
+    }
+
+    @Test
+    public void testParentPathOfUnknownTypeIsNull() {
+        index.addTypePath(getSourcePath("com.example.Foo"));
+
+        assertNull(index.getParentPath(new JavaType("com.example.Bar")));
+    }
+
+    @Test
+    public void testSourceRootIsReindexedWhenModulesChange() {
+        final Pom core = getPom(ROOT, "core", null);
+        final SourceRoot sourceRoot = index.getSourceRoot(SOURCE_DIRECTORY,
+                Collections.singleton(core));
+        assertSame(core, sourceRoot.getPom());
+        assertEquals(Path.SRC_MAIN_JAVA, sourceRoot.getPhysicalPath()
+                .getLogicalPath().getPath());
+
+        // The module's POM now declares a different source directory
+        final List<Pom> changed = Collections.singletonList(getPom(ROOT,
+                "core", "src"));
+
+        assertNull(index.getSourceRoot(SOURCE_DIRECTORY, changed));
+    }
+
+    @Test
+    public void testSourceRootOfPathOutsideModulesIsNull() {
+        final Pom core = getPom(ROOT, "core", null);
+
+        assertNull(index.getSourceRoot(File.separator + "elsewhere"
+                + File.separator, Collections.singleton(core)));
+    }
+}
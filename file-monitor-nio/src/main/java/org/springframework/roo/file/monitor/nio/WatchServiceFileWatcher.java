@@ -0,0 +1,180 @@
+package org.springframework.roo.file.monitor.nio;
+
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.nio.file.StandardWatchEventKinds.OVERFLOW;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Service;
+import org.osgi.service.component.ComponentContext;
+import org.springframework.roo.file.monitor.polling.FileWatcher;
+import org.springframework.roo.support.logging.HandlerUtils;
+
+/**
+ * A {@link FileWatcher} that receives change notifications from the operating
+ * system via a {@link WatchService}.
+ * <p>
+ * Directories are not watched if the JDK implements the {@link WatchService}
+ * by polling (as it does on some platforms), as doing so would be no cheaper
+ * than scanning them in full.
+ * 
+ * @since 1.2.5
+ */
+@Component
+@Service
+public class WatchServiceFileWatcher implements FileWatcher {
+
+    private static final Logger LOGGER = HandlerUtils
+            .getLogger(WatchServiceFileWatcher.class);
+
+    /** The JDK's fallback implementation, which we don't want to use */
+    private static final String POLLING_WATCH_SERVICE = "PollingWatchService";
+
+    private final Map<WatchKey, File> directories = new HashMap<WatchKey, File>();
+    private final Object lock = new Object();
+    /** Keys taken from the watch service while waiting for changes */
+    private final List<WatchKey> signalledKeys = new ArrayList<WatchKey>();
+    private WatchService watchService;
+
+    protected void activate(final ComponentContext context) {
+        synchronized (lock) {
+            try {
+                final WatchService newWatchService = FileSystems.getDefault()
+                        .newWatchService();
+                if (newWatchService.getClass().getName()
+                        .endsWith(POLLING_WATCH_SERVICE)) {
+                    IOUtils.closeQuietly(newWatchService);
+                }
+                else {
+                    watchService = newWatchService;
+                }
+            }
+            catch (final IOException e) {
+                LOGGER.warning("Unable to watch for file changes: "
+                        + e.getMessage());
+            }
+            catch (final UnsupportedOperationException e) {
+                // Polling it is
+            }
+        }
+    }
+
+    public boolean awaitChanges(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final WatchService service;
+        synchronized (lock) {
+            if (!signalledKeys.isEmpty()) {
+                return true;
+            }
+            service = watchService;
+        }
+        if (service == null) {
+            // Nothing is being watched
+            unit.sleep(timeout);
+            return false;
+        }
+        final WatchKey key;
+        try {
+            // Not holding the lock, so changes can still be collected
+            key = service.poll(timeout, unit);
+        }
+        catch (final ClosedWatchServiceException e) {
+            return false;
+        }
+        if (key == null) {
+            return false;
+        }
+        synchronized (lock) {
+            signalledKeys.add(key);
+        }
+        return true;
+    }
+
+    protected void deactivate(final ComponentContext context) {
+        synchronized (lock) {
+            IOUtils.closeQuietly(watchService);
+            watchService = null;
+            directories.clear();
+            signalledKeys.clear();
+        }
+    }
+
+    public Collection<File> getChanges() {
+        synchronized (lock) {
+            final Set<File> changes = new LinkedHashSet<File>();
+            if (watchService == null) {
+                return changes;
+            }
+            boolean overflowed = false;
+            final List<WatchKey> keys = new ArrayList<WatchKey>(signalledKeys);
+            signalledKeys.clear();
+            WatchKey polledKey;
+            while ((polledKey = watchService.poll()) != null) {
+                keys.add(polledKey);
+            }
+            for (final WatchKey key : keys) {
+                final File directory = directories.get(key);
+                for (final WatchEvent<?> event : key.pollEvents()) {
+                    if (event.kind() == OVERFLOW) {
+                        overflowed = true;
+                    }
+                    else if (directory != null) {
+                        changes.add(new File(directory, event.context()
+                                .toString()));
+                    }
+                }
+                if (!key.reset()) {
+                    // The directory can no longer be watched, typically
+                    // because it's been deleted
+                    directories.remove(key);
+                    if (directory != null) {
+                        changes.add(directory);
+                    }
+                }
+            }
+            return overflowed ? null : changes;
+        }
+    }
+
+    public boolean watch(final File directory) {
+        synchronized (lock) {
+            if (watchService == null) {
+                return false;
+            }
+            try {
+                // Registering an already watched directory returns its
+                // existing key
+                directories.put(
+                        directory.toPath().register(watchService,
+                                ENTRY_CREATE, ENTRY_DELETE, ENTRY_MODIFY),
+                        directory);
+                return true;
+            }
+            catch (final IOException e) {
+                return false;
+            }
+            catch (final UnsupportedOperationException e) {
+                return false;
+            }
+        }
+    }
+}
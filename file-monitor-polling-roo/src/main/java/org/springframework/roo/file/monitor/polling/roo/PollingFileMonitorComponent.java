@@ -1,32 +1,76 @@
 package org.springframework.roo.file.monitor.polling.roo;
 
+import java.io.File;
+
 import org.apache.felix.scr.annotations.Component;
 import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.ReferenceCardinality;
 import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.ReferenceStrategy;
 import org.apache.felix.scr.annotations.Service;
+import org.apache.felix.scr.annotations.References;
+import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.file.monitor.event.FileEventListener;
+import org.springframework.roo.file.monitor.polling.FileMonitorSnapshot;
+import org.springframework.roo.file.monitor.polling.FileWatcher;
 import org.springframework.roo.file.monitor.polling.PollingFileMonitorService;
+import org.springframework.roo.support.osgi.OSGiUtils;
 
 /**
  * Extends {@link PollingFileMonitorService} by making it available as an OSGi
  * component that automatically monitors the environment's
- * {@link FileEventListener} components.
+ * {@link FileEventListener} components, and uses any available
+ * {@link FileWatcher} to avoid rescanning unchanged locations.
+ * <p>
+ * Unless the <code>roo.monitor.persistent</code> system property is set to
+ * <code>false</code>, the monitored files are recorded in a
+ * {@link FileMonitorSnapshot} in the <code>.roo</code> directory after each
+ * scan that changes them and when this component is deactivated, so that the
+ * next session reports only what has been created, updated, or deleted since
+ * (including files deleted while Roo wasn't running).
  * 
  * @author Ben Alex
  * @since 1.1
  */
 @Component
 @Service
-@Reference(name = "fileEventListener", strategy = ReferenceStrategy.EVENT, policy = ReferencePolicy.DYNAMIC, referenceInterface = FileEventListener.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE)
+@References(value = {
+        @Reference(name = "fileEventListener", strategy = ReferenceStrategy.EVENT, policy = ReferencePolicy.DYNAMIC, referenceInterface = FileEventListener.class, cardinality = ReferenceCardinality.OPTIONAL_MULTIPLE),
+        @Reference(name = "fileWatcher", strategy = ReferenceStrategy.EVENT, policy = ReferencePolicy.DYNAMIC, referenceInterface = FileWatcher.class, cardinality = ReferenceCardinality.OPTIONAL_UNARY) })
 public class PollingFileMonitorComponent extends PollingFileMonitorService {
 
+    private static final String SNAPSHOT_FILE = ".roo" + File.separator
+            + "file-monitor.snapshot";
+
+    protected void activate(final ComponentContext context) {
+        final String workingDirectory = OSGiUtils
+                .getRooWorkingDirectory(context);
+        if (workingDirectory != null
+                && !"false".equals(System.getProperty("roo.monitor.persistent"))) {
+            // Snapshots written by another version may not be comparable
+            setSnapshot(new FileMonitorSnapshot(new File(workingDirectory,
+                    SNAPSHOT_FILE), context.getBundleContext().getBundle()
+                    .getVersion().toString()));
+        }
+    }
+
     protected void bindFileEventListener(final FileEventListener listener) {
         add(listener);
     }
 
+    protected void bindFileWatcher(final FileWatcher fileWatcher) {
+        setFileWatcher(fileWatcher);
+    }
+
+    protected void deactivate(final ComponentContext context) {
+        saveSnapshot();
+    }
+
     protected void unbindFileEventListener(final FileEventListener listener) {
         remove(listener);
     }
+
+    protected void unbindFileWatcher(final FileWatcher fileWatcher) {
+        setFileWatcher(null);
+    }
 }
@@ -0,0 +1,150 @@
+package org.springframework.roo.file.monitor.polling;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A file in which {@link PollingFileMonitorService} records the contents of
+ * each monitored location when it stops, so that when it next starts it can
+ * report only what has changed in the meantime.
+ * <p>
+ * The file holds each location's paths and timestamps, compressed, along with
+ * a stamp identifying the version of the software that wrote it; a snapshot
+ * with a different stamp is ignored. As a snapshot that is read but never
+ * replaced could otherwise hide changes made during a session that ends
+ * abnormally, it is deleted as soon as it has been read. Any problem reading
+ * or writing the snapshot is non-fatal, and simply means that every file will
+ * be reported as newly monitored.
+ * 
+ * @since 1.2.5
+ */
+public class FileMonitorSnapshot {
+
+    private static final int FORMAT_VERSION = 1;
+
+    private final File file;
+    private final String stamp;
+
+    /**
+     * Constructor
+     * 
+     * @param file the file in which to store the snapshot (required; its
+     *            directory is created when the snapshot is first written)
+     * @param stamp identifies the software writing the snapshot (required)
+     */
+    public FileMonitorSnapshot(final File file, final String stamp) {
+        Validate.notNull(file, "File required");
+        Validate.notNull(stamp, "Stamp required");
+        this.file = file;
+        this.stamp = stamp;
+    }
+
+    /**
+     * Returns the file in which the snapshot is stored.
+     * 
+     * @return a non-<code>null</code> file
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Reads and then deletes the snapshot, if there is a usable one.
+     * 
+     * @return the timestamp of each file by the key of the location containing
+     *         it (never <code>null</code>, but empty if there is no snapshot)
+     */
+    public Map<String, Map<File, Long>> read() {
+        final Map<String, Map<File, Long>> locations = new HashMap<String, Map<File, Long>>();
+        if (!file.isFile()) {
+            return locations;
+        }
+        DataInputStream in = null;
+        try {
+            in = new DataInputStream(new BufferedInputStream(
+                    new GZIPInputStream(new FileInputStream(file))));
+            if (in.readInt() != FORMAT_VERSION || !stamp.equals(in.readUTF())) {
+                return locations;
+            }
+            for (int locationCount = in.readInt(); locationCount > 0; locationCount--) {
+                final String key = in.readUTF();
+                final int fileCount = in.readInt();
+                final Map<File, Long> files = new HashMap<File, Long>(
+                        fileCount * 4 / 3 + 1);
+                for (int i = 0; i < fileCount; i++) {
+                    files.put(new File(in.readUTF()), in.readLong());
+                }
+                locations.put(key, files);
+            }
+            return locations;
+        }
+        catch (final IOException e) {
+            // Corrupt or truncated; the locations will be scanned afresh
+            locations.clear();
+            return locations;
+        }
+        finally {
+            IOUtils.closeQuietly(in);
+            FileUtils.deleteQuietly(file);
+        }
+    }
+
+    /**
+     * Replaces the snapshot with the given one.
+     * 
+     * @param locations the timestamp of each file by the key of the location
+     *            containing it (required)
+     * @return <code>true</code> if the snapshot was written
+     */
+    public boolean write(final Map<String, Map<File, Long>> locations) {
+        Validate.notNull(locations, "Locations required");
+        final File tempFile = new File(file.getPath() + ".tmp");
+        DataOutputStream out = null;
+        try {
+            FileUtils.forceMkdir(file.getParentFile());
+            out = new DataOutputStream(new BufferedOutputStream(
+                    new GZIPOutputStream(new FileOutputStream(tempFile))));
+            out.writeInt(FORMAT_VERSION);
+            out.writeUTF(stamp);
+            out.writeInt(locations.size());
+            for (final Entry<String, Map<File, Long>> location : locations
+                    .entrySet()) {
+                out.writeUTF(location.getKey());
+                out.writeInt(location.getValue().size());
+                for (final Entry<File, Long> entry : location.getValue()
+                        .entrySet()) {
+                    out.writeUTF(entry.getKey().getPath());
+                    out.writeLong(entry.getValue());
+                }
+            }
+            out.close();
+            FileUtils.deleteQuietly(file);
+            if (tempFile.renameTo(file)) {
+                return true;
+            }
+        }
+        catch (final IOException e) {
+            IOUtils.closeQuietly(out);
+        }
+        finally {
+            IOUtils.closeQuietly(out);
+        }
+        FileUtils.deleteQuietly(tempFile);
+        return false;
+    }
+}
@@ -0,0 +1,55 @@
+package org.springframework.roo.file.monitor.polling;
+
+import java.io.File;
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Receives change notifications for directories from the operating system,
+ * allowing {@link PollingFileMonitorService} to rescan only those locations
+ * that have changed, rather than walking every monitored tree on each scan.
+ * <p>
+ * Implementations must be able to decline to watch a directory (for example
+ * one on a file system without native change notification), in which case the
+ * monitoring request concerned continues to be polled.
+ * 
+ * @since 1.2.5
+ */
+public interface FileWatcher {
+
+    /**
+     * Waits until there are changes for {@link #getChanges()} to return, or
+     * the given time has elapsed.
+     * 
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout (required)
+     * @return <code>false</code> if the time elapsed without any changes
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitChanges(long timeout, TimeUnit unit)
+            throws InterruptedException;
+
+    /**
+     * Returns the files and directories within the watched directories that
+     * have been created, modified, or deleted since this method was last
+     * called. Each is a child of the {@link File} passed to
+     * {@link #watch(File)}, except that a watched directory that can no longer
+     * be watched (typically because it has been deleted) is itself returned.
+     * 
+     * @return a non-<code>null</code> collection, or <code>null</code> if
+     *         changes may have been lost (e.g. because too many occurred), in
+     *         which case every watched location must be rescanned in full
+     */
+    Collection<File> getChanges();
+
+    /**
+     * Starts watching the given directory for changes to its immediate
+     * contents (but not those of its subdirectories). Watching a directory that
+     * is already being watched has no effect.
+     * 
+     * @param directory the directory to watch (required)
+     * @return <code>false</code> if changes to this directory cannot be
+     *         reliably reported, in which case it must be polled
+     */
+    boolean watch(File directory);
+}
@@ -4,10 +4,12 @@ import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
 import java.util.LinkedHashSet;
+import java.util.LinkedList;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
@@ -15,12 +17,23 @@ import java.util.Set;
 import java.util.SortedSet;
 import java.util.TreeSet;
 import java.util.WeakHashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.Validate;
 import org.springframework.roo.file.monitor.DirectoryMonitoringRequest;
 import org.springframework.roo.file.monitor.FileMonitorService;
 import org.springframework.roo.file.monitor.MonitoringRequest;
 import org.springframework.roo.file.monitor.NotifiableFileMonitorService;
+import org.springframework.roo.file.monitor.SignallingFileMonitorService;
 import org.springframework.roo.file.monitor.event.FileDetails;
 import org.springframework.roo.file.monitor.event.FileEvent;
 import org.springframework.roo.file.monitor.event.FileEventListener;
@@ -45,21 +58,65 @@ import org.springframework.roo.support.util.FileUtils;
  * present in the {@link FileEvent} times equal to the last time a deleted file
  * was modified. The time does NOT represent the deletion time nor the time the
  * deletion was first detected.
+ * <p>
+ * If a {@link FileWatcher} has been set, each monitored directory is watched
+ * once it has been scanned (and then listed again, to pick up anything created
+ * in the meantime), after which only those locations the watcher
+ * reports as changed are rescanned (and an unchanged request is not scanned at
+ * all). Requests containing a directory the watcher declines to watch continue
+ * to be scanned in full, as do all requests after the watcher reports that
+ * changes may have been lost. While every request is being watched,
+ * {@link #awaitChanges(long, TimeUnit)} returns as soon as the watcher reports
+ * a change, rather than after the full timeout.
+ * <p>
+ * If a {@link FileMonitorSnapshot} has been set, the contents of each
+ * monitored location recorded by it are compared with its contents when that
+ * location is first scanned, so that files created, updated, or deleted while
+ * it wasn't being monitored are reported as such. Files unchanged since the
+ * snapshot are treated as already monitored, so no event is published for
+ * them. The snapshot is replaced by {@link #saveSnapshot()}, which happens at
+ * the end of any {@link #scanAll()} that changed the monitored contents.
  * 
  * @author Ben Alex
  * @since 1.0
  */
-public class PollingFileMonitorService implements NotifiableFileMonitorService {
+public class PollingFileMonitorService implements
+        NotifiableFileMonitorService, SignallingFileMonitorService {
+
+    /**
+     * The monitored contents of a single directory.
+     */
+    private static class DirectoryListing {
+
+        final List<String> canonicalPaths = new ArrayList<String>();
+        final Map<File, Long> entries = new HashMap<File, Long>();
+        final List<File> subdirectories = new ArrayList<File>();
+    }
 
     private final Set<String> allFiles = new HashSet<String>();
     private final Map<String, Set<String>> changeMap = new HashMap<String, Set<String>>();
+    /** Changes reported by the {@link FileWatcher} during the current scan */
+    private final Set<File> changedFiles = new HashSet<File>();
+    private ExecutorService executor;
     private final Set<FileEventListener> fileEventListeners = new HashSet<FileEventListener>();
+    private FileWatcher fileWatcher;
     private final Object lock = new Object();
     private final Set<String> notifyChanged = new HashSet<String>();
     private final Set<String> notifyCreated = new HashSet<String>();
     private final Set<String> notifyDeleted = new HashSet<String>();
+    private int parallelism = Integer.getInteger("roo.monitor.parallelism",
+            Runtime.getRuntime().availableProcessors());
+    /** Requests containing a directory the {@link FileWatcher} can't watch */
+    private final Set<MonitoringRequest> polledRequests = new HashSet<MonitoringRequest>();
     private final Map<MonitoringRequest, Map<File, Long>> priorExecution = new WeakHashMap<MonitoringRequest, Map<File, Long>>();
     private final Set<MonitoringRequest> requests = new LinkedHashSet<MonitoringRequest>();
+    /** Contents of not yet scanned locations, by snapshot key */
+    private final Map<String, Map<File, Long>> restoredExecution = new HashMap<String, Map<File, Long>>();
+    private FileMonitorSnapshot snapshot;
+    /** Whether the monitored contents have changed since the snapshot */
+    private boolean snapshotStale;
+    /** Requests whose every directory is being watched for changes */
+    private final Set<MonitoringRequest> watchedRequests = new HashSet<MonitoringRequest>();
 
     public final void add(final FileEventListener e) {
         synchronized (lock) {
@@ -120,6 +177,120 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         }
     }
 
+    /**
+     * Adds the canonical path of the given file to the given collection, if it
+     * can be resolved.
+     */
+    private static void addCanonicalPath(final Collection<String> paths,
+            final File file) {
+        try {
+            paths.add(file.getCanonicalPath());
+        }
+        catch (final IOException ignored) {
+        }
+    }
+
+    /**
+     * Applies the given changes, as reported by the {@link FileWatcher}, to
+     * the entries recorded for the given request by its prior execution. New
+     * directories are scanned and watched in turn.
+     * 
+     * @param request the request whose location has changed
+     * @param priorFiles the request's entries from its prior execution
+     * @param changes the changed files and directories within the request
+     * @param includeSubtree whether the request includes subdirectories
+     * @return the request's current entries
+     */
+    private Map<File, Long> applyChanges(final MonitoringRequest request,
+            final Map<File, Long> priorFiles, final Collection<File> changes,
+            final boolean includeSubtree) {
+        final Set<File> changed = new LinkedHashSet<File>(changes);
+        for (final File file : changes) {
+            // A directory's timestamp changes along with its contents
+            final File parent = file.getParentFile();
+            if (parent != null && priorFiles.containsKey(parent)) {
+                changed.add(parent);
+            }
+        }
+
+        final Map<File, Long> currentExecution = new HashMap<File, Long>(
+                priorFiles);
+        final List<String> deletedPaths = new ArrayList<String>();
+        for (final File file : changed) {
+            final boolean known = currentExecution.remove(file) != null;
+            if (!file.exists()) {
+                if (known) {
+                    deletedPaths.add(file.getPath() + File.separator);
+                }
+            }
+            else if (known && file.isDirectory()) {
+                // Changes to its contents are reported separately
+                currentExecution.put(file, file.lastModified());
+            }
+            else if (includeSubtree || file.isFile()) {
+                final Map<File, Long> created = new HashMap<File, Long>();
+                computeEntries(created, file, includeSubtree,
+                        Collections.<File, Long> emptyMap());
+                if (watchDirectories(request, created.keySet())) {
+                    relist(request, created, created.keySet(), includeSubtree);
+                }
+                currentExecution.putAll(created);
+            }
+        }
+
+        if (!deletedPaths.isEmpty()) {
+            // Remove the contents of any deleted directories
+            for (final Iterator<File> iter = currentExecution.keySet()
+                    .iterator(); iter.hasNext();) {
+                final String path = iter.next().getPath();
+                for (final String deletedPath : deletedPaths) {
+                    if (path.startsWith(deletedPath)) {
+                        iter.remove();
+                        break;
+                    }
+                }
+            }
+        }
+        return currentExecution;
+    }
+
+    public boolean awaitChanges(final long timeout, final TimeUnit unit)
+            throws InterruptedException {
+        final FileWatcher watcher;
+        synchronized (lock) {
+            if (isDirty() || !changedFiles.isEmpty()) {
+                return true;
+            }
+            watcher = isEveryRequestWatched() ? fileWatcher : null;
+        }
+        if (watcher == null) {
+            // Some locations can only be polled
+            unit.sleep(timeout);
+            return true;
+        }
+        // Not holding the lock, so that scans can proceed meanwhile
+        return watcher.awaitChanges(timeout, unit);
+    }
+
+    /**
+     * Adds the changes reported by the {@link FileWatcher} (if any) since the
+     * last scan to {@link #changedFiles}. If changes have been lost, every
+     * request will instead be scanned in full.
+     */
+    private void collectWatchedChanges() {
+        if (fileWatcher == null) {
+            return;
+        }
+        final Collection<File> changes = fileWatcher.getChanges();
+        if (changes == null) {
+            watchedRequests.clear();
+            changedFiles.clear();
+        }
+        else {
+            changedFiles.addAll(changes);
+        }
+    }
+
     /**
      * Adds one or more entries into the Map. The key of the Map is the File
      * object, and the value is the {@link File#lastModified()} time.
@@ -133,37 +304,77 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
      * <li>If invoked with a File that is actually a Directory, subdirectories
      * will be added only if "includeSubtree" is true.</li>
      * </ul>
+     * The canonical path of each file is added to {@link #allFiles} unless the
+     * file is among the given known files, whose paths have been added before.
      */
     private void computeEntries(final Map<File, Long> map,
-            final File currentFile, final boolean includeSubtree) {
+            final File currentFile, final boolean includeSubtree,
+            final Map<File, Long> knownFiles) {
         Validate.notNull(map, "Map required");
         Validate.notNull(currentFile, "Current file is required");
 
-        if (!currentFile.exists() || currentFile.getName().length() > 1
-                && currentFile.getName().startsWith(".")
-                || currentFile.getName().equals("log.roo")
-                || currentFile.isDirectory()
-                && isExcludedDirectory(currentFile.getPath())) {
+        if (!currentFile.exists()) {
+            return;
+        }
+        final boolean isDirectory = currentFile.isDirectory();
+        if (isIgnored(currentFile, isDirectory)) {
             return;
         }
 
         map.put(currentFile, currentFile.lastModified());
+        addCanonicalPath(allFiles, currentFile);
 
-        try {
-            allFiles.add(currentFile.getCanonicalPath());
+        if (!isDirectory) {
+            return;
         }
-        catch (final IOException ignored) {
+        if (includeSubtree && parallelism > 1) {
+            computeEntriesInParallel(map, currentFile, knownFiles);
+            return;
         }
+        final LinkedList<File> directories = new LinkedList<File>();
+        directories.add(currentFile);
+        while (!directories.isEmpty()) {
+            final DirectoryListing listing = list(directories.removeFirst(),
+                    includeSubtree, knownFiles);
+            map.putAll(listing.entries);
+            allFiles.addAll(listing.canonicalPaths);
+            directories.addAll(listing.subdirectories);
+        }
+    }
 
-        if (currentFile.isDirectory()) {
-            final File[] files = currentFile.listFiles();
-            if (files == null || files.length == 0) {
-                return;
+    /**
+     * As for {@link #computeEntries(Map, File, boolean, Map)}, but lists the
+     * given directory and each of its subdirectories on a separate task, so
+     * that up to {@link #parallelism} directories are listed at once.
+     */
+    private void computeEntriesInParallel(final Map<File, Long> map,
+            final File directory, final Map<File, Long> knownFiles) {
+        final CompletionService<DirectoryListing> completionService = new ExecutorCompletionService<DirectoryListing>(
+                getExecutor());
+        int pending = 0;
+        submitListing(completionService, directory, knownFiles);
+        pending++;
+        while (pending > 0) {
+            final DirectoryListing listing;
+            try {
+                listing = completionService.take().get();
             }
-            for (final File file : files) {
-                if (file.isFile() || includeSubtree) {
-                    computeEntries(map, file, includeSubtree);
+            catch (final InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException(e);
+            }
+            catch (final ExecutionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
                 }
+                throw new IllegalStateException(e.getCause());
+            }
+            pending--;
+            map.putAll(listing.entries);
+            allFiles.addAll(listing.canonicalPaths);
+            for (final File subdirectory : listing.subdirectories) {
+                submitListing(completionService, subdirectory, knownFiles);
+                pending++;
             }
         }
     }
@@ -200,6 +411,25 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         return result;
     }
 
+    /**
+     * Returns those {@link #changedFiles} that lie within the given request.
+     */
+    private Collection<File> getChangedFiles(final MonitoringRequest request,
+            final boolean includeSubtree) {
+        final File root = request.getFile();
+        final String rootPath = root.getPath() + File.separator;
+        final List<File> changes = new ArrayList<File>();
+        for (final File file : changedFiles) {
+            if (file.equals(root)
+                    || request instanceof DirectoryMonitoringRequest
+                    && (includeSubtree ? file.getPath().startsWith(rootPath)
+                            : root.equals(file.getParentFile()))) {
+                changes.add(file);
+            }
+        }
+        return changes;
+    }
+
     public Collection<String> getDirtyFiles(final String requestingClass) {
         synchronized (lock) {
             final Collection<String> changesSinceLastRequest = changeMap
@@ -215,6 +445,27 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         }
     }
 
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            final AtomicInteger threadNumber = new AtomicInteger();
+            final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                    parallelism, parallelism, 60, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+                        public Thread newThread(final Runnable r) {
+                            final Thread thread = new Thread(r,
+                                    "File monitor scan "
+                                            + threadNumber.incrementAndGet());
+                            thread.setDaemon(true);
+                            return thread;
+                        }
+                    });
+            // Don't keep idle threads around between scans
+            threadPoolExecutor.allowCoreThreadTimeOut(true);
+            executor = threadPoolExecutor;
+        }
+        return executor;
+    }
+
     private List<FileEvent> getFileCreationEvents(
             final MonitoringRequest request, final Map<File, Long> priorFiles) {
         final List<FileEvent> createEvents = new ArrayList<FileEvent>();
@@ -313,6 +564,20 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         }
     }
 
+    /**
+     * Returns the key under which the given request's contents are recorded
+     * in a {@link FileMonitorSnapshot}.
+     */
+    private static String getSnapshotKey(final MonitoringRequest request) {
+        final StringBuilder key = new StringBuilder(request.getClass()
+                .getName()).append(':').append(request.getFile().getPath());
+        if (request instanceof DirectoryMonitoringRequest
+                && ((DirectoryMonitoringRequest) request).isWatchSubtree()) {
+            key.append(File.separator).append("**");
+        }
+        return key.toString();
+    }
+
     public boolean isDirty() {
         synchronized (lock) {
             return !notifyChanged.isEmpty() || !notifyCreated.isEmpty()
@@ -320,7 +585,16 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         }
     }
 
-    private boolean isExcludedDirectory(final String path) {
+    /**
+     * Indicates whether changes to every monitored location will be reported
+     * by the {@link FileWatcher}, i.e. none need to be polled
+     */
+    private boolean isEveryRequestWatched() {
+        return fileWatcher != null && !requests.isEmpty()
+                && watchedRequests.containsAll(requests);
+    }
+
+    private static boolean isExcludedDirectory(final String path) {
         final boolean hasSrc = path.contains(File.separator + "src");
         return !hasSrc
                 && (path.contains(File.separator + "target") || path
@@ -328,6 +602,18 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
                 && path.contains(File.separator + "maven");
     }
 
+    /**
+     * Indicates whether the given file is excluded from monitoring, as being
+     * hidden, the Roo log, or a build output directory.
+     */
+    private static boolean isIgnored(final File file,
+            final boolean isDirectory) {
+        final String name = file.getName();
+        return name.length() > 1 && name.startsWith(".")
+                || name.equals("log.roo") || isDirectory
+                && isExcludedDirectory(file.getPath());
+    }
+
     /**
      * Decides whether we want to store this notification. This only happens if
      * a monitoring request has indicated it is interested in this request. See
@@ -380,6 +666,43 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         return true;
     }
 
+    /**
+     * Lists the monitored contents of the given directory, reading each
+     * entry's attributes once. Entries that have disappeared since being
+     * listed are omitted. Thread safe.
+     * 
+     * @param directory the directory to list
+     * @param includeSubtree whether to include subdirectories
+     * @param knownFiles files whose canonical paths needn't be resolved
+     * @return a non-<code>null</code> listing
+     */
+    private static DirectoryListing list(final File directory,
+            final boolean includeSubtree, final Map<File, Long> knownFiles) {
+        final DirectoryListing listing = new DirectoryListing();
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            return listing;
+        }
+        for (final File file : files) {
+            final boolean isDirectory = file.isDirectory();
+            if (isDirectory && !includeSubtree || isIgnored(file, isDirectory)) {
+                continue;
+            }
+            final long lastModified = file.lastModified();
+            if (lastModified == 0L && !file.exists()) {
+                continue;
+            }
+            listing.entries.put(file, lastModified);
+            if (!knownFiles.containsKey(file)) {
+                addCanonicalPath(listing.canonicalPaths, file);
+            }
+            if (isDirectory) {
+                listing.subdirectories.add(file);
+            }
+        }
+        return listing;
+    }
+
     private boolean noRequestsOrChanges() {
         return requests.isEmpty() || !isDirty();
     }
@@ -502,6 +825,46 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         }
     }
 
+    /**
+     * Lists the given newly watched directories again, adding to the given
+     * entries any files created or modified within them after they were first
+     * listed but before the {@link FileWatcher} started watching them, which
+     * it would never report. New subdirectories are watched and listed in
+     * turn.
+     * 
+     * @param request the request containing the directories
+     * @param entries the request's entries, to be added to
+     * @param files the newly watched entries (non-directories are ignored)
+     * @param includeSubtree whether the request includes subdirectories
+     */
+    private void relist(final MonitoringRequest request,
+            final Map<File, Long> entries, final Collection<File> files,
+            final boolean includeSubtree) {
+        final LinkedList<File> directories = new LinkedList<File>();
+        for (final File file : files) {
+            if (file.isDirectory()) {
+                directories.add(file);
+            }
+        }
+        while (!directories.isEmpty()) {
+            final DirectoryListing listing = list(directories.removeFirst(),
+                    includeSubtree, entries);
+            final List<File> newDirectories = new ArrayList<File>();
+            for (final File subdirectory : listing.subdirectories) {
+                if (!entries.containsKey(subdirectory)) {
+                    newDirectories.add(subdirectory);
+                }
+            }
+            entries.putAll(listing.entries);
+            allFiles.addAll(listing.canonicalPaths);
+            if (!watchDirectories(request, newDirectories)) {
+                // Will be scanned in full from now on
+                return;
+            }
+            directories.addAll(newDirectories);
+        }
+    }
+
     public boolean remove(final MonitoringRequest request) {
         synchronized (lock) {
             Validate.notNull(request, "MonitoringRequest required");
@@ -522,11 +885,39 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
             }
 
             priorExecution.remove(request);
+            polledRequests.remove(request);
+            watchedRequests.remove(request);
 
             return requests.remove(request);
         }
     }
 
+    /**
+     * Records the current contents of each monitored location in the
+     * {@link FileMonitorSnapshot}, if one has been set.
+     * 
+     * @return <code>true</code> if the snapshot was written
+     */
+    public boolean saveSnapshot() {
+        synchronized (lock) {
+            if (snapshot == null) {
+                return false;
+            }
+            final Map<String, Map<File, Long>> locations = new HashMap<String, Map<File, Long>>();
+            for (final MonitoringRequest request : requests) {
+                final Map<File, Long> priorFiles = priorExecution.get(request);
+                if (priorFiles != null) {
+                    locations.put(getSnapshotKey(request), priorFiles);
+                }
+            }
+            if (snapshot.write(locations)) {
+                snapshotStale = false;
+                return true;
+            }
+            return false;
+        }
+    }
+
     public int scanAll() {
         synchronized (lock) {
             if (requests.isEmpty()) {
@@ -535,6 +926,7 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
 
             int changes = 0;
 
+            collectWatchedChanges();
             for (final MonitoringRequest request : requests) {
                 boolean includeSubtree = false;
                 if (request instanceof DirectoryMonitoringRequest) {
@@ -543,13 +935,51 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
                 }
 
                 if (!request.getFile().exists()) {
+                    // Scan it in full should it reappear
+                    watchedRequests.remove(request);
                     continue;
                 }
 
                 // Build contents of the monitored location
-                final Map<File, Long> currentExecution = new HashMap<File, Long>();
-                computeEntries(currentExecution, request.getFile(),
-                        includeSubtree);
+                final Map<File, Long> currentExecution;
+                if (priorExecution.containsKey(request)
+                        && watchedRequests.contains(request)) {
+                    final Collection<File> changedWithin = getChangedFiles(
+                            request, includeSubtree);
+                    if (changedWithin.isEmpty() && !isDirty()) {
+                        // Nothing has changed here since the last scan
+                        continue;
+                    }
+                    currentExecution = applyChanges(request,
+                            priorExecution.get(request), changedWithin,
+                            includeSubtree);
+                }
+                else {
+                    currentExecution = new HashMap<File, Long>();
+                    final Map<File, Long> priorFiles = priorExecution
+                            .get(request);
+                    computeEntries(currentExecution, request.getFile(),
+                            includeSubtree,
+                            priorFiles == null ? Collections
+                                    .<File, Long> emptyMap() : priorFiles);
+                    if (priorFiles == null) {
+                        // Compare with the snapshot, if there is one; reading
+                        // it deletes it, so it always needs writing again
+                        final Map<File, Long> restoredFiles = restoredExecution
+                                .remove(getSnapshotKey(request));
+                        if (restoredFiles != null) {
+                            priorExecution.put(request, restoredFiles);
+                        }
+                        snapshotStale = true;
+                    }
+                    watch(request, currentExecution.keySet());
+                    if (watchedRequests.contains(request)
+                            && request instanceof DirectoryMonitoringRequest) {
+                        relist(request, currentExecution,
+                                new ArrayList<File>(currentExecution.keySet()),
+                                includeSubtree);
+                    }
+                }
 
                 final List<FileEvent> eventsToPublish = new ArrayList<FileEvent>();
 
@@ -647,6 +1077,14 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
 
                 changes += eventsToPublish.size();
             }
+            changedFiles.clear();
+
+            if (changes > 0) {
+                snapshotStale = true;
+            }
+            if (snapshotStale && snapshot != null) {
+                saveSnapshot();
+            }
 
             return changes;
         }
@@ -661,6 +1099,63 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
         }
     }
 
+    /**
+     * Sets the {@link FileWatcher} used to avoid rescanning unchanged
+     * locations; without one, every location is rescanned in full.
+     * 
+     * @param fileWatcher the watcher to use (can be <code>null</code>)
+     */
+    public void setFileWatcher(final FileWatcher fileWatcher) {
+        synchronized (lock) {
+            this.fileWatcher = fileWatcher;
+            changedFiles.clear();
+            polledRequests.clear();
+            watchedRequests.clear();
+        }
+    }
+
+    /**
+     * For use by unit tests
+     * 
+     * @param parallelism
+     */
+    void setParallelism(final int parallelism) {
+        synchronized (lock) {
+            this.parallelism = Math.max(1, parallelism);
+            if (executor != null) {
+                executor.shutdown();
+                executor = null;
+            }
+        }
+    }
+
+    /**
+     * Sets the {@link FileMonitorSnapshot} from which to restore the contents
+     * of each location when first scanned, and in which to save them. The
+     * snapshot is read immediately.
+     * 
+     * @param snapshot the snapshot to use (can be <code>null</code>)
+     */
+    public void setSnapshot(final FileMonitorSnapshot snapshot) {
+        synchronized (lock) {
+            this.snapshot = snapshot;
+            restoredExecution.clear();
+            if (snapshot != null) {
+                restoredExecution.putAll(snapshot.read());
+            }
+        }
+    }
+
+    private void submitListing(
+            final CompletionService<DirectoryListing> completionService,
+            final File directory, final Map<File, Long> knownFiles) {
+        completionService.submit(new Callable<DirectoryListing>() {
+            public DirectoryListing call() {
+                return list(directory, true, knownFiles);
+            }
+        });
+    }
+
     private void updateChanges(final String fileCanonicalPath,
             final boolean remove) {
         for (final String requestingClass : changeMap.keySet()) {
@@ -678,4 +1173,51 @@ public class PollingFileMonitorService implements NotifiableFileMonitorService {
             allFiles.add(fileCanonicalPath);
         }
     }
+
+    /**
+     * Starts watching the directories of the given newly-scanned request, if
+     * a {@link FileWatcher} has been set and can watch all of them.
+     * 
+     * @param request the request that has just been scanned in full
+     * @param files the request's current entries
+     */
+    private void watch(final MonitoringRequest request,
+            final Collection<File> files) {
+        if (fileWatcher == null || polledRequests.contains(request)) {
+            return;
+        }
+        final Collection<File> directories;
+        if (request instanceof DirectoryMonitoringRequest) {
+            directories = files;
+        }
+        else {
+            final File parent = request.getFile().getParentFile();
+            if (parent == null) {
+                polledRequests.add(request);
+                return;
+            }
+            directories = Collections.singleton(parent);
+        }
+        if (watchDirectories(request, directories)) {
+            watchedRequests.add(request);
+        }
+    }
+
+    /**
+     * Watches those of the given files that are directories, reverting the
+     * given request to being scanned in full if any of them can't be watched.
+     * 
+     * @return <code>false</code> if a directory couldn't be watched
+     */
+    private boolean watchDirectories(final MonitoringRequest request,
+            final Collection<File> files) {
+        for (final File file : files) {
+            if (file.isDirectory() && !fileWatcher.watch(file)) {
+                polledRequests.add(request);
+                watchedRequests.remove(request);
+                return false;
+            }
+        }
+        return true;
+    }
 }
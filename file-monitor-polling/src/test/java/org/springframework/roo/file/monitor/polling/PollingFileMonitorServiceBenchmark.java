@@ -0,0 +1,179 @@
+package org.springframework.roo.file.monitor.polling;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.Permission;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.springframework.roo.file.monitor.DirectoryMonitoringRequest;
+import org.springframework.roo.file.monitor.event.FileOperation;
+
+/**
+ * Benchmarks the scanning of a generated tree of 200,000 files by
+ * {@link PollingFileMonitorService}, comparing the time taken and the number
+ * of file attribute reads with those of the tree walk it used to perform. Not
+ * a unit test (and not run as part of the build); run its
+ * {@link #main(String[])} method directly, optionally passing the directory in
+ * which to generate the tree.
+ */
+public class PollingFileMonitorServiceBenchmark {
+
+    /**
+     * Counts the file system reads that the JDK checks with the security
+     * manager, which include every {@link File#exists()},
+     * {@link File#isDirectory()}, {@link File#lastModified()} and
+     * {@link File#listFiles()}, but not canonical path resolution.
+     */
+    private static class CountingSecurityManager extends SecurityManager {
+
+        final AtomicLong reads = new AtomicLong();
+
+        @Override
+        public void checkPermission(final Permission perm) {
+        }
+
+        @Override
+        public void checkRead(final String file) {
+            reads.incrementAndGet();
+        }
+    }
+
+    private static final int DIRECTORIES = 200;
+    private static final int FILES = 100;
+    private static final int SUBDIRECTORIES = 10;
+
+    private static final CountingSecurityManager COUNTER = new CountingSecurityManager();
+    private static final AtomicLong CANONICAL_PATHS = new AtomicLong();
+
+    private static void createTree(final File root) throws IOException {
+        for (int i = 0; i < DIRECTORIES; i++) {
+            for (int j = 0; j < SUBDIRECTORIES; j++) {
+                final File directory = new File(root, "src" + File.separator
+                        + "module" + i + File.separator + "package" + j);
+                if (!directory.mkdirs()) {
+                    throw new IOException("Unable to create " + directory);
+                }
+                for (int k = 0; k < FILES; k++) {
+                    if (!new File(directory, "Type" + k + ".java")
+                            .createNewFile()) {
+                        throw new IOException("Unable to create file " + k
+                                + " in " + directory);
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * The tree walk as it was before each entry's attributes were read once
+     * and directories listed in parallel, for comparison.
+     */
+    private static void legacyComputeEntries(final Map<File, Long> map,
+            final File currentFile, final boolean includeSubtree) {
+        if (!currentFile.exists() || currentFile.getName().length() > 1
+                && currentFile.getName().startsWith(".")
+                || currentFile.getName().equals("log.roo")
+                || currentFile.isDirectory()
+                && isExcludedDirectory(currentFile.getPath())) {
+            return;
+        }
+        map.put(currentFile, currentFile.lastModified());
+        try {
+            currentFile.getCanonicalPath();
+            CANONICAL_PATHS.incrementAndGet();
+        }
+        catch (final IOException ignored) {
+        }
+        if (currentFile.isDirectory()) {
+            final File[] files = currentFile.listFiles();
+            if (files == null || files.length == 0) {
+                return;
+            }
+            for (final File file : files) {
+                if (file.isFile() || includeSubtree) {
+                    legacyComputeEntries(map, file, includeSubtree);
+                }
+            }
+        }
+    }
+
+    private static boolean isExcludedDirectory(final String path) {
+        final boolean hasSrc = path.contains(File.separator + "src");
+        return !hasSrc
+                && (path.contains(File.separator + "target") || path
+                        .contains(File.separator + "bin")) || hasSrc
+                && path.contains(File.separator + "maven");
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final File root = args.length > 0 ? new File(args[0]) : new File(
+                System.getProperty("java.io.tmpdir"), "roo-scan-benchmark");
+        FileUtils.deleteDirectory(root);
+        System.out.println("Generating "
+                + DIRECTORIES * SUBDIRECTORIES * FILES + " files in " + root);
+        createTree(root);
+        System.setSecurityManager(COUNTER);
+        try {
+            final int parallelism = Math.max(4, Runtime.getRuntime()
+                    .availableProcessors());
+            // Warm up
+            legacyComputeEntries(new HashMap<File, Long>(), root, true);
+            measureService(root, parallelism, false);
+
+            long reads = COUNTER.reads.get();
+            CANONICAL_PATHS.set(0);
+            final long start = System.nanoTime();
+            final Map<File, Long> entries = new HashMap<File, Long>();
+            legacyComputeEntries(entries, root, true);
+            report("Legacy walk", entries.size(), System.nanoTime() - start,
+                    COUNTER.reads.get() - reads, CANONICAL_PATHS.get());
+
+            measureService(root, 1, true);
+            measureService(root, parallelism, true);
+        }
+        finally {
+            System.setSecurityManager(null);
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    private static void measureService(final File root, final int parallelism,
+            final boolean print) {
+        final PollingFileMonitorService service = new PollingFileMonitorService();
+        service.setParallelism(parallelism);
+        service.add(new DirectoryMonitoringRequest(root, true, Arrays
+                .asList(FileOperation.values())));
+
+        long reads = COUNTER.reads.get();
+        long start = System.nanoTime();
+        service.scanAll();
+        final long firstNanos = System.nanoTime() - start;
+        final long firstReads = COUNTER.reads.get() - reads;
+        final int size = service.getMonitored().size();
+
+        reads = COUNTER.reads.get();
+        start = System.nanoTime();
+        service.scanAll();
+        final long rescanNanos = System.nanoTime() - start;
+        final long rescanReads = COUNTER.reads.get() - reads;
+
+        if (print) {
+            // Canonical paths are only resolved for new files
+            report("Initial scan, parallelism " + parallelism, size,
+                    firstNanos, firstReads, size);
+            report("Rescan, parallelism " + parallelism, size, rescanNanos,
+                    rescanReads, 0);
+        }
+    }
+
+    private static void report(final String name, final int entries,
+            final long nanos, final long reads, final long canonicalPaths) {
+        System.out.println(String.format(
+                "  %-28s %7d entries %7d ms %8d attribute reads %7d canonical paths",
+                name, entries, nanos / 1000000, reads, canonicalPaths));
+    }
+}
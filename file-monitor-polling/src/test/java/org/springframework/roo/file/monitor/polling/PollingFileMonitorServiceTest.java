@@ -0,0 +1,217 @@
+package org.springframework.roo.file.monitor.polling;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.springframework.roo.file.monitor.DirectoryMonitoringRequest;
+import org.springframework.roo.file.monitor.event.FileEvent;
+import org.springframework.roo.file.monitor.event.FileEventListener;
+import org.springframework.roo.file.monitor.event.FileOperation;
+
+/**
+ * Unit test of {@link PollingFileMonitorService}
+ */
+public class PollingFileMonitorServiceTest {
+
+    /**
+     * Creates a file in the first directory it's asked to watch, as if it had
+     * been created between that directory being listed and being watched
+     */
+    private static class RacingFileWatcher extends StubFileWatcher {
+
+        File created;
+
+        @Override
+        public boolean watch(final File directory) {
+            if (created == null) {
+                created = new File(directory, "Racing.java");
+                try {
+                    FileUtils.write(created, "class E {}");
+                }
+                catch (final IOException e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return true;
+        }
+    }
+
+    private static class RecordingListener implements FileEventListener {
+
+        final List<String> events = new ArrayList<String>();
+
+        public void onFileEvent(final FileEvent fileEvent) {
+            events.add(fileEvent.getOperation() + " "
+                    + fileEvent.getFileDetails().getFile().getName());
+        }
+    }
+
+    private static class StubFileWatcher implements FileWatcher {
+
+        boolean changed;
+
+        public boolean awaitChanges(final long timeout, final TimeUnit unit) {
+            return changed;
+        }
+
+        public Collection<File> getChanges() {
+            return Collections.emptyList();
+        }
+
+        public boolean watch(final File directory) {
+            return true;
+        }
+    }
+
+    @Rule public TemporaryFolder folder = new TemporaryFolder();
+
+    private File project;
+    private File snapshotFile;
+
+    private PollingFileMonitorService monitor(final FileWatcher fileWatcher) {
+        final PollingFileMonitorService service = new PollingFileMonitorService();
+        service.setFileWatcher(fileWatcher);
+        service.add(new DirectoryMonitoringRequest(project, true, Arrays
+                .asList(FileOperation.values())));
+        service.scanAll();
+        return service;
+    }
+
+    private RecordingListener scan(final FileMonitorSnapshot snapshot) {
+        final PollingFileMonitorService service = new PollingFileMonitorService();
+        final RecordingListener listener = new RecordingListener();
+        service.setSnapshot(snapshot);
+        service.add(listener);
+        service.add(new DirectoryMonitoringRequest(project, true, Arrays
+                .asList(FileOperation.values())));
+        service.scanAll();
+        return listener;
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        project = folder.newFolder("project");
+        snapshotFile = new File(folder.getRoot(), "file-monitor.snapshot");
+        FileUtils.write(new File(project, "Unchanged.java"), "class A {}");
+        FileUtils.write(new File(project, "Changed.java"), "class B {}");
+        FileUtils.write(new File(project, "Deleted.java"), "class C {}");
+    }
+
+    @Test
+    public void testAwaitChangesDefersToWatcherOnceEverythingIsWatched()
+            throws InterruptedException {
+        final StubFileWatcher fileWatcher = new StubFileWatcher();
+        final PollingFileMonitorService service = monitor(fileWatcher);
+
+        assertFalse(service.awaitChanges(1, TimeUnit.MILLISECONDS));
+        fileWatcher.changed = true;
+        assertTrue(service.awaitChanges(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testAwaitChangesSignalsNotifiedChanges()
+            throws InterruptedException {
+        final PollingFileMonitorService service = monitor(new StubFileWatcher());
+
+        service.notifyChanged(new File(project, "Changed.java")
+                .getAbsolutePath());
+
+        assertTrue(service.awaitChanges(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testAwaitChangesWithoutWatcherRequiresPolling()
+            throws InterruptedException {
+        assertTrue(monitor(null).awaitChanges(1, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testFileCreatedBeforeDirectoryIsWatchedIsReported() {
+        final RecordingListener listener = new RecordingListener();
+        final PollingFileMonitorService service = new PollingFileMonitorService();
+        service.add(listener);
+        service.setFileWatcher(new RacingFileWatcher());
+        service.add(new DirectoryMonitoringRequest(project, true, Arrays
+                .asList(FileOperation.values())));
+
+        service.scanAll();
+
+        assertTrue(listener.events.contains("MONITORING_START Racing.java"));
+    }
+
+    @Test
+    public void testFirstScanWithoutSnapshotStartsMonitoringEverything() {
+        final RecordingListener listener = scan(null);
+        assertEquals(4, listener.events.size());
+        assertTrue(listener.events.contains("MONITORING_START Unchanged.java"));
+    }
+
+    @Test
+    public void testFirstScanWithSnapshotReportsDifferences()
+            throws IOException {
+        scan(new FileMonitorSnapshot(snapshotFile, "1"));
+        assertTrue(snapshotFile.isFile());
+
+        final File changed = new File(project, "Changed.java");
+        FileUtils.write(changed, "class B { int x; }");
+        assertTrue(changed.setLastModified(changed.lastModified() + 2000));
+        assertTrue(new File(project, "Deleted.java").delete());
+        FileUtils.write(new File(project, "Created.java"), "class D {}");
+        assertTrue(project.setLastModified(project.lastModified() + 2000));
+
+        final RecordingListener listener = scan(new FileMonitorSnapshot(
+                snapshotFile, "1"));
+
+        assertEquals(4, listener.events.size());
+        assertTrue(listener.events.contains("UPDATED Changed.java"));
+        assertTrue(listener.events.contains("DELETED Deleted.java"));
+        assertTrue(listener.events.contains("CREATED Created.java"));
+        assertTrue(listener.events.contains("UPDATED project"));
+    }
+
+    @Test
+    public void testFirstScanWithUnchangedSnapshotReportsNothing() {
+        scan(new FileMonitorSnapshot(snapshotFile, "1"));
+
+        final RecordingListener listener = scan(new FileMonitorSnapshot(
+                snapshotFile, "1"));
+
+        assertTrue(listener.events.isEmpty());
+        assertTrue(snapshotFile.isFile());
+    }
+
+    @Test
+    public void testSnapshotFromOtherVersionIsIgnored() {
+        scan(new FileMonitorSnapshot(snapshotFile, "1"));
+
+        final RecordingListener listener = scan(new FileMonitorSnapshot(
+                snapshotFile, "2"));
+
+        assertEquals(4, listener.events.size());
+        assertTrue(listener.events.contains("MONITORING_START Changed.java"));
+    }
+
+    @Test
+    public void testSnapshotIsDeletedOnceRead() {
+        scan(new FileMonitorSnapshot(snapshotFile, "1"));
+
+        new FileMonitorSnapshot(snapshotFile, "1").read();
+
+        assertFalse(snapshotFile.exists());
+    }
+}
@@ -0,0 +1,30 @@
+package org.springframework.roo.file.monitor;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link FileMonitorService} that can signal when the monitored files may
+ * have changed, so that callers can wait for changes before scanning instead
+ * of scanning at fixed intervals.
+ * 
+ * @since 1.2.5
+ */
+public interface SignallingFileMonitorService extends FileMonitorService {
+
+    /**
+     * Waits until the monitored files may have changed since the last scan,
+     * or the given time has elapsed. Implementations that can't tell whether
+     * some of the monitored files have changed without scanning them wait for
+     * the full time and return <code>true</code>, so that callers scanning
+     * whenever this method returns <code>true</code> poll those files at that
+     * interval.
+     * 
+     * @param timeout the maximum time to wait
+     * @param unit the unit of the timeout (required)
+     * @return <code>false</code> if there's no need to scan, i.e. the time
+     *         elapsed without any sign of change
+     * @throws InterruptedException if interrupted while waiting
+     */
+    boolean awaitChanges(long timeout, TimeUnit unit)
+            throws InterruptedException;
+}
@@ -2,13 +2,15 @@ package org.springframework.roo.file.undo;
 
 import java.io.File;
 import java.io.IOException;
-import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.springframework.roo.support.logging.HandlerUtils;
-import org.springframework.roo.support.util.FileUtils;
 
 /**
  * {@link UndoableOperation} to delete a directory.
@@ -20,11 +22,10 @@ public class DeleteDirectory implements UndoableOperation {
 
     private static final Logger LOGGER = HandlerUtils
             .getLogger(DeleteDirectory.class);
-    private static final File TEMP_DIRECTORY = new File(
-            System.getProperty("java.io.tmpdir"));
 
     private final File actual;
-    private final File backup;
+    /** key: file or directory within the deleted one, value: its backup */
+    private final Map<File, FileBackup> backups = new LinkedHashMap<File, FileBackup>();
     private final FilenameResolver filenameResolver;
 
     /**
@@ -61,21 +62,22 @@ public class DeleteDirectory implements UndoableOperation {
         Validate.isTrue(directory.exists(), "File '%s' must exist", directory);
         Validate.isTrue(directory.isDirectory(),
                 "Path '%s' must be a directory (not a file)", directory);
-        Validate.isTrue(TEMP_DIRECTORY.isDirectory(),
-                "Temporary directory '%s' is not a directory", TEMP_DIRECTORY);
         actual = directory;
-        backup = new File(TEMP_DIRECTORY, "tmp_" + new Date().getTime()
-                + "_dir");
         this.filenameResolver = filenameResolver;
-        if (!FileUtils.copyRecursively(directory, backup, true)) {
+        try {
+            backUp(directory);
+        }
+        catch (final IOException e) {
+            releaseBackups();
             throw new IllegalStateException(
                     "Unable to create a complete backup of directory '"
-                            + directory + "'");
+                            + directory + "'", e);
         }
         try {
-            org.apache.commons.io.FileUtils.deleteDirectory(directory);
+            FileUtils.deleteDirectory(directory);
         }
         catch (IOException e) {
+            releaseBackups();
             throw new IllegalStateException(
                     "Unable to completely delete directory '" + directory + "'");
         }
@@ -88,37 +90,73 @@ public class DeleteDirectory implements UndoableOperation {
         LOGGER.fine(deletionMessage);
     }
 
-    public void reset() {
-        // Fix for ROO-1555
-        boolean success = true;
-        try {
-            org.apache.commons.io.FileUtils.deleteDirectory(backup);
-        }
-        catch (IOException e) {
-            success = false;
+    /**
+     * Backs up the contents of the given directory, recursively; the
+     * directories themselves are recorded with a <code>null</code> backup.
+     */
+    private void backUp(final File directory) throws IOException {
+        final File[] files = directory.listFiles();
+        if (files == null) {
+            throw new IOException("Unable to list the contents of '"
+                    + directory + "'");
         }
-
-        try {
-            if (success) {
-                LOGGER.finest("Reset manage "
-                        + filenameResolver.getMeaningfulName(backup));
+        for (final File file : files) {
+            if (file.isFile()) {
+                backups.put(file, new FileBackup(file));
             }
             else {
-                backup.deleteOnExit();
-                LOGGER.fine("Reset failed "
-                        + filenameResolver.getMeaningfulName(backup));
+                backups.put(file, null);
+                backUp(file);
+            }
+        }
+    }
+
+    private boolean releaseBackups() {
+        boolean success = true;
+        for (final FileBackup backup : backups.values()) {
+            if (backup != null && !backup.release()) {
+                success = false;
             }
         }
-        catch (final Throwable ignore) {
-            backup.deleteOnExit();
+        backups.clear();
+        return success;
+    }
+
+    public void reset() {
+        // Fix for ROO-1555
+        if (releaseBackups()) {
+            LOGGER.finest("Reset manage "
+                    + filenameResolver.getMeaningfulName(actual));
+        }
+        else {
             LOGGER.fine("Reset failed "
-                    + filenameResolver.getMeaningfulName(backup));
+                    + filenameResolver.getMeaningfulName(actual));
         }
     }
 
     public boolean undo() {
-        final boolean success = FileUtils
-                .copyRecursively(backup, actual, false);
+        boolean success = actual.mkdirs() || actual.isDirectory();
+        try {
+            // Parent directories are listed before their contents
+            for (final Entry<File, FileBackup> entry : backups.entrySet()) {
+                final File file = entry.getKey();
+                if (entry.getValue() == null) {
+                    if (!file.mkdir() && !file.isDirectory()) {
+                        success = false;
+                        break;
+                    }
+                }
+                else {
+                    entry.getValue().restore(file);
+                }
+            }
+        }
+        catch (final IOException e) {
+            success = false;
+        }
+        finally {
+            releaseBackups();
+        }
         LOGGER.fine((success ? "Undo delete " : "Undo failed ")
                 + filenameResolver.getMeaningfulName(actual));
         return success;
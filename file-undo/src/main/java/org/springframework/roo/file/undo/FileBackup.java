@@ -0,0 +1,140 @@
+package org.springframework.roo.file.undo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * A copy of a file's contents as they were before being changed, from which
+ * the file can be restored by an {@link UndoableOperation}.
+ * <p>
+ * The contents are held in memory, as long as the total held by all backups
+ * at once stays within a limit (by default 32MB, configurable in bytes via the
+ * "roo.undo.memory" system property); beyond that, they are copied to a
+ * temporary file instead. Setting the limit to zero makes every backup a
+ * temporary file, as they were before this class existed.
+ * 
+ * @since 1.2.5
+ */
+class FileBackup {
+
+    private static final long DEFAULT_MEMORY_LIMIT = 32 * 1024 * 1024;
+    private static final long MEMORY_LIMIT = Long.getLong("roo.undo.memory",
+            DEFAULT_MEMORY_LIMIT);
+    private static final AtomicLong MEMORY_USED = new AtomicLong();
+
+    /**
+     * Returns the number of bytes of file contents currently held in memory
+     * by all backups that have not been released
+     * 
+     * @return a non-negative number
+     */
+    static long getMemoryUsed() {
+        return MEMORY_USED.get();
+    }
+
+    /**
+     * Reserves the given amount of memory for a backup, if this would not
+     * exceed the limit
+     * 
+     * @param bytes the number of bytes required
+     * @return whether the memory was reserved
+     */
+    private static boolean reserveMemory(final long bytes) {
+        while (true) {
+            final long used = MEMORY_USED.get();
+            if (used + bytes > MEMORY_LIMIT) {
+                return false;
+            }
+            if (MEMORY_USED.compareAndSet(used, used + bytes)) {
+                return true;
+            }
+        }
+    }
+
+    private byte[] contents;
+    private final long lastModified;
+    private File temporaryFile;
+
+    /**
+     * Constructor
+     * 
+     * @param original the existing file to back up (required)
+     * @throws IOException if the file can't be read or copied
+     */
+    FileBackup(final File original) throws IOException {
+        Validate.notNull(original, "File required");
+        lastModified = original.lastModified();
+        final long length = original.length();
+        if (reserveMemory(length)) {
+            try {
+                contents = FileUtils.readFileToByteArray(original);
+            }
+            finally {
+                if (contents == null) {
+                    MEMORY_USED.addAndGet(-length);
+                }
+            }
+            // In case the file changed size since we checked
+            MEMORY_USED.addAndGet(contents.length - length);
+        }
+        else {
+            temporaryFile = File.createTempFile("FileBackup", "tmp");
+            FileUtils.copyFile(original, temporaryFile);
+        }
+    }
+
+    /**
+     * Releases the resources held by this backup, after which it can't be
+     * used to restore the original file
+     * 
+     * @return <code>false</code> if a temporary file could not be deleted
+     *         immediately, in which case it will be deleted on exit
+     */
+    boolean release() {
+        if (contents != null) {
+            MEMORY_USED.addAndGet(-contents.length);
+            contents = null;
+        }
+        if (temporaryFile != null) {
+            try {
+                if (!temporaryFile.delete()) {
+                    temporaryFile.deleteOnExit();
+                    return false;
+                }
+            }
+            catch (final Throwable e) {
+                temporaryFile.deleteOnExit();
+                return false;
+            }
+            finally {
+                temporaryFile = null;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Restores the given file to the contents and modification time backed up
+     * by this instance, creating it (and any parent directories) if necessary;
+     * leaves this backup unchanged.
+     * 
+     * @param target the file to restore (required)
+     * @throws IOException if the file can't be written
+     */
+    void restore(final File target) throws IOException {
+        Validate.notNull(target, "File required");
+        if (contents != null) {
+            FileUtils.writeByteArrayToFile(target, contents);
+            target.setLastModified(lastModified);
+        }
+        else {
+            Validate.validState(temporaryFile != null,
+                    "Backup has been released");
+            FileUtils.copyFile(temporaryFile, target);
+        }
+    }
+}
@@ -4,7 +4,6 @@ import java.io.File;
 import java.io.IOException;
 import java.util.logging.Logger;
 
-import org.apache.commons.io.FileUtils;
 import org.apache.commons.lang3.Validate;
 import org.springframework.roo.support.logging.HandlerUtils;
 
@@ -20,7 +19,7 @@ public class UpdateFile implements UndoableOperation {
             .getLogger(UpdateFile.class);
 
     private final File actual;
-    private final File backup;
+    private final FileBackup backup;
     private final FilenameResolver filenameResolver;
 
     /**
@@ -41,8 +40,7 @@ public class UpdateFile implements UndoableOperation {
         Validate.notNull(filenameResolver, "Filename resolver required");
         this.filenameResolver = filenameResolver;
         try {
-            backup = File.createTempFile("UpdateFile", "tmp");
-            FileUtils.copyFile(actual, backup);
+            backup = new FileBackup(actual);
         }
         catch (final IOException ioe) {
             throw new IllegalStateException("Unable to make a backup of file '"
@@ -54,27 +52,19 @@ public class UpdateFile implements UndoableOperation {
 
     public void reset() {
         // Fix for ROO-1555
-        try {
-            if (backup.delete()) {
-                LOGGER.finest("Reset manage "
-                        + filenameResolver.getMeaningfulName(backup));
-            }
-            else {
-                backup.deleteOnExit();
-                LOGGER.fine("Reset failed "
-                        + filenameResolver.getMeaningfulName(backup));
-            }
+        if (backup.release()) {
+            LOGGER.finest("Reset manage "
+                    + filenameResolver.getMeaningfulName(actual));
         }
-        catch (final Throwable e) {
-            backup.deleteOnExit();
+        else {
             LOGGER.fine("Reset failed "
-                    + filenameResolver.getMeaningfulName(backup));
+                    + filenameResolver.getMeaningfulName(actual));
         }
     }
 
     public boolean undo() {
         try {
-            FileUtils.copyFile(backup, actual);
+            backup.restore(actual);
             LOGGER.fine("Undo manage "
                     + filenameResolver.getMeaningfulName(actual));
             return true;
@@ -84,5 +74,8 @@ public class UpdateFile implements UndoableOperation {
                     + filenameResolver.getMeaningfulName(actual));
             return false;
         }
+        finally {
+            backup.release();
+        }
     }
 }
@@ -0,0 +1,109 @@
+package org.springframework.roo.file.undo;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.lang3.StringUtils;
+
+/**
+ * Benchmarks the backing up of files by {@link UpdateFile} during a
+ * transaction the size of a "web mvc all" command on a large project (which
+ * updates about 500 ITDs and JSPX views), then resetting or undoing it,
+ * comparing the time taken with that of the temporary file copies it used to
+ * make. Not a unit test (and not run as part of the build); run its
+ * {@link #main(String[])} method directly, optionally passing the directory in
+ * which to generate the files.
+ */
+public class UpdateFileBenchmark {
+
+    private static final int FILES = 500;
+    private static final int FILE_SIZE = 6 * 1024;
+    private static final int ROUNDS = 20;
+
+    private static final FilenameResolver FILENAME_RESOLVER = new DefaultFilenameResolver();
+
+    private static List<File> createFiles(final File root) throws IOException {
+        final String contents = StringUtils.repeat(
+                "    private String field; // Generated\n", FILE_SIZE / 40);
+        final List<File> files = new ArrayList<File>();
+        for (int i = 0; i < FILES; i++) {
+            final File file = new File(root, "Type" + i + "_Roo_Controller.aj");
+            FileUtils.writeStringToFile(file, contents, "UTF-8");
+            files.add(file);
+        }
+        return files;
+    }
+
+    /**
+     * The backup and reset as they were before backups were held in memory,
+     * for comparison.
+     */
+    private static long legacyTransaction(final List<File> files)
+            throws IOException {
+        final long start = System.nanoTime();
+        final List<File> backups = new ArrayList<File>();
+        for (final File file : files) {
+            final File backup = File.createTempFile("UpdateFile", "tmp");
+            FileUtils.copyFile(file, backup);
+            backups.add(backup);
+        }
+        for (final File backup : backups) {
+            backup.delete();
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final File root = args.length > 0 ? new File(args[0]) : new File(
+                System.getProperty("java.io.tmpdir"), "roo-undo-benchmark");
+        FileUtils.deleteDirectory(root);
+        System.out.println("Generating " + FILES + " files of " + FILE_SIZE
+                + " bytes in " + root);
+        final List<File> files = createFiles(root);
+        try {
+            // Warm up
+            legacyTransaction(files);
+            transaction(files, false);
+
+            long legacyNanos = 0;
+            long resetNanos = 0;
+            long undoNanos = 0;
+            for (int i = 0; i < ROUNDS; i++) {
+                legacyNanos += legacyTransaction(files);
+                resetNanos += transaction(files, false);
+                undoNanos += transaction(files, true);
+            }
+            report("Temporary file backups, reset", legacyNanos);
+            report("UpdateFile, reset", resetNanos);
+            report("UpdateFile, undo", undoNanos);
+            System.out.println("  Memory still held by backups: "
+                    + FileBackup.getMemoryUsed() + " bytes");
+        }
+        finally {
+            FileUtils.deleteDirectory(root);
+        }
+    }
+
+    private static void report(final String name, final long nanos) {
+        System.out.println(String.format("  %-32s %7.1f ms per transaction",
+                name, nanos / 1000000.0 / ROUNDS));
+    }
+
+    private static long transaction(final List<File> files, final boolean undo) {
+        final UndoManager undoManager = new DefaultUndoManager();
+        final long start = System.nanoTime();
+        for (final File file : files) {
+            new UpdateFile(undoManager, FILENAME_RESOLVER, file);
+        }
+        if (undo) {
+            undoManager.undo();
+        }
+        else {
+            undoManager.reset();
+        }
+        return System.nanoTime() - start;
+    }
+}
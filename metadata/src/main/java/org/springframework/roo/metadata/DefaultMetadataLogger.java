@@ -30,7 +30,13 @@ public class DefaultMetadataLogger implements MetadataLogger {
     }
 
     private long eventNumber = 0;
-    private final Stack<Long> eventStack = new Stack<Long>();
+    // Each thread has its own nesting of events and timers
+    private final ThreadLocal<Stack<Long>> eventStack = new ThreadLocal<Stack<Long>>() {
+        @Override
+        protected Stack<Long> initialValue() {
+            return new Stack<Long>();
+        }
+    };
     private FileWriter fileLog;
     /**
      * key: responsible class, value: number of times a timing record was
@@ -38,7 +44,12 @@ public class DefaultMetadataLogger implements MetadataLogger {
      */
     private final Map<String, Long> invocations = new HashMap<String, Long>();
     private final Class<DefaultMetadataLogger> mutex = DefaultMetadataLogger.class;
-    private final Stack<TimerEntry> timerStack = new Stack<TimerEntry>();
+    private final ThreadLocal<Stack<TimerEntry>> timerStack = new ThreadLocal<Stack<TimerEntry>>() {
+        @Override
+        protected Stack<TimerEntry> initialValue() {
+            return new Stack<TimerEntry>();
+        }
+    };
     /** key: responsible class, value: nanos occupied */
     private final Map<String, Long> timings = new HashMap<String, Long>();
 
@@ -67,6 +78,7 @@ public class DefaultMetadataLogger implements MetadataLogger {
 
     public void log(final String message) {
         Validate.notBlank(message, "Message to log required");
+        final Stack<Long> eventStack = this.eventStack.get();
         Validate.isTrue(eventStack.size() > 0,
                 "Event stack is empty, so no logging should have been requested at this time");
         final StringBuilder sb = new StringBuilder("00000000");
@@ -84,23 +96,25 @@ public class DefaultMetadataLogger implements MetadataLogger {
     }
 
     private void logToFile(final String line) {
-        if (fileLog == null) {
+        synchronized (mutex) {
+            if (fileLog == null) {
+                try {
+                    // Overwrite existing (don't append)
+                    fileLog = new FileWriter("metadata.log", false);
+                }
+                catch (final IOException ignore) {
+                }
+                if (fileLog == null) {
+                    // Still failing, so give up
+                    return;
+                }
+            }
             try {
-                // Overwrite existing (don't append)
-                fileLog = new FileWriter("metadata.log", false);
+                fileLog.write(line + "\n"); // Unix line endings only from Roo
+                fileLog.flush(); // So tail -f will show it's working
             }
-            catch (final IOException ignore) {
+            catch (final IOException ignoreIt) {
             }
-            if (fileLog == null) {
-                // Still failing, so give up
-                return;
-            }
-        }
-        try {
-            fileLog.write(line + "\n"); // Unix line endings only from Roo
-            fileLog.flush(); // So tail -f will show it's working
-        }
-        catch (final IOException ignoreIt) {
         }
     }
 
@@ -109,12 +123,16 @@ public class DefaultMetadataLogger implements MetadataLogger {
     }
 
     public void startEvent() {
-        eventNumber++;
-        eventStack.push(eventNumber);
+        final long thisEvent;
+        synchronized (mutex) {
+            thisEvent = ++eventNumber;
+        }
+        eventStack.get().push(thisEvent);
     }
 
     public void startTimer(final String responsibleClass) {
         Validate.notBlank(responsibleClass, "Responsible class required");
+        final Stack<TimerEntry> timerStack = this.timerStack.get();
         final long now = System.nanoTime();
         if (timerStack.size() > 0) {
             // There is an existing timer on the stack, so we need to stop the
@@ -133,6 +151,7 @@ public class DefaultMetadataLogger implements MetadataLogger {
     }
 
     public void stopEvent() {
+        final Stack<Long> eventStack = this.eventStack.get();
         Validate.isTrue(
                 eventStack.size() > 0,
                 "Event stack is empty, indicating a mismatched number of timer start/stop calls");
@@ -140,6 +159,7 @@ public class DefaultMetadataLogger implements MetadataLogger {
     }
 
     public void stopTimer() {
+        final Stack<TimerEntry> timerStack = this.timerStack.get();
         Validate.isTrue(
                 timerStack.size() > 0,
                 "Timer stack is empty, indicating a mismatched number of timer start/stop calls");
@@ -1,11 +1,22 @@
 package org.springframework.roo.metadata;
 
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.builder.ToStringBuilder;
@@ -21,9 +32,19 @@ import org.springframework.roo.metadata.internal.AbstractMetadataCache;
 /**
  * Default implementation of {@link MetadataService}.
  * <p>
- * This implementation is not thread safe. It should only be accessed by a
- * single thread at a time. This is enforced by the process manager semantics,
- * so we avoid the cost of re-synchronization here.
+ * Callers are normally serialised by the process manager. The internal lock
+ * therefore only guards the cache and request bookkeeping, not the calls to
+ * {@link MetadataProvider}s; each MID being produced is instead recorded
+ * against the thread producing it, and any other thread requesting that MID
+ * waits for it to be produced. Setting the
+ * <code>roo.metadata.parallelism</code> system property to a value greater
+ * than one lets {@link #evictAndGetAll(Collection)} produce independent items
+ * on that many threads, which is only safe if every installed
+ * {@link MetadataProvider} is itself thread safe, as are the core services
+ * involved in producing physical type metadata. Items requested in bulk while
+ * producing another item, including on the pool's own threads, are produced
+ * one after another on the requesting thread, so that a full pool can't
+ * deadlock waiting for itself.
  * 
  * @author Ben Alex
  * @since 1.0
@@ -38,17 +59,35 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
     @Reference private MetadataLogger metadataLogger;
 
     // Request control
-    // List to assist output "stacks"which show the order of requests
-    private final List<String> activeRequests = new ArrayList<String>();
+    // List to assist output "stacks"which show the order of requests; one per
+    // thread, as each thread can be producing its own chain of requests
+    private final ThreadLocal<List<String>> activeRequests = new ThreadLocal<List<String>>() {
+        @Override
+        protected List<String> initialValue() {
+            return new ArrayList<String>();
+        }
+    };
+    // The MID each thread is waiting for another thread to produce
+    private final Map<Thread, String> awaitedRequests = new HashMap<Thread, String>();
     private int cacheEvictions = 0;
     private int cacheHits = 0;
     private int cacheMisses = 0;
     private int cachePuts = 0;
+    private ExecutorService executor;
+    // The thread currently producing each MID
+    private final Map<String, Thread> inFlightRequests = new HashMap<String, Thread>();
     // List to help us verify correct operation through logs (predictable
     // ordering)
-    private final List<String> keysToRetry = new ArrayList<String>();
+    private final ThreadLocal<List<String>> keysToRetry = new ThreadLocal<List<String>>() {
+        @Override
+        protected List<String> initialValue() {
+            return new ArrayList<String>();
+        }
+    };
     // Mutex
     private final Object lock = new Object();
+    private int parallelGets = 0;
+    private int parallelism = 1;
     private final Map<String, MetadataProvider> providerMap = new HashMap<String, MetadataProvider>();
     private final Set<MetadataProvider> providers = new HashSet<MetadataProvider>();
     private int recursiveGets = 0;
@@ -56,6 +95,12 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
 
     protected void activate(final ComponentContext context) {
         metadataDependencyRegistry.addNotificationListener(this);
+        final String requestedParallelism = System
+                .getProperty("roo.metadata.parallelism");
+        if (requestedParallelism != null) {
+            parallelism = Math.max(1,
+                    Integer.parseInt(requestedParallelism.trim()));
+        }
     }
 
     protected void bindMetadataProvider(final MetadataProvider mp) {
@@ -77,6 +122,12 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
 
     protected void deactivate(final ComponentContext context) {
         metadataDependencyRegistry.removeNotificationListener(this);
+        synchronized (lock) {
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
     }
 
     @Override
@@ -120,6 +171,47 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
         return getInternal(metadataIdentificationString, true, false);
     }
 
+    public Map<String, MetadataItem> evictAndGetAll(
+            final Collection<String> metadataIdentificationStrings) {
+        Validate.notNull(metadataIdentificationStrings,
+                "Metadata identification strings required");
+        final Map<String, MetadataItem> results = new LinkedHashMap<String, MetadataItem>();
+        if (parallelism < 2 || metadataIdentificationStrings.size() < 2
+                || !activeRequests.get().isEmpty()) {
+            for (final String mid : metadataIdentificationStrings) {
+                results.put(mid, evictAndGet(mid));
+            }
+            return results;
+        }
+
+        // Produce each wave in parallel, waiting for it to complete before
+        // starting on the next one, which may depend on it
+        final ExecutorService executorService = getExecutor();
+        final Map<String, MetadataItem> produced = new HashMap<String, MetadataItem>();
+        for (final List<String> wave : getWaves(metadataIdentificationStrings)) {
+            final Map<String, Future<MetadataItem>> futures = new LinkedHashMap<String, Future<MetadataItem>>();
+            for (final String mid : wave) {
+                futures.put(mid,
+                        executorService.submit(new Callable<MetadataItem>() {
+                            public MetadataItem call() {
+                                return evictAndGet(mid);
+                            }
+                        }));
+            }
+            synchronized (lock) {
+                parallelGets += futures.size();
+            }
+            for (final Entry<String, Future<MetadataItem>> future : futures
+                    .entrySet()) {
+                produced.put(future.getKey(), getResult(future.getValue()));
+            }
+        }
+        for (final String mid : metadataIdentificationStrings) {
+            results.put(mid, produced.get(mid));
+        }
+        return results;
+    }
+
     public MetadataItem get(final String metadataIdentificationString) {
         return get(metadataIdentificationString, false);
     }
@@ -129,6 +221,26 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
         return getInternal(metadataIdentificationString, evictCache, true);
     }
 
+    private ExecutorService getExecutor() {
+        synchronized (lock) {
+            if (executor == null) {
+                final AtomicInteger threadNumber = new AtomicInteger();
+                executor = Executors.newFixedThreadPool(parallelism,
+                        new ThreadFactory() {
+                            public Thread newThread(final Runnable r) {
+                                final Thread thread = new Thread(r,
+                                        "Metadata materialization "
+                                                + threadNumber
+                                                        .incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+            }
+            return executor;
+        }
+    }
+
     private MetadataItem getInternal(final String metadataIdentificationString,
             final boolean evictCache, final boolean cacheRetrievalAllowed) {
         Validate.isTrue(
@@ -137,11 +249,14 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
                 "Metadata identification string '%s' does not identify a metadata instance",
                 metadataIdentificationString);
 
-        synchronized (lock) {
-            validGets++;
+        final List<String> activeRequests = this.activeRequests.get();
+        boolean producing = false;
+        try {
+            metadataLogger.startEvent();
 
-            try {
-                metadataLogger.startEvent();
+            final MetadataProvider p;
+            synchronized (lock) {
+                validGets++;
 
                 // Do some cache eviction if the caller requested it
                 if (evictCache) {
@@ -174,10 +289,35 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
                 }
                 cacheMisses++;
 
+                // If another thread is producing this MID, wait for it to
+                // finish, then use its result if we're allowed to
+                while (inFlightRequests.containsKey(metadataIdentificationString)
+                        && !activeRequests
+                                .contains(metadataIdentificationString)
+                        && !isCircularWait(metadataIdentificationString)) {
+                    awaitedRequests.put(Thread.currentThread(),
+                            metadataIdentificationString);
+                    try {
+                        lock.wait();
+                    }
+                    finally {
+                        awaitedRequests.remove(Thread.currentThread());
+                    }
+                    if (cacheRetrievalAllowed
+                            && !inFlightRequests
+                                    .containsKey(metadataIdentificationString)) {
+                        final MetadataItem result = getFromCache(metadataIdentificationString);
+                        if (result != null) {
+                            return result;
+                        }
+                    }
+                }
+
                 // Determine if this MID was already requested earlier. We need
                 // to stop these infinite requests from occurring.
-                if (activeRequests.contains(metadataIdentificationString)) {
+                if (inFlightRequests.containsKey(metadataIdentificationString)) {
                     recursiveGets++;
+                    final List<String> keysToRetry = this.keysToRetry.get();
                     if (!keysToRetry.contains(metadataIdentificationString)) {
                         if (metadataLogger.getTraceLevel() > 0) {
                             metadataLogger.log("Blocked recursive request for "
@@ -191,29 +331,34 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
                 // Get the destination
                 final String mdClassId = MetadataIdentificationUtils
                         .getMetadataClassId(metadataIdentificationString);
-                final MetadataProvider p = providerMap.get(mdClassId);
+                p = providerMap.get(mdClassId);
                 Validate.notNull(
                         p,
                         "No metadata provider is currently registered to provide metadata for identifier '%s' (class '%s')",
                         metadataIdentificationString, mdClassId);
 
                 // Infinite loop management
+                inFlightRequests.put(metadataIdentificationString,
+                        Thread.currentThread());
                 activeRequests.add(metadataIdentificationString);
+                producing = true;
+            }
 
-                // Obtain the item
-                if (metadataLogger.getTraceLevel() > 0) {
-                    metadataLogger.log("Get " + metadataIdentificationString
-                            + " from " + p.getClass().getName());
-                }
-                MetadataItem result = null;
-                try {
-                    metadataLogger.startTimer(p.getClass().getName());
-                    result = p.get(metadataIdentificationString);
-                }
-                finally {
-                    metadataLogger.stopTimer();
-                }
+            // Obtain the item
+            if (metadataLogger.getTraceLevel() > 0) {
+                metadataLogger.log("Get " + metadataIdentificationString
+                        + " from " + p.getClass().getName());
+            }
+            MetadataItem result = null;
+            try {
+                metadataLogger.startTimer(p.getClass().getName());
+                result = p.get(metadataIdentificationString);
+            }
+            finally {
+                metadataLogger.stopTimer();
+            }
 
+            synchronized (lock) {
                 // If the item isn't available, evict it from the cache (unless
                 // we did so at the start of the method already)
                 if (result == null && !evictCache) {
@@ -234,59 +379,155 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
                     super.put(result);
                     cachePuts++;
                 }
+            }
 
-                activeRequests.remove(metadataIdentificationString);
+            if (metadataLogger.getTraceLevel() > 0) {
+                metadataLogger.log("Returning " + metadataIdentificationString);
+            }
 
-                if (metadataLogger.getTraceLevel() > 0) {
-                    metadataLogger.log("Returning "
-                            + metadataIdentificationString);
+            return result;
+        }
+        catch (final Exception e) {
+            throw new IllegalStateException(e);
+        }
+        finally {
+            if (producing) {
+                synchronized (lock) {
+                    activeRequests.remove(metadataIdentificationString);
+                    inFlightRequests.remove(metadataIdentificationString);
+                    lock.notifyAll();
                 }
-
-                return result;
             }
-            catch (final Exception e) {
-                activeRequests.remove(metadataIdentificationString);
-                throw new IllegalStateException(e);
+            // We use another try..finally block as we want to ensure
+            // exceptions don't prevent our metadataLogger.stopEvent()
+            try {
+                // Have we processed all requests? If so, handle any retries we
+                // recorded
+                if (activeRequests.isEmpty()) {
+                    final List<String> keysToRetry = this.keysToRetry.get();
+                    final List<String> thisRetry = new ArrayList<String>();
+                    thisRetry.addAll(keysToRetry);
+                    keysToRetry.clear();
+                    if (metadataLogger.getTraceLevel() > 0
+                            && thisRetry.size() > 0) {
+                        metadataLogger.log(thisRetry.size()
+                                + " keys to retry: " + thisRetry);
+                    }
+                    for (final String retryMid : thisRetry) {
+                        // Important: we should not evict any prior version
+                        // from the cache (an interim version is acceptable).
+                        // We discard the result of the get; this is purely to
+                        // facilitate updating metadata stored in memory and
+                        // on-disk
+                        if (metadataLogger.getTraceLevel() > 0) {
+                            metadataLogger.log("Retrying " + retryMid);
+                        }
+                        getInternal(retryMid, false, false);
+                    }
+                    if (metadataLogger.getTraceLevel() > 0
+                            && thisRetry.size() > 0) {
+                        metadataLogger.log("Retry group completed "
+                                + metadataIdentificationString);
+                    }
+                }
             }
             finally {
-                // We use another try..finally block as we want to ensure
-                // exceptions don't prevent our metadataLogger.stopEvent()
-                try {
-                    // Have we processed all requests? If so, handle any retries
-                    // we recorded
-                    if (activeRequests.isEmpty()) {
-                        final List<String> thisRetry = new ArrayList<String>();
-                        thisRetry.addAll(keysToRetry);
-                        keysToRetry.clear();
-                        if (metadataLogger.getTraceLevel() > 0
-                                && thisRetry.size() > 0) {
-                            metadataLogger.log(thisRetry.size()
-                                    + " keys to retry: " + thisRetry);
-                        }
-                        for (final String retryMid : thisRetry) {
-                            // Important: we should not evict any prior version
-                            // from the cache (an interim version is
-                            // acceptable).
-                            // We discard the result of the get; this is purely
-                            // to facilitate updating metadata stored in memory
-                            // and on-disk
-                            if (metadataLogger.getTraceLevel() > 0) {
-                                metadataLogger.log("Retrying " + retryMid);
-                            }
-                            getInternal(retryMid, false, false);
-                        }
-                        if (metadataLogger.getTraceLevel() > 0
-                                && thisRetry.size() > 0) {
-                            metadataLogger.log("Retry group completed "
-                                    + metadataIdentificationString);
-                        }
+                metadataLogger.stopEvent();
+            }
+        }
+    }
+
+    /**
+     * Returns the result of the given production of a metadata item,
+     * propagating any failure to the caller.
+     * 
+     * @param future the production to wait for
+     * @return the produced item (can be <code>null</code>)
+     */
+    private MetadataItem getResult(final Future<MetadataItem> future) {
+        try {
+            return future.get();
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Splits the given MIDs into waves, such that no MID depends directly on
+     * another MID in the same or a later wave. MIDs within a wave can
+     * therefore be produced in parallel; any indirect dependencies between
+     * them are still honoured, as a thread requesting a MID that another
+     * thread is producing waits for it.
+     * 
+     * @param metadataIdentificationStrings the MIDs to produce
+     * @return a non-<code>null</code> list of non-empty waves
+     */
+    private List<List<String>> getWaves(
+            final Collection<String> metadataIdentificationStrings) {
+        final Set<String> remaining = new LinkedHashSet<String>(
+                metadataIdentificationStrings);
+        final List<List<String>> waves = new ArrayList<List<String>>();
+        while (!remaining.isEmpty()) {
+            final List<String> wave = new ArrayList<String>();
+            for (final String mid : remaining) {
+                boolean independent = true;
+                for (final String upstream : metadataDependencyRegistry
+                        .getUpstream(mid)) {
+                    if (remaining.contains(upstream)) {
+                        independent = false;
+                        break;
                     }
                 }
-                finally {
-                    metadataLogger.stopEvent();
+                if (independent) {
+                    wave.add(mid);
                 }
             }
+            if (wave.isEmpty()) {
+                // Can't happen given the registry rejects cycles, but if it
+                // did, fall back to producing everything at once
+                wave.addAll(remaining);
+            }
+            remaining.removeAll(wave);
+            waves.add(wave);
+        }
+        return waves;
+    }
+
+    /**
+     * Indicates whether the given MID can be requested by the current thread
+     * without waiting for another thread to finish producing it.
+     * <p>
+     * Waiting would deadlock if the producing thread is itself (directly or
+     * via other threads) waiting for a MID the current thread is producing,
+     * in which case the request is treated as a recursive one. Must be called
+     * while holding the lock.
+     * 
+     * @param metadataIdentificationString the MID being requested
+     * @return <code>true</code> if waiting would deadlock
+     */
+    private boolean isCircularWait(final String metadataIdentificationString) {
+        final Thread currentThread = Thread.currentThread();
+        final Set<Thread> visited = new HashSet<Thread>();
+        Thread producer = inFlightRequests.get(metadataIdentificationString);
+        while (producer != null && visited.add(producer)) {
+            if (producer == currentThread) {
+                return true;
+            }
+            final String awaited = awaitedRequests.get(producer);
+            if (awaited == null) {
+                return false;
+            }
+            producer = inFlightRequests.get(awaited);
         }
+        return false;
     }
 
     public void notify(final String upstreamDependency,
@@ -300,47 +541,49 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
                 "Downstream dependency is an invalid metadata identification string ('%s')",
                 downstreamDependency);
 
+        // Get the destination
+        final String mdClassId = MetadataIdentificationUtils
+                .getMetadataClassId(downstreamDependency);
+        final MetadataProvider p;
         synchronized (lock) {
-            // Get the destination
-            final String mdClassId = MetadataIdentificationUtils
-                    .getMetadataClassId(downstreamDependency);
-            final MetadataProvider p = providerMap.get(mdClassId);
-
-            if (p == null) {
-                // No known provider that can consume this notification, so just
-                // return as per the interface contract
-                return;
-            }
+            p = providerMap.get(mdClassId);
+        }
 
-            if (p instanceof MetadataNotificationListener) {
-                // The provider can directly handle this notification, so we
-                // just need to delegate directly to it.
-                // We rely on the provider to evict items from the cache if
-                // applicable.
-                ((MetadataNotificationListener) p).notify(upstreamDependency,
-                        downstreamDependency);
-            }
-            else {
-                // As per interface contract, we just ensure we evict the item
-                // and recreate it
-                // However, we only do this if the destination is an instance -
-                // if it's a class, "get" is not a meaningful operation.
-                if (MetadataIdentificationUtils
-                        .isIdentifyingInstance(downstreamDependency)) {
-                    get(downstreamDependency, true);
-                }
-                // As per interface contract, we now notify any listeners this
-                // downstream instance has probably now changed
-                metadataDependencyRegistry
-                        .notifyDownstream(downstreamDependency);
+        if (p == null) {
+            // No known provider that can consume this notification, so just
+            // return as per the interface contract
+            return;
+        }
+
+        if (p instanceof MetadataNotificationListener) {
+            // The provider can directly handle this notification, so we just
+            // need to delegate directly to it.
+            // We rely on the provider to evict items from the cache if
+            // applicable.
+            ((MetadataNotificationListener) p).notify(upstreamDependency,
+                    downstreamDependency);
+        }
+        else {
+            // As per interface contract, we just ensure we evict the item and
+            // recreate it
+            // However, we only do this if the destination is an instance - if
+            // it's a class, "get" is not a meaningful operation.
+            if (MetadataIdentificationUtils
+                    .isIdentifyingInstance(downstreamDependency)) {
+                get(downstreamDependency, true);
             }
+            // As per interface contract, we now notify any listeners this
+            // downstream instance has probably now changed
+            metadataDependencyRegistry.notifyDownstream(downstreamDependency);
         }
     }
 
     @Override
     public void put(final MetadataItem metadataItem) {
-        super.put(metadataItem);
-        cachePuts++;
+        synchronized (lock) {
+            super.put(metadataItem);
+            cachePuts++;
+        }
     }
 
     @Override
@@ -354,6 +597,8 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
         builder.append("cacheEvictions", cacheEvictions);
         builder.append("cacheCurrentSize", getCacheSize());
         builder.append("cacheMaximumSize", getMaxCapacity());
+        builder.append("parallelism", parallelism);
+        builder.append("parallelGets", parallelGets);
         return builder.toString().replaceFirst("@[0-9a-f]+", ":");
     }
 
@@ -364,4 +609,4 @@ public class DefaultMetadataService extends AbstractMetadataCache implements
             providerMap.remove(mid);
         }
     }
-}
\ No newline at end of file
+}
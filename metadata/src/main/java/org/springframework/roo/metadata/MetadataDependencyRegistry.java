@@ -1,5 +1,6 @@
 package org.springframework.roo.metadata;
 
+import java.util.Collection;
 import java.util.Set;
 
 /**
@@ -53,6 +54,22 @@ public interface MetadataDependencyRegistry {
      */
     void addNotificationListener(MetadataNotificationListener listener);
 
+    /**
+     * Defers all notifications, i.e. calls to
+     * {@link #notifyDownstream(String)} and
+     * {@link #notifyDownstream(Collection)} by any thread (including those
+     * producing metadata in parallel on the calling thread's behalf), until
+     * {@link #releaseNotifications(boolean)} is called. This allows a series
+     * of changes to be notified as a single batch, so that each downstream
+     * item is rebuilt once rather than once per change; in the meantime,
+     * downstream items remain as they were before the changes. Intended for
+     * use by the thread holding the process manager's lock; has no effect if
+     * notifications are already being deferred.
+     * 
+     * @since 1.2.5
+     */
+    void deferNotifications();
+
     /**
      * Removes all upstream dependencies that were previously registered for the
      * specified downstream dependency. This is useful if rebuilding the
@@ -138,6 +155,29 @@ public interface MetadataDependencyRegistry {
     boolean isValidDependency(String upstreamDependency,
             String downstreamDependency);
 
+    /**
+     * Notifies everything downstream of the indicated metadata items as a
+     * single batch.
+     * <p>
+     * Rather than notifying each immediate downstream dependency as soon as it
+     * is reached (which can cause the same downstream item to be rebuilt once
+     * per path leading to it), the transitive closure of the upstream
+     * dependencies is collected first and each item in it is notified at most
+     * once, after all of its own upstream dependencies within the closure.
+     * Items none of whose upstream dependencies actually changed are skipped.
+     * Any {@link #notifyDownstream(String)} made by the same thread while the
+     * batch is being delivered becomes part of the batch.
+     * <p>
+     * {@link MetadataNotificationListener}s are notified as per
+     * {@link #notifyDownstream(String)}, once for each item that changed.
+     * 
+     * @param upstreamDependencies the metadata items that changed (required;
+     *            each must return true if presented to
+     *            {@link MetadataIdentificationUtils#isValid(String)})
+     * @since 1.2.5
+     */
+    void notifyDownstream(Collection<String> upstreamDependencies);
+
     /**
      * Causes the immediate downstream dependencies of the indicated metadata
      * item to be notified the upstream metadata item is publishing a
@@ -172,6 +212,19 @@ public interface MetadataDependencyRegistry {
     void registerDependency(String upstreamDependency,
             String downstreamDependency);
 
+    /**
+     * Stops deferring notifications, as started by
+     * {@link #deferNotifications()}.
+     * 
+     * @param deliver whether to notify everything downstream of the items
+     *            notified in the meantime, as per
+     *            {@link #notifyDownstream(Collection)}; <code>false</code>
+     *            discards those notifications, e.g. because the changes they
+     *            relate to have been undone
+     * @since 1.2.5
+     */
+    void releaseNotifications(boolean deliver);
+
     /**
      * De-register an additional instance to receive
      * {@link MetadataNotificationListener} events. If the listener was never
@@ -1,5 +1,8 @@
 package org.springframework.roo.metadata;
 
+import java.util.Collection;
+import java.util.Map;
+
 /**
  * Indicates a service which is aware of all {@link MetadataProvider}s in the
  * system and can provide access to their respective capabilities.
@@ -54,6 +57,23 @@ public interface MetadataService extends MetadataNotificationListener,
      */
     MetadataItem evictAndGet(String metadataIdentificationString);
 
+    /**
+     * Equivalent to calling {@link #evictAndGet(String)} for each of the given
+     * IDs, except that implementations are free to generate items that don't
+     * depend upon each other concurrently.
+     * 
+     * @param metadataIdentificationStrings the IDs of the {@link MetadataItem}s
+     *            to acquire (required; each must identify a metadata
+     *            instance)
+     * @return a map of each given ID to its metadata (or <code>null</code> if
+     *         the ID was valid but the metadata is not currently available),
+     *         in the order the IDs were given
+     * @throws an exception if any given type of metadata is not supported
+     * @since 1.2.5
+     */
+    Map<String, MetadataItem> evictAndGetAll(
+            Collection<String> metadataIdentificationStrings);
+
     /**
      * Returns the {@link MetadataItem} with the given ID, from the cache if
      * possible.
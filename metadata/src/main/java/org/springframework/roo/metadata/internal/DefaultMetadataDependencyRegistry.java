@@ -1,9 +1,17 @@
 package org.springframework.roo.metadata.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Set;
 import java.util.concurrent.CopyOnWriteArraySet;
 
@@ -20,9 +28,24 @@ import org.springframework.roo.metadata.MetadataService;
 /**
  * Default implementation of {@link MetadataDependencyRegistry}.
  * <p>
- * This implementation is not thread safe. It should only be accessed by a
- * single thread at a time. This is enforced by the process manager semantics,
- * so we avoid the cost of re-synchronization here.
+ * To keep the graph compact, MIDs are held as handles issued by a
+ * {@link MetadataIdentifierTable} and the dependencies of each handle in an
+ * {@link IntHashSet}; strings are only created for callers of the public API.
+ * <p>
+ * Circular dependencies are detected incrementally, by maintaining a
+ * topological order of the graph as dependencies are registered. A proposed
+ * dependency can only close a cycle if its upstream currently comes after its
+ * downstream, and even then only the part of the graph lying between the two
+ * needs to be searched.
+ * <p>
+ * The dependency maps are guarded by a lock, as they can be consulted and
+ * updated by several threads when the {@link MetadataService} is producing
+ * metadata in parallel. Notifications are dispatched without holding the lock.
+ * <p>
+ * Setting the <code>roo.metadata.batchNotifications</code> system property to
+ * <code>true</code> causes every {@link #notifyDownstream(String)} to be
+ * delivered as a batch of one, as described in
+ * {@link #notifyDownstream(Collection)}.
  * 
  * @author Ben Alex
  * @since 1.0
@@ -31,13 +54,77 @@ import org.springframework.roo.metadata.MetadataService;
 @Service
 public class DefaultMetadataDependencyRegistry implements
         MetadataDependencyRegistry {
-    /** key: downstream dependency; value: list<upstream dependencies> */
-    private final Map<String, Set<String>> downstreamKeyed = new HashMap<String, Set<String>>();
-    private final Set<MetadataNotificationListener> listeners = new HashSet<MetadataNotificationListener>();
+
+    /**
+     * The state of a batch of notifications being delivered by one thread.
+     * <p>
+     * Changes are ordered by a sequence number, which allows a downstream MID
+     * to be rebuilt only if one of its upstreams changed after the downstream
+     * was last rebuilt.
+     */
+    private static class NotificationBatch {
+
+        /** key: changed MID; value: sequence at which listeners were told */
+        final Map<String, Integer> announced = new HashMap<String, Integer>();
+        /** key: changed MID; value: sequence at which it last changed */
+        final Map<String, Integer> changed = new LinkedHashMap<String, Integer>();
+        /** key: rebuilt MID; value: sequence at which it was last rebuilt */
+        final Map<String, Integer> rebuiltAt = new HashMap<String, Integer>();
+        /** Changed MIDs whose downstreams have yet to be notified */
+        final Set<String> pending = new LinkedHashSet<String>();
+        /** MIDs of the current round that have yet to be notified */
+        final Set<String> unprocessed = new HashSet<String>();
+        int notified;
+        int rebuilt;
+        int rounds;
+        int sequence;
+        int skipped;
+
+        void add(final String mid) {
+            changed.put(mid, ++sequence);
+            rebuiltAt.put(mid, sequence);
+            if (!unprocessed.contains(mid)) {
+                // Its downstreams won't be reached in the current round
+                pending.add(mid);
+            }
+        }
+
+        int getChange(final String mid) {
+            final Integer change = changed.get(mid);
+            return change == null ? -1 : change;
+        }
+
+        int getRebuild(final String mid) {
+            final Integer rebuild = rebuiltAt.get(mid);
+            return rebuild == null ? -1 : rebuild;
+        }
+    }
+
+    private static final boolean BATCH_NOTIFICATIONS = Boolean
+            .getBoolean("roo.metadata.batchNotifications");
+
+    private final ThreadLocal<NotificationBatch> activeBatch = new ThreadLocal<NotificationBatch>();
+    /**
+     * The MIDs notified while notifications are deferred, by any thread (e.g.
+     * one producing metadata in parallel for the deferring thread)
+     */
+    private Set<String> deferred;
+    /** index: downstream dependency; value: its upstream dependencies */
+    private IntHashSet[] downstreamKeyed = new IntHashSet[64];
+    private final Set<MetadataNotificationListener> listeners = new CopyOnWriteArraySet<MetadataNotificationListener>();
+    // Mutex
+    private final Object lock = new Object();
     @Reference private MetadataLogger metadataLogger;
     private MetadataService metadataService;
-    /** key: upstream dependency; value: list<downstream dependencies> */
-    private final Map<String, Set<String>> upstreamKeyed = new HashMap<String, Set<String>>();
+    private int maxOrder;
+    private final MetadataIdentifierTable mids = new MetadataIdentifierTable();
+    private int minOrder;
+    /** index: MID handle; value: its position in a topological order */
+    private int[] order = new int[64];
+    /** The number of MID handles that have a position in the order */
+    private int ordered;
+    /** index: upstream dependency; value: its downstream dependencies */
+    private IntHashSet[] upstreamKeyed = new IntHashSet[64];
 
     public void addNotificationListener(
             final MetadataNotificationListener listener) {
@@ -53,16 +140,40 @@ public class DefaultMetadataDependencyRegistry implements
         listeners.add(listener);
     }
 
-    private void buildSetOfAllUpstreamDependencies(final Set<String> results,
-            final String downstreamDependency) {
-        final Set<String> upstreams = downstreamKeyed.get(downstreamDependency);
-        if (upstreams == null) {
-            return;
+    /**
+     * Collects the given handle and those reachable from it via the given
+     * edges, without passing through any handle whose position in the
+     * topological order lies outside the given (exclusive) bounds.
+     */
+    private IntHashSet collect(final int start, final IntHashSet[] edges,
+            final int lowerBound, final int upperBound) {
+        final IntHashSet results = new IntHashSet();
+        results.add(start);
+        int[] stack = { start };
+        int depth = 1;
+        while (depth > 0) {
+            final IntHashSet next = edges[stack[--depth]];
+            if (next == null) {
+                continue;
+            }
+            for (final int handle : next.toArray()) {
+                if (order[handle] > lowerBound && order[handle] < upperBound
+                        && results.add(handle)) {
+                    if (depth == stack.length) {
+                        stack = Arrays.copyOf(stack, depth * 2);
+                    }
+                    stack[depth++] = handle;
+                }
+            }
         }
+        return results;
+    }
 
-        for (final String upstream : upstreams) {
-            results.add(upstream);
-            buildSetOfAllUpstreamDependencies(results, upstream);
+    public void deferNotifications() {
+        synchronized (lock) {
+            if (deferred == null) {
+                deferred = new LinkedHashSet<String>();
+            }
         }
     }
 
@@ -72,17 +183,21 @@ public class DefaultMetadataDependencyRegistry implements
                 "Downstream dependency is an invalid metadata identification string ('%s')",
                 downstreamDependency);
 
-        // Acquire the keys to delete
-        final Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-        if (upstream == null) {
-            return;
-        }
-
-        final Set<String> upstreamToDelete = new HashSet<String>(upstream);
+        synchronized (lock) {
+            // Acquire the keys to delete
+            final int downstream = mids.find(downstreamDependency);
+            final IntHashSet upstream = getSet(downstreamKeyed, downstream);
+            if (upstream == null) {
+                return;
+            }
 
-        // Delete them normally
-        for (final String deleteUpstream : upstreamToDelete) {
-            deregisterDependency(deleteUpstream, downstreamDependency);
+            // Delete them from both maps
+            downstreamKeyed[downstream] = null;
+            for (final int deleteUpstream : upstream.toArray()) {
+                upstreamKeyed[deleteUpstream].remove(downstream);
+                releaseIfUnused(deleteUpstream);
+            }
+            releaseIfUnused(downstream);
         }
     }
 
@@ -97,16 +212,26 @@ public class DefaultMetadataDependencyRegistry implements
                 "Downstream dependency is an invalid metadata identification string ('%s')",
                 downstreamDependency);
 
-        // Maintain the upstream-keyed map, if it even exists
-        final Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-        if (downstream != null) {
-            downstream.remove(downstreamDependency);
-        }
+        synchronized (lock) {
+            final int upstreamHandle = mids.find(upstreamDependency);
+            final int downstreamHandle = mids.find(downstreamDependency);
 
-        // Maintain the downstream-keyed map, if it even exists
-        final Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-        if (upstream != null) {
-            upstream.remove(upstreamDependency);
+            // Maintain the upstream-keyed map, if it even exists
+            final IntHashSet downstream = getSet(upstreamKeyed, upstreamHandle);
+            if (downstream != null) {
+                downstream.remove(downstreamHandle);
+            }
+
+            // Maintain the downstream-keyed map, if it even exists
+            final IntHashSet upstream = getSet(downstreamKeyed,
+                    downstreamHandle);
+            if (upstream != null) {
+                upstream.remove(upstreamHandle);
+            }
+            if (downstream != null || upstream != null) {
+                releaseIfUnused(upstreamHandle);
+                releaseIfUnused(downstreamHandle);
+            }
         }
     }
 
@@ -116,13 +241,131 @@ public class DefaultMetadataDependencyRegistry implements
                 "Upstream dependency is an invalid metadata identification string ('%s')",
                 upstreamDependency);
 
-        final Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-        if (downstream == null) {
+        synchronized (lock) {
+            return getMids(getSet(upstreamKeyed,
+                    mids.find(upstreamDependency)));
+        }
+    }
+
+    /**
+     * Converts the given handles to an immutable set of MIDs; a copy is
+     * returned, as the handles can be modified by another thread.
+     */
+    private Set<String> getMids(final IntHashSet handles) {
+        if (handles == null) {
             return new HashSet<String>();
         }
+        final Set<String> result = new HashSet<String>();
+        for (final int handle : handles.toArray()) {
+            result.add(mids.getMid(handle));
+        }
+        return Collections.unmodifiableSet(result);
+    }
+
+    /**
+     * Returns the MIDs to notify when the given MID changes, namely its own
+     * downstreams followed by those of its metadata class (the latter only if
+     * it identifies an instance), excluding itself.
+     * 
+     * @param upstreamDependency the changed MID
+     * @return a non-<code>null</code> set in notification order
+     */
+    private Set<String> getNotificationTargets(final String upstreamDependency) {
+        final Set<String> targets = new LinkedHashSet<String>(
+                getDownstream(upstreamDependency));
+        if (!MetadataIdentificationUtils.isIdentifyingClass(upstreamDependency)) {
+            targets.addAll(getDownstream(MetadataIdentificationUtils
+                    .getMetadataClassId(upstreamDependency)));
+            targets.remove(upstreamDependency);
+        }
+        return targets;
+    }
+
+    /**
+     * Returns the given downstream and those of its eventual downstreams that
+     * do not come after the given upstream in the topological order; these
+     * include the upstream if and only if it depends on the downstream.
+     */
+    private IntHashSet getReachableBefore(final int downstream,
+            final int upstream) {
+        return collect(downstream, upstreamKeyed, Integer.MIN_VALUE,
+                order[upstream] + 1);
+    }
+
+    private IntHashSet getSet(final IntHashSet[] sets, final int handle) {
+        if (handle < 0) {
+            return null;
+        }
+        final IntHashSet set = sets[handle];
+        return set == null || set.isEmpty() ? null : set;
+    }
+
+    /**
+     * Orders the given MIDs so that each comes after those of its upstreams
+     * that are also being ordered.
+     * 
+     * @param reachedVia key: MID to order; value: its upstreams (required)
+     * @return a non-<code>null</code> list
+     */
+    private List<String> getTopologicalOrder(
+            final Map<String, Set<String>> reachedVia) {
+        final Map<String, Integer> inDegrees = new LinkedHashMap<String, Integer>();
+        final Map<String, List<String>> downstreams = new HashMap<String, List<String>>();
+        for (final Entry<String, Set<String>> entry : reachedVia.entrySet()) {
+            int inDegree = 0;
+            for (final String upstream : entry.getValue()) {
+                if (reachedVia.containsKey(upstream)) {
+                    inDegree++;
+                    List<String> list = downstreams.get(upstream);
+                    if (list == null) {
+                        list = new ArrayList<String>();
+                        downstreams.put(upstream, list);
+                    }
+                    list.add(entry.getKey());
+                }
+            }
+            inDegrees.put(entry.getKey(), inDegree);
+        }
 
-        return Collections.unmodifiableSet(new CopyOnWriteArraySet<String>(
-                downstream));
+        final List<String> order = new ArrayList<String>(reachedVia.size());
+        final LinkedList<String> ready = new LinkedList<String>();
+        for (final Entry<String, Integer> entry : inDegrees.entrySet()) {
+            if (entry.getValue() == 0) {
+                ready.add(entry.getKey());
+            }
+        }
+        while (order.size() < inDegrees.size()) {
+            if (ready.isEmpty()) {
+                // Only class-level notifications can form a cycle; break it
+                // at the first MID still to be ordered
+                for (final Entry<String, Integer> entry : inDegrees
+                        .entrySet()) {
+                    if (entry.getValue() >= 0) {
+                        ready.add(entry.getKey());
+                        break;
+                    }
+                }
+            }
+            final String mid = ready.removeFirst();
+            if (inDegrees.get(mid) < 0) {
+                continue;
+            }
+            inDegrees.put(mid, -1);
+            order.add(mid);
+            final List<String> list = downstreams.get(mid);
+            if (list != null) {
+                for (final String downstream : list) {
+                    final int inDegree = inDegrees.get(downstream);
+                    if (inDegree > 0) {
+                        inDegrees.put(downstream, inDegree - 1);
+                        if (inDegree == 1) {
+                            ready.add(downstream);
+                        }
+                    }
+                }
+            }
+        }
+        return order;
     }
 
     public Set<String> getUpstream(final String downstreamDependency) {
@@ -131,53 +374,106 @@ public class DefaultMetadataDependencyRegistry implements
                 "Downstream dependency is an invalid metadata identification string ('%s')",
                 downstreamDependency);
 
-        final Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-        if (upstream == null) {
-            return new HashSet<String>();
+        synchronized (lock) {
+            return getMids(getSet(downstreamKeyed,
+                    mids.find(downstreamDependency)));
         }
+    }
 
-        return Collections.unmodifiableSet(upstream);
+    private boolean isDeferring() {
+        synchronized (lock) {
+            return deferred != null;
+        }
     }
 
     public boolean isValidDependency(final String upstreamDependency,
             final String downstreamDependency) {
-        Validate.isTrue(
-                MetadataIdentificationUtils.isValid(upstreamDependency),
-                "Upstream dependency is an invalid metadata identification string ('%s')",
-                upstreamDependency);
-        Validate.isTrue(
-                MetadataIdentificationUtils.isValid(downstreamDependency),
-                "Downstream dependency is an invalid metadata identification string ('%s')",
-                downstreamDependency);
-        Validate.isTrue(
-                !upstreamDependency.equals(downstreamDependency),
-                "Upstream dependency cannot be the same as the downstream dependency ('%s')",
-                downstreamDependency);
+        validateDependency(upstreamDependency, downstreamDependency);
+
+        synchronized (lock) {
+            // The simplest possible outcome is the relationship already
+            // exists, so quickly return in that case
+            final int upstream = mids.find(upstreamDependency);
+            final int downstream = mids.find(downstreamDependency);
+            if (upstream < 0 || downstream < 0) {
+                // One or other has never been registered, so can't be part of
+                // a cycle
+                return true;
+            }
+            final IntHashSet existing = upstreamKeyed[upstream];
+            if (existing != null && existing.contains(downstream)) {
+                return true;
+            }
 
-        // The simplest possible outcome is the relationship already exists, so
-        // quickly return in that case
-        Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-        if (downstream != null && downstream.contains(downstreamDependency)) {
-            return true;
+            return !mayCloseCycle(upstream, downstream)
+                    || !getReachableBefore(downstream, upstream).contains(
+                            upstream);
         }
-        // Don't need the variable anymore, as we don't care about the other
-        // downstream dependencies
-        downstream = null;
+    }
+
+    /**
+     * Indicates whether a dependency between the given handles could close a
+     * cycle. Anything downstream of a MID comes after it in the topological
+     * order, so the downstream can only be an eventual upstream of the
+     * upstream if it comes before it, and even then only if the upstream has
+     * upstreams of its own and the downstream has downstreams of its own.
+     */
+    private boolean mayCloseCycle(final int upstream, final int downstream) {
+        return order[upstream] > order[downstream]
+                && getSet(downstreamKeyed, upstream) != null
+                && getSet(upstreamKeyed, downstream) != null;
+    }
 
-        // Need to walk the upstream dependency's parent dependency graph,
-        // verifying no presence of the proposed downstream dependency
+    public void notifyDownstream(final Collection<String> upstreamDependencies) {
+        Validate.notNull(upstreamDependencies,
+                "Upstream dependencies required");
 
-        // Need to build a set representing every eventual upstream dependency
-        // of the indicated upstream dependency
-        final Set<String> allUpstreams = new HashSet<String>();
-        buildSetOfAllUpstreamDependencies(allUpstreams, upstreamDependency);
+        synchronized (lock) {
+            if (deferred != null) {
+                deferred.addAll(upstreamDependencies);
+                return;
+            }
+        }
 
-        // The dependency is valid if none of the upstreams depend on the
-        // proposed downstream
-        return !allUpstreams.contains(downstreamDependency);
+        final NotificationBatch existingBatch = activeBatch.get();
+        if (existingBatch != null) {
+            // Fold into the batch this thread is already delivering
+            for (final String upstreamDependency : upstreamDependencies) {
+                existingBatch.add(upstreamDependency);
+            }
+            return;
+        }
+
+        final NotificationBatch batch = new NotificationBatch();
+        for (final String upstreamDependency : upstreamDependencies) {
+            batch.add(upstreamDependency);
+        }
+        activeBatch.set(batch);
+        try {
+            metadataLogger.startEvent();
+            while (!batch.pending.isEmpty()) {
+                notifyRound(batch);
+            }
+            if (metadataLogger.getTraceLevel() > 0) {
+                metadataLogger.log("Batch of "
+                        + upstreamDependencies.size() + " upstream(s) in "
+                        + batch.rounds + " round(s): notified="
+                        + batch.notified + ", rebuilt=" + batch.rebuilt
+                        + ", skipped=" + batch.skipped);
+            }
+        }
+        finally {
+            activeBatch.remove();
+            metadataLogger.stopEvent();
+        }
     }
 
     public void notifyDownstream(final String upstreamDependency) {
+        if (activeBatch.get() != null || isDeferring() || BATCH_NOTIFICATIONS) {
+            notifyDownstream(Collections.singleton(upstreamDependency));
+            return;
+        }
+
         try {
             metadataLogger.startEvent();
 
@@ -193,15 +489,7 @@ public class DefaultMetadataDependencyRegistry implements
                     // No need to ensure upstreamDependency is different from
                     // downstream, as that's taken care of in the
                     // isValidDependency() method
-                    try {
-                        final String responsibleClass = MetadataIdentificationUtils
-                                .getMetadataClass(downstream);
-                        metadataLogger.startTimer(responsibleClass);
-                        metadataService.notify(upstreamDependency, downstream);
-                    }
-                    finally {
-                        metadataLogger.stopTimer();
-                    }
+                    notifyMetadataService(upstreamDependency, downstream);
                     notifiedDownstreams.add(downstream);
                 }
 
@@ -231,16 +519,8 @@ public class DefaultMetadataDependencyRegistry implements
                                 metadataLogger.log(upstreamDependency + " -> "
                                         + downstream + " [via class]");
                             }
-                            try {
-                                final String responsibleClass = MetadataIdentificationUtils
-                                        .getMetadataClass(downstream);
-                                metadataLogger.startTimer(responsibleClass);
-                                metadataService.notify(upstreamDependency,
-                                        downstream);
-                            }
-                            finally {
-                                metadataLogger.stopTimer();
-                            }
+                            notifyMetadataService(upstreamDependency,
+                                    downstream);
                         }
                     }
                 }
@@ -249,50 +529,224 @@ public class DefaultMetadataDependencyRegistry implements
             }
 
             // Finally dispatch the general-purpose additional listeners
-            for (final MetadataNotificationListener listener : listeners) {
-                if (metadataLogger.getTraceLevel() > 1) {
-                    metadataLogger.log(upstreamDependency + " -> "
-                            + upstreamDependency + " ["
-                            + listener.getClass().getSimpleName() + "]");
+            notifyListeners(upstreamDependency);
+        }
+        finally {
+            metadataLogger.stopEvent();
+        }
+    }
+
+    private void notifyListeners(final String upstreamDependency) {
+        for (final MetadataNotificationListener listener : listeners) {
+            if (metadataLogger.getTraceLevel() > 1) {
+                metadataLogger.log(upstreamDependency + " -> "
+                        + upstreamDependency + " ["
+                        + listener.getClass().getSimpleName() + "]");
+            }
+            try {
+                final String responsibleClass = listener.getClass().getName();
+                metadataLogger.startTimer(responsibleClass);
+                listener.notify(upstreamDependency, null);
+            }
+            finally {
+                metadataLogger.stopTimer();
+            }
+        }
+    }
+
+    private void notifyMetadataService(final String upstreamDependency,
+            final String downstreamDependency) {
+        try {
+            final String responsibleClass = MetadataIdentificationUtils
+                    .getMetadataClass(downstreamDependency);
+            metadataLogger.startTimer(responsibleClass);
+            metadataService.notify(upstreamDependency, downstreamDependency);
+        }
+        finally {
+            metadataLogger.stopTimer();
+        }
+    }
+
+    /**
+     * Delivers one round of the given batch, namely the notification of every
+     * MID downstream of the batch's pending changes, followed by the
+     * notification of the general-purpose listeners.
+     * <p>
+     * Changes reported while the round is being delivered are folded into it
+     * if their downstreams are still to be notified, otherwise they are left
+     * pending for the next round (this is typically the case for the instances
+     * that providers resolve from class-level notifications).
+     * 
+     * @param batch the batch being delivered (required)
+     */
+    private void notifyRound(final NotificationBatch batch) {
+        batch.rounds++;
+        final int roundStart = batch.sequence;
+        final Set<String> roots = new LinkedHashSet<String>(batch.pending);
+        batch.pending.clear();
+
+        if (metadataService != null) {
+            // Collect the transitive closure of the changed MIDs, recording
+            // the upstreams through which each downstream was reached
+            final Map<String, Set<String>> reachedVia = new LinkedHashMap<String, Set<String>>();
+            final LinkedList<String> queue = new LinkedList<String>(roots);
+            while (!queue.isEmpty()) {
+                final String upstream = queue.removeFirst();
+                for (final String downstream : getNotificationTargets(upstream)) {
+                    Set<String> upstreams = reachedVia.get(downstream);
+                    if (upstreams == null) {
+                        upstreams = new LinkedHashSet<String>();
+                        reachedVia.put(downstream, upstreams);
+                        queue.add(downstream);
+                    }
+                    upstreams.add(upstream);
                 }
-                try {
-                    final String responsibleClass = listener.getClass()
-                            .getName();
-                    metadataLogger.startTimer(responsibleClass);
-                    listener.notify(upstreamDependency, null);
+            }
+
+            final List<String> order = getTopologicalOrder(reachedVia);
+            batch.unprocessed.addAll(order);
+            for (final String downstream : order) {
+                batch.notified++;
+                boolean delivered = false;
+                for (final String upstream : reachedVia.get(downstream)) {
+                    final int change = batch.getChange(upstream);
+                    if (change < 0 || change <= batch.getRebuild(downstream)
+                            || change <= roundStart && !roots.contains(upstream)) {
+                        // Unchanged, or changed before this downstream was
+                        // last rebuilt
+                        continue;
+                    }
+                    if (metadataLogger.getTraceLevel() > 0) {
+                        metadataLogger.log(upstream + " -> " + downstream
+                                + " [batched]");
+                    }
+                    if (MetadataIdentificationUtils
+                            .isIdentifyingInstance(downstream)) {
+                        batch.rebuiltAt.put(downstream, ++batch.sequence);
+                    }
+                    notifyMetadataService(upstream, downstream);
+                    delivered = true;
+                    if (MetadataIdentificationUtils
+                            .isIdentifyingInstance(downstream)) {
+                        // Rebuilt once, whichever upstreams changed; a
+                        // class-level downstream instead needs to know
+                        // each upstream instance that changed
+                        break;
+                    }
+                }
+                batch.unprocessed.remove(downstream);
+                if (delivered) {
+                    batch.rebuilt++;
                 }
-                finally {
-                    metadataLogger.stopTimer();
+                else {
+                    batch.skipped++;
                 }
             }
         }
-        finally {
-            metadataLogger.stopEvent();
+
+        // Finally dispatch the general-purpose additional listeners, once per
+        // MID that changed since they were last told
+        final List<String> toAnnounce = new ArrayList<String>();
+        for (final Entry<String, Integer> entry : batch.changed.entrySet()) {
+            final Integer announced = batch.announced.get(entry.getKey());
+            if (announced == null || announced < entry.getValue()) {
+                toAnnounce.add(entry.getKey());
+            }
+        }
+        for (final String upstreamDependency : toAnnounce) {
+            batch.announced.put(upstreamDependency, batch.sequence);
+            notifyListeners(upstreamDependency);
         }
     }
 
     public void registerDependency(final String upstreamDependency,
             final String downstreamDependency) {
-        Validate.isTrue(
-                isValidDependency(upstreamDependency, downstreamDependency),
-                "Invalid dependency between upstream '%s' and downstream '%s'",
-                upstreamDependency, downstreamDependency);
+        validateDependency(upstreamDependency, downstreamDependency);
+
+        synchronized (lock) {
+            final int upstreamHandle = mids.intern(upstreamDependency);
+            final int downstreamHandle = mids.intern(downstreamDependency);
+            if (mids.size() > upstreamKeyed.length) {
+                final int capacity = Math.max(mids.size(),
+                        upstreamKeyed.length * 2);
+                upstreamKeyed = Arrays.copyOf(upstreamKeyed, capacity);
+                downstreamKeyed = Arrays.copyOf(downstreamKeyed, capacity);
+                order = Arrays.copyOf(order, capacity);
+            }
+            while (ordered < mids.size()) {
+                // New MIDs have no dependencies yet, so can go anywhere
+                order[ordered++] = ++maxOrder;
+            }
+
+            // Search for a cycle only if one is possible, in which case the
+            // search also finds the MIDs that will need to be reordered
+            IntHashSet reached = null;
+            if (mayCloseCycle(upstreamHandle, downstreamHandle)) {
+                reached = getReachableBefore(downstreamHandle, upstreamHandle);
+            }
+            Validate.isTrue(
+                    reached == null || !reached.contains(upstreamHandle),
+                    "Invalid dependency between upstream '%s' and downstream '%s'",
+                    upstreamDependency, downstreamDependency);
+
+            // Maintain the upstream-keyed map
+            IntHashSet downstream = upstreamKeyed[upstreamHandle];
+            if (downstream == null) {
+                downstream = new IntHashSet();
+                upstreamKeyed[upstreamHandle] = downstream;
+            }
+            downstream.add(downstreamHandle);
+
+            // Maintain the downstream-keyed map
+            IntHashSet upstream = downstreamKeyed[downstreamHandle];
+            if (upstream == null) {
+                upstream = new IntHashSet();
+                downstreamKeyed[downstreamHandle] = upstream;
+            }
+            upstream.add(upstreamHandle);
 
-        // Maintain the upstream-keyed map
-        Set<String> downstream = upstreamKeyed.get(upstreamDependency);
-        if (downstream == null) {
-            downstream = new HashSet<String>();
-            upstreamKeyed.put(upstreamDependency, downstream);
+            if (order[upstreamHandle] > order[downstreamHandle]) {
+                reorder(upstreamHandle, downstreamHandle, reached);
+            }
         }
-        downstream.add(downstreamDependency);
+    }
 
-        // Maintain the downstream-keyed map
-        Set<String> upstream = downstreamKeyed.get(downstreamDependency);
-        if (upstream == null) {
-            upstream = new HashSet<String>();
-            downstreamKeyed.put(downstreamDependency, upstream);
+    public void releaseNotifications(final boolean deliver) {
+        final Set<String> deferredMids;
+        synchronized (lock) {
+            deferredMids = deferred;
+            deferred = null;
+        }
+        if (deferredMids == null) {
+            return;
+        }
+        if (deliver && !deferredMids.isEmpty()) {
+            if (metadataLogger.getTraceLevel() > 0) {
+                metadataLogger.log("Releasing " + deferredMids.size()
+                        + " deferred notification(s)");
+            }
+            notifyDownstream(deferredMids);
+        }
+    }
+
+    /**
+     * Releases the given handle if it no longer has any dependencies, so that
+     * the MIDs of items that no longer exist don't accumulate. It keeps its
+     * position in the topological order, which is valid for a handle without
+     * dependencies, should it be reused.
+     */
+    private void releaseIfUnused(final int handle) {
+        if (handle < 0) {
+            return;
+        }
+        final IntHashSet downstream = upstreamKeyed[handle];
+        final IntHashSet upstream = downstreamKeyed[handle];
+        if ((downstream == null || downstream.isEmpty())
+                && (upstream == null || upstream.isEmpty())) {
+            upstreamKeyed[handle] = null;
+            downstreamKeyed[handle] = null;
+            mids.release(handle);
         }
-        upstream.add(upstreamDependency);
     }
 
     public void removeNotificationListener(
@@ -307,4 +761,95 @@ public class DefaultMetadataDependencyRegistry implements
 
         listeners.remove(listener);
     }
+
+    /**
+     * Restores the topological order after registering a dependency between
+     * the given handles, the upstream of which currently comes after the
+     * downstream.
+     * <p>
+     * This is the algorithm of Pearce and Kelly: only the handles lying between
+     * the two in the order and connected to one of them need to move, and they
+     * do so by exchanging positions among themselves.
+     * 
+     * @param reached the result of {@link #getReachableBefore(int, int)}, or
+     *            <code>null</code> if the dependency could not close a cycle
+     */
+    private void reorder(final int upstream, final int downstream,
+            final IntHashSet reached) {
+        if (reached == null) {
+            if (getSet(downstreamKeyed, upstream) == null) {
+                // Nothing to stay ahead of, so move it to the front
+                order[upstream] = --minOrder;
+            }
+            else {
+                // Nothing to stay behind, so move it to the back
+                order[downstream] = ++maxOrder;
+            }
+            return;
+        }
+
+        final long[] forward = sortByOrder(reached);
+        final long[] backward = sortByOrder(collect(upstream,
+                downstreamKeyed, order[downstream], Integer.MAX_VALUE));
+
+        // The affected positions, to be reused by the same handles with those
+        // reaching the upstream placed before those reached from the
+        // downstream
+        final int[] positions = new int[backward.length + forward.length];
+        int i = 0;
+        for (final long key : backward) {
+            positions[i++] = (int) (key >> 32);
+        }
+        for (final long key : forward) {
+            positions[i++] = (int) (key >> 32);
+        }
+        Arrays.sort(positions);
+        i = 0;
+        for (final long key : backward) {
+            order[(int) key] = positions[i++];
+        }
+        for (final long key : forward) {
+            order[(int) key] = positions[i++];
+        }
+    }
+
+    /**
+     * For use by unit tests
+     * 
+     * @param metadataLogger
+     */
+    void setMetadataLogger(final MetadataLogger metadataLogger) {
+        this.metadataLogger = metadataLogger;
+    }
+
+    /**
+     * Returns the given handles sorted by their position in the topological
+     * order, each being packed into the low half of a <code>long</code> whose
+     * high half is its position.
+     */
+    private long[] sortByOrder(final IntHashSet handles) {
+        final int[] elements = handles.toArray();
+        final long[] keys = new long[elements.length];
+        for (int i = 0; i < elements.length; i++) {
+            keys[i] = (long) order[elements[i]] << 32 | elements[i];
+        }
+        Arrays.sort(keys);
+        return keys;
+    }
+
+    private void validateDependency(final String upstreamDependency,
+            final String downstreamDependency) {
+        Validate.isTrue(
+                MetadataIdentificationUtils.isValid(upstreamDependency),
+                "Upstream dependency is an invalid metadata identification string ('%s')",
+                upstreamDependency);
+        Validate.isTrue(
+                MetadataIdentificationUtils.isValid(downstreamDependency),
+                "Downstream dependency is an invalid metadata identification string ('%s')",
+                downstreamDependency);
+        Validate.isTrue(
+                !upstreamDependency.equals(downstreamDependency),
+                "Upstream dependency cannot be the same as the downstream dependency ('%s')",
+                downstreamDependency);
+    }
 }
@@ -0,0 +1,158 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.Arrays;
+
+/**
+ * A set of non-negative <code>int</code>s, stored without boxing in a single
+ * open-addressed array.
+ * <p>
+ * Used to hold the adjacency sets of the {@link MetadataIdentifierTable}
+ * handles, most of which contain only a few elements. Not thread safe.
+ * 
+ * @since 1.2.5
+ */
+public class IntHashSet {
+
+    private static final int EMPTY = -1;
+    private static final int INITIAL_CAPACITY = 4;
+
+    private int[] elements;
+    private int size;
+
+    /**
+     * Constructor for an empty set
+     */
+    public IntHashSet() {
+        elements = newArray(INITIAL_CAPACITY);
+    }
+
+    /**
+     * Adds the given element to this set.
+     * 
+     * @param element the element to add (must not be negative)
+     * @return <code>true</code> if the set did not already contain it
+     */
+    public boolean add(final int element) {
+        if (element < 0) {
+            throw new IllegalArgumentException("Negative element " + element);
+        }
+        int index = indexOf(element, elements);
+        if (elements[index] == element) {
+            return false;
+        }
+        if ((size + 1) * 4 > elements.length * 3) {
+            resize(elements.length * 2);
+            index = indexOf(element, elements);
+        }
+        elements[index] = element;
+        size++;
+        return true;
+    }
+
+    /**
+     * Indicates whether this set contains the given element.
+     * 
+     * @param element the element to look for
+     * @return see above
+     */
+    public boolean contains(final int element) {
+        return element >= 0 && elements[indexOf(element, elements)] == element;
+    }
+
+    /**
+     * Returns the slot holding the given element, or the empty slot at which
+     * it would be inserted.
+     */
+    private int indexOf(final int element, final int[] array) {
+        final int mask = array.length - 1;
+        int index = element * 0x9E3779B9 >>> 1 & mask;
+        while (array[index] != EMPTY && array[index] != element) {
+            index = index + 1 & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Indicates whether this set is empty.
+     * 
+     * @return see above
+     */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    private static int[] newArray(final int capacity) {
+        final int[] array = new int[capacity];
+        Arrays.fill(array, EMPTY);
+        return array;
+    }
+
+    /**
+     * Removes the given element from this set.
+     * 
+     * @param element the element to remove
+     * @return <code>true</code> if the set contained it
+     */
+    public boolean remove(final int element) {
+        if (!contains(element)) {
+            return false;
+        }
+        // Backward-shift deletion, so that lookups need no tombstones
+        final int mask = elements.length - 1;
+        int gap = indexOf(element, elements);
+        int index = gap;
+        while (true) {
+            index = index + 1 & mask;
+            final int candidate = elements[index];
+            if (candidate == EMPTY) {
+                break;
+            }
+            final int home = candidate * 0x9E3779B9 >>> 1 & mask;
+            // Move the candidate into the gap unless its home slot lies
+            // cyclically within (gap, index]
+            if (gap <= index ? home <= gap || home > index : home <= gap
+                    && home > index) {
+                elements[gap] = candidate;
+                gap = index;
+            }
+        }
+        elements[gap] = EMPTY;
+        size--;
+        return true;
+    }
+
+    private void resize(final int capacity) {
+        final int[] resized = newArray(capacity);
+        for (final int element : elements) {
+            if (element != EMPTY) {
+                resized[indexOf(element, resized)] = element;
+            }
+        }
+        elements = resized;
+    }
+
+    /**
+     * Returns the number of elements in this set.
+     * 
+     * @return see above
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the elements of this set.
+     * 
+     * @return a new array of {@link #size()} elements, in no particular order
+     */
+    public int[] toArray() {
+        final int[] result = new int[size];
+        int i = 0;
+        for (final int element : elements) {
+            if (element != EMPTY) {
+                result[i++] = element;
+            }
+        }
+        return result;
+    }
+}
@@ -0,0 +1,252 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.roo.metadata.MetadataIdentificationUtils;
+
+/**
+ * A symbol table that interns metadata identification strings (MIDs) as
+ * compact <code>int</code> handles.
+ * <p>
+ * A MID is split into its metadata class and (for an instance-level MID) its
+ * instance identification key, each of which is interned separately. As the
+ * same key is typically shared by the MIDs of many metadata classes (e.g. the
+ * MIDs of every ITD generated for a given Java type), and the same class by
+ * the MIDs of many instances, each distinct string is only held once no matter
+ * how many MIDs it forms part of. The MID itself is only rebuilt when
+ * requested via {@link #getMid(int)}.
+ * <p>
+ * Handles are allocated sequentially from zero, so that they can be used to
+ * index arrays. A handle that is no longer needed can be
+ * {@link #release(int) released}, after which it (and any instance key no
+ * other MID shares) is reused for the next MID interned. Not thread safe.
+ * 
+ * @since 1.2.5
+ */
+public class MetadataIdentifierTable {
+
+    private static final long EMPTY = -1;
+    private static final int NO_INSTANCE = -1;
+
+    private final Map<String, Integer> classHandles = new HashMap<String, Integer>();
+    private final List<String> classes = new ArrayList<String>();
+    /** Released MID handles, to be reused */
+    private final List<Integer> freeHandles = new ArrayList<Integer>();
+    /** Released instance handles, to be reused */
+    private final List<Integer> freeInstances = new ArrayList<Integer>();
+    private final Map<String, Integer> instanceHandles = new HashMap<String, Integer>();
+    /** index: instance handle; value: the number of MIDs that include it */
+    private int[] instanceReferences = new int[64];
+    private final List<String> instances = new ArrayList<String>();
+    /** key: (class, instance) pair; value: MID handle */
+    private long[] keys = newKeys(64);
+    private int[] midClasses = new int[64];
+    private int[] midInstances = new int[64];
+    private int size;
+    private int[] values = new int[64];
+
+    private static long getKey(final int classHandle, final int instanceHandle) {
+        return (long) classHandle << 32 | instanceHandle & 0xFFFFFFFFL;
+    }
+
+    private static long[] newKeys(final int capacity) {
+        final long[] array = new long[capacity];
+        Arrays.fill(array, EMPTY);
+        return array;
+    }
+
+    private void add(final long key, final int handle) {
+        if ((size + 1) * 2 > keys.length) {
+            final long[] oldKeys = keys;
+            final int[] oldValues = values;
+            keys = newKeys(oldKeys.length * 2);
+            values = new int[oldKeys.length * 2];
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != EMPTY) {
+                    final int index = indexOf(oldKeys[i]);
+                    keys[index] = oldKeys[i];
+                    values[index] = oldValues[i];
+                }
+            }
+        }
+        final int index = indexOf(key);
+        keys[index] = key;
+        values[index] = handle;
+    }
+
+    /**
+     * Returns the handle of the given MID, if it has been interned.
+     * 
+     * @param mid a valid MID
+     * @return -1 if {@link #intern(String)} has not been called for the MID
+     */
+    public int find(final String mid) {
+        final Integer classHandle = classHandles.get(MetadataIdentificationUtils
+                .getMetadataClass(mid));
+        if (classHandle == null) {
+            return -1;
+        }
+        int instanceHandle = NO_INSTANCE;
+        if (MetadataIdentificationUtils.isIdentifyingInstance(mid)) {
+            final Integer handle = instanceHandles
+                    .get(MetadataIdentificationUtils.getMetadataInstance(mid));
+            if (handle == null) {
+                return -1;
+            }
+            instanceHandle = handle;
+        }
+        final int index = indexOf(getKey(classHandle, instanceHandle));
+        return keys[index] == EMPTY ? -1 : values[index];
+    }
+
+    /**
+     * Returns the MID with the given handle.
+     * 
+     * @param handle a handle returned by {@link #intern(String)}
+     * @return a non-<code>null</code> MID
+     */
+    public String getMid(final int handle) {
+        final String metadataClass = classes.get(midClasses[handle]);
+        final int instanceHandle = midInstances[handle];
+        if (instanceHandle == NO_INSTANCE) {
+            return MetadataIdentificationUtils.create(metadataClass);
+        }
+        return MetadataIdentificationUtils.create(metadataClass,
+                instances.get(instanceHandle));
+    }
+
+    private int getSlot(final long key) {
+        return (int) (key ^ key >>> 32) * 0x9E3779B9 >>> 1 & keys.length - 1;
+    }
+
+    private int indexOf(final long key) {
+        final int mask = keys.length - 1;
+        int index = getSlot(key);
+        while (keys[index] != EMPTY && keys[index] != key) {
+            index = index + 1 & mask;
+        }
+        return index;
+    }
+
+    /**
+     * Returns the handle of the given MID, allocating one if necessary.
+     * 
+     * @param mid a valid MID
+     * @return a handle between zero and {@link #size()} (exclusive)
+     */
+    public int intern(final String mid) {
+        final int existing = find(mid);
+        if (existing >= 0) {
+            return existing;
+        }
+        final int classHandle = intern(
+                MetadataIdentificationUtils.getMetadataClass(mid),
+                classHandles, classes, null);
+        int instanceHandle = NO_INSTANCE;
+        if (MetadataIdentificationUtils.isIdentifyingInstance(mid)) {
+            instanceHandle = intern(
+                    MetadataIdentificationUtils.getMetadataInstance(mid),
+                    instanceHandles, instances, freeInstances);
+            if (instanceHandle == instanceReferences.length) {
+                instanceReferences = Arrays.copyOf(instanceReferences,
+                        instanceHandle * 2);
+            }
+            instanceReferences[instanceHandle]++;
+        }
+
+        final int handle;
+        if (freeHandles.isEmpty()) {
+            handle = size++;
+            if (handle == midClasses.length) {
+                midClasses = Arrays.copyOf(midClasses, handle * 2);
+                midInstances = Arrays.copyOf(midInstances, handle * 2);
+            }
+        }
+        else {
+            handle = freeHandles.remove(freeHandles.size() - 1);
+        }
+        midClasses[handle] = classHandle;
+        midInstances[handle] = instanceHandle;
+        add(getKey(classHandle, instanceHandle), handle);
+        return handle;
+    }
+
+    private int intern(final String part, final Map<String, Integer> handles,
+            final List<String> parts, final List<Integer> freeParts) {
+        final Integer existing = handles.get(part);
+        if (existing != null) {
+            return existing;
+        }
+        // Copy the part, as under Java 6 a substring retains the whole MID
+        final String copy = new String(part);
+        final int handle;
+        if (freeParts == null || freeParts.isEmpty()) {
+            handle = parts.size();
+            parts.add(copy);
+        }
+        else {
+            handle = freeParts.remove(freeParts.size() - 1);
+            parts.set(handle, copy);
+        }
+        handles.put(copy, handle);
+        return handle;
+    }
+
+    /**
+     * Releases the given handle, so that it can be reused for another MID,
+     * along with its instance key if no other MID includes it. The caller
+     * must no longer use the handle.
+     * 
+     * @param handle a handle returned by {@link #intern(String)} and not yet
+     *            released
+     */
+    public void release(final int handle) {
+        final int instanceHandle = midInstances[handle];
+        remove(getKey(midClasses[handle], instanceHandle));
+        freeHandles.add(handle);
+        if (instanceHandle != NO_INSTANCE
+                && --instanceReferences[instanceHandle] == 0) {
+            instanceHandles.remove(instances.get(instanceHandle));
+            instances.set(instanceHandle, null);
+            freeInstances.add(instanceHandle);
+        }
+    }
+
+    /**
+     * Removes the given key, moving back any later keys in its probe sequence
+     * so that they can still be found
+     */
+    private void remove(final long key) {
+        final int mask = keys.length - 1;
+        int gap = indexOf(key);
+        if (keys[gap] == EMPTY) {
+            return;
+        }
+        for (int index = gap + 1 & mask; keys[index] != EMPTY; index = index + 1
+                & mask) {
+            // Move the key unless its slot lies cyclically after the gap
+            final int slot = getSlot(keys[index]);
+            if (gap <= index ? slot <= gap || slot > index : slot <= gap
+                    && slot > index) {
+                keys[gap] = keys[index];
+                values[gap] = values[index];
+                gap = index;
+            }
+        }
+        keys[gap] = EMPTY;
+    }
+
+    /**
+     * Returns the number of handles allocated so far, including any that have
+     * been released, i.e. the length of an array indexed by handle.
+     * 
+     * @return see above
+     */
+    public int size() {
+        return size;
+    }
+}
@@ -13,7 +13,10 @@ public class DefaultMetadataServiceTest {
             + "cacheHits=0,"
             + "cacheMisses=0,"
             + "cacheEvictions=0,"
-            + "cacheCurrentSize=0," + "cacheMaximumSize=100000]";
+            + "cacheCurrentSize=0,"
+            + "cacheMaximumSize=100000,"
+            + "parallelism=1,"
+            + "parallelGets=0]";
 
     @Test
     public void testToStringOfNewInstance() {
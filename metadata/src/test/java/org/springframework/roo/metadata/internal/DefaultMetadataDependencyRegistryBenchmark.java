@@ -0,0 +1,336 @@
+package org.springframework.roo.metadata.internal;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import org.springframework.roo.metadata.DefaultMetadataLogger;
+import org.springframework.roo.metadata.MetadataIdentificationUtils;
+import org.springframework.roo.metadata.MetadataItem;
+import org.springframework.roo.metadata.MetadataService;
+
+/**
+ * Benchmarks {@link DefaultMetadataDependencyRegistry} against synthetic
+ * dependency graphs, measuring the heap occupied by a graph resembling that of
+ * a large project, the time taken to register (and so validate) a large
+ * number of dependencies, and the number of times downstream metadata is
+ * rebuilt when a script's notifications are deferred in batches. Not a unit
+ * test (and not run as part of the build);
+ * run its {@link #main(String[])} method directly, ideally with a fixed heap
+ * such as <code>-Xmx2g</code>.
+ */
+public class DefaultMetadataDependencyRegistryBenchmark {
+
+    /**
+     * Counts the metadata it's asked to rebuild, doing some work for each to
+     * stand in for the cost of producing an ITD, and reports each one as
+     * changed.
+     */
+    private static class RebuildingMetadataService implements MetadataService {
+
+        private static final int WORK = 20000;
+
+        private final DefaultMetadataDependencyRegistry registry;
+        int rebuilds;
+        private double result;
+
+        RebuildingMetadataService(
+                final DefaultMetadataDependencyRegistry registry) {
+            this.registry = registry;
+        }
+
+        public void evict(final String metadataIdentificationString) {
+        }
+
+        public void evictAll() {
+        }
+
+        public MetadataItem evictAndGet(
+                final String metadataIdentificationString) {
+            return null;
+        }
+
+        public Map<String, MetadataItem> evictAndGetAll(
+                final Collection<String> metadataIdentificationStrings) {
+            return null;
+        }
+
+        public MetadataItem get(final String metadataIdentificationString) {
+            return null;
+        }
+
+        public MetadataItem get(final String metadataIdentificationString,
+                final boolean evictCache) {
+            return null;
+        }
+
+        public void notify(final String upstreamDependency,
+                final String downstreamDependency) {
+            rebuilds++;
+            for (int i = 1; i <= WORK; i++) {
+                result += Math.sqrt(i);
+            }
+            registry.notifyDownstream(downstreamDependency);
+        }
+
+        public void put(final MetadataItem metadataItem) {
+        }
+
+        public void setMaxCapacity(final int maxCapacity) {
+        }
+    }
+
+    /**
+     * The dependency maps and cycle check as they were before MIDs were
+     * interned and the cycle check made incremental, for comparison.
+     */
+    private static class StringKeyedGraph {
+
+        private final Map<String, Set<String>> downstreamKeyed = new HashMap<String, Set<String>>();
+        private final Map<String, Set<String>> upstreamKeyed = new HashMap<String, Set<String>>();
+
+        private void add(final Map<String, Set<String>> map, final String key,
+                final String value) {
+            Set<String> values = map.get(key);
+            if (values == null) {
+                values = new HashSet<String>();
+                map.put(key, values);
+            }
+            values.add(value);
+        }
+
+        private void buildSetOfAllUpstreamDependencies(
+                final Set<String> results, final String downstreamDependency) {
+            final Set<String> upstreams = downstreamKeyed
+                    .get(downstreamDependency);
+            if (upstreams == null) {
+                return;
+            }
+            for (final String upstream : upstreams) {
+                if (results.add(upstream)) {
+                    buildSetOfAllUpstreamDependencies(results, upstream);
+                }
+            }
+        }
+
+        boolean isValidDependency(final String upstreamDependency,
+                final String downstreamDependency) {
+            final Set<String> downstream = upstreamKeyed
+                    .get(upstreamDependency);
+            if (downstream != null
+                    && downstream.contains(downstreamDependency)) {
+                return true;
+            }
+            final Set<String> allUpstreams = new HashSet<String>();
+            buildSetOfAllUpstreamDependencies(allUpstreams, upstreamDependency);
+            return !allUpstreams.contains(downstreamDependency);
+        }
+
+        void registerDependency(final String upstreamDependency,
+                final String downstreamDependency) {
+            add(upstreamKeyed, upstreamDependency, downstreamDependency);
+            add(downstreamKeyed, downstreamDependency, upstreamDependency);
+        }
+    }
+
+    private static final int EDGES = 100000;
+
+    private static final String[] ITD_TYPES = {
+            "org.springframework.roo.addon.javabean.JavaBeanMetadata",
+            "org.springframework.roo.addon.tostring.ToStringMetadata",
+            "org.springframework.roo.addon.jpa.activerecord.JpaActiveRecordMetadata",
+            "org.springframework.roo.addon.jpa.identifier.IdentifierMetadata",
+            "org.springframework.roo.addon.configurable.ConfigurableMetadata",
+            "org.springframework.roo.addon.json.JsonMetadata" };
+    /** The number of MIDs in each independent part of the graph */
+    private static final int GROUP = 1000;
+    private static final int NODES = 20000;
+    private static final String PHYSICAL_TYPE = "org.springframework.roo.classpath.PhysicalTypeIdentifier";
+    /** The number of commands executed in each batch by "script --batch" */
+    private static final int SCRIPT_BATCH = 100;
+    private static final int SCRIPT_COMMANDS = 3000;
+    /** The number of types the script creates and changes */
+    private static final int SCRIPT_TYPES = 200;
+    private static final int TYPES = 50000;
+    /** The maximum distance between a downstream and its upstreams */
+    private static final int WINDOW = 50;
+
+    /**
+     * Returns {@link #EDGES} random, acyclic dependencies between
+     * {@link #NODES} MIDs, in random order; as each MID depends on others
+     * close to it within its {@link #GROUP}, most MIDs have hundreds of
+     * eventual upstreams.
+     */
+    private static List<String[]> createDependencies() {
+        final Random random = new Random(42);
+        final Set<String> edges = new HashSet<String>();
+        final List<String[]> dependencies = new ArrayList<String[]>();
+        while (dependencies.size() < EDGES) {
+            final int downstream = random.nextInt(NODES);
+            final int upstream = Math.max(downstream / GROUP * GROUP,
+                    downstream - 1 - random.nextInt(WINDOW));
+            if (upstream < downstream && edges.add(upstream + "->" + downstream)) {
+                dependencies.add(new String[] {
+                        mid(ITD_TYPES[upstream % ITD_TYPES.length], upstream),
+                        mid(ITD_TYPES[downstream % ITD_TYPES.length],
+                                downstream) });
+            }
+        }
+        Collections.shuffle(dependencies, random);
+        return dependencies;
+    }
+
+    private static long getUsedHeap() {
+        final Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 5; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    public static void main(final String[] args) {
+        measureHeap();
+        measureRegistration();
+        measureScriptNotifications();
+    }
+
+    private static void measureHeap() {
+        // Warm up, so that loaded classes don't skew the first measurement
+        registerAll(new DefaultMetadataDependencyRegistry(), 1000);
+        registerAll(new StringKeyedGraph(), 1000);
+
+        long before = getUsedHeap();
+        final StringKeyedGraph stringKeyed = new StringKeyedGraph();
+        registerAll(stringKeyed, TYPES);
+        final long stringKeyedBytes = getUsedHeap() - before;
+
+        before = getUsedHeap();
+        final DefaultMetadataDependencyRegistry registry = new DefaultMetadataDependencyRegistry();
+        registerAll(registry, TYPES);
+        final long internedBytes = getUsedHeap() - before;
+
+        System.out.println("Dependency graph of " + TYPES + " types ("
+                + TYPES * (ITD_TYPES.length * 2 - 1) + " edges)");
+        System.out.println("  String-keyed maps: " + stringKeyedBytes / 1024
+                + " KB");
+        System.out.println("  Interned handles:  " + internedBytes / 1024
+                + " KB");
+
+        // Keep both graphs reachable until measured
+        if (stringKeyed.upstreamKeyed.isEmpty()
+                || registry.getDownstream(mid(PHYSICAL_TYPE, 0)).isEmpty()) {
+            throw new IllegalStateException("Unexpected empty graph");
+        }
+    }
+
+    private static void measureRegistration() {
+        final List<String[]> dependencies = createDependencies();
+
+        long start = System.nanoTime();
+        final StringKeyedGraph stringKeyed = new StringKeyedGraph();
+        for (final String[] dependency : dependencies) {
+            if (!stringKeyed.isValidDependency(dependency[0], dependency[1])) {
+                throw new IllegalStateException();
+            }
+            stringKeyed.registerDependency(dependency[0], dependency[1]);
+        }
+        final long exhaustiveMillis = (System.nanoTime() - start) / 1000000;
+
+        start = System.nanoTime();
+        final DefaultMetadataDependencyRegistry registry = new DefaultMetadataDependencyRegistry();
+        for (final String[] dependency : dependencies) {
+            registry.registerDependency(dependency[0], dependency[1]);
+        }
+        final long incrementalMillis = (System.nanoTime() - start) / 1000000;
+
+        System.out.println("Registration of " + EDGES
+                + " dependencies between " + NODES + " MIDs");
+        System.out.println("  Exhaustive cycle check:  " + exhaustiveMillis
+                + " ms");
+        System.out.println("  Incremental cycle check: " + incrementalMillis
+                + " ms");
+    }
+
+    /**
+     * Measures the rebuilding of downstream metadata caused by a script of
+     * {@link #SCRIPT_COMMANDS} commands, each of which changes one of
+     * {@link #SCRIPT_TYPES} types in turn (as does a script that creates each
+     * entity and then adds its fields), with each command's notifications
+     * delivered immediately and deferred until the end of each batch of
+     * {@link #SCRIPT_BATCH} commands.
+     */
+    private static void measureScriptNotifications() {
+        System.out.println("Script of " + SCRIPT_COMMANDS
+                + " commands changing " + SCRIPT_TYPES + " types");
+        for (final int batchSize : new int[] { 1, SCRIPT_BATCH }) {
+            final DefaultMetadataDependencyRegistry registry = new DefaultMetadataDependencyRegistry();
+            registry.setMetadataLogger(new DefaultMetadataLogger());
+            registerAll(registry, SCRIPT_TYPES);
+            final RebuildingMetadataService metadataService = new RebuildingMetadataService(
+                    registry);
+            registry.addNotificationListener(metadataService);
+
+            final long start = System.nanoTime();
+            for (int command = 0; command < SCRIPT_COMMANDS; command++) {
+                if (batchSize > 1 && command % batchSize == 0) {
+                    registry.deferNotifications();
+                }
+                registry.notifyDownstream(mid(PHYSICAL_TYPE, command
+                        * SCRIPT_TYPES / SCRIPT_COMMANDS));
+                if (batchSize > 1 && (command + 1) % batchSize == 0) {
+                    registry.releaseNotifications(true);
+                }
+            }
+            registry.releaseNotifications(true);
+            final long millis = (System.nanoTime() - start) / 1000000;
+
+            System.out.println(String.format(
+                    "  %-25s %6d rebuilds, %5d ms", batchSize == 1
+                            ? "Notified per command:" : "Deferred per "
+                                    + batchSize + ":",
+                    metadataService.rebuilds, millis));
+        }
+    }
+
+    /**
+     * Creates the MID of the given type, as a new string each time (as
+     * providers do)
+     */
+    private static String mid(final String metadataClass, final int type) {
+        return MetadataIdentificationUtils.create(metadataClass,
+                "SRC_MAIN_JAVA?com.example.project.domain.Type" + type);
+    }
+
+    private static void registerAll(final Object graph, final int types) {
+        for (int type = 0; type < types; type++) {
+            for (int i = 0; i < ITD_TYPES.length; i++) {
+                // Each ITD depends on its physical type...
+                register(graph, mid(PHYSICAL_TYPE, type),
+                        mid(ITD_TYPES[i], type));
+                if (i > 0) {
+                    // ... and most on another ITD of the same type
+                    register(graph, mid(ITD_TYPES[0], type),
+                            mid(ITD_TYPES[i], type));
+                }
+            }
+        }
+    }
+
+    private static void register(final Object graph,
+            final String upstreamDependency, final String downstreamDependency) {
+        if (graph instanceof StringKeyedGraph) {
+            ((StringKeyedGraph) graph).registerDependency(upstreamDependency,
+                    downstreamDependency);
+        }
+        else {
+            ((DefaultMetadataDependencyRegistry) graph).registerDependency(
+                    upstreamDependency, downstreamDependency);
+        }
+    }
+}
@@ -1,12 +1,79 @@
 package org.springframework.roo.metadata.internal;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.LinkedList;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
 import junit.framework.Assert;
 
 import org.junit.Test;
+import org.springframework.roo.metadata.DefaultMetadataLogger;
 import org.springframework.roo.metadata.MetadataIdentificationUtils;
+import org.springframework.roo.metadata.MetadataItem;
+import org.springframework.roo.metadata.MetadataService;
 
 public class DefaultMetadataDependencyRegistryTest {
 
+    /**
+     * Records the notifications it receives, reporting a change to every
+     * notified MID other than those it is told are unchanged.
+     */
+    private static class RecordingMetadataService implements MetadataService {
+
+        final List<String> notified = new ArrayList<String>();
+        private final DefaultMetadataDependencyRegistry registry;
+        final Set<String> unchanged = new HashSet<String>();
+
+        RecordingMetadataService(final DefaultMetadataDependencyRegistry registry) {
+            this.registry = registry;
+        }
+
+        public void evict(final String metadataIdentificationString) {
+        }
+
+        public void evictAll() {
+        }
+
+        public MetadataItem evictAndGet(
+                final String metadataIdentificationString) {
+            return null;
+        }
+
+        public Map<String, MetadataItem> evictAndGetAll(
+                final Collection<String> metadataIdentificationStrings) {
+            return null;
+        }
+
+        public MetadataItem get(final String metadataIdentificationString) {
+            return null;
+        }
+
+        public MetadataItem get(final String metadataIdentificationString,
+                final boolean evictCache) {
+            return null;
+        }
+
+        public void notify(final String upstreamDependency,
+                final String downstreamDependency) {
+            notified.add(downstreamDependency);
+            if (!unchanged.contains(downstreamDependency)) {
+                registry.notifyDownstream(downstreamDependency);
+            }
+        }
+
+        public void put(final MetadataItem metadataItem) {
+        }
+
+        public void setMaxCapacity(final int maxCapacity) {
+        }
+    }
+
     private static final String DISK_FILE = MetadataIdentificationUtils.create(
             "com.Test", "disk file");
     private static final String JAVA_TYPE_OBJECT = MetadataIdentificationUtils
@@ -20,6 +87,59 @@ public class DefaultMetadataDependencyRegistryTest {
     private static final String MVC_CONTROLLER = MetadataIdentificationUtils
             .create("com.Test", "mvc ctrl");
 
+    /**
+     * Indicates whether the given downstream can be reached from the given
+     * upstream, by exhaustive search
+     */
+    private boolean isReachable(final DefaultMetadataDependencyRegistry reg,
+            final String upstream, final String downstream) {
+        final Set<String> visited = new HashSet<String>();
+        final LinkedList<String> queue = new LinkedList<String>();
+        queue.add(upstream);
+        while (!queue.isEmpty()) {
+            final String mid = queue.removeFirst();
+            if (mid.equals(downstream)) {
+                return true;
+            }
+            for (final String next : reg.getDownstream(mid)) {
+                if (visited.add(next)) {
+                    queue.add(next);
+                }
+            }
+        }
+        return false;
+    }
+
+    @Test
+    public void testCycleDetectionMatchesExhaustiveSearch() {
+        final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+        final Random random = new Random(42);
+        final String[] mids = new String[40];
+        for (int i = 0; i < mids.length; i++) {
+            mids[i] = MetadataIdentificationUtils.create("com.Test", "mid " + i);
+        }
+
+        for (int i = 0; i < 5000; i++) {
+            final String upstream = mids[random.nextInt(mids.length)];
+            final String downstream = mids[random.nextInt(mids.length)];
+            if (upstream.equals(downstream)) {
+                continue;
+            }
+            if (random.nextInt(4) == 0) {
+                reg.deregisterDependency(upstream, downstream);
+                continue;
+            }
+            final boolean valid = reg.getDownstream(upstream).contains(
+                    downstream)
+                    || !isReachable(reg, downstream, upstream);
+            Assert.assertEquals(valid,
+                    reg.isValidDependency(upstream, downstream));
+            if (valid) {
+                reg.registerDependency(upstream, downstream);
+            }
+        }
+    }
+
     @Test
     public void testRegistration() {
         final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
@@ -56,4 +176,114 @@ public class DefaultMetadataDependencyRegistryTest {
         Assert.assertEquals(0, reg.getDownstream(JAVA_TYPE_PERSON).size());
         Assert.assertEquals(2, reg.getDownstream(MVC_CONTROLLER).size());
     }
+
+    private RecordingMetadataService setUpDiamond(
+            final DefaultMetadataDependencyRegistry reg) {
+        reg.setMetadataLogger(new DefaultMetadataLogger());
+        final RecordingMetadataService metadataService = new RecordingMetadataService(
+                reg);
+        reg.addNotificationListener(metadataService);
+
+        // The person type is reachable from the disk file via two paths
+        reg.registerDependency(DISK_FILE, JAVA_TYPE_OBJECT);
+        reg.registerDependency(DISK_FILE, MVC_CONTROLLER);
+        reg.registerDependency(JAVA_TYPE_OBJECT, JAVA_TYPE_PERSON);
+        reg.registerDependency(MVC_CONTROLLER, JAVA_TYPE_PERSON);
+        reg.registerDependency(JAVA_TYPE_PERSON, JSP_PAGE_1);
+        return metadataService;
+    }
+
+    @Test
+    public void testBatchedNotificationRebuildsEachDownstreamOnce() {
+        final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+        final RecordingMetadataService metadataService = setUpDiamond(reg);
+
+        reg.notifyDownstream(Arrays.asList(DISK_FILE));
+
+        Assert.assertEquals(4, metadataService.notified.size());
+        Assert.assertEquals(4,
+                new HashSet<String>(metadataService.notified).size());
+        Assert.assertEquals(JAVA_TYPE_PERSON, metadataService.notified.get(2));
+        Assert.assertEquals(JSP_PAGE_1, metadataService.notified.get(3));
+    }
+
+    @Test
+    public void testBatchedNotificationSkipsUnchangedDownstreams() {
+        final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+        final RecordingMetadataService metadataService = setUpDiamond(reg);
+        metadataService.unchanged.add(JAVA_TYPE_OBJECT);
+        metadataService.unchanged.add(MVC_CONTROLLER);
+
+        reg.notifyDownstream(Arrays.asList(DISK_FILE));
+
+        Assert.assertEquals(
+                new HashSet<String>(Arrays.asList(JAVA_TYPE_OBJECT,
+                        MVC_CONTROLLER)),
+                new HashSet<String>(metadataService.notified));
+        Assert.assertEquals(2, metadataService.notified.size());
+    }
+
+    @Test
+    public void testDeferredNotificationsAreDeliveredAsOneBatch() {
+        final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+        final RecordingMetadataService metadataService = setUpDiamond(reg);
+
+        reg.deferNotifications();
+        reg.notifyDownstream(DISK_FILE);
+        reg.notifyDownstream(DISK_FILE);
+        Assert.assertTrue(metadataService.notified.isEmpty());
+        reg.releaseNotifications(true);
+
+        Assert.assertEquals(4, metadataService.notified.size());
+        Assert.assertEquals(4,
+                new HashSet<String>(metadataService.notified).size());
+
+        // Notifications are no longer deferred
+        metadataService.notified.clear();
+        reg.notifyDownstream(JAVA_TYPE_PERSON);
+        Assert.assertEquals(Arrays.asList(JSP_PAGE_1),
+                metadataService.notified);
+    }
+
+    @Test
+    public void testDeferralCoversOtherThreads() throws InterruptedException {
+        final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+        final RecordingMetadataService metadataService = setUpDiamond(reg);
+
+        reg.deferNotifications();
+        final Thread thread = new Thread(new Runnable() {
+            public void run() {
+                reg.notifyDownstream(DISK_FILE);
+            }
+        });
+        thread.start();
+        thread.join();
+        Assert.assertTrue(metadataService.notified.isEmpty());
+        reg.releaseNotifications(true);
+
+        Assert.assertEquals(4, metadataService.notified.size());
+    }
+
+    @Test
+    public void testDiscardedNotificationsAreNotDelivered() {
+        final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+        final RecordingMetadataService metadataService = setUpDiamond(reg);
+
+        reg.deferNotifications();
+        reg.notifyDownstream(Arrays.asList(DISK_FILE));
+        reg.releaseNotifications(false);
+
+        Assert.assertTrue(metadataService.notified.isEmpty());
+    }
+
+    @Test
+    public void testUnbatchedNotificationRebuildsPerPath() {
+        final DefaultMetadataDependencyRegistry reg = new DefaultMetadataDependencyRegistry();
+        final RecordingMetadataService metadataService = setUpDiamond(reg);
+
+        reg.notifyDownstream(DISK_FILE);
+
+        // The person type and its JSP are rebuilt once per path
+        Assert.assertEquals(6, metadataService.notified.size());
+    }
 }
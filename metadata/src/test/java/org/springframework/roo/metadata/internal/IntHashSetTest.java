@@ -0,0 +1,66 @@
+package org.springframework.roo.metadata.internal;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+import org.junit.Test;
+
+/**
+ * Unit test of {@link IntHashSet}
+ */
+public class IntHashSetTest {
+
+    @Test
+    public void testAddAndRemove() {
+        final IntHashSet set = new IntHashSet();
+        assertTrue(set.isEmpty());
+        assertTrue(set.add(7));
+        assertFalse(set.add(7));
+        assertTrue(set.contains(7));
+        assertFalse(set.contains(8));
+        assertEquals(1, set.size());
+        assertTrue(set.remove(7));
+        assertFalse(set.remove(7));
+        assertTrue(set.isEmpty());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testAddNegativeElement() {
+        new IntHashSet().add(-1);
+    }
+
+    @Test
+    public void testBehavesLikeHashSet() {
+        // Exercises resizing and removal from within collision chains
+        final IntHashSet set = new IntHashSet();
+        final Set<Integer> expected = new HashSet<Integer>();
+        final Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            final int element = random.nextInt(500);
+            if (random.nextBoolean()) {
+                assertEquals(expected.add(element), set.add(element));
+            }
+            else {
+                assertEquals(expected.remove(element), set.remove(element));
+            }
+            assertEquals(expected.size(), set.size());
+        }
+        for (int element = 0; element < 500; element++) {
+            assertEquals(expected.contains(element), set.contains(element));
+        }
+
+        final int[] elements = set.toArray();
+        Arrays.sort(elements);
+        int i = 0;
+        for (final int element : new TreeSet<Integer>(expected)) {
+            assertEquals(element, elements[i++]);
+        }
+    }
+}
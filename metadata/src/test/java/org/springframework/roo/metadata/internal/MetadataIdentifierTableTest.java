@@ -0,0 +1,95 @@
+package org.springframework.roo.metadata.internal;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+import org.springframework.roo.metadata.MetadataIdentificationUtils;
+
+/**
+ * Unit test of {@link MetadataIdentifierTable}
+ */
+public class MetadataIdentifierTableTest {
+
+    private static final String CLASS_MID = MetadataIdentificationUtils
+            .create("com.Test");
+    private static final String INSTANCE_MID = MetadataIdentificationUtils
+            .create("com.Test", "SRC_MAIN_JAVA?com.foo.Bar");
+    private static final String OTHER_INSTANCE_MID = MetadataIdentificationUtils
+            .create("com.Other", "SRC_MAIN_JAVA?com.foo.Bar");
+
+    @Test
+    public void testFindWithoutIntern() {
+        final MetadataIdentifierTable table = new MetadataIdentifierTable();
+        table.intern(CLASS_MID);
+        assertEquals(-1, table.find(INSTANCE_MID));
+        assertEquals(-1, table.find(OTHER_INSTANCE_MID));
+    }
+
+    @Test
+    public void testInternIsIdempotent() {
+        final MetadataIdentifierTable table = new MetadataIdentifierTable();
+        final int handle = table.intern(INSTANCE_MID);
+        assertEquals(handle, table.intern(new String(INSTANCE_MID)));
+        assertEquals(handle, table.find(INSTANCE_MID));
+        assertEquals(1, table.size());
+    }
+
+    @Test
+    public void testReleasedHandleIsReused() {
+        final MetadataIdentifierTable table = new MetadataIdentifierTable();
+        final int handle = table.intern(INSTANCE_MID);
+        table.intern(CLASS_MID);
+
+        table.release(handle);
+
+        assertEquals(-1, table.find(INSTANCE_MID));
+        assertEquals(handle, table.intern(OTHER_INSTANCE_MID));
+        assertEquals(OTHER_INSTANCE_MID, table.getMid(handle));
+        assertEquals(2, table.size());
+    }
+
+    @Test
+    public void testReleasingSomeOfManyMidsKeepsTheRestFindable() {
+        final MetadataIdentifierTable table = new MetadataIdentifierTable();
+        for (int i = 0; i < 1000; i++) {
+            table.intern(MetadataIdentificationUtils.create("com.Test" + i
+                    % 7, "SRC_MAIN_JAVA?com.foo.Bar" + i / 7));
+        }
+        for (int i = 0; i < 1000; i += 3) {
+            table.release(i);
+        }
+        for (int i = 0; i < 1000; i++) {
+            final String mid = MetadataIdentificationUtils.create("com.Test"
+                    + i % 7, "SRC_MAIN_JAVA?com.foo.Bar" + i / 7);
+            assertEquals(i % 3 == 0 ? -1 : i, table.find(mid));
+        }
+    }
+
+    @Test
+    public void testRoundTripOfManyMids() {
+        final MetadataIdentifierTable table = new MetadataIdentifierTable();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(i, table.intern(MetadataIdentificationUtils.create(
+                    "com.Test" + i % 7, "SRC_MAIN_JAVA?com.foo.Bar" + i / 7)));
+        }
+        for (int i = 0; i < 1000; i++) {
+            final String mid = MetadataIdentificationUtils.create("com.Test"
+                    + i % 7, "SRC_MAIN_JAVA?com.foo.Bar" + i / 7);
+            assertEquals(i, table.find(mid));
+            assertEquals(mid, table.getMid(i));
+        }
+    }
+
+    @Test
+    public void testSharedPartsGetDistinctHandles() {
+        final MetadataIdentifierTable table = new MetadataIdentifierTable();
+        final int classHandle = table.intern(CLASS_MID);
+        final int instanceHandle = table.intern(INSTANCE_MID);
+        final int otherHandle = table.intern(OTHER_INSTANCE_MID);
+
+        assertEquals(3, table.size());
+        assertEquals(CLASS_MID, table.getMid(classHandle));
+        assertEquals(INSTANCE_MID, table.getMid(instanceHandle));
+        assertEquals(OTHER_INSTANCE_MID, table.getMid(otherHandle));
+    }
+}
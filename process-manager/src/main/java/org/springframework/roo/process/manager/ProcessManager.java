@@ -2,6 +2,7 @@ package org.springframework.roo.process.manager;
 
 import org.springframework.roo.file.monitor.FileMonitorService;
 import org.springframework.roo.file.undo.UndoManager;
+import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.metadata.MetadataService;
 import org.springframework.roo.process.manager.event.ProcessManagerStatus;
 import org.springframework.roo.process.manager.event.ProcessManagerStatusProvider;
@@ -74,6 +75,36 @@ public interface ProcessManager extends ProcessManagerStatusProvider {
      */
     <T> T execute(CommandCallback<T> callback);
 
+    /**
+     * Executes the given callback, and any commands it executes via
+     * {@link #execute(CommandCallback)}, within a single "transaction". This
+     * allows a series of commands (e.g. those of a script) to be executed
+     * much faster than in one transaction each:
+     * <ul>
+     * <li>Each command's changes are flushed and the files it changed are
+     * scanned as usual, so that later commands see them, but the resulting
+     * {@link MetadataDependencyRegistry#deferNotifications() notifications}
+     * are deferred; downstream metadata is brought up to date once, when the
+     * callback returns, rather than after each command.</li>
+     * <li>The undo history is only reset when the callback returns; if it
+     * throws an exception, or any command it executes fails, the changes made
+     * by all of them are undone.</li>
+     * </ul>
+     * Commands that depend on metadata derived from the changes made by
+     * earlier commands in the same batch (e.g. the contents of an ITD, or the
+     * output of a Maven build) may not see those changes, so should be
+     * executed in a later batch. This method blocks until
+     * {@link ProcessManagerStatus#AVAILABLE}, and can't be called from within
+     * another batch.
+     * 
+     * @param <T> the class of the object that
+     *            {@link CommandCallback#callback()} will return (required)
+     * @param callback the callback to execute (required)
+     * @return the result of executing the callback
+     * @since 1.2.5
+     */
+    <T> T executeBatch(CommandCallback<T> callback);
+
     long getLastPollDuration();
 
     long getMinimumDelayBetweenPoll();
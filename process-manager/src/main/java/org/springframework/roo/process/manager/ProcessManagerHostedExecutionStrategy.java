@@ -1,5 +1,7 @@
 package org.springframework.roo.process.manager;
 
+import java.util.concurrent.Callable;
+
 import org.apache.commons.lang3.ObjectUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.commons.lang3.exception.ExceptionUtils;
@@ -10,6 +12,7 @@ import org.apache.felix.scr.annotations.ReferencePolicy;
 import org.apache.felix.scr.annotations.ReferenceStrategy;
 import org.apache.felix.scr.annotations.Service;
 import org.springframework.roo.process.manager.event.ProcessManagerStatus;
+import org.springframework.roo.shell.BatchExecutionStrategy;
 import org.springframework.roo.shell.ExecutionStrategy;
 import org.springframework.roo.shell.ParseResult;
 
@@ -24,7 +27,8 @@ import org.springframework.roo.shell.ParseResult;
 @Component(immediate = true)
 @Service
 @Reference(name = "processManager", strategy = ReferenceStrategy.EVENT, policy = ReferencePolicy.DYNAMIC, referenceInterface = ProcessManager.class, cardinality = ReferenceCardinality.MANDATORY_UNARY)
-public class ProcessManagerHostedExecutionStrategy implements ExecutionStrategy {
+public class ProcessManagerHostedExecutionStrategy implements
+        BatchExecutionStrategy {
 
     private final Class<?> mutex = ProcessManagerHostedExecutionStrategy.class;
     private ProcessManager processManager;
@@ -57,6 +61,28 @@ public class ProcessManagerHostedExecutionStrategy implements ExecutionStrategy
         }
     }
 
+    public <T> T executeBatch(final Callable<T> batch)
+            throws RuntimeException {
+        Validate.notNull(batch, "Batch required");
+        synchronized (mutex) {
+            Validate.isTrue(isReadyForCommands(),
+                    "ProcessManagerHostedExecutionStrategy not yet ready for commands");
+            return processManager.executeBatch(new CommandCallback<T>() {
+                public T callback() {
+                    try {
+                        return batch.call();
+                    }
+                    catch (final RuntimeException e) {
+                        throw e;
+                    }
+                    catch (final Exception e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+            });
+        }
+    }
+
     public boolean isReadyForCommands() {
         synchronized (mutex) {
             if (processManager != null) {
@@ -0,0 +1,41 @@
+package org.springframework.roo.process.manager.internal;
+
+import org.apache.felix.scr.annotations.Component;
+import org.apache.felix.scr.annotations.Reference;
+import org.osgi.service.component.ComponentContext;
+import org.springframework.roo.process.manager.ProcessManager;
+import org.springframework.roo.process.manager.event.ProcessManagerStatus;
+import org.springframework.roo.process.manager.event.ProcessManagerStatusListener;
+import org.springframework.roo.process.manager.event.ProcessManagerStatusProvider;
+import org.springframework.roo.shell.Parser;
+
+/**
+ * Tells the shell's {@link Parser} to refresh the availability of its commands
+ * whenever the {@link ProcessManager} changes status, i.e. starts or finishes
+ * executing a command, scanning the file system, or undoing changes, as any
+ * of these can change which commands are available. In between, the parser
+ * can reuse the availability it has already determined.
+ * 
+ * @since 1.2.5
+ */
+@Component(immediate = true)
+public class CommandAvailabilityRefresher implements
+        ProcessManagerStatusListener {
+
+    @Reference private Parser parser;
+    @Reference private ProcessManagerStatusProvider processManagerStatusProvider;
+
+    protected void activate(final ComponentContext context) {
+        processManagerStatusProvider.addProcessManagerStatusListener(this);
+    }
+
+    protected void deactivate(final ComponentContext context) {
+        processManagerStatusProvider.removeProcessManagerStatusListener(this);
+    }
+
+    public void onProcessManagerStatusChange(
+            final ProcessManagerStatus oldStatus,
+            final ProcessManagerStatus newStatus) {
+        parser.refreshAvailability();
+    }
+}
@@ -6,14 +6,28 @@ import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.SortedSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import org.apache.commons.codec.digest.DigestUtils;
 import org.apache.commons.io.FileUtils;
-import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
@@ -37,6 +51,10 @@ import org.springframework.roo.process.manager.ProcessManager;
 
 /**
  * Default implementation of {@link FileManager}.
+ * <p>
+ * Thread safe, as metadata providers may write files from several threads
+ * when metadata is produced in parallel: deferred writes are guarded by a
+ * lock, and the known contents of files are held in a concurrent map.
  * 
  * @author Ben Alex
  * @since 1.0
@@ -45,10 +63,85 @@ import org.springframework.roo.process.manager.ProcessManager;
 @Service
 public class DefaultFileManager implements FileManager, UndoListener {
 
+    /**
+     * A pending write of new contents to a file, as it passes through the
+     * stages of {@link DefaultFileManager#writeFiles(Map, Map)}
+     */
+    private static class FileWrite {
+
+        final byte[] contents;
+        final String contentsSha;
+        final String descriptionOfChange;
+        final File file;
+        final String fileIdentifier;
+        /** Set once the file is known to have the new contents */
+        Fingerprint fingerprint;
+        /** Set if the file needs to be written; logs the change */
+        ManagedMessageRenderer renderer;
+        boolean update;
+
+        FileWrite(final String fileIdentifier, final String newContents,
+                final String descriptionOfChange) {
+            // The platform encoding, as when reading them back
+            contents = newContents.getBytes();
+            contentsSha = DigestUtils.shaHex(contents);
+            this.descriptionOfChange = descriptionOfChange;
+            file = new File(fileIdentifier);
+            this.fileIdentifier = fileIdentifier;
+        }
+    }
+
+    /**
+     * The contents this file manager last wrote to (or found in) a given file,
+     * along with the file's timestamp and length at the time, so that the
+     * file need not be read again to see whether it already has those
+     * contents.
+     * <p>
+     * A file can be changed again without its timestamp changing if that
+     * happens within the file system's timestamp granularity, so a
+     * fingerprint taken within that interval of the file's timestamp is not
+     * trusted; the file is read instead, until it has been fingerprinted
+     * again later on.
+     */
+    private static class Fingerprint {
+
+        /**
+         * The coarsest timestamp granularity of the supported file systems
+         * (FAT's), in milliseconds
+         */
+        private static final long TIMESTAMP_GRANULARITY = 2000;
+
+        final String contentsSha;
+        final long lastModified;
+        final long length;
+        final long takenAt;
+
+        Fingerprint(final File file, final String contentsSha) {
+            this.contentsSha = contentsSha;
+            takenAt = System.currentTimeMillis();
+            lastModified = file.lastModified();
+            length = file.length();
+        }
+
+        boolean matches(final File file, final String contentsSha) {
+            return takenAt - lastModified > TIMESTAMP_GRANULARITY
+                    && this.contentsSha.equals(contentsSha)
+                    && lastModified == file.lastModified()
+                    && length == file.length();
+        }
+    }
+
     /** key: file identifier, value: new description of change */
     private final Map<String, String> deferredDescriptionOfChanges = new LinkedHashMap<String, String>();
     /** key: file identifier, value: new textual content */
     private final Map<String, String> deferredFileWrites = new LinkedHashMap<String, String>();
+    private ExecutorService executor;
+    /** key: file identifier, value: its last known contents */
+    private final Map<String, Fingerprint> fingerprints = new ConcurrentHashMap<String, Fingerprint>();
+    private int parallelism = Integer.getInteger("roo.io.parallelism", 4);
+
+    // Mutex for the deferred writes and the executor
+    private final Object lock = new Object();
 
     @Reference private NotifiableFileMonitorService fileMonitorService;
     @Reference private FilenameResolver filenameResolver;
@@ -60,35 +153,61 @@ public class DefaultFileManager implements FileManager, UndoListener {
     }
 
     public void clear() {
-        deferredFileWrites.clear();
-        deferredDescriptionOfChanges.clear();
+        synchronized (lock) {
+            deferredFileWrites.clear();
+            deferredDescriptionOfChanges.clear();
+        }
     }
 
-    public void commit() {
-        final Map<String, String> toRemove = new LinkedHashMap<String, String>(
-                deferredFileWrites);
+    /**
+     * Determines whether the given file already has its intended contents;
+     * reads the file at most once, and not at all if it is known to have
+     * those contents.
+     */
+    private void checkWriteRequired(final FileWrite write) {
+        write.update = write.file.exists();
+        if (!write.update) {
+            return;
+        }
+        final Fingerprint fingerprint = fingerprints.get(write.fileIdentifier);
+        if (fingerprint != null
+                && fingerprint.matches(write.file, write.contentsSha)) {
+            write.fingerprint = fingerprint;
+            return;
+        }
+        byte[] existing = null;
         try {
-            for (final Entry<String, String> entry : toRemove.entrySet()) {
-                final String fileIdentifier = entry.getKey();
-                final String newContents = entry.getValue();
-                if (StringUtils.isNotBlank(newContents)) {
-                    createOrUpdateTextFileIfRequired(fileIdentifier,
-                            newContents,
-                            StringUtils
-                                    .stripToEmpty(deferredDescriptionOfChanges
-                                            .get(fileIdentifier)));
-                }
-                else if (exists(fileIdentifier)) {
-                    delete(fileIdentifier, "empty");
-                }
-            }
+            existing = FileUtils.readFileToByteArray(write.file);
         }
-        finally {
-            for (final String remove : toRemove.keySet()) {
-                deferredFileWrites.remove(remove);
-            }
+        catch (final IOException ignored) {
+        }
+        if (Arrays.equals(write.contents, existing)) {
+            write.fingerprint = new Fingerprint(write.file, write.contentsSha);
+        }
+    }
+
+    public void commit() {
+        // Writes deferred while committing are left for the next commit
+        final Map<String, String> toCommit;
+        final Map<String, String> descriptionsOfChanges;
+        synchronized (lock) {
+            toCommit = new LinkedHashMap<String, String>(deferredFileWrites);
+            descriptionsOfChanges = new HashMap<String, String>(
+                    deferredDescriptionOfChanges);
+            deferredFileWrites.clear();
             deferredDescriptionOfChanges.clear();
         }
+        final Map<String, String> toWrite = new LinkedHashMap<String, String>();
+        for (final Entry<String, String> entry : toCommit.entrySet()) {
+            final String fileIdentifier = entry.getKey();
+            if (StringUtils.isNotBlank(entry.getValue())) {
+                toWrite.put(fileIdentifier, entry.getValue());
+            }
+            else if (exists(fileIdentifier)) {
+                delete(fileIdentifier, "empty");
+            }
+        }
+        writeFiles(toWrite, descriptionsOfChanges);
     }
 
     public FileDetails createDirectory(final String fileIdentifier) {
@@ -110,6 +229,7 @@ public class DefaultFileManager implements FileManager, UndoListener {
         final File actual = new File(fileIdentifier);
         Validate.isTrue(!actual.exists(), "File '%s' already exists",
                 fileIdentifier);
+        fingerprints.remove(fileIdentifier);
         try {
             fileMonitorService.notifyCreated(actual.getCanonicalPath());
             final File parentDirectory = new File(actual.getParent());
@@ -132,68 +252,31 @@ public class DefaultFileManager implements FileManager, UndoListener {
                 writeImmediately);
     }
 
-    private void createOrUpdateTextFileIfRequired(final String fileIdentifier,
-            final String newContents, final String descriptionOfChange) {
-        MutableFile mutableFile = null;
-        if (exists(fileIdentifier)) {
-            // First verify if the file has even changed
-            final File file = new File(fileIdentifier);
-            String existing = null;
-            try {
-                existing = FileUtils.readFileToString(file);
-            }
-            catch (final IOException ignored) {
-            }
-
-            if (!newContents.equals(existing)) {
-                mutableFile = updateFile(fileIdentifier);
-            }
-        }
-        else {
-            mutableFile = createFile(fileIdentifier);
-            Validate.notNull(mutableFile, "Could not create file '%s'",
-                    fileIdentifier);
-        }
-
-        if (mutableFile != null) {
-            OutputStream outputStream = null;
-            try {
-                if (StringUtils.isNotBlank(descriptionOfChange)) {
-                    mutableFile.setDescriptionOfChange(descriptionOfChange);
-                }
-                outputStream = mutableFile.getOutputStream();
-                IOUtils.write(newContents, outputStream);
-            }
-            catch (final IOException e) {
-                throw new IllegalStateException("Could not output '"
-                        + mutableFile.getCanonicalPath() + "'", e);
-            }
-            finally {
-                IOUtils.closeQuietly(outputStream);
-            }
-        }
-    }
-
     public void createOrUpdateTextFileIfRequired(final String fileIdentifier,
             final String newContents, final String descriptionOfChange,
             final boolean writeImmediately) {
         if (writeImmediately) {
-            createOrUpdateTextFileIfRequired(fileIdentifier, newContents,
-                    descriptionOfChange);
+            writeFiles(Collections.singletonMap(fileIdentifier, newContents),
+                    Collections.singletonMap(fileIdentifier,
+                            descriptionOfChange));
         }
         else {
-            deferredFileWrites.put(fileIdentifier, newContents);
+            synchronized (lock) {
+                deferredFileWrites.put(fileIdentifier, newContents);
 
-            String deferredDescriptionOfChange = StringUtils.defaultIfEmpty(
-                    deferredDescriptionOfChanges.get(fileIdentifier), "");
-            if (StringUtils.isNotBlank(deferredDescriptionOfChange)
-                    && !deferredDescriptionOfChange.trim().endsWith(";")) {
-                deferredDescriptionOfChange += "; ";
+                String deferredDescriptionOfChange = StringUtils
+                        .defaultIfEmpty(
+                                deferredDescriptionOfChanges
+                                        .get(fileIdentifier), "");
+                if (StringUtils.isNotBlank(deferredDescriptionOfChange)
+                        && !deferredDescriptionOfChange.trim().endsWith(";")) {
+                    deferredDescriptionOfChange += "; ";
+                }
+                deferredDescriptionOfChanges.put(
+                        fileIdentifier,
+                        deferredDescriptionOfChange
+                                + StringUtils.stripToEmpty(descriptionOfChange));
             }
-            deferredDescriptionOfChanges.put(
-                    fileIdentifier,
-                    deferredDescriptionOfChange
-                            + StringUtils.stripToEmpty(descriptionOfChange));
         }
     }
 
@@ -214,6 +297,7 @@ public class DefaultFileManager implements FileManager, UndoListener {
         final File actual = new File(fileIdentifier);
         Validate.isTrue(actual.exists(), "File '%s' does not exist",
                 fileIdentifier);
+        fingerprints.remove(fileIdentifier);
         try {
             fileMonitorService.notifyDeleted(actual.getCanonicalPath());
         }
@@ -238,10 +322,39 @@ public class DefaultFileManager implements FileManager, UndoListener {
         return fileMonitorService.findMatchingAntPath(antPath);
     }
 
+    private ExecutorService getExecutor() {
+        synchronized (lock) {
+            if (executor == null) {
+                final AtomicInteger threadNumber = new AtomicInteger();
+                final ThreadPoolExecutor threadPoolExecutor = new ThreadPoolExecutor(
+                        parallelism, parallelism, 60, TimeUnit.SECONDS,
+                        new LinkedBlockingQueue<Runnable>(),
+                        new ThreadFactory() {
+                            public Thread newThread(final Runnable r) {
+                                final Thread thread = new Thread(r,
+                                        "File writing "
+                                                + threadNumber
+                                                        .incrementAndGet());
+                                thread.setDaemon(true);
+                                return thread;
+                            }
+                        });
+                // Don't keep idle threads around between commits
+                threadPoolExecutor.allowCoreThreadTimeOut(true);
+                executor = threadPoolExecutor;
+            }
+            return executor;
+        }
+    }
+
     public InputStream getInputStream(final String fileIdentifier) {
-        if (deferredFileWrites.containsKey(fileIdentifier)) {
+        final String deferredContents;
+        synchronized (lock) {
+            deferredContents = deferredFileWrites.get(fileIdentifier);
+        }
+        if (deferredContents != null) {
             return new BufferedInputStream(new ByteArrayInputStream(
-                    deferredFileWrites.get(fileIdentifier).getBytes()));
+                    deferredContents.getBytes()));
         }
 
         final File file = new File(fileIdentifier);
@@ -263,6 +376,8 @@ public class DefaultFileManager implements FileManager, UndoListener {
     public void onUndoEvent(final UndoEvent event) {
         if (event.isUndoing()) {
             clear();
+            // Undoing may have restored files' previous contents
+            fingerprints.clear();
         }
         else {
             // It's a flush or a reset event
@@ -279,19 +394,194 @@ public class DefaultFileManager implements FileManager, UndoListener {
         return new FileDetails(f, f.lastModified());
     }
 
+    /**
+     * Runs the given tasks, in parallel if there's more than one and
+     * {@link #parallelism} allows, returning once they have all completed.
+     * 
+     * @param tasks the tasks to run (required)
+     * @throws RuntimeException the first exception thrown by any task
+     */
+    private void runAll(final List<Callable<Void>> tasks) {
+        if (parallelism < 2 || tasks.size() < 2) {
+            for (final Callable<Void> task : tasks) {
+                try {
+                    task.call();
+                }
+                catch (final RuntimeException e) {
+                    throw e;
+                }
+                catch (final Exception e) {
+                    throw new IllegalStateException(e);
+                }
+            }
+            return;
+        }
+        try {
+            for (final Future<Void> future : getExecutor().invokeAll(tasks)) {
+                future.get();
+            }
+        }
+        catch (final InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+        catch (final ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
     public int scan() {
         return fileMonitorService.scanNotified();
     }
 
+    /**
+     * For use by unit tests
+     * 
+     * @param parallelism
+     */
+    void setParallelism(final int parallelism) {
+        this.parallelism = parallelism;
+    }
+
     public MutableFile updateFile(final String fileIdentifier) {
         Validate.notNull(fileIdentifier, "File identifier required");
         final File actual = new File(fileIdentifier);
         Validate.isTrue(actual.exists(), "File '%s' does not exist",
                 fileIdentifier);
+        fingerprints.remove(fileIdentifier);
         new UpdateFile(undoManager, filenameResolver, actual);
         final ManagedMessageRenderer renderer = new ManagedMessageRenderer(
                 filenameResolver, actual, false);
         renderer.setIncludeHashCode(processManager.isDevelopmentMode());
         return new DefaultMutableFile(actual, fileMonitorService, renderer);
     }
-}
\ No newline at end of file
+
+    /**
+     * Writes the given file's new contents, backing up its old contents first
+     * if it's being updated
+     */
+    private void write(final FileWrite write) {
+        if (write.update) {
+            new UpdateFile(undoManager, filenameResolver, write.file);
+        }
+        try {
+            writeAtomically(write.file, write.contents);
+        }
+        catch (final IOException e) {
+            throw new IllegalStateException("Could not output '"
+                    + write.file + "'", e);
+        }
+        write.fingerprint = new Fingerprint(write.file, write.contentsSha);
+    }
+
+    /**
+     * Writes the given contents to a temporary file alongside the given file,
+     * then renames it over the given file, so that the latter never has
+     * partial contents.
+     */
+    private void writeAtomically(final File file, final byte[] contents)
+            throws IOException {
+        // The leading dot stops the file monitor noticing the temporary file
+        final File temporaryFile = File.createTempFile("." + file.getName(),
+                ".tmp", file.getParentFile());
+        try {
+            FileUtils.writeByteArrayToFile(temporaryFile, contents);
+            if (!temporaryFile.renameTo(file)) {
+                // Some platforms (e.g. Windows) won't rename over a file
+                FileUtils.writeByteArrayToFile(file, contents);
+            }
+        }
+        finally {
+            temporaryFile.delete();
+        }
+    }
+
+    /**
+     * Writes the given contents to their respective files, where they differ
+     * from the files' current contents. Files are compared with their new
+     * contents and written in parallel, but registered with the
+     * {@link UndoManager} and the file monitor, and the changes logged (as a
+     * single message), in the order given.
+     * 
+     * @param newContents key: file identifier, value: new contents (required)
+     * @param descriptionsOfChanges key: file identifier, value: description of
+     *            change (required)
+     */
+    private void writeFiles(final Map<String, String> newContents,
+            final Map<String, String> descriptionsOfChanges) {
+        final List<FileWrite> writes = new ArrayList<FileWrite>();
+        final List<Callable<Void>> checks = new ArrayList<Callable<Void>>();
+        for (final Entry<String, String> entry : newContents.entrySet()) {
+            final FileWrite write = new FileWrite(entry.getKey(),
+                    entry.getValue(),
+                    StringUtils.stripToEmpty(descriptionsOfChanges.get(entry
+                            .getKey())));
+            writes.add(write);
+            checks.add(new Callable<Void>() {
+                public Void call() {
+                    checkWriteRequired(write);
+                    return null;
+                }
+            });
+        }
+        runAll(checks);
+
+        final List<Callable<Void>> writeTasks = new ArrayList<Callable<Void>>();
+        for (final FileWrite write : writes) {
+            if (write.fingerprint != null) {
+                // Already has the new contents
+                fingerprints.put(write.fileIdentifier, write.fingerprint);
+                continue;
+            }
+            if (write.update) {
+                fingerprints.remove(write.fileIdentifier);
+            }
+            else {
+                // Registers the creation for undo and notifies the monitor
+                createFile(write.fileIdentifier);
+            }
+            write.renderer = new ManagedMessageRenderer(filenameResolver,
+                    write.file, !write.update);
+            write.renderer.setIncludeHashCode(processManager
+                    .isDevelopmentMode());
+            write.renderer.setHashCode(write.contentsSha);
+            if (StringUtils.isNotBlank(write.descriptionOfChange)) {
+                write.renderer
+                        .setDescriptionOfChange(write.descriptionOfChange);
+            }
+            writeTasks.add(new Callable<Void>() {
+                public Void call() {
+                    write(write);
+                    return null;
+                }
+            });
+        }
+        try {
+            runAll(writeTasks);
+        }
+        finally {
+            final List<ManagedMessageRenderer> renderers = new ArrayList<ManagedMessageRenderer>();
+            for (final FileWrite write : writes) {
+                if (write.renderer == null || write.fingerprint == null) {
+                    // Not written, whether or not it needed to be
+                    continue;
+                }
+                fingerprints.put(write.fileIdentifier, write.fingerprint);
+                renderers.add(write.renderer);
+                if (write.update) {
+                    try {
+                        fileMonitorService.notifyChanged(write.file
+                                .getCanonicalPath());
+                    }
+                    catch (final IOException ioe) {
+                        throw new IllegalStateException(ioe);
+                    }
+                }
+            }
+            ManagedMessageRenderer.logManagedMessages(renderers);
+        }
+    }
+}
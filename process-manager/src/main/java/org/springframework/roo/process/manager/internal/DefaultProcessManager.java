@@ -1,5 +1,6 @@
 package org.springframework.roo.process.manager.internal;
 
+import java.util.concurrent.TimeUnit;
 import java.util.logging.Level;
 import java.util.logging.Logger;
 
@@ -17,7 +18,9 @@ import org.osgi.service.startlevel.StartLevel;
 import org.springframework.roo.file.monitor.FileMonitorService;
 import org.springframework.roo.file.monitor.MonitoringRequest;
 import org.springframework.roo.file.monitor.NotifiableFileMonitorService;
+import org.springframework.roo.file.monitor.SignallingFileMonitorService;
 import org.springframework.roo.file.undo.UndoManager;
+import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.process.manager.ActiveProcessManager;
 import org.springframework.roo.process.manager.CommandCallback;
 import org.springframework.roo.process.manager.ProcessManager;
@@ -37,13 +40,30 @@ import org.springframework.roo.support.osgi.OSGiUtils;
 public class DefaultProcessManager extends
         AbstractProcessManagerStatusPublisher implements ProcessManager {
 
+    /**
+     * How long to wait after the file monitor signals a change before polling,
+     * so that a burst of changes (e.g. an IDE saving several files) is picked
+     * up by a single poll; configurable in milliseconds via the
+     * "roo.poll.debounce" system property
+     */
+    private static final long DEBOUNCE_WINDOW = Math.max(10,
+            Long.getLong("roo.poll.debounce", 100));
     private static final Logger LOGGER = HandlerUtils
             .getLogger(DefaultProcessManager.class);
+    /**
+     * How often to poll if the file monitor can't signal changes, and
+     * otherwise the longest the background thread is parked between checks
+     */
+    private static final long POLL_INTERVAL = 1000;
 
+    // Whether a batch is being executed, by the thread holding the lock on
+    // processManagerStatus
+    private boolean batching;
     private boolean developmentMode = false;
     @Reference private FileMonitorService fileMonitorService;
     private long lastPollDuration = 0;
     private long lastPollTime = 0; // What time the last poll was completed
+    @Reference private MetadataDependencyRegistry metadataDependencyRegistry;
     private long minimumDelayBetweenPoll = -1; // How many ms must pass at
     @Reference private StartLevel startLevel;
     @Reference private UndoManager undoManager;
@@ -59,6 +79,17 @@ public class DefaultProcessManager extends
                             || getProcessManagerStatus() == ProcessManagerStatus.BUSY_EXECUTING,
                     "Unable to execute as another thread has set status to %s",
                     getProcessManagerStatus());
+            if (batching) {
+                // Part of the batch's transaction, so leave the status, undo
+                // history, and any failure to the batch
+                try {
+                    return doUntilClean(callback);
+                }
+                catch (final RuntimeException e) {
+                    logException(e);
+                    throw e;
+                }
+            }
             setProcessManagerStatus(ProcessManagerStatus.BUSY_EXECUTING);
             try {
                 return doTransactionally(callback);
@@ -73,6 +104,32 @@ public class DefaultProcessManager extends
         }
     }
 
+    public <T> T executeBatch(final CommandCallback<T> callback) {
+        Validate.notNull(callback, "Callback required");
+        synchronized (processManagerStatus) {
+            final ProcessManagerStatus initialStatus = getProcessManagerStatus();
+            Validate.isTrue(
+                    initialStatus == ProcessManagerStatus.AVAILABLE
+                            || initialStatus == ProcessManagerStatus.BUSY_EXECUTING,
+                    "Unable to execute as another thread has set status to %s",
+                    initialStatus);
+            Validate.validState(!batching, "Batches can't be nested");
+            setProcessManagerStatus(ProcessManagerStatus.BUSY_EXECUTING);
+            batching = true;
+            metadataDependencyRegistry.deferNotifications();
+            try {
+                return doTransactionally(callback);
+            }
+            finally {
+                // Only has an effect if the batch failed before releasing them
+                metadataDependencyRegistry.releaseNotifications(false);
+                batching = false;
+                // e.g. BUSY_EXECUTING if the batch is part of a command
+                setProcessManagerStatus(initialStatus);
+            }
+        }
+    }
+
     /**
      * @return how many milliseconds the last poll execution took to complete (0
      *         = never ran; >0 = last execution time)
@@ -185,19 +242,21 @@ public class DefaultProcessManager extends
                     }
                 });
 
-        // Now start a thread that will undertake a background poll every second
+        // Now start a thread that will undertake a background poll whenever
+        // the file monitor signals a change (or every second if it can't)
         final Thread t = new Thread(new Runnable() {
             public void run() {
                 // Unsynchronized lookup of terminated status to avoid anything
                 // blocking the termination of the thread
                 while (getProcessManagerStatus() != ProcessManagerStatus.TERMINATED) {
-                    // We only bother doing a poll if we seem to be available (a
-                    // proper synchronized check happens later)
-                    if (getProcessManagerStatus() == ProcessManagerStatus.AVAILABLE) {
-                        timerBasedPoll();
-                    }
                     try {
-                        Thread.sleep(1000);
+                        // We only bother doing a poll if we seem to be
+                        // available (a proper synchronized check happens
+                        // later)
+                        if (awaitChanges()
+                                && getProcessManagerStatus() == ProcessManagerStatus.AVAILABLE) {
+                            timerBasedPoll();
+                        }
                     }
                     catch (final InterruptedException ignoreAndContinue) {
                     }
@@ -212,6 +271,34 @@ public class DefaultProcessManager extends
         terminate(); // Safe to call even if we'd terminated earlier
     }
 
+    /**
+     * Waits until a background poll is due, i.e. for the file monitor to
+     * signal that files may have changed, followed by the
+     * {@link #DEBOUNCE_WINDOW}; if the file monitor can't signal changes, a
+     * poll is due every {@link #POLL_INTERVAL} milliseconds.
+     * 
+     * @return <code>false</code> if there is no need to poll yet
+     * @throws InterruptedException if interrupted while waiting
+     */
+    private boolean awaitChanges() throws InterruptedException {
+        if (!(fileMonitorService instanceof SignallingFileMonitorService)) {
+            Thread.sleep(POLL_INTERVAL);
+            return true;
+        }
+        final long started = System.currentTimeMillis();
+        if (!((SignallingFileMonitorService) fileMonitorService).awaitChanges(
+                POLL_INTERVAL, TimeUnit.MILLISECONDS)) {
+            return false;
+        }
+        if (System.currentTimeMillis() - started < POLL_INTERVAL) {
+            // Signalled rather than timed out, so let any burst of changes
+            // finish (this also stops us spinning while changes remain
+            // pending, e.g. during a command)
+            Thread.sleep(DEBOUNCE_WINDOW);
+        }
+        return true;
+    }
+
     private boolean backgroundPoll() {
         // Quickly determine if another thread is running; we don't need to sit
         // around and wait (we'll get called again in a few hundred milliseconds
@@ -273,32 +360,12 @@ public class DefaultProcessManager extends
     private <T> T doTransactionally(final CommandCallback<T> callback) {
         T result = null;
         try {
-            ActiveProcessManager.setActiveProcessManager(this);
+            result = doUntilClean(callback);
 
-            // Run the requested operation
-            if (callback == null) {
-                fileMonitorService.scanAll();
-            }
-            else {
-                result = callback.callback();
-            }
-
-            // Flush the undo manager so that any changes it has been holding
-            // are written to disk and the file monitor service
-            undoManager.flush();
-
-            // Guarantee scans repeat until there are no more changes detected
-            while (fileMonitorService.isDirty()) {
-                if (fileMonitorService instanceof NotifiableFileMonitorService) {
-                    ((NotifiableFileMonitorService) fileMonitorService)
-                            .scanNotified();
-                }
-                else {
-                    fileMonitorService.scanAll();
-                }
-                // In case something else happened as a result of event
-                // notifications above
-                undoManager.flush();
+            if (batching) {
+                // Bring downstream metadata up to date with the whole batch
+                metadataDependencyRegistry.releaseNotifications(true);
+                flushUntilClean();
             }
 
             // It all seems to have worked, so clear the undo history
@@ -326,6 +393,54 @@ public class DefaultProcessManager extends
         return result;
     }
 
+    /**
+     * Runs the given callback (or if <code>null</code>, scans the file
+     * system), then {@link #flushUntilClean() flushes} its changes, without
+     * resetting or undoing them
+     * 
+     * @param callback the callback to run (can be <code>null</code>)
+     * @return the result of the callback
+     */
+    private <T> T doUntilClean(final CommandCallback<T> callback) {
+        ActiveProcessManager.setActiveProcessManager(this);
+
+        // Run the requested operation
+        T result = null;
+        if (callback == null) {
+            fileMonitorService.scanAll();
+        }
+        else {
+            result = callback.callback();
+        }
+        flushUntilClean();
+        return result;
+    }
+
+    /**
+     * Flushes any changes held by the undo manager, then scans the file
+     * system for them (and any changes those cause in turn) until there are
+     * no more
+     */
+    private void flushUntilClean() {
+        // Flush the undo manager so that any changes it has been holding
+        // are written to disk and the file monitor service
+        undoManager.flush();
+
+        // Guarantee scans repeat until there are no more changes detected
+        while (fileMonitorService.isDirty()) {
+            if (fileMonitorService instanceof NotifiableFileMonitorService) {
+                ((NotifiableFileMonitorService) fileMonitorService)
+                        .scanNotified();
+            }
+            else {
+                fileMonitorService.scanAll();
+            }
+            // In case something else happened as a result of event
+            // notifications above
+            undoManager.flush();
+        }
+    }
+
     private void logException(final Throwable t) {
         final Throwable root = ObjectUtils.defaultIfNull(
                 ExceptionUtils.getRootCause(t), t);
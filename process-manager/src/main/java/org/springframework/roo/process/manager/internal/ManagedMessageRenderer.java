@@ -1,8 +1,12 @@
 package org.springframework.roo.process.manager.internal;
 
 import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 import java.util.logging.Logger;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.springframework.roo.file.undo.FilenameResolver;
@@ -13,6 +17,25 @@ public class ManagedMessageRenderer {
     private static final Logger LOGGER = HandlerUtils
             .getLogger(ManagedMessageRenderer.class);
 
+    /**
+     * Logs the messages of the given renderers as a single log entry, one per
+     * line, e.g. to summarise all the changes made by one commit
+     * 
+     * @param renderers the renderers whose messages to log (required)
+     * @since 1.2.5
+     */
+    static void logManagedMessages(
+            final Collection<ManagedMessageRenderer> renderers) {
+        if (renderers.isEmpty()) {
+            return;
+        }
+        final List<String> messages = new ArrayList<String>(renderers.size());
+        for (final ManagedMessageRenderer renderer : renderers) {
+            messages.add(renderer.getManagedMessage());
+        }
+        LOGGER.fine(StringUtils.join(messages, IOUtils.LINE_SEPARATOR));
+    }
+
     private final boolean createOperation;
     private String descriptionOfChange;
     private final File file;
@@ -29,11 +52,7 @@ public class ManagedMessageRenderer {
         this.createOperation = createOperation;
     }
 
-    boolean isIncludeHashCode() {
-        return includeHashCode;
-    }
-
-    void logManagedMessage() {
+    private String getManagedMessage() {
         final StringBuilder message = new StringBuilder();
         if (hashCode != null && includeHashCode && hashCode.length() >= 7) {
             // Display only the first 6 characters, being consistent with Git
@@ -52,7 +71,15 @@ public class ManagedMessageRenderer {
             message.append(descriptionOfChange);
             message.append("]");
         }
-        LOGGER.fine(message.toString());
+        return message.toString();
+    }
+
+    boolean isIncludeHashCode() {
+        return includeHashCode;
+    }
+
+    void logManagedMessage() {
+        LOGGER.fine(getManagedMessage());
     }
 
     public void setDescriptionOfChange(final String message) {
@@ -4,6 +4,9 @@ import static org.springframework.roo.project.DependencyScope.COMPILE;
 import static org.springframework.roo.support.util.AnsiEscapeCode.FG_CYAN;
 import static org.springframework.roo.support.util.AnsiEscapeCode.decorate;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -13,6 +16,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.logging.Level;
 
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang3.StringUtils;
 import org.apache.commons.lang3.Validate;
 import org.apache.felix.scr.annotations.Component;
@@ -84,6 +88,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
     }
 
     private final Map<String, Feature> features = new HashMap<String, Feature>();
+    /** key: POM path, value: its DOM as last written by this class */
+    private final Map<String, PomDocument> pomDocuments = new HashMap<String, PomDocument>();
 
     @Reference FileManager fileManager;
     @Reference MetadataService metadataService;
@@ -111,13 +117,11 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         Validate.notNull(pom,
                 "The pom is not available, so plugin addition cannot be performed");
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final Element pluginsElement = DomUtils.createChildIfNotExists(
                 "/project/build/plugins", root, document);
-        final List<Element> existingPluginElements = XmlUtils.findElements(
-                "plugin", pluginsElement);
 
         final List<String> addedPlugins = new ArrayList<String>();
         final List<String> removedPlugins = new ArrayList<String>();
@@ -126,7 +130,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
                 // Look for any existing instances of this plugin
                 boolean inserted = false;
-                for (final Element existingPluginElement : existingPluginElements) {
+                for (final Element existingPluginElement : pomDocument
+                        .findPlugins(newPlugin)) {
                     final Plugin existingPlugin = new Plugin(
                             existingPluginElement);
                     if (existingPlugin.hasSameCoordinates(newPlugin)) {
@@ -134,7 +139,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                         // version, exclusions, etc.
                         if (!inserted) {
                             // We haven't added the new one yet; do so now
-                            pluginsElement.insertBefore(
+                            pomDocument.addElement(PomDocument.PLUGINS,
+                                    pluginsElement,
                                     newPlugin.getElement(document),
                                     existingPluginElement);
                             inserted = true;
@@ -150,14 +156,17 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                         }
                         // Either way, we remove the previous one in case it was
                         // different in any way
-                        pluginsElement.removeChild(existingPluginElement);
+                        pomDocument.removeElement(PomDocument.PLUGINS,
+                                existingPluginElement);
                     }
                     // Keep looping in case it's present more than once
                 }
                 if (!inserted) {
                     // We didn't encounter any existing dependencies with the
                     // same coordinates; add it now
-                    pluginsElement.appendChild(newPlugin.getElement(document));
+                    pomDocument.addElement(PomDocument.PLUGINS,
+                            pluginsElement, newPlugin.getElement(document),
+                            null);
                     addedPlugins.add(newPlugin.getSimpleDescription());
                 }
             }
@@ -166,8 +175,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         if (!newPlugins.isEmpty()) {
             final String message = getPomPluginsUpdateMessage(addedPlugins,
                     removedPlugins);
-            fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                    XmlUtils.nodeToString(document), message, false);
+            writePomDocument(pom, pomDocument, message, false);
         }
     }
 
@@ -180,12 +188,10 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         Validate.notNull(pom,
                 "The pom is not available, so dependencies cannot be added");
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element dependenciesElement = DomUtils.createChildIfNotExists(
                 "dependencies", document.getDocumentElement(), document);
-        final List<Element> existingDependencyElements = XmlUtils.findElements(
-                "dependency", dependenciesElement);
 
         final List<String> addedDependencies = new ArrayList<String>();
         final List<String> removedDependencies = new ArrayList<String>();
@@ -194,7 +200,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             if (pom.canAddDependency(newDependency)) {
                 // Look for any existing instances of this dependency
                 boolean inserted = false;
-                for (final Element existingDependencyElement : existingDependencyElements) {
+                for (final Element existingDependencyElement : pomDocument
+                        .findDependencies(newDependency)) {
                     final Dependency existingDependency = new Dependency(
                             existingDependencyElement);
                     if (existingDependency.hasSameCoordinates(newDependency)) {
@@ -202,7 +209,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                         // version, exclusions, etc.
                         if (!inserted) {
                             // We haven't added the new one yet; do so now
-                            dependenciesElement.insertBefore(
+                            pomDocument.addElement(PomDocument.DEPENDENCIES,
+                                    dependenciesElement,
                                     newDependency.getElement(document),
                                     existingDependencyElement);
                             inserted = true;
@@ -218,16 +226,17 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                         }
                         // Either way, we remove the previous one in case it was
                         // different in any way
-                        dependenciesElement
-                                .removeChild(existingDependencyElement);
+                        pomDocument.removeElement(PomDocument.DEPENDENCIES,
+                                existingDependencyElement);
                     }
                     // Keep looping in case it's present more than once
                 }
                 if (!inserted) {
                     // We didn't encounter any existing dependencies with the
                     // same coordinates; add it now
-                    dependenciesElement.appendChild(newDependency
-                            .getElement(document));
+                    pomDocument.addElement(PomDocument.DEPENDENCIES,
+                            dependenciesElement,
+                            newDependency.getElement(document), null);
                     addedDependencies.add(newDependency.getSimpleDescription());
                 }
             }
@@ -238,8 +247,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         if (!newDependencies.isEmpty() || !skippedDependencies.isEmpty()) {
             final String message = getPomDependenciesUpdateMessage(
                     addedDependencies, removedDependencies, skippedDependencies);
-            fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                    XmlUtils.nodeToString(document), message, false);
+            writePomDocument(pom, pomDocument, message, false);
         }
     }
 
@@ -289,8 +297,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final String descriptionOfChange;
         final Element buildElement = XmlUtils.findFirstElement(
@@ -312,8 +320,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                     + filter.getValue() + "'";
         }
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     public void addModuleDependency(final String moduleToDependUpon) {
@@ -369,8 +376,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final String descriptionOfChange;
         final Element existing = XmlUtils.findFirstElement(
@@ -391,8 +398,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                     + property.getName() + "' to '" + property.getValue() + "'";
         }
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     public void addRepositories(final String moduleName,
@@ -422,10 +428,12 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element repositoriesElement = DomUtils.createChildIfNotExists(
                 containingPath, document.getDocumentElement(), document);
+        final String indexedPath = "pluginRepository".equals(path) ? PomDocument.PLUGIN_REPOSITORIES
+                : PomDocument.REPOSITORIES;
 
         final List<String> addedRepositories = new ArrayList<String>();
         for (final Repository repository : repositories) {
@@ -439,17 +447,19 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                     continue;
                 }
             }
-            if (repository != null) {
-                repositoriesElement.appendChild(repository.getElement(document,
-                        path));
+            // The POM model won't include any added earlier in this command
+            if (repository != null
+                    && pomDocument.findRepositories(indexedPath, repository)
+                            .isEmpty()) {
+                pomDocument.addElement(indexedPath, repositoriesElement,
+                        repository.getElement(document, path), null);
                 addedRepositories.add(repository.getUrl());
             }
         }
         final String message = getDescriptionOfChange(ADDED, addedRepositories,
                 path, containingPath);
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), message, false);
+        writePomDocument(pom, pomDocument, message, false);
     }
 
     public void addRepository(final String moduleName,
@@ -478,8 +488,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element buildElement = XmlUtils.findFirstElement(
                 "/project/build", document.getDocumentElement());
         final Element resourcesElement = DomUtils.createChildIfNotExists(
@@ -488,8 +498,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         final String descriptionOfChange = highlight(ADDED + " resource") + " "
                 + resource.getSimpleDescription();
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     protected void bindFeature(final Feature feature) {
@@ -578,6 +587,38 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         return StringUtils.join(changes, "; ");
     }
 
+    /**
+     * Returns the DOM of the given POM, for changing and then
+     * {@link #writePomDocument(Pom, PomDocument, String, boolean) writing}.
+     * Reuses the DOM last written to that POM if the POM still has the same
+     * contents, so that a command making many changes to it parses it once.
+     * 
+     * @param pom the POM to read (required)
+     * @return a non-<code>null</code> document
+     */
+    private PomDocument getPomDocument(final Pom pom) {
+        final byte[] contents;
+        InputStream inputStream = null;
+        try {
+            inputStream = fileManager.getInputStream(pom.getPath());
+            contents = IOUtils.toByteArray(inputStream);
+        }
+        catch (final IOException e) {
+            throw new IllegalStateException("Could not read '" + pom.getPath()
+                    + "'", e);
+        }
+        finally {
+            IOUtils.closeQuietly(inputStream);
+        }
+        // Not cached again until written, in case it's changed but not written
+        final PomDocument pomDocument = pomDocuments.remove(pom.getPath());
+        if (pomDocument != null && pomDocument.hasContents(contents)) {
+            return pomDocument;
+        }
+        return new PomDocument(XmlUtils.readXml(new ByteArrayInputStream(
+                contents)), contents);
+    }
+
     private String getPomPluginsUpdateMessage(
             final Collection<String> addedPlugins,
             final Collection<String> removedPlugins) {
@@ -703,8 +744,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final Element pluginsElement = XmlUtils.findFirstElement(
                 "/project/build/plugins", root);
@@ -714,17 +755,14 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
         final List<String> removedPlugins = new ArrayList<String>();
         for (final Plugin plugin : plugins) {
-            // Can't filter the XPath on groupId, as it's optional in the POM
-            // for Apache-owned plugins
-            for (final Element candidate : XmlUtils.findElements(
-                    "plugin[artifactId = '" + plugin.getArtifactId()
-                            + "' and version = '" + plugin.getVersion() + "']",
-                    pluginsElement)) {
+            for (final Element candidate : pomDocument.findPlugins(plugin)) {
                 final Plugin candidatePlugin = new Plugin(candidate);
-                if (candidatePlugin.getGroupId().equals(plugin.getGroupId())) {
+                if (candidatePlugin.hasSameCoordinates(plugin)
+                        && candidatePlugin.getVersion().equals(
+                                plugin.getVersion())) {
                     // This element has the same groupId, artifactId, and
                     // version as the plugin to be removed; remove it
-                    pluginsElement.removeChild(candidate);
+                    pomDocument.removeElement(PomDocument.PLUGINS, candidate);
                     removedPlugins.add(candidatePlugin.getSimpleDescription());
                     // Keep looping in case this plugin is in the POM more than
                     // once (unlikely)
@@ -738,8 +776,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         final String message = getDescriptionOfChange(REMOVED, removedPlugins,
                 "plugin", "plugins");
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), message, writeImmediately);
+        writePomDocument(pom, pomDocument, message, writeImmediately);
     }
 
     public void removeDependencies(final String moduleName,
@@ -757,8 +794,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final Element dependenciesElement = XmlUtils.findFirstElement(
                 "/project/dependencies", root);
@@ -766,22 +803,18 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final List<Element> existingDependencyElements = XmlUtils.findElements(
-                "dependency", dependenciesElement);
         final List<String> removedDependencies = new ArrayList<String>();
         for (final Dependency dependencyToRemove : dependenciesToRemove) {
             if (pom.isDependencyRegistered(dependencyToRemove)) {
-                for (final Iterator<Element> iter = existingDependencyElements
-                        .iterator(); iter.hasNext();) {
-                    final Element candidate = iter.next();
+                for (final Element candidate : pomDocument
+                        .findDependencies(dependencyToRemove)) {
                     final Dependency candidateDependency = new Dependency(
                             candidate);
                     if (candidateDependency.equals(dependencyToRemove)) {
-                        // It's the same dependency; remove it
-                        dependenciesElement.removeChild(candidate);
-                        // Ensure we don't try to remove it again for another
-                        // Dependency
-                        iter.remove();
+                        // It's the same dependency; remove it (which also
+                        // ensures we don't try to remove it again)
+                        pomDocument.removeElement(PomDocument.DEPENDENCIES,
+                                candidate);
                         removedDependencies.add(candidateDependency
                                 .getSimpleDescription());
                     }
@@ -796,28 +829,11 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         final String message = getDescriptionOfChange(REMOVED,
                 removedDependencies, "dependency", "dependencies");
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), message, false);
+        writePomDocument(pom, pomDocument, message, false);
     }
 
     public void removeDependency(final String moduleName,
             final Dependency dependency) {
-        removeDependency(moduleName, dependency, "/project/dependencies",
-                "/project/dependencies/dependency");
-    }
-
-    /**
-     * Removes an element identified by the given dependency, whenever it occurs
-     * at the given path
-     * 
-     * @param moduleName the name of the module to remove the dependency from
-     * @param dependency the dependency to remove
-     * @param containingPath the path to the dependencies element
-     * @param path the path to the individual dependency elements
-     */
-    private void removeDependency(final String moduleName,
-            final Dependency dependency, final String containingPath,
-            final String path) {
         Validate.isTrue(isProjectAvailable(moduleName),
                 "Dependency modification prohibited at this time");
         Validate.notNull(dependency, "Dependency to remove required");
@@ -828,16 +844,16 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
 
         String descriptionOfChange = "";
         final Element dependenciesElement = XmlUtils.findFirstElement(
-                containingPath, root);
-        for (final Element candidate : XmlUtils.findElements(path, root)) {
+                "/project/dependencies", root);
+        for (final Element candidate : pomDocument.findDependencies(dependency)) {
             if (dependency.equals(new Dependency(candidate))) {
-                dependenciesElement.removeChild(candidate);
+                pomDocument.removeElement(PomDocument.DEPENDENCIES, candidate);
                 descriptionOfChange = highlight(REMOVED + " dependency") + " "
                         + dependency.getSimpleDescription();
                 // Stay in the loop, just in case it was in the POM more than
@@ -847,8 +863,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
         DomUtils.removeTextNodes(dependenciesElement);
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     public final void removeDependency(final String moduleName,
@@ -880,8 +895,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
 
         final Element filtersElement = XmlUtils.findFirstElement(
@@ -910,8 +925,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
         DomUtils.removeTextNodes(root);
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     public void removePluginRepository(final String moduleName,
@@ -920,7 +934,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
                 "Plugin repository modification prohibited at this time");
         Validate.notNull(repository, "Repository required");
         removeRepository(moduleName, repository,
-                "/project/pluginRepositories/pluginRepository");
+                PomDocument.PLUGIN_REPOSITORIES);
     }
 
     public void removeProperty(final String moduleName, final Property property) {
@@ -934,8 +948,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final Element propertiesElement = XmlUtils.findFirstElement(
                 "/project/properties", root);
@@ -953,14 +967,12 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
         DomUtils.removeTextNodes(propertiesElement);
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     public void removeRepository(final String moduleName,
             final Repository repository) {
-        removeRepository(moduleName, repository,
-                "/project/repositories/repository");
+        removeRepository(moduleName, repository, PomDocument.REPOSITORIES);
     }
 
     private void removeRepository(final String moduleName,
@@ -982,14 +994,12 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             }
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
-        final Element root = document.getDocumentElement();
-
+        final PomDocument pomDocument = getPomDocument(pom);
         String descriptionOfChange = "";
-        for (final Element candidate : XmlUtils.findElements(path, root)) {
+        for (final Element candidate : pomDocument.findRepositories(path,
+                repository)) {
             if (repository.equals(new Repository(candidate))) {
-                candidate.getParentNode().removeChild(candidate);
+                pomDocument.removeElement(path, candidate);
                 descriptionOfChange = highlight(REMOVED + " repository") + " "
                         + repository.getUrl();
                 // We stay in the loop just in case it was in the POM more than
@@ -997,8 +1007,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             }
         }
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     public void removeResource(final String moduleName, final Resource resource) {
@@ -1012,8 +1021,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final Element resourcesElement = XmlUtils.findFirstElement(
                 "/project/build/resources", root);
@@ -1041,8 +1050,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
 
         DomUtils.removeTextNodes(root);
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
     }
 
     public void setModule(final Pom module) {
@@ -1091,8 +1099,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
             return;
         }
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element root = document.getDocumentElement();
         final Element dependencyElement = XmlUtils.findFirstElement(
                 "/project/dependencies/dependency[groupId = '"
@@ -1136,10 +1144,7 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         }
 
         if (descriptionOfChange != null) {
-            fileManager
-                    .createOrUpdateTextFileIfRequired(pom.getPath(),
-                            XmlUtils.nodeToString(document),
-                            descriptionOfChange, false);
+            writePomDocument(pom, pomDocument, descriptionOfChange, false);
         }
     }
 
@@ -1150,8 +1155,8 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         Validate.notNull(pom,
                 "The pom is not available, so the project type cannot be changed");
 
-        final Document document = XmlUtils.readXml(fileManager
-                .getInputStream(pom.getPath()));
+        final PomDocument pomDocument = getPomDocument(pom);
+        final Document document = pomDocument.getDocument();
         final Element packaging = DomUtils.createChildIfNotExists("packaging",
                 document.getDocumentElement(), document);
         if (packaging.getTextContent().equals(projectType.getType())) {
@@ -1162,7 +1167,27 @@ public abstract class AbstractProjectOperations implements ProjectOperations {
         final String descriptionOfChange = highlight(UPDATED + " project type")
                 + " to " + projectType.getType();
 
-        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(),
-                XmlUtils.nodeToString(document), descriptionOfChange, false);
+        writePomDocument(pom, pomDocument, descriptionOfChange, false);
+    }
+
+    /**
+     * Writes the given DOM of the given POM, keeping it for the next change to
+     * that POM
+     * 
+     * @param pom the POM to write (required)
+     * @param pomDocument the changed DOM (required)
+     * @param descriptionOfChange the description of the change (can be blank)
+     * @param writeImmediately see
+     *            {@link FileManager#createOrUpdateTextFileIfRequired(String, String, String, boolean)}
+     */
+    private void writePomDocument(final Pom pom,
+            final PomDocument pomDocument, final String descriptionOfChange,
+            final boolean writeImmediately) {
+        final String contents = XmlUtils.nodeToString(pomDocument
+                .getDocument());
+        fileManager.createOrUpdateTextFileIfRequired(pom.getPath(), contents,
+                descriptionOfChange, writeImmediately);
+        pomDocument.setContents(contents.getBytes());
+        pomDocuments.put(pom.getPath(), pomDocument);
     }
 }
@@ -1,5 +1,6 @@
 package org.springframework.roo.project;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashSet;
 import java.util.Set;
@@ -94,8 +95,14 @@ public class DelegatePathResolver implements PathResolver {
     }
 
     private PathResolvingStrategy getStrategy() {
+        // Paths may be resolved while metadata is produced on several threads
+        final Collection<PathResolvingStrategy> strategies;
+        synchronized (lock) {
+            strategies = new ArrayList<PathResolvingStrategy>(
+                    pathResolvingStrategies);
+        }
         PathResolvingStrategy chosenStrategy = null;
-        for (final PathResolvingStrategy pathResolvingStrategy : pathResolvingStrategies) {
+        for (final PathResolvingStrategy pathResolvingStrategy : strategies) {
             if (pathResolvingStrategy.isActive()) {
                 if (chosenStrategy != null) {
                     throw new IllegalArgumentException(
@@ -0,0 +1,205 @@
+package org.springframework.roo.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.apache.commons.lang3.Validate;
+import org.springframework.roo.support.util.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/**
+ * The DOM of a POM as changed by {@link AbstractProjectOperations}, along with
+ * the contents it was last written with and indexes of its dependency, plugin,
+ * and repository elements by their coordinates. Kept between changes to that
+ * POM, so that a command that changes it many times parses it only once and
+ * doesn't have to scan (and parse) all of its dependencies to find one.
+ * <p>
+ * The indexes are built when first used and are only kept up to date if the
+ * indexed elements are added and removed via this class.
+ * 
+ * @since 1.2.5
+ */
+class PomDocument {
+
+    static final String DEPENDENCIES = "/project/dependencies/dependency";
+    static final String PLUGIN_REPOSITORIES = "/project/pluginRepositories/pluginRepository";
+    static final String PLUGINS = "/project/build/plugins/plugin";
+    static final String REPOSITORIES = "/project/repositories/repository";
+
+    private static String getKey(final Dependency dependency) {
+        return dependency.getGroupId() + ":" + dependency.getArtifactId();
+    }
+
+    /**
+     * Returns the key by which the given element at the given path is indexed
+     * 
+     * @param path one of the indexed paths, e.g. {@link #DEPENDENCIES}
+     * @param element the element to index (required)
+     * @return a non-<code>null</code> key
+     */
+    private static String getKey(final String path, final Element element) {
+        if (DEPENDENCIES.equals(path)) {
+            return getKey(new Dependency(element));
+        }
+        if (PLUGINS.equals(path)) {
+            // Not by groupId, as it's optional for Apache-owned plugins
+            return new Plugin(element).getArtifactId();
+        }
+        return getKey(new Repository(element));
+    }
+
+    private static String getKey(final Repository repository) {
+        return repository.getId() + " " + repository.getUrl();
+    }
+
+    private byte[] contents;
+    private final Document document;
+    /** key: indexed path, value: the elements at that path by their key */
+    private final Map<String, Map<String, List<Element>>> indexes = new HashMap<String, Map<String, List<Element>>>();
+
+    /**
+     * Constructor
+     * 
+     * @param document the POM's DOM (required)
+     * @param contents the contents from which the DOM was parsed (required)
+     */
+    PomDocument(final Document document, final byte[] contents) {
+        Validate.notNull(document, "Document required");
+        Validate.notNull(contents, "Contents required");
+        this.contents = contents;
+        this.document = document;
+    }
+
+    /**
+     * Adds the given element to its parent, before the given child, indexing
+     * it by the given path
+     * 
+     * @param path the indexed path of the new element, e.g.
+     *            {@link #DEPENDENCIES}
+     * @param parent the element to add it to (required)
+     * @param newElement the element to add (required)
+     * @param refChild the child before which to add it; <code>null</code> to
+     *            add it after the existing children
+     */
+    void addElement(final String path, final Element parent,
+            final Element newElement, final Node refChild) {
+        parent.insertBefore(newElement, refChild);
+        final Map<String, List<Element>> index = indexes.get(path);
+        if (index != null) {
+            final String key = getKey(path, newElement);
+            List<Element> elements = index.get(key);
+            if (elements == null) {
+                elements = new ArrayList<Element>();
+                index.put(key, elements);
+            }
+            elements.add(newElement);
+        }
+    }
+
+    /**
+     * Returns any dependency elements with the same groupId and artifactId as
+     * the given dependency; callers should check the other coordinates
+     * 
+     * @param dependency the dependency to look for (required)
+     * @return a non-<code>null</code> copy of the matching elements
+     */
+    List<Element> findDependencies(final Dependency dependency) {
+        return findElements(DEPENDENCIES, getKey(dependency));
+    }
+
+    private List<Element> findElements(final String path, final String key) {
+        Map<String, List<Element>> index = indexes.get(path);
+        if (index == null) {
+            index = new HashMap<String, List<Element>>();
+            for (final Element element : XmlUtils.findElements(path,
+                    document.getDocumentElement())) {
+                final String elementKey = getKey(path, element);
+                List<Element> elements = index.get(elementKey);
+                if (elements == null) {
+                    elements = new ArrayList<Element>();
+                    index.put(elementKey, elements);
+                }
+                elements.add(element);
+            }
+            indexes.put(path, index);
+        }
+        final List<Element> elements = index.get(key);
+        if (elements == null) {
+            return Collections.emptyList();
+        }
+        return new ArrayList<Element>(elements);
+    }
+
+    /**
+     * Returns any plugin elements with the same artifactId as the given plugin;
+     * callers should check the other coordinates
+     * 
+     * @param plugin the plugin to look for (required)
+     * @return a non-<code>null</code> copy of the matching elements
+     */
+    List<Element> findPlugins(final Plugin plugin) {
+        return findElements(PLUGINS, plugin.getArtifactId());
+    }
+
+    /**
+     * Returns any repository elements at the given path equal to the given
+     * repository
+     * 
+     * @param path {@link #REPOSITORIES} or {@link #PLUGIN_REPOSITORIES}
+     * @param repository the repository to look for (required)
+     * @return a non-<code>null</code> copy of the matching elements
+     */
+    List<Element> findRepositories(final String path,
+            final Repository repository) {
+        return findElements(path, getKey(repository));
+    }
+
+    Document getDocument() {
+        return document;
+    }
+
+    /**
+     * Indicates whether the POM has the contents this DOM was parsed from or
+     * last written with, i.e. whether the DOM is up to date
+     * 
+     * @param contents the POM's current contents (required)
+     * @return see above
+     */
+    boolean hasContents(final byte[] contents) {
+        return Arrays.equals(this.contents, contents);
+    }
+
+    /**
+     * Removes the given element from its parent and from the index of the
+     * given path
+     * 
+     * @param path the indexed path of the element, e.g. {@link #DEPENDENCIES}
+     * @param element the element to remove (required)
+     */
+    void removeElement(final String path, final Element element) {
+        element.getParentNode().removeChild(element);
+        final Map<String, List<Element>> index = indexes.get(path);
+        if (index != null) {
+            final List<Element> elements = index.get(getKey(path, element));
+            if (elements != null) {
+                elements.remove(element);
+            }
+        }
+    }
+
+    /**
+     * Records the contents with which this DOM has been written to the POM
+     * 
+     * @param contents the contents (required)
+     */
+    void setContents(final byte[] contents) {
+        Validate.notNull(contents, "Contents required");
+        this.contents = contents;
+    }
+}
@@ -21,6 +21,9 @@ import org.apache.felix.scr.annotations.Reference;
 import org.apache.felix.scr.annotations.Service;
 import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.file.monitor.FileMonitorService;
+import org.springframework.roo.file.monitor.event.FileEvent;
+import org.springframework.roo.file.monitor.event.FileEventListener;
+import org.springframework.roo.file.monitor.event.FileOperation;
 import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.metadata.MetadataService;
 import org.springframework.roo.process.manager.FileManager;
@@ -35,7 +38,8 @@ import org.w3c.dom.Element;
 
 @Component
 @Service
-public class PomManagementServiceImpl implements PomManagementService {
+public class PomManagementServiceImpl implements PomManagementService,
+        FileEventListener {
 
     private static class PomComparator implements Comparator<String> {
         private final Map<String, Pom> pomMap;
@@ -74,8 +78,18 @@ public class PomManagementServiceImpl implements PomManagementService {
     @Reference PomFactory pomFactory;
     @Reference Shell shell;
 
+    /** POMs reported deleted since the cache was last updated */
+    private final Set<String> deletedPoms = new HashSet<String>();
     private String focusedModulePath;
+    /**
+     * Guards the cached POMs, which may be requested while metadata is being
+     * produced on several threads; metadata is never requested while it's held
+     */
+    private final Object lock = new Object();
     private final Map<String, Pom> pomMap = new LinkedHashMap<String, Pom>();
+    /** key: directory containing a pom.xml, value: that POM */
+    private final Map<String, Pom> pomsByDirectory = new HashMap<String, Pom>();
+    private final Map<String, Pom> pomsByModuleName = new HashMap<String, Pom>();
     private String projectRootDirectory;
     private final Set<String> toBeParsed = new HashSet<String>();
 
@@ -92,7 +106,10 @@ public class PomManagementServiceImpl implements PomManagementService {
      * @param pom the POM to add (required)
      */
     void addPom(final Pom pom) {
-        pomMap.put(pom.getPath(), pom);
+        synchronized (lock) {
+            pomMap.put(pom.getPath(), pom);
+            indexPoms();
+        }
     }
 
     private void findUnparsedPoms() {
@@ -106,10 +123,16 @@ public class PomManagementServiceImpl implements PomManagementService {
 
     public Pom getFocusedModule() {
         updatePomCache();
-        if (focusedModulePath == null && getRootPom() != null) {
-            focusedModulePath = getRootPom().getPath();
+        synchronized (lock) {
+            if (focusedModulePath == null) {
+                final Pom rootPom = pomMap.get(getRootPomPath());
+                if (rootPom != null) {
+                    focusedModulePath = rootPom.getPath();
+                }
+            }
+            return focusedModulePath == null ? null : pomMap
+                    .get(focusedModulePath);
         }
-        return getPomFromPath(focusedModulePath);
     }
 
     public String getFocusedModuleName() {
@@ -121,28 +144,22 @@ public class PomManagementServiceImpl implements PomManagementService {
 
     public Pom getModuleForFileIdentifier(final String fileIdentifier) {
         updatePomCache();
-        String startingPoint = FileUtils.getFirstDirectory(fileIdentifier);
-        String pomPath = FileUtils.ensureTrailingSeparator(startingPoint)
-                + DEFAULT_POM_NAME;
-        File pom = new File(pomPath);
-        while (!pom.exists()) {
-            if (startingPoint.equals(SEPARATOR)) {
-                break;
-            }
-            startingPoint = StringUtils.removeEnd(startingPoint, SEPARATOR);
-            
-            if (startingPoint.lastIndexOf(SEPARATOR) < 0) {
-            	break;
+        // The nearest enclosing directory with a known POM; every pom.xml the
+        // file monitor has seen is known, so there's no need to probe the disk
+        String directory = StringUtils.stripEnd(fileIdentifier, SEPARATOR);
+        synchronized (lock) {
+            while (true) {
+                final Pom pom = pomsByDirectory.get(directory);
+                if (pom != null) {
+                    return pom;
+                }
+                final int lastSeparator = directory.lastIndexOf(SEPARATOR);
+                if (lastSeparator < 0) {
+                    return null;
+                }
+                directory = directory.substring(0, lastSeparator);
             }
-            startingPoint = startingPoint.substring(0,
-                    startingPoint.lastIndexOf(SEPARATOR));
-            startingPoint = StringUtils.removeEnd(startingPoint, SEPARATOR);
-
-            pomPath = FileUtils.ensureTrailingSeparator(startingPoint)
-                    + DEFAULT_POM_NAME;
-            pom = new File(pomPath);
         }
-        return getPomFromPath(pomPath);
     }
 
     private String getModuleName(final String pomDirectory) {
@@ -157,34 +174,75 @@ public class PomManagementServiceImpl implements PomManagementService {
 
     public Collection<String> getModuleNames() {
         final Set<String> moduleNames = new HashSet<String>();
-        for (final Pom module : pomMap.values()) {
-            moduleNames.add(module.getModuleName());
+        synchronized (lock) {
+            for (final Pom module : pomMap.values()) {
+                moduleNames.add(module.getModuleName());
+            }
         }
         return moduleNames;
     }
 
     public Pom getPomFromModuleName(final String moduleName) {
-        for (final Pom pom : getPoms()) {
-            if (pom.getModuleName().equals(moduleName)) {
-                return pom;
-            }
+        updatePomCache();
+        synchronized (lock) {
+            return pomsByModuleName.get(moduleName);
         }
-        return null;
     }
 
     public Pom getPomFromPath(final String pomPath) {
         updatePomCache();
-        return pomMap.get(pomPath);
+        synchronized (lock) {
+            return pomMap.get(pomPath);
+        }
     }
 
     public Collection<Pom> getPoms() {
         updatePomCache();
-        return new ArrayList<Pom>(pomMap.values());
+        synchronized (lock) {
+            return new ArrayList<Pom>(pomMap.values());
+        }
     }
 
     public Pom getRootPom() {
         updatePomCache();
-        return pomMap.get(projectRootDirectory + SEPARATOR + DEFAULT_POM_NAME);
+        synchronized (lock) {
+            return pomMap.get(getRootPomPath());
+        }
+    }
+
+    private String getRootPomPath() {
+        return projectRootDirectory + SEPARATOR + DEFAULT_POM_NAME;
+    }
+
+    /**
+     * Indexes the known POMs by their directory and module name; if two POMs
+     * have the same module name, the first one in {@link #pomMap} wins
+     */
+    private void indexPoms() {
+        pomsByDirectory.clear();
+        pomsByModuleName.clear();
+        for (final Pom pom : pomMap.values()) {
+            final String pomPath = pom.getPath();
+            if (pomPath.endsWith(SEPARATOR + DEFAULT_POM_NAME)) {
+                pomsByDirectory.put(StringUtils.removeEnd(pomPath, SEPARATOR
+                        + DEFAULT_POM_NAME), pom);
+            }
+            if (!pomsByModuleName.containsKey(pom.getModuleName())) {
+                pomsByModuleName.put(pom.getModuleName(), pom);
+            }
+        }
+    }
+
+    public void onFileEvent(final FileEvent fileEvent) {
+        if (fileEvent.getOperation() == FileOperation.DELETED) {
+            final String path = fileEvent.getFileDetails().getCanonicalPath();
+            if (path.endsWith(SEPARATOR + DEFAULT_POM_NAME)) {
+                // Reported by the file monitor's thread
+                synchronized (deletedPoms) {
+                    deletedPoms.add(path);
+                }
+            }
+        }
     }
 
     private Set<Pom> parseUnparsedPoms() {
@@ -221,6 +279,34 @@ public class PomManagementServiceImpl implements PomManagementService {
         return newPoms;
     }
 
+    /**
+     * Forgets any known POMs whose files have been deleted, so that they no
+     * longer contain the files in their directories
+     * 
+     * @return whether any known POMs were forgotten
+     */
+    private boolean removeDeletedPoms() {
+        final Collection<String> pomPaths;
+        synchronized (deletedPoms) {
+            pomPaths = new ArrayList<String>(deletedPoms);
+            deletedPoms.clear();
+        }
+        boolean removed = false;
+        for (final String pomPath : pomPaths) {
+            // Unless it has been re-created since
+            if (!new File(pomPath).exists()) {
+                toBeParsed.remove(pomPath);
+                if (pomMap.remove(pomPath) != null) {
+                    removed = true;
+                    if (pomPath.equals(focusedModulePath)) {
+                        focusedModulePath = null;
+                    }
+                }
+            }
+        }
+        return removed;
+    }
+
     private void resolveChildModulePoms(final Element pomRoot,
             final String pomPath, final Map<String, String> pomSet) {
         for (final Element module : XmlUtils.findElements(
@@ -316,10 +402,12 @@ public class PomManagementServiceImpl implements PomManagementService {
 
     public void setFocusedModule(final Pom focusedModule) {
         Validate.notNull(focusedModule, "Module required");
-        if (focusedModule.getPath().equals(focusedModulePath)) {
-            return;
+        synchronized (lock) {
+            if (focusedModule.getPath().equals(focusedModulePath)) {
+                return;
+            }
+            focusedModulePath = focusedModule.getPath();
         }
-        focusedModulePath = focusedModule.getPath();
         shell.setPromptPath(focusedModule.getModuleName());
     }
 
@@ -336,10 +424,15 @@ public class PomManagementServiceImpl implements PomManagementService {
     }
 
     private void updatePomCache() {
-        findUnparsedPoms();
-        final Collection<Pom> newPoms = parseUnparsedPoms();
-        if (!newPoms.isEmpty()) {
-            sortPomMap();
+        final Collection<Pom> newPoms;
+        synchronized (lock) {
+            findUnparsedPoms();
+            final boolean removedPoms = removeDeletedPoms();
+            newPoms = parseUnparsedPoms();
+            if (removedPoms || !newPoms.isEmpty()) {
+                sortPomMap();
+                indexPoms();
+            }
         }
         updateProjectMetadataForModules(newPoms);
     }
@@ -0,0 +1,126 @@
+package org.springframework.roo.project;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.roo.support.util.XmlUtils;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/**
+ * Unit test of {@link PomDocument}
+ *
+ * @since 1.2.5
+ */
+public class PomDocumentTest {
+
+    private static final String POM = "<project>" + "<dependencies>"
+            + "<dependency><groupId>com.example</groupId>"
+            + "<artifactId>foo</artifactId><version>1.0</version></dependency>"
+            + "<dependency><groupId>com.example</groupId>"
+            + "<artifactId>bar</artifactId><version>1.0</version></dependency>"
+            + "</dependencies>" + "<build><plugins>"
+            + "<plugin><artifactId>maven-jar-plugin</artifactId>"
+            + "<version>2.4</version></plugin>" + "</plugins></build>"
+            + "<repositories><repository><id>example</id>"
+            + "<url>http://repo.example.com</url></repository></repositories>"
+            + "</project>";
+
+    private Document document;
+    private PomDocument pomDocument;
+
+    @Before
+    public void setUp() {
+        final byte[] contents = POM.getBytes();
+        document = XmlUtils.readXml(new ByteArrayInputStream(contents));
+        pomDocument = new PomDocument(document, contents);
+    }
+
+    @Test
+    public void testAddedElementIsFound() {
+        // Set up
+        final Dependency dependency = new Dependency("com.example", "baz",
+                "2.0");
+        assertTrue(pomDocument.findDependencies(dependency).isEmpty());
+        final Element dependenciesElement = XmlUtils.findFirstElement(
+                "/project/dependencies", document.getDocumentElement());
+
+        // Invoke
+        pomDocument.addElement(PomDocument.DEPENDENCIES, dependenciesElement,
+                dependency.getElement(document), null);
+
+        // Check
+        final List<Element> found = pomDocument.findDependencies(dependency);
+        assertEquals(1, found.size());
+        assertEquals(dependency, new Dependency(found.get(0)));
+        assertEquals(dependenciesElement, found.get(0).getParentNode());
+    }
+
+    @Test
+    public void testFindDependenciesIgnoresVersion() {
+        // Invoke
+        final List<Element> found = pomDocument.findDependencies(new Dependency(
+                "com.example", "foo", "2.0"));
+
+        // Check
+        assertEquals(1, found.size());
+        assertEquals("1.0", new Dependency(found.get(0)).getVersion());
+    }
+
+    @Test
+    public void testFindPluginWithDefaultGroupId() {
+        // Invoke
+        final List<Element> found = pomDocument.findPlugins(new Plugin(
+                "org.apache.maven.plugins", "maven-jar-plugin", "2.4"));
+
+        // Check
+        assertEquals(1, found.size());
+    }
+
+    @Test
+    public void testFindRepository() {
+        // Set up
+        final Repository repository = new Repository("example", null,
+                "http://repo.example.com");
+
+        // Invoke and check
+        assertEquals(1,
+                pomDocument.findRepositories(PomDocument.REPOSITORIES,
+                        repository).size());
+        assertTrue(pomDocument.findRepositories(
+                PomDocument.PLUGIN_REPOSITORIES, repository).isEmpty());
+    }
+
+    @Test
+    public void testHasContents() {
+        assertTrue(pomDocument.hasContents(POM.getBytes()));
+        assertFalse(pomDocument.hasContents("<project/>".getBytes()));
+
+        pomDocument.setContents("<project/>".getBytes());
+
+        assertTrue(pomDocument.hasContents("<project/>".getBytes()));
+    }
+
+    @Test
+    public void testRemovedElementIsNotFound() {
+        // Set up
+        final Dependency dependency = new Dependency("com.example", "foo",
+                "1.0");
+        final Element element = pomDocument.findDependencies(dependency).get(0);
+
+        // Invoke
+        pomDocument.removeElement(PomDocument.DEPENDENCIES, element);
+
+        // Check
+        assertTrue(pomDocument.findDependencies(dependency).isEmpty());
+        assertEquals(1,
+                XmlUtils.findElements(PomDocument.DEPENDENCIES,
+                        document.getDocumentElement()).size());
+    }
+}
@@ -0,0 +1,205 @@
+package org.springframework.roo.project;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.SortedSet;
+
+import org.apache.commons.lang3.StringUtils;
+import org.springframework.roo.file.monitor.FileMonitorService;
+import org.springframework.roo.file.monitor.MonitoringRequest;
+import org.springframework.roo.file.monitor.event.FileDetails;
+import org.springframework.roo.project.maven.Pom;
+import org.springframework.roo.support.util.FileUtils;
+
+/**
+ * Benchmarks the resolution by {@link PomManagementServiceImpl} of the module
+ * containing a file and of a module by name, in a reactor of
+ * {@link #MODULES} modules, compared with how they were resolved before they
+ * were indexed (by probing the file system for a pom.xml in each enclosing
+ * directory and by scanning the POMs). Not a unit test (and not run as part
+ * of the build); run its {@link #main(String[])} method directly.
+ */
+public class PomManagementServiceImplBenchmark {
+
+    /**
+     * Reports no changes, as between commands
+     */
+    private static class QuietFileMonitorService implements
+            FileMonitorService {
+
+        public boolean add(final MonitoringRequest request) {
+            return false;
+        }
+
+        public SortedSet<FileDetails> findMatchingAntPath(final String antPath) {
+            throw new UnsupportedOperationException();
+        }
+
+        public Collection<String> getDirtyFiles(final String requestingClass) {
+            return Collections.emptyList();
+        }
+
+        public List<FileDetails> getMonitored() {
+            return Collections.emptyList();
+        }
+
+        public boolean isDirty() {
+            return false;
+        }
+
+        public boolean remove(final MonitoringRequest request) {
+            return false;
+        }
+
+        public int scanAll() {
+            return 0;
+        }
+    }
+
+    private static final int FILES_PER_MODULE = 25;
+    private static final int MODULES = 40;
+    private static final int ROUNDS = 200;
+    private static final String SEPARATOR = File.separator;
+
+    /**
+     * Resolves the module containing the given file as was done before the
+     * POMs were indexed by directory
+     */
+    private static Pom getModuleByProbing(
+            final PomManagementServiceImpl service, final String fileIdentifier) {
+        String startingPoint = FileUtils.getFirstDirectory(fileIdentifier);
+        String pomPath = FileUtils.ensureTrailingSeparator(startingPoint)
+                + "pom.xml";
+        File pom = new File(pomPath);
+        while (!pom.exists()) {
+            if (startingPoint.equals(SEPARATOR)) {
+                break;
+            }
+            startingPoint = StringUtils.removeEnd(startingPoint, SEPARATOR);
+            if (startingPoint.lastIndexOf(SEPARATOR) < 0) {
+                break;
+            }
+            startingPoint = startingPoint.substring(0,
+                    startingPoint.lastIndexOf(SEPARATOR));
+            startingPoint = StringUtils.removeEnd(startingPoint, SEPARATOR);
+            pomPath = FileUtils.ensureTrailingSeparator(startingPoint)
+                    + "pom.xml";
+            pom = new File(pomPath);
+        }
+        return service.getPomFromPath(pomPath);
+    }
+
+    /**
+     * Resolves the given module as was done before the POMs were indexed by
+     * module name
+     */
+    private static Pom getModuleByScanning(
+            final PomManagementServiceImpl service, final String moduleName) {
+        for (final Pom pom : service.getPoms()) {
+            if (pom.getModuleName().equals(moduleName)) {
+                return pom;
+            }
+        }
+        return null;
+    }
+
+    public static void main(final String[] args) throws IOException {
+        final File root = new File(System.getProperty("java.io.tmpdir"),
+                "reactor-" + System.nanoTime()).getCanonicalFile();
+        try {
+            final PomManagementServiceImpl service = new PomManagementServiceImpl();
+            service.fileMonitorService = new QuietFileMonitorService();
+            final List<String> moduleNames = new ArrayList<String>();
+            final List<String> files = new ArrayList<String>();
+            service.addPom(newPom(root, ""));
+            for (int i = 0; i < MODULES; i++) {
+                final String moduleName = "module" + i;
+                moduleNames.add(moduleName);
+                final Pom pom = newPom(new File(root, moduleName), moduleName);
+                service.addPom(pom);
+                for (int j = 0; j < FILES_PER_MODULE; j++) {
+                    files.add(FileUtils.getSystemDependentPath(
+                            pom.getRoot(), "src", "main", "java", "com",
+                            "example", moduleName, "domain", "Entity" + j
+                                    + ".java"));
+                }
+            }
+            for (final String file : files) {
+                if (getModuleByProbing(service, file) != service
+                        .getModuleForFileIdentifier(file)) {
+                    throw new IllegalStateException("Resolved '" + file
+                            + "' differently");
+                }
+            }
+
+            System.out.println(MODULES + " modules, " + files.size()
+                    + " files");
+            for (int warmUp = 0; warmUp < 2; warmUp++) {
+                final boolean report = warmUp == 1;
+                long start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    for (final String file : files) {
+                        getModuleByProbing(service, file);
+                    }
+                }
+                report(report, "getModuleForFileIdentifier, probing",
+                        System.nanoTime() - start, files.size());
+                start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    for (final String file : files) {
+                        service.getModuleForFileIdentifier(file);
+                    }
+                }
+                report(report, "getModuleForFileIdentifier, indexed",
+                        System.nanoTime() - start, files.size());
+                start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    for (final String moduleName : moduleNames) {
+                        getModuleByScanning(service, moduleName);
+                    }
+                }
+                report(report, "getPomFromModuleName, scanning",
+                        System.nanoTime() - start, moduleNames.size());
+                start = System.nanoTime();
+                for (int i = 0; i < ROUNDS; i++) {
+                    for (final String moduleName : moduleNames) {
+                        service.getPomFromModuleName(moduleName);
+                    }
+                }
+                report(report, "getPomFromModuleName, indexed",
+                        System.nanoTime() - start, moduleNames.size());
+            }
+        }
+        finally {
+            org.apache.commons.io.FileUtils.deleteQuietly(root);
+        }
+    }
+
+    /**
+     * Creates the given module's directory and an empty pom.xml in it, and
+     * returns its POM
+     */
+    private static Pom newPom(final File directory, final String moduleName)
+            throws IOException {
+        final File pomFile = new File(directory, "pom.xml");
+        org.apache.commons.io.FileUtils.touch(pomFile);
+        new File(directory, FileUtils.getSystemDependentPath("src", "main",
+                "java", "com", "example", moduleName, "domain")).mkdirs();
+        return new Pom("com.example", StringUtils.defaultIfEmpty(moduleName,
+                "reactor"), "1.0", "jar", null, null, null, null, null, null,
+                null, null, null, null, null, null, pomFile.getCanonicalPath(),
+                moduleName, null);
+    }
+
+    private static void report(final boolean report, final String name,
+            final long nanos, final int callsPerRound) {
+        if (report) {
+            System.out.println(String.format("  %-38s %7.2f us per call",
+                    name, nanos / 1000.0 / ROUNDS / callsPerRound));
+        }
+    }
+}
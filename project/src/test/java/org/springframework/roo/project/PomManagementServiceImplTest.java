@@ -2,6 +2,7 @@ package org.springframework.roo.project;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 import static org.mockito.Matchers.any;
 import static org.mockito.Matchers.eq;
@@ -24,6 +25,9 @@ import org.mockito.MockitoAnnotations;
 import org.osgi.framework.BundleContext;
 import org.osgi.service.component.ComponentContext;
 import org.springframework.roo.file.monitor.FileMonitorService;
+import org.springframework.roo.file.monitor.event.FileDetails;
+import org.springframework.roo.file.monitor.event.FileEvent;
+import org.springframework.roo.file.monitor.event.FileOperation;
 import org.springframework.roo.metadata.MetadataDependencyRegistry;
 import org.springframework.roo.metadata.MetadataService;
 import org.springframework.roo.process.manager.FileManager;
@@ -112,6 +116,80 @@ public class PomManagementServiceImplTest {
         service.activate(mockComponentContext);
     }
 
+    @Test
+    public void testDeletedPomNoLongerContainsFiles() {
+        // Set up
+        final String rootDirectory = FileUtils.getSystemDependentPath("",
+                "projects", "clinic");
+        final String childPomPath = FileUtils.getSystemDependentPath(
+                rootDirectory, "web", "pom.xml");
+        final Pom mockRootPom = getMockPom(ROOT_MODULE_NAME,
+                FileUtils.getSystemDependentPath(rootDirectory, "pom.xml"));
+        final Pom mockChildPom = getMockPom("web", childPomPath);
+        service.addPom(mockRootPom);
+        service.addPom(mockChildPom);
+        final String fileIdentifier = FileUtils.getSystemDependentPath(
+                rootDirectory, "web", "src", "main", "java", "Owner.java");
+        assertEquals(mockChildPom,
+                service.getModuleForFileIdentifier(fileIdentifier));
+
+        // Invoke
+        service.onFileEvent(new FileEvent(new FileDetails(new File(
+                childPomPath), null), FileOperation.DELETED, null));
+
+        // Check
+        assertEquals(mockRootPom,
+                service.getModuleForFileIdentifier(fileIdentifier));
+        assertNull(service.getPomFromModuleName("web"));
+        assertEquals(Arrays.asList(mockRootPom), service.getPoms());
+    }
+
+    @Test
+    public void testGetModuleForFileIdentifier() {
+        // Set up
+        final String rootDirectory = FileUtils.getSystemDependentPath("",
+                "projects", "clinic");
+        final Pom mockRootPom = getMockPom(ROOT_MODULE_NAME,
+                FileUtils.getSystemDependentPath(rootDirectory, "pom.xml"));
+        final Pom mockChildPom = getMockPom("web",
+                FileUtils.getSystemDependentPath(rootDirectory, "web",
+                        "pom.xml"));
+        service.addPom(mockRootPom);
+        service.addPom(mockChildPom);
+
+        // Invoke and check
+        assertEquals(mockChildPom,
+                service.getModuleForFileIdentifier(FileUtils
+                        .getSystemDependentPath(rootDirectory, "web", "src",
+                                "main", "java", "Owner.java")));
+        assertEquals(mockChildPom,
+                service.getModuleForFileIdentifier(FileUtils
+                        .getSystemDependentPath(rootDirectory, "web")));
+        assertEquals(mockRootPom,
+                service.getModuleForFileIdentifier(FileUtils
+                        .getSystemDependentPath(rootDirectory, "webapp",
+                                "Owner.java")));
+        assertNull(service.getModuleForFileIdentifier(FileUtils
+                .getSystemDependentPath("", "projects", "Owner.java")));
+    }
+
+    @Test
+    public void testGetPomFromModuleName() {
+        // Set up
+        final Pom mockRootPom = getMockPom(ROOT_MODULE_NAME,
+                FileUtils.getSystemDependentPath("", "clinic", "pom.xml"));
+        final Pom mockChildPom = getMockPom("web",
+                FileUtils.getSystemDependentPath("", "clinic", "web",
+                        "pom.xml"));
+        service.addPom(mockRootPom);
+        service.addPom(mockChildPom);
+
+        // Invoke and check
+        assertEquals(mockRootPom, service.getPomFromModuleName(ROOT_MODULE_NAME));
+        assertEquals(mockChildPom, service.getPomFromModuleName("web"));
+        assertNull(service.getPomFromModuleName("core"));
+    }
+
     @Test
     public void testGetPomOfSingleModuleProjectWhenParentHasNoRelativePath()
             throws Exception {
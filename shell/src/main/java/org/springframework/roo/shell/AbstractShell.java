@@ -17,6 +17,7 @@ import java.util.List;
 import java.util.Map.Entry;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.Callable;
 import java.util.jar.JarFile;
 import java.util.jar.Manifest;
 import java.util.logging.Level;
@@ -42,6 +43,12 @@ public abstract class AbstractShell extends AbstractShellStatusPublisher
 
     private static final String MY_SLOT = AbstractShell.class.getName();
     protected static final String ROO_PROMPT = "roo> ";
+    /**
+     * The maximum number of lines executed as one batch by "script --batch";
+     * configurable via the "roo.script.batchSize" system property
+     */
+    private static final int SCRIPT_BATCH_SIZE = Math.max(1,
+            Integer.getInteger("roo.script.batchSize", 100));
 
     // Public static fields; don't rename, make final, or make non-public, as
     // they are part of the public API, e.g. are changed by STS.
@@ -258,6 +265,10 @@ public abstract class AbstractShell extends AbstractShellStatusPublisher
             return false;
         }
         finally {
+            if (parseResult != null) {
+                // Whatever the command did may affect what's available next
+                getParser().refreshAvailability();
+            }
             setShellStatus(Status.USER_INPUT);
         }
     }
@@ -271,6 +282,43 @@ public abstract class AbstractShell extends AbstractShellStatusPublisher
         return executeCommand(line);
     }
 
+    /**
+     * Executes the given lines of a script, stopping at any that quits the
+     * shell
+     * 
+     * @param lines the lines of the script (required)
+     * @param from the index of the first line to execute
+     * @param to the index after that of the last line to execute
+     * @param lineNumbers whether to log each line's number
+     * @return whether a line quit the shell
+     * @throws IllegalStateException if a line failed
+     */
+    private boolean executeScriptLines(final List<String> lines,
+            final int from, final int to, final boolean lineNumbers) {
+        for (int i = from; i < to; i++) {
+            final String line = lines.get(i);
+            if (lineNumbers) {
+                logger.fine("Line " + (i + 1) + ": " + line);
+            }
+            else {
+                logger.fine(line);
+            }
+            if (!"".equals(line.trim())) {
+                final boolean success = executeScriptLine(line);
+                if (success
+                        && (line.trim().startsWith("q") || line.trim()
+                                .startsWith("ex"))) {
+                    return true;
+                }
+                else if (!success) {
+                    // Abort script processing, given something went wrong
+                    throw new IllegalStateException("Script execution aborted");
+                }
+            }
+        }
+        return false;
+    }
+
     /**
      * Returns any classpath resources with the given path
      * 
@@ -474,35 +522,36 @@ public abstract class AbstractShell extends AbstractShellStatusPublisher
     @CliCommand(value = { "script" }, help = "Parses the specified resource file and executes its commands")
     public void script(
             @CliOption(key = { "", "file" }, help = "The file to locate and execute", mandatory = true) final File script,
-            @CliOption(key = "lineNumbers", mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "false", help = "Display line numbers when executing the script") final boolean lineNumbers) {
+            @CliOption(key = "lineNumbers", mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "false", help = "Display line numbers when executing the script") final boolean lineNumbers,
+            @CliOption(key = "batch", mandatory = false, specifiedDefaultValue = "true", unspecifiedDefaultValue = "false", help = "Execute the script's commands in batches, each undone as a whole if any of its commands fails; faster, but commands may not see the ITDs generated for earlier commands in the same batch") final boolean batch) {
 
         Validate.notNull(script, "Script file to parse is required");
         final double startedNanoseconds = System.nanoTime();
 
         final InputStream inputStream = openScript(script);
         try {
-            int i = 0;
-            for (final String line : IOUtils.readLines(inputStream)) {
-                i++;
-                if (lineNumbers) {
-                    logger.fine("Line " + i + ": " + line);
+            final List<String> lines = IOUtils.readLines(inputStream);
+            final ExecutionStrategy executionStrategy = getExecutionStrategy();
+            if (batch && executionStrategy instanceof BatchExecutionStrategy) {
+                boolean quit = false;
+                for (int i = 0; i < lines.size() && !quit; i += SCRIPT_BATCH_SIZE) {
+                    final int from = i;
+                    final int to = Math.min(i + SCRIPT_BATCH_SIZE,
+                            lines.size());
+                    quit = ((BatchExecutionStrategy) executionStrategy)
+                            .executeBatch(new Callable<Boolean>() {
+                                public Boolean call() {
+                                    return executeScriptLines(lines, from, to,
+                                            lineNumbers);
+                                }
+                            });
                 }
-                else {
-                    logger.fine(line);
-                }
-                if (!"".equals(line.trim())) {
-                    final boolean success = executeScriptLine(line);
-                    if (success
-                            && (line.trim().startsWith("q") || line.trim()
-                                    .startsWith("ex"))) {
-                        break;
-                    }
-                    else if (!success) {
-                        // Abort script processing, given something went wrong
-                        throw new IllegalStateException(
-                                "Script execution aborted");
-                    }
+            }
+            else {
+                if (batch) {
+                    logger.warning("Batches not supported; executing the script's commands one at a time");
                 }
+                executeScriptLines(lines, 0, lines.size(), lineNumbers);
             }
         }
         catch (final IOException e) {
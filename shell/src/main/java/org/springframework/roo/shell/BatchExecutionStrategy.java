@@ -0,0 +1,29 @@
+package org.springframework.roo.shell;
+
+import java.util.concurrent.Callable;
+
+/**
+ * An {@link ExecutionStrategy} that can also execute a series of commands as a
+ * batch, i.e. as a single unit that succeeds or fails as a whole, trading
+ * some isolation between the commands for much faster execution. Used by the
+ * "script --batch" command.
+ * 
+ * @since 1.2.5
+ */
+public interface BatchExecutionStrategy extends ExecutionStrategy {
+
+    /**
+     * Invokes the given callback, treating any methods it
+     * {@link #execute(ParseResult) executes} as one batch. Until the callback
+     * returns, the effects of each such method on the user's project are
+     * visible to later ones, but not necessarily any further changes derived
+     * from them (e.g. generated ITDs). If the callback or any method it
+     * executes fails, the effects of all of them are undone.
+     * 
+     * @param <T> the type of object returned by the callback
+     * @param batch the callback that executes the batch's methods (required)
+     * @return the callback's result
+     * @throws RuntimeException if the batch failed
+     */
+    <T> T executeBatch(Callable<T> batch) throws RuntimeException;
+}
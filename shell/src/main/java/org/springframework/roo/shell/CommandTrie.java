@@ -0,0 +1,140 @@
+package org.springframework.roo.shell;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import org.apache.commons.lang3.StringUtils;
+import org.apache.commons.lang3.Validate;
+
+/**
+ * An index of shell commands by their words, for quickly finding those that
+ * could match what the user has typed so far. Each word the user has typed
+ * can be the start of the corresponding word of a command, as per
+ * {@link SimpleParser#isMatch(String, String, boolean)}, which callers should
+ * still apply to the candidates this class finds. Not thread safe.
+ * 
+ * @param <T> the type of value registered for each command
+ * @since 1.2.5
+ */
+class CommandTrie<T> {
+
+    private static class Node<T> {
+
+        private final SortedMap<String, Node<T>> children = new TreeMap<String, Node<T>>();
+        // The values of the commands that end with this node's word
+        private final List<T> values = new ArrayList<T>();
+
+        /**
+         * Adds the values of the commands at or below this node to the given
+         * collection
+         */
+        void addAllValues(final Collection<T> allValues) {
+            allValues.addAll(values);
+            for (final Node<T> child : children.values()) {
+                child.addAllValues(allValues);
+            }
+        }
+
+        /**
+         * Returns the children whose word starts with the given prefix
+         */
+        Collection<Node<T>> getChildren(final String prefix) {
+            return children.subMap(prefix, prefix + Character.MAX_VALUE)
+                    .values();
+        }
+    }
+
+    private final Node<T> root = new Node<T>();
+
+    /**
+     * Registers the given value for the given command
+     * 
+     * @param command the command, consisting of one or more words (required)
+     * @param value the value to register (required)
+     */
+    void add(final String command, final T value) {
+        Validate.notNull(value, "Value required");
+        Node<T> node = root;
+        for (final String word : getWords(command)) {
+            Node<T> child = node.children.get(word);
+            if (child == null) {
+                child = new Node<T>();
+                node.children.put(word, child);
+            }
+            node = child;
+        }
+        node.values.add(value);
+    }
+
+    /**
+     * Adds the values of the commands matching the given words, starting with
+     * the given node, to the given set
+     */
+    private void addCandidates(final Node<T> node, final String[] words,
+            final int index, final Set<T> candidates) {
+        if (index == words.length) {
+            // They could be typing any command below here
+            node.addAllValues(candidates);
+            return;
+        }
+        // Any further words could be options of this node's commands
+        candidates.addAll(node.values);
+        for (final Node<T> child : node.getChildren(words[index])) {
+            addCandidates(child, words, index + 1, candidates);
+        }
+    }
+
+    /**
+     * Returns the values of the commands that could match the given buffer,
+     * i.e. those whose words start with the words in the buffer, up to the
+     * last word of the command or of the buffer, whichever comes first
+     * 
+     * @param buffer what the user has typed (required)
+     * @return a non-<code>null</code> set, in no particular order
+     */
+    Set<T> getCandidates(final String buffer) {
+        Validate.notNull(buffer, "Buffer required");
+        final Set<T> candidates = new LinkedHashSet<T>();
+        addCandidates(root, StringUtils.split(buffer, ' '), 0, candidates);
+        return candidates;
+    }
+
+    private String[] getWords(final String command) {
+        final String[] words = StringUtils.split(command, ' ');
+        Validate.notEmpty(words, "Command required");
+        return words;
+    }
+
+    /**
+     * Deregisters the given value for the given command, if registered
+     * 
+     * @param command the command, consisting of one or more words (required)
+     * @param value the value to deregister
+     */
+    void remove(final String command, final T value) {
+        final List<Node<T>> path = new ArrayList<Node<T>>();
+        Node<T> node = root;
+        final String[] words = getWords(command);
+        for (final String word : words) {
+            path.add(node);
+            node = node.children.get(word);
+            if (node == null) {
+                return;
+            }
+        }
+        node.values.remove(value);
+
+        // Prune any nodes left without commands
+        for (int i = words.length - 1; i >= 0 && node.values.isEmpty()
+                && node.children.isEmpty(); i--) {
+            final Node<T> parent = path.get(i);
+            parent.children.remove(words[i]);
+            node = parent;
+        }
+    }
+}
@@ -33,4 +33,16 @@ public interface Parser {
     int completeAdvanced(String buffer, int cursor, List<Completion> candidates);
 
     ParseResult parse(String buffer);
+
+    /**
+     * Discards the results of any {@link CliAvailabilityIndicator}s invoked so
+     * far, so that they're invoked again when next needed. Should be called
+     * whenever something may have changed which commands are available, e.g.
+     * a command being executed or the file system being scanned for changes.
+     * Can be called from any thread, without waiting for a parse or completion
+     * in progress.
+     * 
+     * @since 1.2.5
+     */
+    void refreshAvailability();
 }
\ No newline at end of file
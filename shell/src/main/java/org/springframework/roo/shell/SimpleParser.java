@@ -25,6 +25,7 @@ import java.util.SortedMap;
 import java.util.SortedSet;
 import java.util.TreeMap;
 import java.util.TreeSet;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.logging.Logger;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -146,7 +147,14 @@ public class SimpleParser implements Parser {
         return null; // Not a match
     }
 
+    // The results of the availability indicators invoked since availability
+    // was last refreshed
+    private final Map<MethodTarget, Boolean> availability = new HashMap<MethodTarget, Boolean>();
+    private int availabilityGeneration;
+    private final AtomicInteger availabilityRefreshes = new AtomicInteger();
     private final Map<String, MethodTarget> availabilityIndicators = new HashMap<String, MethodTarget>();
+    // Every @CliCommand method, indexed by the words of its commands
+    private final CommandTrie<MethodTarget> commandTrie = new CommandTrie<MethodTarget>();
     private final Set<CommandMarker> commands = new HashSet<CommandMarker>();
     private final Set<Converter<?>> converters = new HashSet<Converter<?>>();
 
@@ -155,7 +163,16 @@ public class SimpleParser implements Parser {
     public final void add(final CommandMarker command) {
         synchronized (mutex) {
             commands.add(command);
+            refreshAvailability();
             for (final Method method : command.getClass().getMethods()) {
+                final CliCommand cliCommand = method
+                        .getAnnotation(CliCommand.class);
+                if (cliCommand != null) {
+                    for (final String value : cliCommand.value()) {
+                        commandTrie.add(value, new MethodTarget(method,
+                                command));
+                    }
+                }
                 final CliAvailabilityIndicator availability = method
                         .getAnnotation(CliAvailabilityIndicator.class);
                 if (availability != null) {
@@ -704,6 +721,33 @@ public class SimpleParser implements Parser {
         return availabilityIndicators.get(command);
     }
 
+    /**
+     * Returns the result of the given availability indicator, only invoking
+     * it if it hasn't been invoked since availability was last refreshed
+     * 
+     * @param indicator the indicator (required)
+     * @return see above
+     */
+    private boolean isAvailable(final MethodTarget indicator) {
+        final int currentGeneration = availabilityRefreshes.get();
+        if (availabilityGeneration != currentGeneration) {
+            availability.clear();
+            availabilityGeneration = currentGeneration;
+        }
+        Boolean available = availability.get(indicator);
+        if (available == null) {
+            try {
+                available = (Boolean) indicator.getMethod().invoke(
+                        indicator.getTarget());
+            }
+            catch (final Exception e) {
+                available = false;
+            }
+            availability.put(indicator, available);
+        }
+        return available;
+    }
+
     private Set<CliOption> getCliOptions(
             final Annotation[][] parameterAnnotations) {
         final Set<CliOption> cliOptions = new LinkedHashSet<CliOption>();
@@ -721,14 +765,9 @@ public class SimpleParser implements Parser {
     public Set<String> getEveryCommand() {
         synchronized (mutex) {
             final SortedSet<String> result = new TreeSet<String>(COMPARATOR);
-            for (final Object o : commands) {
-                final Method[] methods = o.getClass().getMethods();
-                for (final Method m : methods) {
-                    final CliCommand cmd = m.getAnnotation(CliCommand.class);
-                    if (cmd != null) {
-                        result.addAll(Arrays.asList(cmd.value()));
-                    }
-                }
+            for (final MethodTarget target : commandTrie.getCandidates("")) {
+                result.addAll(Arrays.asList(target.getMethod()
+                        .getAnnotation(CliCommand.class).value()));
             }
             return result;
         }
@@ -1036,51 +1075,38 @@ public class SimpleParser implements Parser {
         Validate.notNull(buffer, "Buffer required");
         final Collection<MethodTarget> result = new HashSet<MethodTarget>();
 
-        // The reflection could certainly be optimised, but it's good enough for
-        // now (and cached reflection
-        // is unlikely to be noticeable to a human being using the CLI)
-        for (final CommandMarker command : commands) {
-            for (final Method method : command.getClass().getMethods()) {
-                final CliCommand cmd = method.getAnnotation(CliCommand.class);
-                if (cmd != null) {
-                    // We have a @CliCommand.
-                    if (checkAvailabilityIndicators) {
-                        // Decide if this @CliCommand is available at this
-                        // moment
-                        Boolean available = null;
-                        for (final String value : cmd.value()) {
-                            final MethodTarget mt = getAvailabilityIndicator(value);
-                            if (mt != null) {
-                                Validate.isTrue(available == null,
-                                        "More than one availability indicator is defined for '"
-                                                + method.toGenericString()
-                                                + "'");
-                                try {
-                                    available = (Boolean) mt.getMethod()
-                                            .invoke(mt.getTarget());
-                                    // We should "break" here, but we loop over
-                                    // all to ensure no conflicting availability
-                                    // indicators are defined
-                                }
-                                catch (final Exception e) {
-                                    available = false;
-                                }
-                            }
-                        }
-                        // Skip this @CliCommand if it's not available
-                        if (available != null && !available) {
-                            continue;
-                        }
+        // Only consider the @CliCommand methods having a command whose words
+        // start with those in the buffer
+        for (final MethodTarget candidate : commandTrie.getCandidates(buffer)) {
+            final Method method = candidate.getMethod();
+            final CliCommand cmd = method.getAnnotation(CliCommand.class);
+            if (checkAvailabilityIndicators) {
+                // Decide if this @CliCommand is available at this moment
+                Boolean available = null;
+                for (final String value : cmd.value()) {
+                    final MethodTarget mt = getAvailabilityIndicator(value);
+                    if (mt != null) {
+                        Validate.isTrue(available == null,
+                                "More than one availability indicator is defined for '"
+                                        + method.toGenericString() + "'");
+                        available = isAvailable(mt);
+                        // We should "break" here, but we loop over all to
+                        // ensure no conflicting availability indicators are
+                        // defined
                     }
+                }
+                // Skip this @CliCommand if it's not available
+                if (available != null && !available) {
+                    continue;
+                }
+            }
 
-                    for (final String value : cmd.value()) {
-                        final String remainingBuffer = isMatch(buffer, value,
-                                strictMatching);
-                        if (remainingBuffer != null) {
-                            result.add(new MethodTarget(method, command,
-                                    remainingBuffer, value));
-                        }
-                    }
+            for (final String value : cmd.value()) {
+                final String remainingBuffer = isMatch(buffer, value,
+                        strictMatching);
+                if (remainingBuffer != null) {
+                    result.add(new MethodTarget(method, candidate.getTarget(),
+                            remainingBuffer, value));
                 }
             }
         }
@@ -1442,10 +1468,22 @@ public class SimpleParser implements Parser {
         return sb.toString();
     }
 
+    public void refreshAvailability() {
+        availabilityRefreshes.incrementAndGet();
+    }
+
     public final void remove(final CommandMarker command) {
         synchronized (mutex) {
             commands.remove(command);
+            refreshAvailability();
             for (final Method m : command.getClass().getMethods()) {
+                final CliCommand cliCommand = m
+                        .getAnnotation(CliCommand.class);
+                if (cliCommand != null) {
+                    for (final String value : cliCommand.value()) {
+                        commandTrie.remove(value, new MethodTarget(m, command));
+                    }
+                }
                 final CliAvailabilityIndicator availability = m
                         .getAnnotation(CliAvailabilityIndicator.class);
                 if (availability != null) {
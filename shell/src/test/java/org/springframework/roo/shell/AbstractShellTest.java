@@ -1,9 +1,23 @@
 package org.springframework.roo.shell;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.fail;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.when;
 
+import java.io.File;
+import java.io.IOException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
 import org.junit.Test;
 
 /**
@@ -15,6 +29,115 @@ import org.junit.Test;
  */
 public class AbstractShellTest {
 
+    /**
+     * Records the batches executed via it
+     */
+    private static class RecordingBatchExecutionStrategy implements
+            BatchExecutionStrategy {
+
+        final List<List<String>> batches = new ArrayList<List<String>>();
+        private List<String> currentBatch;
+        final List<List<String>> failedBatches = new ArrayList<List<String>>();
+
+        public Object execute(final ParseResult parseResult) {
+            return null;
+        }
+
+        public <T> T executeBatch(final Callable<T> batch) {
+            currentBatch = new ArrayList<String>();
+            try {
+                final T result = batch.call();
+                batches.add(currentBatch);
+                return result;
+            }
+            catch (final RuntimeException e) {
+                failedBatches.add(currentBatch);
+                throw e;
+            }
+            catch (final Exception e) {
+                throw new IllegalStateException(e);
+            }
+            finally {
+                currentBatch = null;
+            }
+        }
+
+        public boolean isReadyForCommands() {
+            return true;
+        }
+
+        public void terminate() {
+        }
+    }
+
+    /**
+     * A shell whose script lines succeed unless they contain "fail", and
+     * which records the lines it executes and the batch they were part of
+     */
+    private static class ScriptingShell extends AbstractShell {
+
+        final List<String> executedLines = new ArrayList<String>();
+        private final ExecutionStrategy executionStrategy;
+
+        ScriptingShell(final ExecutionStrategy executionStrategy) {
+            this.executionStrategy = executionStrategy;
+        }
+
+        @Override
+        protected boolean executeScriptLine(final String line) {
+            executedLines.add(line);
+            if (executionStrategy instanceof RecordingBatchExecutionStrategy) {
+                final RecordingBatchExecutionStrategy recorder = (RecordingBatchExecutionStrategy) executionStrategy;
+                if (recorder.currentBatch != null) {
+                    recorder.currentBatch.add(line);
+                }
+            }
+            return !line.contains("fail");
+        }
+
+        @Override
+        protected Collection<URL> findResources(final String path) {
+            return null;
+        }
+
+        @Override
+        protected ExecutionStrategy getExecutionStrategy() {
+            return executionStrategy;
+        }
+
+        @Override
+        protected String getHomeAsString() {
+            return null;
+        }
+
+        @Override
+        protected Parser getParser() {
+            return null;
+        }
+
+        public boolean isDevelopmentMode() {
+            return false;
+        }
+
+        public void promptLoop() {
+        }
+
+        public void setDevelopmentMode(final boolean developmentMode) {
+        }
+    }
+
+    private File script;
+
+    @Before
+    public void setUp() throws IOException {
+        script = File.createTempFile("AbstractShellTest", ".roo");
+    }
+
+    @After
+    public void tearDown() {
+        FileUtils.deleteQuietly(script);
+    }
+
     @Test
     public void testProps() {
         // Set up
@@ -27,4 +150,58 @@ public class AbstractShellTest {
         // Check
         assertNotNull(props);
     }
+
+    @Test
+    public void testScriptBatchIsAbandonedOnFailure() throws Exception {
+        // Set up
+        FileUtils.writeLines(script, Arrays.asList("one", "fail", "three"));
+        final RecordingBatchExecutionStrategy executionStrategy = new RecordingBatchExecutionStrategy();
+        final ScriptingShell shell = new ScriptingShell(executionStrategy);
+
+        // Invoke
+        try {
+            shell.script(script, false, true);
+            fail("Expected the script to fail");
+        }
+        catch (final IllegalStateException expected) {
+        }
+
+        // Check
+        assertEquals(Arrays.asList("one", "fail"), shell.executedLines);
+        assertEquals(0, executionStrategy.batches.size());
+        assertEquals(Arrays.asList(Arrays.asList("one", "fail")),
+                executionStrategy.failedBatches);
+    }
+
+    @Test
+    public void testScriptExecutesLinesInOneBatch() throws Exception {
+        // Set up
+        FileUtils.writeLines(script, Arrays.asList("one", "", "two", "three"));
+        final RecordingBatchExecutionStrategy executionStrategy = new RecordingBatchExecutionStrategy();
+        final ScriptingShell shell = new ScriptingShell(executionStrategy);
+
+        // Invoke
+        shell.script(script, false, true);
+
+        // Check
+        assertEquals(Arrays.asList(Arrays.asList("one", "two", "three")),
+                executionStrategy.batches);
+    }
+
+    @Test
+    public void testScriptExecutesLinesWithoutBatchByDefault()
+            throws Exception {
+        // Set up
+        FileUtils.writeLines(script, Arrays.asList("one", "two", "quit",
+                "three"));
+        final RecordingBatchExecutionStrategy executionStrategy = new RecordingBatchExecutionStrategy();
+        final ScriptingShell shell = new ScriptingShell(executionStrategy);
+
+        // Invoke
+        shell.script(script, false, false);
+
+        // Check
+        assertEquals(Arrays.asList("one", "two", "quit"), shell.executedLines);
+        assertEquals(0, executionStrategy.batches.size());
+    }
 }
@@ -0,0 +1,60 @@
+package org.springframework.roo.shell;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.HashSet;
+
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * Unit test of {@link CommandTrie}
+ * 
+ * @since 1.2.5
+ */
+public class CommandTrieTest {
+
+    // Fixture
+    private CommandTrie<String> trie;
+
+    private void assertCandidates(final String buffer,
+            final String... expectedCandidates) {
+        assertEquals(new HashSet<String>(Arrays.asList(expectedCandidates)),
+                trie.getCandidates(buffer));
+    }
+
+    @Before
+    public void setUp() {
+        trie = new CommandTrie<String>();
+        trie.add("entity jpa", "entityJpa");
+        trie.add("entity mongo", "entityMongo");
+        trie.add("field string", "fieldString");
+        trie.add("hint", "hint");
+    }
+
+    @Test
+    public void testEmptyBufferMatchesEveryCommand() {
+        assertCandidates("", "entityJpa", "entityMongo", "fieldString", "hint");
+    }
+
+    @Test
+    public void testOptionsAfterCommandAreIgnored() {
+        assertCandidates("field string --fieldName name", "fieldString");
+    }
+
+    @Test
+    public void testPartialWordsMatchCommandsStartingWithThem() {
+        assertCandidates("ent", "entityJpa", "entityMongo");
+        assertCandidates("e mo", "entityMongo");
+        assertCandidates("entity x");
+    }
+
+    @Test
+    public void testRemovedCommandIsNotMatched() {
+        trie.remove("entity jpa", "entityJpa");
+        trie.remove("hint", "hint");
+
+        assertCandidates("", "entityMongo", "fieldString");
+    }
+}
@@ -0,0 +1,233 @@
+package org.springframework.roo.shell;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.roo.shell.converters.IntegerConverter;
+import org.springframework.roo.shell.converters.StringConverter;
+
+/**
+ * Benchmarks the completion and parsing of commands by {@link SimpleParser},
+ * with the availability of commands determined afresh for every keystroke (as
+ * it was before it was reused between process manager transactions) and
+ * reused. The commands mimic those of a typical installation, whose
+ * availability indicators each take a few microseconds. Not a unit test (and
+ * not run as part of the build); run its {@link #main(String[])} method
+ * directly.
+ */
+public class SimpleParserBenchmark {
+
+    public static class ControllerCommands extends SlowAvailability implements
+            CommandMarker {
+        @CliCommand("web mvc all")
+        public void all() {
+        }
+
+        @CliCommand("web mvc finder add")
+        public void finder() {
+        }
+
+        @CliCommand("web mvc json all")
+        public void jsonAll() {
+        }
+
+        @CliCommand("web mvc json setup")
+        public void jsonSetup() {
+        }
+
+        @CliCommand("web mvc scaffold")
+        public void scaffold() {
+        }
+
+        @CliCommand("web mvc setup")
+        public void setup() {
+        }
+
+        @CliAvailabilityIndicator({ "web mvc all", "web mvc finder add",
+                "web mvc json all", "web mvc json setup", "web mvc scaffold",
+                "web mvc setup" })
+        public boolean isAvailable() {
+            return check();
+        }
+    }
+
+    public static class EntityCommands extends SlowAvailability implements
+            CommandMarker {
+        @CliCommand("entity jpa")
+        public void entityJpa(
+                @CliOption(key = "class", mandatory = true) final String type,
+                @CliOption(key = "testAutomatically", mandatory = false) final boolean test) {
+        }
+
+        @CliCommand("entity mongo")
+        public void entityMongo(
+                @CliOption(key = "class", mandatory = true) final String type) {
+        }
+
+        @CliCommand("field boolean")
+        public void fieldBoolean(
+                @CliOption(key = "fieldName", mandatory = true) final String name) {
+        }
+
+        @CliCommand("field date")
+        public void fieldDate(
+                @CliOption(key = "fieldName", mandatory = true) final String name) {
+        }
+
+        @CliCommand("field number")
+        public void fieldNumber(
+                @CliOption(key = "fieldName", mandatory = true) final String name) {
+        }
+
+        @CliCommand("field string")
+        public void fieldString(
+                @CliOption(key = "fieldName", mandatory = true) final String name,
+                @CliOption(key = "sizeMax", mandatory = false) final Integer max) {
+        }
+
+        @CliAvailabilityIndicator({ "entity jpa", "entity mongo" })
+        public boolean isEntityAvailable() {
+            return check();
+        }
+
+        @CliAvailabilityIndicator({ "field boolean", "field date",
+                "field number", "field string" })
+        public boolean isFieldAvailable() {
+            return check();
+        }
+    }
+
+    public static class ProjectCommands extends SlowAvailability implements
+            CommandMarker {
+        @CliCommand("dependency add")
+        public void dependencyAdd() {
+        }
+
+        @CliCommand("dependency remove")
+        public void dependencyRemove() {
+        }
+
+        @CliCommand("hint")
+        public void hint() {
+        }
+
+        @CliCommand("jpa setup")
+        public void jpaSetup() {
+        }
+
+        @CliCommand("module create")
+        public void moduleCreate() {
+        }
+
+        @CliCommand("module focus")
+        public void moduleFocus() {
+        }
+
+        @CliCommand("perform eclipse")
+        public void performEclipse() {
+        }
+
+        @CliCommand("perform tests")
+        public void performTests() {
+        }
+
+        @CliCommand("project")
+        public void project() {
+        }
+
+        @CliAvailabilityIndicator({ "dependency add", "dependency remove",
+                "module create", "module focus", "perform eclipse",
+                "perform tests" })
+        public boolean isProjectAvailable() {
+            return check();
+        }
+
+        @CliAvailabilityIndicator("jpa setup")
+        public boolean isJpaSetupAvailable() {
+            return check();
+        }
+
+        @CliAvailabilityIndicator("project")
+        public boolean isProjectCreationAvailable() {
+            return check();
+        }
+    }
+
+    /**
+     * Stands in for the metadata lookups that availability indicators
+     * typically make
+     */
+    static class SlowAvailability {
+
+        private static final int WORK = 2000;
+
+        private double result;
+
+        boolean check() {
+            for (int i = 1; i <= WORK; i++) {
+                result += Math.sqrt(i);
+            }
+            return result > 0;
+        }
+    }
+
+    private static final String[] BUFFERS = { "", "e", "ent", "entity ",
+            "entity jpa --", "f", "field s", "field string --",
+            "web mvc ", "web mvc json ", "perf", "mod" };
+    private static final int ROUNDS = 2000;
+
+    private static long complete(final SimpleParser parser,
+            final boolean refresh) {
+        final List<Completion> completions = new ArrayList<Completion>();
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            for (final String buffer : BUFFERS) {
+                if (refresh) {
+                    parser.refreshAvailability();
+                }
+                completions.clear();
+                parser.completeAdvanced(buffer, buffer.length(), completions);
+            }
+        }
+        return System.nanoTime() - start;
+    }
+
+    public static void main(final String[] args) {
+        final SimpleParser parser = new SimpleParser();
+        parser.add(new ControllerCommands());
+        parser.add(new EntityCommands());
+        parser.add(new ProjectCommands());
+        parser.add(new IntegerConverter());
+        parser.add(new StringConverter());
+        System.out.println(parser.getEveryCommand().size() + " commands, "
+                + BUFFERS.length + " buffers");
+
+        // Warm up
+        complete(parser, true);
+        parse(parser, true);
+
+        report("completeAdvanced, availability refreshed",
+                complete(parser, true), BUFFERS.length);
+        report("completeAdvanced, availability reused",
+                complete(parser, false), BUFFERS.length);
+        report("parse, availability refreshed", parse(parser, true), 1);
+        report("parse, availability reused", parse(parser, false), 1);
+    }
+
+    private static long parse(final SimpleParser parser, final boolean refresh) {
+        final long start = System.nanoTime();
+        for (int i = 0; i < ROUNDS; i++) {
+            if (refresh) {
+                parser.refreshAvailability();
+            }
+            parser.parse("field string --fieldName name --sizeMax 10");
+        }
+        return System.nanoTime() - start;
+    }
+
+    private static void report(final String name, final long nanos,
+            final int callsPerRound) {
+        System.out.println(String.format("  %-42s %7.2f us per call", name,
+                nanos / 1000.0 / ROUNDS / callsPerRound));
+    }
+}
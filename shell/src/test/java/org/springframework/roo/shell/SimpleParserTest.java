@@ -1,5 +1,9 @@
 package org.springframework.roo.shell;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
 import org.junit.Assert;
 import org.junit.Before;
 import org.junit.Test;
@@ -12,7 +16,32 @@ import org.junit.Test;
  */
 public class SimpleParserTest {
 
+    public static class EntityCommands implements CommandMarker {
+
+        private boolean available = true;
+        private int availabilityChecks;
+
+        @CliCommand("entity jpa")
+        public void entityJpa() {
+        }
+
+        @CliCommand("entity mongo")
+        public void entityMongo() {
+        }
+
+        @CliCommand({ "hint", "help me" })
+        public void hint() {
+        }
+
+        @CliAvailabilityIndicator({ "entity jpa", "entity mongo" })
+        public boolean isEntityAvailable() {
+            availabilityChecks++;
+            return available;
+        }
+    }
+
     // Fixture
+    private EntityCommands entityCommands;
     private SimpleParser simpleParser;
 
     /**
@@ -25,9 +54,53 @@ public class SimpleParserTest {
         Assert.assertEquals(output, simpleParser.normalise(input));
     }
 
+    private List<String> complete(final String buffer) {
+        final List<Completion> completions = new ArrayList<Completion>();
+        simpleParser.completeAdvanced(buffer, buffer.length(), completions);
+        final List<String> values = new ArrayList<String>();
+        for (final Completion completion : completions) {
+            values.add(completion.getValue());
+        }
+        return values;
+    }
+
     @Before
     public void setUp() {
         simpleParser = new SimpleParser();
+        entityCommands = new EntityCommands();
+        simpleParser.add(entityCommands);
+    }
+
+    @Test
+    public void testAvailabilityIsReusedUntilRefreshed() {
+        complete("ent");
+        complete("entity ");
+        Assert.assertEquals(1, entityCommands.availabilityChecks);
+
+        entityCommands.available = false;
+        Assert.assertEquals(Arrays.asList("entity "), complete("ent"));
+
+        simpleParser.refreshAvailability();
+        Assert.assertEquals(Arrays.<String> asList(), complete("ent"));
+        Assert.assertNull(simpleParser.parse("entity jpa"));
+        Assert.assertEquals(2, entityCommands.availabilityChecks);
+    }
+
+    @Test
+    public void testCompleteFirstWordOfMatchingCommands() {
+        Assert.assertEquals(Arrays.asList("entity "), complete("ent"));
+    }
+
+    @Test
+    public void testCompleteSecondWordOfMatchingCommands() {
+        Assert.assertEquals(Arrays.asList("entity mongo"), complete("entity m"));
+    }
+
+    @Test
+    public void testGetEveryCommand() {
+        Assert.assertEquals(Arrays.asList("entity jpa", "entity mongo",
+                "help me", "hint"), new ArrayList<String>(simpleParser
+                .getEveryCommand()));
     }
 
     @Test
@@ -49,4 +122,24 @@ public class SimpleParserTest {
     public void testNormaliseSpaces() {
         assertNormalised("    ", "");
     }
+
+    @Test
+    public void testParseAbbreviatedCommand() {
+        final ParseResult parseResult = simpleParser.parse("ent mon");
+        Assert.assertEquals("entityMongo", parseResult.getMethod().getName());
+    }
+
+    @Test
+    public void testParseAlternativeCommand() {
+        final ParseResult parseResult = simpleParser.parse("help me");
+        Assert.assertEquals("hint", parseResult.getMethod().getName());
+    }
+
+    @Test
+    public void testParseRemovedCommand() {
+        simpleParser.remove(entityCommands);
+
+        Assert.assertNull(simpleParser.parse("hint"));
+        Assert.assertTrue(simpleParser.getEveryCommand().isEmpty());
+    }
 }